@@ -0,0 +1,304 @@
+package mapClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classe che predice in modo non interattivo il valore dell'attributo di
+ * classe per gli esempi letti da un flusso CSV. Gli esempi sono raggruppati in
+ * lotti, inviati al server su più connessioni parallele e, su ciascuna
+ * connessione, senza attendere la risposta al lotto precedente. Le predizioni
+ * sono scritte nell'ordine degli esempi in input, mantenendo in memoria un
+ * numero limitato di lotti.
+ */
+class BatchScorer {
+
+	/**
+	 * Lotto di esempi da predire.
+	 */
+	private static class Batch {
+
+		/**
+		 * Numero progressivo del lotto nel flusso in input.
+		 */
+		private long sequence;
+
+		/**
+		 * Valori degli attributi indipendenti di ciascun esempio del lotto. Vale null
+		 * per il lotto che segnala la fine del flusso.
+		 */
+		private String[][] rows;
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param sequence Numero progressivo del lotto.
+		 * @param rows     Esempi del lotto.
+		 */
+		Batch(long sequence, String[][] rows) {
+			this.sequence = sequence;
+			this.rows = rows;
+		}
+
+	}
+
+	/**
+	 * Numero massimo di lotti inviati su una connessione in attesa di risposta.
+	 */
+	private static final int WINDOW = 2;
+
+	/**
+	 * Indirizzo del server.
+	 */
+	private String host;
+
+	/**
+	 * Numero di porta del server.
+	 */
+	private int port;
+
+	/**
+	 * Nome della tabella da cui è stato appreso l'albero da utilizzare.
+	 */
+	private String tableName;
+
+	/**
+	 * Numero di connessioni parallele verso il server.
+	 */
+	private int connections;
+
+	/**
+	 * Numero di esempi per lotto.
+	 */
+	private int batchSize;
+
+	/**
+	 * Lotti letti e non ancora inviati al server.
+	 */
+	private BlockingQueue<Batch> queue;
+
+	/**
+	 * Permessi che limitano il numero di lotti letti e non ancora scritti in
+	 * output.
+	 */
+	private Semaphore pending;
+
+	/**
+	 * Predizioni ricevute e non ancora scritte, indicizzate dal numero del lotto.
+	 */
+	private Map<Long, double[]> completed = new HashMap<>();
+
+	/**
+	 * Numero del prossimo lotto da scrivere in output.
+	 */
+	private long nextSequence = 0;
+
+	/**
+	 * Flusso su cui scrivere le predizioni.
+	 */
+	private PrintStream output;
+
+	/**
+	 * Prima anomalia verificatasi in una delle connessioni.
+	 */
+	private volatile Exception failure;
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param host        Indirizzo del server.
+	 * @param port        Numero di porta del server.
+	 * @param tableName   Nome della tabella da cui è stato appreso l'albero.
+	 * @param connections Numero di connessioni parallele verso il server.
+	 * @param batchSize   Numero di esempi per lotto.
+	 */
+	BatchScorer(String host, int port, String tableName, int connections, int batchSize) {
+		if (connections < 1 || batchSize < 1)
+			throw new IllegalArgumentException("Connections and batch size must be positive");
+		this.host = host;
+		this.port = port;
+		this.tableName = tableName;
+		this.connections = connections;
+		this.batchSize = batchSize;
+		queue = new ArrayBlockingQueue<>(connections * WINDOW);
+		pending = new Semaphore(connections * WINDOW * 2);
+	}
+
+	/**
+	 * Predice gli esempi letti dal flusso in input, uno per riga con i valori
+	 * degli attributi indipendenti separati da virgole, e scrive una predizione
+	 * per riga sul flusso in output. Per gli esempi con valori mancanti o
+	 * sconosciuti scrive "?".
+	 * 
+	 * @param input  Flusso CSV da cui leggere gli esempi.
+	 * @param output Flusso su cui scrivere le predizioni.
+	 * @throws Exception Se si verificano errori nella lettura degli esempi o nella
+	 *                   comunicazione con il server.
+	 */
+	void score(BufferedReader input, PrintStream output) throws Exception {
+		this.output = output;
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < connections; i++) {
+			Thread worker = new Thread(this::work);
+			worker.start();
+			workers.add(worker);
+		}
+		try {
+			long sequence = 0;
+			List<String[]> rows = new ArrayList<>(batchSize);
+			String line;
+			while ((line = input.readLine()) != null && failure == null) {
+				if (line.trim().isEmpty())
+					continue;
+				String[] values = line.split(",", -1);
+				for (int i = 0; i < values.length; i++)
+					values[i] = values[i].trim();
+				rows.add(values);
+				if (rows.size() == batchSize) {
+					enqueue(new Batch(sequence++, rows.toArray(new String[0][])));
+					rows.clear();
+				}
+			}
+			if (!rows.isEmpty())
+				enqueue(new Batch(sequence, rows.toArray(new String[0][])));
+		} finally {
+			for (int i = 0; i < connections; i++)
+				offer(new Batch(-1, null));
+			for (Thread worker : workers)
+				worker.join();
+			output.flush();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Accoda un lotto da inviare, attendendo che il numero di lotti in memoria
+	 * scenda sotto il limite.
+	 * 
+	 * @param batch Lotto da accodare.
+	 * @throws InterruptedException Se il thread viene interrotto durante l'attesa.
+	 */
+	private void enqueue(Batch batch) throws InterruptedException {
+		while (failure == null)
+			if (pending.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+				offer(batch);
+				return;
+			}
+	}
+
+	/**
+	 * Inserisce un lotto nella coda, attendendo che vi sia spazio o che una
+	 * connessione fallisca.
+	 * 
+	 * @param batch Lotto da inserire.
+	 * @throws InterruptedException Se il thread viene interrotto durante l'attesa.
+	 */
+	private void offer(Batch batch) throws InterruptedException {
+		while (failure == null)
+			if (queue.offer(batch, 100, TimeUnit.MILLISECONDS))
+				return;
+	}
+
+	/**
+	 * Corpo di ciascuna connessione: carica l'albero, invia i lotti prelevati
+	 * dalla coda mantenendone al più WINDOW in attesa di risposta e consegna le
+	 * predizioni ricevute. Se la coda è vuota, attende le risposte pendenti
+	 * anziché nuovi lotti.
+	 */
+	private void work() {
+		Socket socket = null;
+		try {
+			socket = new Socket(InetAddress.getByName(host), port);
+			socket.setTcpNoDelay(true);
+			ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+			out.writeObject(2);
+			out.writeObject(tableName);
+			String answer = in.readObject().toString();
+			if (!answer.equals("OK"))
+				throw new IOException(answer);
+			Deque<Batch> inFlight = new ArrayDeque<>();
+			while (failure == null) {
+				Batch batch = inFlight.isEmpty() ? queue.poll(100, TimeUnit.MILLISECONDS) : queue.poll();
+				if (batch == null) {
+					if (!inFlight.isEmpty())
+						receive(inFlight.poll(), in);
+					continue;
+				}
+				if (batch.rows == null)
+					break;
+				out.writeObject(10);
+				out.writeObject(batch.rows);
+				out.reset();
+				out.flush();
+				inFlight.add(batch);
+				if (inFlight.size() >= WINDOW)
+					receive(inFlight.poll(), in);
+			}
+			while (!inFlight.isEmpty())
+				receive(inFlight.poll(), in);
+			out.writeObject(4);
+		} catch (Exception e) {
+			if (failure == null)
+				failure = e;
+		} finally {
+			try {
+				if (socket != null)
+					socket.close();
+			} catch (IOException e) {
+				// la connessione è comunque abbandonata
+			}
+		}
+	}
+
+	/**
+	 * Legge la risposta del server al lotto in input e la consegna.
+	 * 
+	 * @param batch Lotto a cui si riferisce la risposta.
+	 * @param in    Flusso di oggetti in lettura dal server.
+	 * @throws IOException            Se si verificano errori nella comunicazione o
+	 *                                il server segnala un errore.
+	 * @throws ClassNotFoundException Se il tipo di un oggetto ricevuto non è noto.
+	 */
+	private void receive(Batch batch, ObjectInputStream in) throws IOException, ClassNotFoundException {
+		String answer = in.readObject().toString();
+		if (!answer.equals("OK"))
+			throw new IOException(answer);
+		deliver(batch.sequence, (double[]) in.readObject());
+	}
+
+	/**
+	 * Memorizza le predizioni di un lotto e scrive in output, nell'ordine del
+	 * flusso in input, tutti i lotti consecutivi disponibili.
+	 * 
+	 * @param sequence    Numero del lotto.
+	 * @param predictions Predizioni degli esempi del lotto.
+	 */
+	private synchronized void deliver(long sequence, double[] predictions) {
+		completed.put(sequence, predictions);
+		double[] next;
+		while ((next = completed.remove(nextSequence)) != null) {
+			for (double p : next)
+				output.println(Double.isNaN(p) ? "?" : String.valueOf(p));
+			nextSequence++;
+			pending.release();
+		}
+	}
+
+}
@@ -1,8 +1,13 @@
 package mapClient;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
@@ -10,16 +15,21 @@ import utility.Keyboard;
 
 /**
  * Classe per stabilire la connessione del client al server, al fine di avviare
- * l'apprendimento di un nuovo albero di regressione o recuperare un albero
- * precedentemente serializzato in un file.
+ * l'apprendimento di un nuovo albero di regressione o di una foresta casuale, o
+ * recuperare un albero precedentemente serializzato in un file.
  */
 public class MainTest {
 
 	/**
 	 * Stabilisce la connessione al server. Successivamente invia e riceve messaggi
-	 * dipendentemente dalle scelte effettuate dall'utente.
+	 * dipendentemente dalle scelte effettuate dall'utente. Se sono indicati anche
+	 * tabella e file CSV, esegue invece la predizione non interattiva degli esempi
+	 * contenuti nel file.
 	 * 
-	 * @param args Indirizzo e porta su cui il server è in ascolto.
+	 * @param args Indirizzo e porta su cui il server è in ascolto; facoltativi:
+	 *             nome della tabella da cui è stato appreso l'albero, file CSV
+	 *             degli esempi da predire ("-" per lo standard input), numero di
+	 *             connessioni parallele e numero di esempi per lotto.
 	 */
 	public static void main(String[] args) {
 		ObjectInputStream in = null;
@@ -29,6 +39,10 @@ public class MainTest {
 			System.out.println("IP address and port number not provided");
 			return;
 		}
+		if (args.length >= 4) {
+			scoreBatch(args);
+			return;
+		}
 		try {
 			InetAddress addr = InetAddress.getByName(args[0]);
 			socket = new Socket(addr, Integer.parseInt(args[1]));
@@ -39,21 +53,70 @@ public class MainTest {
 			do {
 				System.out.println("[1]: Learn Regression Tree from data");
 				System.out.println("[2]: Load Regression Tree from archive");
+				System.out.println("[3]: Learn Regression Forest from data");
+				System.out.println("[4]: Learn Gradient Boosting model from data");
 				decision = Keyboard.readInt();
-			} while (decision != 1 && decision != 2);
+			} while (decision < 1 || decision > 4);
 			System.out.print("\nTable name: ");
 			String tableName = Keyboard.readString();
-			if (decision == 1) {
+			if (decision != 2) {
+				System.out.print("Columns (comma separated, empty for all): ");
+				String columns = Keyboard.readString().trim();
+				System.out.print("Filter (conditions separated by ';', empty for none): ");
+				String filter = Keyboard.readString().trim();
 				System.out.println("\nStarting data acquisition phase!");
-				out.writeObject(0);
-				out.writeObject(tableName);
+				if (columns.isEmpty() && filter.isEmpty()) {
+					out.writeObject(0);
+					out.writeObject(tableName);
+				} else {
+					out.writeObject(11);
+					out.writeObject(tableName);
+					out.writeObject(columns.isEmpty() ? new String[0] : columns.split(","));
+					out.writeObject(filter.isEmpty() ? new String[0] : filter.split(";"));
+				}
 				answer = in.readObject().toString();
 				if (!answer.equals("OK")) {
 					System.out.println(answer);
 					return;
 				}
+				if (decision == 3 || decision == 4) {
+					System.out.print("Number of trees: ");
+					int numberOfTrees = Keyboard.readInt();
+					if (decision == 3) {
+						System.out.println("\nStarting learning phase!");
+						out.writeObject(12);
+						out.writeObject(numberOfTrees);
+					} else {
+						System.out.print("Learning rate: ");
+						double learningRate = Keyboard.readDouble();
+						System.out.print("Maximum depth: ");
+						int maxDepth = Keyboard.readInt();
+						System.out.println("\nStarting learning phase!");
+						out.writeObject(13);
+						out.writeObject(numberOfTrees);
+						out.writeObject(learningRate);
+						out.writeObject(maxDepth);
+					}
+					answer = in.readObject().toString();
+					if (answer.equals("OK"))
+						System.out.println("\nModel saved: provide the table name and a CSV file of examples as "
+								+ "arguments to predict them");
+					else
+						System.out.println(answer);
+					out.writeObject(4);
+					return;
+				}
+				System.out.print("Stopping criteria (leafPercentage, maxDepth, maxLeaves, minVarianceReduction, "
+						+ "timeBudget, growth=bestFirst|levelWise as name=value separated by ';', "
+						+ "empty for defaults): ");
+				String settings = Keyboard.readString().trim();
 				System.out.println("\nStarting learning phase!");
-				out.writeObject(1);
+				if (settings.isEmpty())
+					out.writeObject(1);
+				else {
+					out.writeObject(14);
+					out.writeObject(settings.split(";"));
+				}
 			} else {
 				out.writeObject(2);
 				out.writeObject(tableName);
@@ -63,15 +126,50 @@ public class MainTest {
 				System.out.println(answer);
 				return;
 			}
+			if (decision == 1) {
+				System.out.print("\nPruning (validation table name, or number of cross-validation folds; "
+						+ "empty to skip): ");
+				String pruning = Keyboard.readString().trim();
+				if (!pruning.isEmpty()) {
+					System.out.println("\nStarting pruning phase!");
+					out.writeObject(15);
+					if (pruning.matches("\\d+")) {
+						out.writeObject(null);
+						out.writeObject(Integer.parseInt(pruning));
+					} else {
+						out.writeObject(pruning);
+						out.writeObject(0);
+					}
+					answer = in.readObject().toString();
+					if (!answer.equals("OK")) {
+						System.out.println(answer);
+						return;
+					}
+					System.out.println(in.readObject());
+				}
+			}
+			LocalModel model = ModelCache.get(tableName, in, out, socket.getInputStream());
+			if (model == null)
+				System.out.println("\nLocal model not available, predictions run on the server");
 			char risp;
 			do {
-				out.writeObject(3);
+				if (model != null) {
+					System.out.println("\nStarting prediction phase!");
+					predictLocally(model);
+					System.out.print("\nStart a new prediction? [y/n]: ");
+					risp = Keyboard.readChar();
+					continue;
+				}
+				out.writeObject(6);
 				System.out.println("\nStarting prediction phase!");
 				answer = in.readObject().toString();
 				while (answer.equals("QUERY")) {
+					String cursor = in.readObject().toString();
 					answer = in.readObject().toString();
 					System.out.print(answer);
 					int path = Keyboard.readInt();
+					out.writeObject(7);
+					out.writeObject(cursor);
 					out.writeObject(path);
 					answer = in.readObject().toString();
 				}
@@ -102,4 +200,55 @@ public class MainTest {
 		}
 	}
 
+	/**
+	 * Predice in modo non interattivo gli esempi del file CSV indicato negli
+	 * argomenti, scrivendo le predizioni sullo standard output.
+	 * 
+	 * @param args Indirizzo e porta del server, nome della tabella, file CSV ("-"
+	 *             per lo standard input) e, facoltativi, numero di connessioni
+	 *             parallele (predefinito 4) e numero di esempi per lotto
+	 *             (predefinito 1000).
+	 */
+	private static void scoreBatch(String[] args) {
+		BufferedReader input = null;
+		try {
+			int connections = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+			int batchSize = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+			input = new BufferedReader(new InputStreamReader(args[3].equals("-") ? System.in : new FileInputStream(args[3])));
+			new BatchScorer(args[0], Integer.parseInt(args[1]), args[2], connections, batchSize).score(input,
+					new PrintStream(new BufferedOutputStream(System.out), false));
+		} catch (Exception e) {
+			System.err.println(e);
+		} finally {
+			try {
+				if (input != null)
+					input.close();
+			} catch (IOException e) {
+				System.err.println(e);
+			}
+		}
+	}
+
+	/**
+	 * Esegue una predizione sulla copia locale del modello, acquisendo da tastiera
+	 * il ramo da seguire in ciascun nodo di split, senza comunicare con il server.
+	 * 
+	 * @param model Copia locale del modello.
+	 */
+	private static void predictLocally(LocalModel model) {
+		int node = 0;
+		String query;
+		while ((query = model.getQuery(node)) != null) {
+			System.out.print(query);
+			int child = model.getChild(node, Keyboard.readInt());
+			if (child < 0) {
+				System.out.println(
+						"The answer should be an integer between 0 and " + (model.getNumberOfChildren(node) - 1));
+				return;
+			}
+			node = child;
+		}
+		System.out.println("\nPredicted class:" + model.getPredictedClassValue(node));
+	}
+
 }
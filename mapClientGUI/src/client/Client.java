@@ -5,162 +5,417 @@ import java.io.ObjectOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Classe che gestisce la comunicazione con il server.
+ * Classe che gestisce una sessione di comunicazione con il server. Le richieste
+ * sono eseguite in modo asincrono da un thread di input-output dedicato alla
+ * sessione e restituiscono un CompletableFuture, così che il thread
+ * dell'interfaccia grafica non resti mai in attesa del server. Ogni richiesta è
+ * soggetta a un tempo massimo di risposta; se la connessione si interrompe, la
+ * sessione si riconnette e ripete una volta le sole richieste idempotenti,
+ * come i passi della predizione e il caricamento da archivio, mentre il
+ * fallimento di un apprendimento, che il server potrebbe aver già eseguito, è
+ * segnalato all'utente.
  */
 public class Client {
 
+	/**
+	 * Operazione da eseguire sul thread di input-output della sessione.
+	 * 
+	 * @param <T> Tipo del risultato dell'operazione.
+	 */
+	private interface Operation<T> {
+
+		/**
+		 * Esegue l'operazione.
+		 * 
+		 * @return Risultato dell'operazione.
+		 * @throws IOException                  Se si verificano errori di
+		 *                                      input-output.
+		 * @throws ClassNotFoundException       Se il tipo di un oggetto ricevuto non
+		 *                                      è noto.
+		 * @throws ServerCommunicationException Se il server segnala un errore.
+		 */
+		T run() throws IOException, ClassNotFoundException, ServerCommunicationException;
+
+	}
+
+	/**
+	 * Tempo massimo, in millisecondi, di risposta del server a un passo della
+	 * predizione.
+	 */
+	private static final int PREDICTION_TIMEOUT = 10000;
+
+	/**
+	 * Tempo massimo, in millisecondi, di risposta del server all'acquisizione di
+	 * un albero di regressione, che può richiederne l'apprendimento.
+	 */
+	private static final int ACQUISITION_TIMEOUT = 30 * 60 * 1000;
+
+	/**
+	 * Indirizzo del server.
+	 */
+	private String host;
+
+	/**
+	 * Numero di porta del server.
+	 */
+	private int port;
+
 	/**
 	 * Oggetto Socket per instaurare una connessione con il server.
 	 */
-	private static Socket socket;
+	private Socket socket;
 
 	/**
 	 * Oggetto per la gestione delle operazioni di lettura dal server.
 	 */
-	private static ObjectInputStream in;
+	private ObjectInputStream in;
 
 	/**
 	 * Oggetto per la gestione delle operazioni di scrittura verso il server.
 	 */
-	private static ObjectOutputStream out;
+	private ObjectOutputStream out;
 
 	/**
-	 * Sovrascrive il costruttore di default avente visibilità pubblica.
+	 * Thread di input-output della sessione, su cui sono eseguite in ordine tutte
+	 * le richieste.
 	 */
-	private Client() {
-	}
+	private ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "client-io");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
-	 * Instaura una connessione con il server.
+	 * Nome della tabella da cui è stato acquisito l'albero, usato per ripristinare
+	 * la sessione dopo una riconnessione.
+	 */
+	private String tableName;
+
+	/**
+	 * Cursore opaco, ricevuto dal server, che identifica il nodo corrente della
+	 * predizione interattiva.
+	 */
+	private String cursor;
+
+	/**
+	 * Copia locale del modello acquisito, sulla quale eseguire le predizioni
+	 * senza comunicare con il server. Vale null se il download non è riuscito.
+	 */
+	private LocalModel model;
+
+	/**
+	 * Nodo corrente della predizione eseguita sulla copia locale del modello.
+	 */
+	private int node;
+
+	/**
+	 * Costruttore di classe. La connessione con il server è instaurata alla prima
+	 * richiesta.
 	 * 
 	 * @param host Indirizzo IP usato per stabilire la connessione.
 	 * @param port Numero di porta sul quale stabilire la connessione.
-	 * @throws IOException Se si verificano errori nel tentativo di stabilire una
-	 *                     connessione con il server.
 	 */
-	public static void startConnection(String host, int port) throws IOException {
-		InetAddress addr = InetAddress.getByName(host);
-		socket = new Socket(addr, port);
-		out = new ObjectOutputStream(socket.getOutputStream());
-		in = new ObjectInputStream(socket.getInputStream());
+	public Client(String host, int port) {
+		this.host = host;
+		this.port = port;
 	}
 
 	/**
 	 * Richiede al server l'acquisizione di un albero di regressione dal training
-	 * set tableName, secondo la modalità specificata in decision.
+	 * set tableName, secondo la modalità specificata in decision. Ottiene quindi
+	 * una copia locale aggiornata del modello; se non è possibile, le predizioni
+	 * sono eseguite dal server.
 	 * 
 	 * @param decision  Valore che specifica la modalità di acquisizione dell'albero
 	 *                  di regressione: 1 per apprendimento da database, 2 per
 	 *                  caricamento da archivio.
 	 * @param tableName Nome della tabella su database o file system contenente il
 	 *                  training set.
-	 * @throws ServerCommunicationException Se l'acquisizione dell'albero di
-	 *                                      regressione fallisce.
+	 * @return Esito dell'acquisizione, completato con ServerCommunicationException
+	 *         se l'acquisizione dell'albero di regressione fallisce.
 	 */
-	public static void acquireTree(int decision, String tableName) throws ServerCommunicationException {
-		String answer;
-		try {
-			if (decision == 1) {
-				out.writeObject(0);
-				out.writeObject(tableName);
-				answer = in.readObject().toString();
-				if (!answer.equals("OK"))
-					throw new ServerCommunicationException(answer);
-				out.writeObject(1);
-			} else {
-				out.writeObject(2);
-				out.writeObject(tableName);
-			}
-			answer = in.readObject().toString();
-			if (!answer.equals("OK"))
-				throw new ServerCommunicationException(answer);
-		} catch (ClassNotFoundException | IOException e) {
-			throw new ServerCommunicationException("Error in communication with server");
-		}
+	public CompletableFuture<Void> acquireTree(int decision, String tableName) {
+		return acquireTree(decision, tableName, null, null);
 	}
 
 	/**
-	 * Richiede al server di avviare una predizione dell'attributo di classe per uno
-	 * specifico esempio.
+	 * Richiede al server l'acquisizione di un albero di regressione come
+	 * acquireTree(int, String); in apprendimento, il training set è letto dalle
+	 * sole colonne e tuple della tabella indicate.
 	 * 
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * @param decision   Valore che specifica la modalità di acquisizione
+	 *                   dell'albero di regressione: 1 per apprendimento da
+	 *                   database, 2 per caricamento da archivio.
+	 * @param tableName  Nome della tabella su database o file system contenente
+	 *                   il training set.
+	 * @param columns    Colonne da leggere, l'ultima delle quali è l'attributo di
+	 *                   classe; null o vuoto per leggerle tutte.
+	 * @param conditions Confronti "colonna operatore valore" che le tuple devono
+	 *                   soddisfare; null o vuoto per leggerle tutte.
+	 * @return Esito dell'acquisizione, completato con ServerCommunicationException
+	 *         se l'acquisizione dell'albero di regressione fallisce.
 	 */
-	public static void requestPrediction() throws ServerCommunicationException {
-		try {
-			out.writeObject(3);
-		} catch (IOException e) {
-			throw new ServerCommunicationException("Error in communication with the server");
-		}
+	public CompletableFuture<Void> acquireTree(int decision, String tableName, String[] columns,
+			String[] conditions) {
+		return submit(() -> {
+			this.tableName = null;
+			sendAcquisition(decision, tableName, columns, conditions);
+			this.tableName = tableName;
+			try {
+				model = ModelCache.get(tableName, in, out, socket.getInputStream());
+			} catch (ClassNotFoundException | IOException e) {
+				// l'albero è acquisito: la sessione è ristabilita e l'albero ripristinato
+				// alla richiesta successiva, eseguita sul server
+				model = null;
+				disconnect();
+			}
+			return null;
+		}, ACQUISITION_TIMEOUT, decision == 2);
 	}
 
 	/**
-	 * Ottiene la risposta fornita dal server a seguito dell'indicazione del valore
-	 * di un attributo per l'esempio da predire.
+	 * Richiede al server di avviare una predizione dell'attributo di classe per uno
+	 * specifico esempio. Se è disponibile una copia locale del modello, la
+	 * predizione è eseguita localmente.
 	 * 
-	 * @return Risposta fornita dal server. Indica le opzioni disponibili per la
-	 *         scelta successiva o il valore predetto per l'attributo di classe.
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * @return Risposta fornita dal server: le opzioni disponibili per la prima
+	 *         scelta o il valore predetto per l'attributo di classe.
 	 */
-	public static Object getResponse() throws ServerCommunicationException {
-		Object response;
-		try {
-			String answer = in.readObject().toString();
-			if (answer.equals("QUERY") || answer.equals("OK"))
-				response = in.readObject();
-			else
-				throw new ServerCommunicationException(answer);
-			return response;
-		} catch (ClassNotFoundException | IOException e) {
-			throw new ServerCommunicationException("Error in communication with the server");
-		}
+	public CompletableFuture<Object> requestPrediction() {
+		return submit(() -> {
+			if (model != null) {
+				node = 0;
+				return getLocalResponse();
+			}
+			out.writeObject(6);
+			return getResponse();
+		}, PREDICTION_TIMEOUT, true);
 	}
 
 	/**
-	 * Comunica al server il valore di un attributo per l'esempio da predire.
+	 * Comunica al server il valore di un attributo per l'esempio da predire,
+	 * insieme al cursore del nodo corrente.
 	 * 
 	 * @param choise Opzione scelta dall'utente per indicare il valore di un
 	 *               attributo dell'esempio da predire.
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * @return Risposta fornita dal server: le opzioni disponibili per la scelta
+	 *         successiva o il valore predetto per l'attributo di classe.
 	 */
-	public static void SetResponse(int choise) throws ServerCommunicationException {
-		try {
+	public CompletableFuture<Object> setResponse(int choise) {
+		return submit(() -> {
+			if (model != null) {
+				int child = model.getChild(node, choise);
+				if (child < 0)
+					throw new ServerCommunicationException(
+							"The answer should be an integer between 0 and " + (model.getNumberOfChildren(node) - 1));
+				node = child;
+				return getLocalResponse();
+			}
+			out.writeObject(7);
+			out.writeObject(cursor);
 			out.writeObject(choise);
+			return getResponse();
+		}, PREDICTION_TIMEOUT, true);
+	}
+
+	/**
+	 * Richiede al server l'interruzione della connessione e rilascia le risorse
+	 * della sessione.
+	 * 
+	 * @return Esito della chiusura.
+	 */
+	public synchronized CompletableFuture<Void> close() {
+		if (executor.isShutdown())
+			return CompletableFuture.completedFuture(null);
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		executor.execute(() -> {
+			try {
+				if (out != null)
+					out.writeObject(4);
+			} catch (IOException e) {
+				// la sessione viene chiusa comunque
+			}
+			disconnect();
+			result.complete(null);
+		});
+		executor.shutdown();
+		return result;
+	}
+
+	/**
+	 * Accoda l'operazione sul thread di input-output della sessione. Prima di
+	 * eseguirla instaura la connessione se necessario e imposta il tempo massimo
+	 * di risposta. Se la connessione si interrompe, si riconnette, ripristina
+	 * l'albero acquisito e, se l'operazione è idempotente, la ripete una volta.
+	 * 
+	 * @param <T>        Tipo del risultato dell'operazione.
+	 * @param operation  Operazione da eseguire.
+	 * @param timeout    Tempo massimo di risposta, in millisecondi.
+	 * @param idempotent Indica se l'operazione può essere ripetuta senza effetti
+	 *                   ulteriori sul server.
+	 * @return Risultato dell'operazione, completato con
+	 *         ServerCommunicationException in caso di errore.
+	 */
+	private <T> CompletableFuture<T> submit(Operation<T> operation, int timeout, boolean idempotent) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		executor.execute(() -> {
+			try {
+				result.complete(execute(operation, timeout, idempotent));
+			} catch (ServerCommunicationException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Esegue l'operazione sul thread corrente, gestendo connessione, tempo
+	 * massimo di risposta e riconnessione.
+	 * 
+	 * @param <T>        Tipo del risultato dell'operazione.
+	 * @param operation  Operazione da eseguire.
+	 * @param timeout    Tempo massimo di risposta, in millisecondi.
+	 * @param idempotent Indica se l'operazione può essere ripetuta dopo la
+	 *                   riconnessione.
+	 * @return Risultato dell'operazione.
+	 * @throws ServerCommunicationException Se l'operazione fallisce, anche dopo
+	 *                                      la riconnessione se idempotente, o il
+	 *                                      server segnala un errore.
+	 * @see submit
+	 */
+	private <T> T execute(Operation<T> operation, int timeout, boolean idempotent)
+			throws ServerCommunicationException {
+		for (int attempt = 0;; attempt++)
+			try {
+				if (socket == null) {
+					connect();
+					if (tableName != null)
+						sendAcquisition(2, tableName, null, null);
+				}
+				socket.setSoTimeout(timeout);
+				return operation.run();
+			} catch (SocketTimeoutException e) {
+				disconnect();
+				throw new ServerCommunicationException("The server did not answer in time");
+			} catch (ClassNotFoundException | IOException e) {
+				disconnect();
+				if (!idempotent)
+					throw new ServerCommunicationException(
+							"Error in communication with the server: the request may have been executed");
+				if (attempt > 0)
+					throw new ServerCommunicationException("Error in communication with the server");
+			}
+	}
+
+	/**
+	 * Instaura una connessione con il server.
+	 * 
+	 * @throws IOException Se si verificano errori nel tentativo di stabilire una
+	 *                     connessione con il server.
+	 */
+	private void connect() throws IOException {
+		InetAddress addr = InetAddress.getByName(host);
+		socket = new Socket(addr, port);
+		out = new ObjectOutputStream(socket.getOutputStream());
+		in = new ObjectInputStream(socket.getInputStream());
+	}
+
+	/**
+	 * Rilascia le risorse utilizzate per la connessione con il server, ignorando
+	 * eventuali errori: la connessione viene ristabilita alla richiesta
+	 * successiva.
+	 */
+	private void disconnect() {
+		try {
+			if (socket != null)
+				socket.close();
 		} catch (IOException e) {
-			throw new ServerCommunicationException("Error in communication with the server");
+			// la connessione è comunque abbandonata
 		}
+		socket = null;
+		in = null;
+		out = null;
 	}
 
 	/**
-	 * Richiede al server l'interruzione della connessione.
+	 * Invia al server la richiesta di acquisizione dell'albero e ne verifica
+	 * l'esito.
 	 * 
-	 * @throws ServerCommunicationException Se si verificano errori nella
+	 * @param decision   Modalità di acquisizione dell'albero di regressione.
+	 * @param tableName  Nome della tabella contenente il training set.
+	 * @param columns    Colonne da leggere, o null per leggerle tutte.
+	 * @param conditions Confronti che le tuple devono soddisfare, o null.
+	 * @throws IOException                  Se si verificano errori nella
 	 *                                      comunicazione con il server.
+	 * @throws ClassNotFoundException       Se il tipo di un oggetto ricevuto non è
+	 *                                      noto.
+	 * @throws ServerCommunicationException Se l'acquisizione dell'albero di
+	 *                                      regressione fallisce.
 	 */
-	public static void requestClosure() throws ServerCommunicationException {
-		try {
-			out.writeObject(4);
-		} catch (IOException e) {
-			throw new ServerCommunicationException("Error in communication with the server");
+	private void sendAcquisition(int decision, String tableName, String[] columns, String[] conditions)
+			throws IOException, ClassNotFoundException, ServerCommunicationException {
+		String answer;
+		if (decision == 1) {
+			boolean whole = (columns == null || columns.length == 0) && (conditions == null || conditions.length == 0);
+			out.writeObject(whole ? 0 : 11);
+			out.writeObject(tableName);
+			if (!whole) {
+				out.writeObject(columns != null ? columns : new String[0]);
+				out.writeObject(conditions != null ? conditions : new String[0]);
+			}
+			answer = in.readObject().toString();
+			if (!answer.equals("OK"))
+				throw new ServerCommunicationException(answer);
+			out.writeObject(1);
+		} else {
+			out.writeObject(2);
+			out.writeObject(tableName);
 		}
+		answer = in.readObject().toString();
+		if (!answer.equals("OK"))
+			throw new ServerCommunicationException(answer);
 	}
 
 	/**
-	 * Rilascia le risorse utilizzate per instaurare una connessione con il server.
+	 * Ottiene la risposta fornita dal server a un passo della predizione. Se la
+	 * predizione non è conclusa, memorizza il cursore che identifica il nodo
+	 * corrente.
 	 * 
-	 * @throws IOException Se si verificano errori nel rilascio delle risorse.
-	 */
-	public static void close() throws IOException {
-		if (in != null)
-			in.close();
-		if (out != null)
-			out.close();
-		if (socket != null)
-			socket.close();
+	 * @return Opzioni disponibili per la scelta successiva o valore predetto per
+	 *         l'attributo di classe.
+	 * @throws IOException                  Se si verificano errori nella
+	 *                                      comunicazione con il server.
+	 * @throws ClassNotFoundException       Se il tipo di un oggetto ricevuto non è
+	 *                                      noto.
+	 * @throws ServerCommunicationException Se il server segnala un errore.
+	 */
+	private Object getResponse() throws IOException, ClassNotFoundException, ServerCommunicationException {
+		String answer = in.readObject().toString();
+		if (answer.equals("QUERY")) {
+			cursor = in.readObject().toString();
+			return in.readObject();
+		} else if (answer.equals("OK"))
+			return in.readObject();
+		else
+			throw new ServerCommunicationException(answer);
+	}
+
+	/**
+	 * Restituisce il passo corrente della predizione eseguita sulla copia locale
+	 * del modello.
+	 * 
+	 * @return Opzioni disponibili per la scelta successiva o valore predetto per
+	 *         l'attributo di classe.
+	 */
+	private Object getLocalResponse() {
+		String query = model.getQuery(node);
+		return query != null ? query : model.getPredictedClassValue(node);
 	}
 
 }
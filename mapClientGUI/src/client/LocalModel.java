@@ -0,0 +1,154 @@
+package client;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Classe che modella un albero di regressione scaricato dal server in forma
+ * compilata, sul quale eseguire le predizioni localmente senza comunicare con
+ * il server.
+ */
+public class LocalModel {
+
+	/**
+	 * Codice identificativo dei file contenenti la forma compilata dell'albero.
+	 */
+	static final int MAGIC = 0x52544d31;
+
+	/**
+	 * Versione del modello.
+	 */
+	private long version;
+
+	/**
+	 * Tipo di ciascun nodo: 0 per le foglie, 1 per gli split continui, 2 per gli
+	 * split discreti.
+	 */
+	private byte[] kind;
+
+	/**
+	 * Nome dell'attributo di ciascun nodo di split.
+	 */
+	private String[] attributeName;
+
+	/**
+	 * Valore predetto da ciascuna foglia o soglia di ciascuno split continuo.
+	 */
+	private double[] value;
+
+	/**
+	 * Identificativi dei figli di ciascun nodo di split.
+	 */
+	private int[][] children;
+
+	/**
+	 * Valori di split dei figli di ciascuno split discreto.
+	 */
+	private String[][] splitValues;
+
+	/**
+	 * Costruttore di classe. Legge la forma compilata dell'albero dal flusso in
+	 * input.
+	 * 
+	 * @param stream Flusso da cui leggere la forma compilata dell'albero.
+	 * @throws IOException Se si verificano errori di lettura o il flusso non
+	 *                     contiene un modello compilato.
+	 */
+	LocalModel(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a compiled model");
+		version = in.readLong();
+		int n = in.readInt();
+		kind = new byte[n];
+		attributeName = new String[n];
+		value = new double[n];
+		children = new int[n][];
+		splitValues = new String[n][];
+		for (int i = 0; i < n; i++) {
+			kind[i] = in.readByte();
+			if (kind[i] == 0)
+				value[i] = in.readDouble();
+			else {
+				attributeName[i] = in.readUTF();
+				in.readInt(); // indice dell'attributo, usato solo dalla predizione in blocco
+				children[i] = new int[in.readInt()];
+				if (kind[i] == 1)
+					value[i] = in.readDouble();
+				else
+					splitValues[i] = new String[children[i].length];
+				for (int j = 0; j < children[i].length; j++) {
+					if (kind[i] == 2)
+						splitValues[i][j] = in.readUTF();
+					children[i][j] = in.readInt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restituisce il valore del membro version.
+	 * 
+	 * @return Versione del modello.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Restituisce le opzioni di test del nodo specificato, nello stesso formato
+	 * comunicato dal server durante la predizione interattiva.
+	 * 
+	 * @param node Identificativo del nodo.
+	 * @return Opzioni di test del nodo, o null se il nodo è una foglia.
+	 */
+	public String getQuery(int node) {
+		if (kind[node] == 0)
+			return null;
+		StringBuilder query = new StringBuilder("\n");
+		for (int i = 0; i < children[node].length; i++) {
+			query.append(i).append(":\t").append(attributeName[node]).append("\t");
+			if (kind[node] == 1)
+				query.append(i == 0 ? "<=" : ">").append("\t").append(value[node]);
+			else
+				query.append("=").append("\t").append(splitValues[node][i]);
+			query.append("\n");
+		}
+		return query.append("\nInsert value: ").toString();
+	}
+
+	/**
+	 * Restituisce il valore predetto dal nodo specificato.
+	 * 
+	 * @param node Identificativo del nodo.
+	 * @return Valore predetto dalla foglia, o null se il nodo è di split.
+	 */
+	public Double getPredictedClassValue(int node) {
+		return kind[node] == 0 ? value[node] : null;
+	}
+
+	/**
+	 * Restituisce il numero di opzioni del nodo specificato.
+	 * 
+	 * @param node Identificativo del nodo.
+	 * @return Numero di figli del nodo.
+	 */
+	public int getNumberOfChildren(int node) {
+		return kind[node] == 0 ? 0 : children[node].length;
+	}
+
+	/**
+	 * Restituisce l'identificativo del figlio selezionato dall'opzione in input.
+	 * 
+	 * @param node   Identificativo del nodo di split.
+	 * @param choice Opzione scelta tra quelle del nodo.
+	 * @return Identificativo del figlio, o -1 se l'opzione non è valida.
+	 */
+	public int getChild(int node, int choice) {
+		if (choice < 0 || choice >= getNumberOfChildren(node))
+			return -1;
+		return children[node][choice];
+	}
+
+}
@@ -0,0 +1,163 @@
+package client;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Classe che mantiene una copia locale dei modelli scaricati dal server,
+ * indicizzata dalla versione. Prima di riutilizzare una copia, ne verifica la
+ * versione con il server e la scarica nuovamente solo se non è aggiornata.
+ */
+public class ModelCache {
+
+	/**
+	 * Cartella in cui sono archiviati i modelli scaricati.
+	 */
+	private static final File DIRECTORY = new File("models");
+
+	/**
+	 * Modelli già letti, indicizzati dalla versione.
+	 */
+	private static Map<Long, LocalModel> models = new HashMap<>();
+
+	/**
+	 * Sovrascrive il costruttore di default avente visibilità pubblica.
+	 */
+	private ModelCache() {
+	}
+
+	/**
+	 * Restituisce il modello appreso dalla tabella specificata, aggiornando se
+	 * necessario la copia locale. Gli errori nell'accesso alla copia locale non
+	 * sono propagati: i byte del modello sono comunque consumati, così che la
+	 * comunicazione con il server resti allineata, e le predizioni proseguono sul
+	 * server.
+	 * 
+	 * @param tableName Nome della tabella da cui è stato appreso il modello.
+	 * @param in        Flusso di oggetti in lettura dal server.
+	 * @param out       Flusso di oggetti in scrittura verso il server.
+	 * @param raw       Flusso di byte del socket, da cui leggere il file del
+	 *                  modello.
+	 * @return Modello su cui eseguire le predizioni localmente, o null se il
+	 *         server non lo fornisce o la copia locale non può essere scritta o
+	 *         letta.
+	 * @throws IOException            Se si verificano errori nella comunicazione
+	 *                                con il server.
+	 * @throws ClassNotFoundException Se il tipo di un oggetto ricevuto non è noto.
+	 */
+	static synchronized LocalModel get(String tableName, ObjectInputStream in, ObjectOutputStream out,
+			InputStream raw) throws IOException, ClassNotFoundException {
+		File file = new File(DIRECTORY, tableName + ".model");
+		out.writeObject(9);
+		out.writeObject(tableName);
+		if (!in.readObject().toString().equals("OK"))
+			return null;
+		long version = (Long) in.readObject();
+		LocalModel model = models.get(version);
+		if (model != null)
+			return model;
+		model = read(file, version);
+		if (model == null) {
+			out.writeObject(8);
+			out.writeObject(tableName);
+			if (!in.readObject().toString().equals("OK"))
+				return null;
+			in.readObject(); // la versione è riportata anche nell'intestazione del file
+			if (!download(raw, (Long) in.readObject(), file))
+				return null;
+			model = read(file, version);
+			if (model == null)
+				return null;
+		}
+		models.put(model.getVersion(), model);
+		return model;
+	}
+
+	/**
+	 * Legge il modello contenuto nel file in input, se ne ha la versione
+	 * specificata.
+	 * 
+	 * @param file    File contenente il modello.
+	 * @param version Versione attesa del modello.
+	 * @return Modello letto, o null se il file non esiste, non è leggibile o
+	 *         contiene un'altra versione.
+	 */
+	private static LocalModel read(File file, long version) {
+		if (!file.exists())
+			return null;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			LocalModel model = new LocalModel(in);
+			return model.getVersion() == version ? model : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Copia nel file in input i byte del modello inviati dal server,
+	 * sostituendo la copia locale solo a trasferimento completato. Se la copia
+	 * non può essere scritta, i byte restanti sono letti e scartati.
+	 * 
+	 * @param raw  Flusso di byte del socket.
+	 * @param size Dimensione in byte del modello.
+	 * @param file File in cui salvare il modello.
+	 * @return true se la copia locale è stata scritta, false altrimenti.
+	 * @throws IOException Se si verificano errori nella lettura dal socket.
+	 */
+	private static boolean download(InputStream raw, long size, File file) throws IOException {
+		Path temp = null;
+		OutputStream out = null;
+		try {
+			try {
+				DIRECTORY.mkdirs();
+				temp = Files.createTempFile(DIRECTORY.toPath(), file.getName(), ".tmp");
+				out = Files.newOutputStream(temp);
+			} catch (IOException e) {
+				// il modello è solo consumato
+			}
+			boolean written = out != null;
+			byte[] buffer = new byte[8192];
+			while (size > 0) {
+				int read = raw.read(buffer, 0, (int) Math.min(buffer.length, size));
+				if (read < 0)
+					throw new IOException("Connection closed during model transfer");
+				size -= read;
+				if (written)
+					try {
+						out.write(buffer, 0, read);
+					} catch (IOException e) {
+						written = false;
+					}
+			}
+			if (written)
+				try {
+					out.close();
+					Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					written = false;
+				}
+			return written;
+		} finally {
+			try {
+				if (out != null)
+					out.close();
+				if (temp != null)
+					Files.deleteIfExists(temp);
+			} catch (IOException e) {
+				// la copia temporanea è abbandonata
+			}
+		}
+	}
+
+}
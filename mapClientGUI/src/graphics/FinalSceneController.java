@@ -7,8 +7,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import client.Client;
-import client.ServerCommunicationException;
+import mapClientGUI.MainApp;
 
 /**
  * Classe controller per gestire la scena finale, in cui si visualizza la
@@ -60,13 +59,10 @@ public class FinalSceneController {
 	/**
 	 * Richiede l'interruzione della connessione con il server e la terminazione del
 	 * programma.
-	 * 
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
 	 */
 	@FXML
-	private void exitButtonAction() throws ServerCommunicationException {
-		Client.requestClosure();
+	private void exitButtonAction() {
+		MainApp.getClient().close();
 		((Stage) exitButton.getScene().getWindow()).close();
 	}
 
@@ -10,9 +10,7 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import client.Client;
-import client.ServerCommunicationException;
-
+import mapClientGUI.MainApp;
 
 /**
  * Classe controller per gestire la scena relativa alla predizione
@@ -40,32 +38,24 @@ public class PredictionSceneController {
 	private Button insertButton;
 
 	/**
-	 * Avvia la fase di predizione e inizializza la scena corrente.
-	 * 
-	 * @throws IOException                  Se si verificano errori nella
-	 *                                      inizializzazione della scena.
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * Avvia la fase di predizione e inizializza la scena corrente. La richiesta al
+	 * server è eseguita in modo asincrono.
 	 */
 	@FXML
-	private void initialize() throws IOException, ServerCommunicationException {
-		Client.requestPrediction();
-		visualizeOptions();
+	private void initialize() {
+		MainApp.getClient().requestPrediction().whenComplete(this::visualizeOptions);
 	}
 
 	/**
-	 * Azione associata a insertButton. Comunica la scelta effettuata dall'utente e
-	 * visualizza le nuove opzioni.
-	 * 
-	 * @throws IOException                  Se si verificano errori nel caricamento
-	 *                                      della scena successiva.
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * Azione associata a insertButton. Comunica in modo asincrono la scelta
+	 * effettuata dall'utente, disabilitando insertButton fino all'arrivo delle
+	 * nuove opzioni.
 	 */
 	@FXML
-	private void insertButtonAction() throws IOException, ServerCommunicationException {
-		Client.SetResponse(Integer.parseInt(predictionBox.getValue().split(":")[0]));
-		visualizeOptions();
+	private void insertButtonAction() {
+		insertButton.setDisable(true);
+		MainApp.getClient().setResponse(Integer.parseInt(predictionBox.getValue().split(":")[0]))
+				.whenComplete(this::visualizeOptions);
 	}
 
 	/**
@@ -78,27 +68,40 @@ public class PredictionSceneController {
 	}
 
 	/**
-	 * Visualizza in predictionBox le nuove opzioni a disposizione dell'utente,
-	 * disabilitando insertButton. Qualora sia stata ottenuta la predizione del
-	 * valore di classe, richiede il caricamento della scena successiva.
+	 * Visualizza sul thread dell'interfaccia grafica le nuove opzioni a
+	 * disposizione dell'utente in predictionBox, disabilitando insertButton.
+	 * Qualora sia stata ottenuta la predizione del valore di classe, richiede il
+	 * caricamento della scena successiva. Eventuali errori sono mostrati in una
+	 * finestra di dialogo, lasciando la scena utilizzabile: insertButton torna
+	 * abilitato se un'opzione è selezionata, così che la scelta possa essere
+	 * ripetuta.
 	 * 
-	 * @throws IOException                  Se si verificano errori nel caricamento
-	 *                                      della scena successiva.
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * @param response Risposta fornita dal server: opzioni disponibili o valore
+	 *                 predetto per l'attributo di classe.
+	 * @param error    Anomalia verificatasi nella comunicazione con il server, o
+	 *                 null se la richiesta ha avuto successo.
 	 */
-	private void visualizeOptions() throws IOException, ServerCommunicationException {
-		Platform.runLater(() -> insertButton.setDisable(true));
-		Object response = Client.getResponse();
-		if (response instanceof String) {
-			String[] options = ((String) response).split("\n");
-			predictionBox
-					.setItems(FXCollections.observableArrayList(Arrays.copyOfRange(options, 1, options.length - 2)));
-		} else {
-			predictedClassValue = (double) response;
-			((Stage) predictionBox.getScene().getWindow())
-					.setScene(new Scene(FXMLLoader.load(getClass().getResource("FinalScene.fxml"))));
-		}
+	private void visualizeOptions(Object response, Throwable error) {
+		Platform.runLater(() -> {
+			if (error != null) {
+				MainApp.showErrorDialog(error);
+				insertButton.setDisable(predictionBox.getValue() == null);
+				return;
+			}
+			insertButton.setDisable(true);
+			if (response instanceof String) {
+				String[] options = ((String) response).split("\n");
+				predictionBox.setItems(
+						FXCollections.observableArrayList(Arrays.copyOfRange(options, 1, options.length - 2)));
+			} else
+				try {
+					predictedClassValue = (double) response;
+					((Stage) predictionBox.getScene().getWindow())
+							.setScene(new Scene(FXMLLoader.load(getClass().getResource("FinalScene.fxml"))));
+				} catch (IOException e) {
+					MainApp.showErrorDialog(e);
+				}
+		});
 	}
 
 	/**
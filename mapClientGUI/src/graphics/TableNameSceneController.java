@@ -7,8 +7,8 @@ import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import client.Client;
-import client.ServerCommunicationException;
+import javafx.application.Platform;
+import mapClientGUI.MainApp;
 
 /**
  * Classe controller per gestire la scena relativa all'acquisizione del nome
@@ -38,19 +38,28 @@ public class TableNameSceneController {
 	}
 
 	/**
-	 * Azione associata a startButton. Avvia l'acquisizione dell'albero di
-	 * regressione e richiede il caricamento della scena successiva.
-	 * 
-	 * @throws IOException                  Se si verificano errori nel caricamento
-	 *                                      della scena successiva.
-	 * @throws ServerCommunicationException Se si verificano errori nella
-	 *                                      comunicazione con il server.
+	 * Azione associata a startButton. Avvia in modo asincrono l'acquisizione
+	 * dell'albero di regressione e, al suo completamento, richiede il caricamento
+	 * della scena successiva. Durante l'acquisizione l'interfaccia resta
+	 * utilizzabile e startButton è disabilitato.
 	 */
 	@FXML
-	private void startButtonAction() throws IOException, ServerCommunicationException {
-		Client.acquireTree(InitialSceneController.getDecision(), tableNameField.getText());
-		((Stage) startButton.getScene().getWindow())
-				.setScene(new Scene(FXMLLoader.load(getClass().getResource("PredictionScene.fxml"))));
+	private void startButtonAction() {
+		startButton.setDisable(true);
+		MainApp.getClient().acquireTree(InitialSceneController.getDecision(), tableNameField.getText())
+				.whenComplete((result, error) -> Platform.runLater(() -> {
+					if (error != null) {
+						startButton.setDisable(false);
+						MainApp.showErrorDialog(error);
+						return;
+					}
+					try {
+						((Stage) startButton.getScene().getWindow())
+								.setScene(new Scene(FXMLLoader.load(getClass().getResource("PredictionScene.fxml"))));
+					} catch (IOException e) {
+						MainApp.showErrorDialog(e);
+					}
+				}));
 	}
 
 }
\ No newline at end of file
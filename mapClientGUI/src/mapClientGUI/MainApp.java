@@ -1,6 +1,5 @@
 package mapClientGUI;
 
-import java.io.IOException;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.stage.Stage;
@@ -20,25 +19,34 @@ import client.Client;
 public class MainApp extends Application {
 
 	/**
-	 * Instaura la connessione con il server e avvia l'interfaccia grafica.
+	 * Sessione di comunicazione con il server utilizzata dall'interfaccia grafica.
+	 */
+	private static Client client;
+
+	/**
+	 * Crea la sessione di comunicazione con il server e avvia l'interfaccia
+	 * grafica. La connessione è instaurata alla prima richiesta.
 	 * 
 	 * @param args null
 	 */
 	public static void main(String[] args) {
+		client = new Client("localhost", 8080);
 		try {
-			Client.startConnection("localhost", 8080);
 			launch();
-		} catch (IOException e) {
-			showErrorDialog(e);
 		} finally {
-			try {
-				Client.close();
-			} catch (IOException e) {
-				showErrorDialog(e);
-			}
+			client.close().join();
 		}
 	}
 
+	/**
+	 * Restituisce la sessione di comunicazione con il server.
+	 * 
+	 * @return Sessione utilizzata dall'interfaccia grafica.
+	 */
+	public static Client getClient() {
+		return client;
+	}
+
 	/**
 	 * Inizializza l'interfaccia, caricando la scena iniziale all'interno dello
 	 * stage.
@@ -63,7 +71,7 @@ public class MainApp extends Application {
 	 * 
 	 * @param exception Anomalia che impedisce la corretta esecuzione del programma.
 	 */
-	private static void showErrorDialog(Throwable exception) {
+	public static void showErrorDialog(Throwable exception) {
 		Platform.runLater(() -> {
 			Throwable e = exception;
 			while (e.getCause() != null)
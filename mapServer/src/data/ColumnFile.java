@@ -0,0 +1,397 @@
+package data;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import database.*;
+
+/**
+ * Classe che modella un training set di dimensione superiore alla memoria
+ * disponibile. Le colonne restano nel file della copia locale della tabella,
+ * nello stesso formato utilizzato da Data, e sono mappate in memoria: solo lo
+ * schema e i dizionari degli attributi discreti sono mantenuti nello heap. Gli
+ * esempi sono acceduti nell'ordine di memorizzazione, tramite letture
+ * sequenziali delle colonne.
+ */
+public class ColumnFile {
+
+	/**
+	 * Classe che scrive le tuple lette dal database nelle colonne di un file
+	 * mappato in memoria, codificando i valori discreti nell'ordine in cui
+	 * compaiono.
+	 */
+	private class ColumnWriter implements ColumnSink {
+
+		/**
+		 * Colonne mappate in scrittura, nell'ordine della tabella.
+		 */
+		private OffHeapColumn[] targets;
+
+		/**
+		 * Codici provvisori dei valori distinti di ciascun attributo discreto; null
+		 * per le colonne numeriche.
+		 */
+		private List<Map<String, Integer>> codes = new ArrayList<>();
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param targets Colonne mappate in scrittura.
+		 * @param columns Colonne della tabella.
+		 */
+		ColumnWriter(OffHeapColumn[] targets, List<Column> columns) {
+			this.targets = targets;
+			for (Column c : columns)
+				codes.add(c.isNumber() ? null : new HashMap<>());
+		}
+
+		public void setNumber(int row, int column, double value) throws SQLException {
+			checkRow(row);
+			targets[column].putDouble(row, value);
+		}
+
+		public void setString(int row, int column, String value) throws SQLException {
+			checkRow(row);
+			if (value == null)
+				throw new SQLException("Missing value");
+			Map<String, Integer> columnCodes = codes.get(column);
+			Integer code = columnCodes.get(value);
+			if (code == null) {
+				code = columnCodes.size();
+				columnCodes.put(value, code);
+			}
+			targets[column].putInt(row, code);
+		}
+
+		/**
+		 * Verifica che la riga in input rientri nel numero di tuple contate.
+		 * 
+		 * @param row Indice della tupla.
+		 * @throws SQLException Se la tabella ha acquisito tuple dopo il conteggio.
+		 */
+		private void checkRow(int row) throws SQLException {
+			if (row >= numberOfExamples)
+				throw new SQLException("The table changed during acquisition");
+		}
+
+	}
+
+	/**
+	 * Colonne degli attributi indipendenti, indicizzate dall'indice
+	 * dell'attributo.
+	 */
+	private OffHeapColumn[] columns;
+
+	/**
+	 * Colonna dell'attributo di classe.
+	 */
+	private OffHeapColumn classColumn;
+
+	/**
+	 * Valori distinti e ordinati di ciascun attributo discreto, indicizzati dal
+	 * codice. Vale null per gli attributi continui.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Cardinalità del training set.
+	 */
+	private int numberOfExamples;
+
+	/**
+	 * Lista degli attributi indipendenti.
+	 */
+	private List<Attribute> explanatorySet = new ArrayList<>();
+
+	/**
+	 * Attributo di classe.
+	 */
+	private ContinuousAttribute classAttribute;
+
+	/**
+	 * Costruttore di classe. Mappa in memoria la copia locale della tabella
+	 * specificata in input, se l'impronta dei dati non è cambiata; altrimenti
+	 * legge in streaming le tuple dal database, le scrive direttamente in un
+	 * file mappato e ne ricava una nuova copia locale. Se il DBMS non consente di
+	 * calcolare l'impronta, la copia è scritta in un file temporaneo.
+	 * 
+	 * @param tableName Nome della tabella contenente il training set.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set: la connessione al database
+	 *                               fallisce, la tabella è inesistente, ha meno di
+	 *                               due colonne o ha zero tuple, l’attributo
+	 *                               corrispondente all’ultima colonna non è
+	 *                               numerico, la copia locale non può essere
+	 *                               scritta.
+	 */
+	public ColumnFile(String tableName) throws TrainingDataException {
+		this(new Selection(tableName));
+	}
+
+	/**
+	 * Costruttore di classe. Acquisisce il training set come ColumnFile(String),
+	 * ma dalle sole colonne e tuple della selezione in input, proiettate e
+	 * filtrate dal DBMS.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set, o la selezione indica una
+	 *                               colonna inesistente.
+	 */
+	public ColumnFile(Selection selection) throws TrainingDataException {
+		DbAccess db = new DbAccess();
+		try {
+			db.initConnection();
+			TableData tData = new TableData(db);
+			TableSchema tSchema = new TableSchema(db, selection);
+			Data.checkColumns(tSchema, selection);
+			if (tSchema.getNumberOfAttributes() < 2)
+				throw new TrainingDataException("Less than two columns in the table");
+			List<Column> schema = new ArrayList<>();
+			for (Column c : tSchema)
+				schema.add(c);
+			if (!schema.get(schema.size() - 1).isNumber())
+				throw new TrainingDataException("Class attribute is not numeric");
+			String fingerprint = Data.fingerprint(tData.getFingerprint(selection.getTable()), selection, false);
+			Path file = Snapshot.path(selection);
+			if (fingerprint != null && Files.exists(file) && map(file, fingerprint, schema.size() - 1))
+				return;
+			numberOfExamples = tData.getNumberOfRows(selection, null);
+			if (numberOfExamples == 0)
+				throw new TrainingDataException("Empty table");
+			Path target = fingerprint != null ? file : Files.createTempFile("training", ".snapshot");
+			try {
+				store(tData, selection, schema, fingerprint != null ? fingerprint : "", target);
+				if (!map(target, fingerprint != null ? fingerprint : "", schema.size() - 1))
+					throw new IOException("Unreadable snapshot file");
+			} finally {
+				if (fingerprint == null)
+					Files.deleteIfExists(target);
+			}
+		} catch (DatabaseConnectionException e) {
+			throw new TrainingDataException("Database connection failed");
+		} catch (SQLException e) {
+			throw new TrainingDataException("Error in data acquisition");
+		} catch (IOException e) {
+			throw new TrainingDataException("Unable to store the training set: " + e.getMessage());
+		} finally {
+			try {
+				if (db.getConnection() != null)
+					db.closeConnection();
+			} catch (SQLException e) {
+				throw new TrainingDataException("Unable to close database connection");
+			}
+		}
+	}
+
+	/**
+	 * Legge in streaming le tuple della tabella in un file temporaneo di colonne
+	 * mappato in memoria, ricodifica i valori discreti rispetto ai dizionari
+	 * ordinati e scrive nel file in input l'intestazione seguita dalle colonne. La
+	 * copia è scritta in un file temporaneo con un nome univoco nella stessa
+	 * directory e poi sostituita, così che sessioni che leggono la stessa
+	 * selezione non scrivano nello stesso file.
+	 * 
+	 * @param tData       Oggetto TableData per la lettura della tabella.
+	 * @param selection   Porzione della tabella contenente il training set.
+	 * @param schema      Colonne della selezione.
+	 * @param fingerprint Impronta dei dati della tabella.
+	 * @param file        Percorso della copia da scrivere.
+	 * @throws SQLException Se si verificano errori nella lettura o il numero di
+	 *                      tuple lette differisce da quello contato.
+	 * @throws IOException  Se si verificano errori di scrittura dei file.
+	 */
+	private void store(TableData tData, Selection selection, List<Column> schema, String fingerprint, Path file)
+			throws SQLException, IOException {
+		Path data = Files.createTempFile("columns", ".tmp");
+		try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			OffHeapColumn[] targets = new OffHeapColumn[schema.size()];
+			long position = 0;
+			for (int i = 0; i < targets.length; i++) {
+				boolean discrete = !schema.get(i).isNumber();
+				targets[i] = new OffHeapColumn(channel, FileChannel.MapMode.READ_WRITE, position, numberOfExamples,
+						discrete);
+				position = Snapshot.align(position + (long) numberOfExamples * (discrete ? 4 : 8));
+			}
+			ColumnWriter writer = new ColumnWriter(targets, schema);
+			int rowsRead;
+			try {
+				rowsRead = tData.scanTransazioni(selection, null, false, writer);
+			} catch (EmptySetException e) {
+				rowsRead = 0;
+			}
+			if (rowsRead != numberOfExamples)
+				throw new SQLException("The table changed during acquisition");
+			String[] names = new String[schema.size() - 1];
+			dictionaries = new String[names.length][];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = schema.get(i).getColumnName();
+				if (writer.codes.get(i) != null)
+					dictionaries[i] = encode(targets[i], writer.codes.get(i));
+			}
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try {
+				try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+					Snapshot.writeFully(out, new Snapshot(fingerprint, names, schema.get(names.length).getColumnName(),
+							dictionaries, numberOfExamples, false, 0).header());
+					for (long copied = 0; copied < position;)
+						copied += channel.transferTo(copied, position - copied, out);
+				}
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} finally {
+			Files.deleteIfExists(data);
+		}
+	}
+
+	/**
+	 * Costruisce il dizionario ordinato di un attributo discreto e sostituisce,
+	 * nella colonna, i codici provvisori con la posizione di ciascun valore nel
+	 * dizionario.
+	 * 
+	 * @param column Colonna mappata dell'attributo.
+	 * @param codes  Codici provvisori dei valori distinti dell'attributo.
+	 * @return Valori distinti e ordinati dell'attributo.
+	 */
+	private String[] encode(OffHeapColumn column, Map<String, Integer> codes) {
+		String[] dictionary = new TreeSet<>(codes.keySet()).toArray(new String[0]);
+		int[] finalCodes = new int[codes.size()];
+		for (Map.Entry<String, Integer> e : codes.entrySet())
+			finalCodes[e.getValue()] = Arrays.binarySearch(dictionary, e.getKey());
+		for (int i = 0; i < numberOfExamples; i++)
+			column.putInt(i, finalCodes[column.getInt(i)]);
+		return dictionary;
+	}
+
+	/**
+	 * Mappa in memoria le colonne della copia locale memorizzata nel file in
+	 * input, se è stata ricavata da dati con l'impronta indicata, e avvalora gli
+	 * attributi. Eventuali errori di lettura sono trattati come assenza della
+	 * copia.
+	 * 
+	 * @param file        Percorso della copia locale.
+	 * @param fingerprint Impronta attuale dei dati della tabella.
+	 * @param attributes  Numero di attributi indipendenti della tabella.
+	 * @return true se le colonne sono state mappate.
+	 */
+	private boolean map(Path file, String fingerprint, int attributes) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Snapshot header = Snapshot.readHeader(channel, fingerprint);
+			if (header == null || header.isWeighted() || header.getNames().length != attributes)
+				return false;
+			numberOfExamples = header.getNumberOfExamples();
+			dictionaries = header.getDictionaries();
+			columns = new OffHeapColumn[attributes];
+			long position = header.getDataPosition();
+			for (int i = 0; i <= attributes; i++) {
+				boolean discrete = i < attributes && dictionaries[i] != null;
+				long size = (long) numberOfExamples * (discrete ? 4 : 8);
+				Snapshot.checkSize(channel, position, size);
+				OffHeapColumn column = new OffHeapColumn(channel, FileChannel.MapMode.READ_ONLY, position,
+						numberOfExamples, discrete);
+				if (i < attributes)
+					columns[i] = column;
+				else
+					classColumn = column;
+				position = Snapshot.align(position + size);
+			}
+			explanatorySet.clear();
+			String[] names = header.getNames();
+			for (int i = 0; i < names.length; i++)
+				if (dictionaries[i] == null)
+					explanatorySet.add(new ContinuousAttribute(names[i], i));
+				else
+					explanatorySet
+							.add(new DiscreteAttribute(names[i], i, new TreeSet<>(Arrays.asList(dictionaries[i]))));
+			classAttribute = new ContinuousAttribute(header.getClassName(), names.length);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Restituisce il valore del membro numberOfExamples.
+	 * 
+	 * @return Cardinalità del training set.
+	 */
+	public int getNumberOfExamples() {
+		return numberOfExamples;
+	}
+
+	/**
+	 * Restituisce il numero degli attributi indipendenti.
+	 * 
+	 * @return Numero degli attributi indipendenti.
+	 */
+	public int getNumberOfExplanatoryAttributes() {
+		return explanatorySet.size();
+	}
+
+	/**
+	 * Restituisce l'attributo indipendente indicizzato in input.
+	 * 
+	 * @param index Indice dell'attributo indipendente.
+	 * @return Attributo indipendente indicizzato in input.
+	 */
+	public Attribute getExplanatoryAttribute(int index) {
+		return explanatorySet.get(index);
+	}
+
+	/**
+	 * Restituisce la colonna dell'attributo indipendente indicizzato in input:
+	 * di double per gli attributi continui, di codici per quelli discreti.
+	 * 
+	 * @param attributeIndex Indice dell'attributo indipendente.
+	 * @return Colonna mappata dell'attributo.
+	 */
+	public OffHeapColumn getColumn(int attributeIndex) {
+		return columns[attributeIndex];
+	}
+
+	/**
+	 * Restituisce la colonna dell'attributo di classe.
+	 * 
+	 * @return Colonna mappata dei valori dell'attributo di classe.
+	 */
+	public OffHeapColumn getClassColumn() {
+		return classColumn;
+	}
+
+	/**
+	 * Restituisce il valore di un attributo discreto corrispondente al codice in
+	 * input.
+	 * 
+	 * @param attributeIndex Indice dell'attributo discreto.
+	 * @param code           Codice del valore.
+	 * @return Valore dell'attributo.
+	 */
+	public String getDiscreteValue(int attributeIndex, int code) {
+		return dictionaries[attributeIndex][code];
+	}
+
+	/**
+	 * Restituisce il numero di valori distinti di un attributo discreto.
+	 * 
+	 * @param attributeIndex Indice dell'attributo discreto.
+	 * @return Numero di valori distinti dell'attributo.
+	 */
+	public int getNumberOfDiscreteValues(int attributeIndex) {
+		return dictionaries[attributeIndex].length;
+	}
+
+}
@@ -0,0 +1,558 @@
+package data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import database.Column;
+import database.ColumnSink;
+
+/**
+ * Classe che legge il training set da un file di testo delimitato, CSV o TSV,
+ * senza passare per il database. La prima riga contiene i nomi delle colonne;
+ * ogni riga successiva non vuota è una transazione, con i campi separati dal
+ * delimitatore e, se necessario, racchiusi tra virgolette, raddoppiate
+ * all'interno del campo. I campi tra virgolette non possono contenere ritorni a
+ * capo. Il file è suddiviso in partizioni allineate all'inizio di una riga,
+ * una per processore, proiettate in memoria e lette in parallelo. Come per le
+ * tabelle del database, una colonna è numerica se tutti i suoi valori sono
+ * numeri, altrimenti è di tipo stringa: un campo vuoto rende la colonna di
+ * tipo stringa. Il tipo delle colonne è ricavato da una prima lettura
+ * parallela del file, che ne conta anche le transazioni.
+ */
+public class CsvSource implements DataSource {
+
+	/**
+	 * Classe che scorre le transazioni di una partizione proiettata in memoria,
+	 * individuando i limiti di ciascun campo senza copiarlo.
+	 */
+	private class Records {
+
+		/**
+		 * Contenuto della partizione.
+		 */
+		private ByteBuffer buffer;
+
+		/**
+		 * Posizione del prossimo byte da leggere.
+		 */
+		private int position;
+
+		/**
+		 * Posizione del primo campo della transazione corrente, per ciascuna
+		 * colonna.
+		 */
+		private int[] starts;
+
+		/**
+		 * Posizione successiva all'ultimo byte del campo, per ciascuna colonna.
+		 */
+		private int[] ends;
+
+		/**
+		 * Indica, per ciascuna colonna, se il campo è racchiuso tra virgolette.
+		 */
+		private boolean[] quoted;
+
+		/**
+		 * Area di lavoro per la decodifica del testo dei campi.
+		 */
+		private byte[] scratch = new byte[64];
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param buffer Contenuto della partizione.
+		 * @param width  Numero di colonne del file.
+		 */
+		Records(ByteBuffer buffer, int width) {
+			this.buffer = buffer;
+			starts = new int[width];
+			ends = new int[width];
+			quoted = new boolean[width];
+		}
+
+		/**
+		 * Legge la transazione successiva, ignorando le righe vuote.
+		 * 
+		 * @return false se la partizione è terminata.
+		 * @throws TrainingDataException Se la riga non ha tanti campi quante sono
+		 *                               le colonne o un campo tra virgolette non è
+		 *                               chiuso.
+		 */
+		boolean next() throws TrainingDataException {
+			int limit = buffer.limit();
+			while (position < limit && (buffer.get(position) == '\n' || buffer.get(position) == '\r'))
+				position++;
+			if (position == limit)
+				return false;
+			int field = 0;
+			while (true) {
+				if (field == starts.length)
+					throw new TrainingDataException("Wrong number of fields in a row");
+				quoted[field] = position < limit && buffer.get(position) == '"';
+				if (quoted[field]) {
+					starts[field] = ++position;
+					while (true) {
+						if (position == limit || buffer.get(position) == '\n')
+							throw new TrainingDataException("Unterminated quoted field");
+						if (buffer.get(position++) == '"') {
+							if (position < limit && buffer.get(position) == '"')
+								position++;
+							else
+								break;
+						}
+					}
+					ends[field] = position - 1;
+				} else {
+					starts[field] = position;
+					while (position < limit && buffer.get(position) != delimiter && buffer.get(position) != '\n')
+						position++;
+					ends[field] = position;
+					if (ends[field] > starts[field] && buffer.get(ends[field] - 1) == '\r')
+						ends[field]--;
+				}
+				field++;
+				if (position == limit)
+					break;
+				byte b = buffer.get(position++);
+				if (b == '\r' && position < limit && buffer.get(position) == '\n')
+					b = buffer.get(position++);
+				if (b == '\n' || b == '\r')
+					break;
+				if (b != delimiter)
+					throw new TrainingDataException("Malformed quoted field");
+			}
+			if (field != starts.length)
+				throw new TrainingDataException("Wrong number of fields in a row");
+			return true;
+		}
+
+		/**
+		 * Restituisce il testo del campo della colonna indicata.
+		 * 
+		 * @param column Indice della colonna.
+		 * @return Testo del campo, senza virgolette.
+		 */
+		String text(int column) {
+			int length = 0;
+			for (int i = starts[column]; i < ends[column]; i++) {
+				byte b = buffer.get(i);
+				if (length == scratch.length)
+					scratch = Arrays.copyOf(scratch, length * 2);
+				scratch[length++] = b;
+				if (b == '"' && quoted[column])
+					i++;
+			}
+			return new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Verifica se il campo della colonna indicata è un numero.
+		 * 
+		 * @param column Indice della colonna.
+		 * @return true se il campo è un numero.
+		 */
+		boolean isNumber(int column) {
+			if (!quoted[column] && isDecimal(starts[column], ends[column]))
+				return true;
+			try {
+				Double.parseDouble(text(column));
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Restituisce il valore numerico del campo della colonna indicata. I numeri
+		 * decimali con al più 15 cifre significative e 22 cifre frazionarie sono
+		 * convertiti direttamente dai byte, con una sola divisione esatta per una
+		 * potenza di dieci; gli altri sono convertiti da Double.parseDouble().
+		 * 
+		 * @param column Indice della colonna.
+		 * @return Valore del campo.
+		 * @throws TrainingDataException Se il campo non è un numero.
+		 */
+		double number(int column) throws TrainingDataException {
+			int i = starts[column];
+			int end = ends[column];
+			boolean negative = false;
+			if (!quoted[column] && i < end && (buffer.get(i) == '-' || buffer.get(i) == '+'))
+				negative = buffer.get(i++) == '-';
+			long mantissa = 0;
+			int digits = 0;
+			int scale = 0;
+			boolean point = false;
+			boolean any = false;
+			boolean fast = !quoted[column];
+			for (; fast && i < end; i++) {
+				byte b = buffer.get(i);
+				if (b >= '0' && b <= '9') {
+					any = true;
+					if (mantissa == 0 && b == '0') {
+						if (point)
+							scale++;
+					} else if (digits < 15) {
+						mantissa = mantissa * 10 + (b - '0');
+						digits++;
+						if (point)
+							scale++;
+					} else
+						fast = false;
+				} else if (b == '.' && !point)
+					point = true;
+				else
+					fast = false;
+			}
+			if (fast && any && scale <= 22) {
+				double value = mantissa / POWERS_OF_TEN[scale];
+				return negative ? -value : value;
+			}
+			try {
+				return Double.parseDouble(text(column));
+			} catch (NumberFormatException e) {
+				throw new TrainingDataException("Wrong value in a numeric column");
+			}
+		}
+
+		/**
+		 * Verifica se i byte indicati hanno la forma di un numero decimale, con
+		 * segno ed esponente facoltativi.
+		 * 
+		 * @param start Posizione del primo byte.
+		 * @param end   Posizione successiva all'ultimo byte.
+		 * @return true se i byte formano un numero decimale.
+		 */
+		private boolean isDecimal(int start, int end) {
+			int i = start;
+			if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+'))
+				i++;
+			int digits = 0;
+			boolean point = false;
+			for (; i < end; i++) {
+				byte b = buffer.get(i);
+				if (b >= '0' && b <= '9')
+					digits++;
+				else if (b == '.' && !point)
+					point = true;
+				else
+					break;
+			}
+			if (digits == 0)
+				return false;
+			if (i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+				i++;
+				if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+'))
+					i++;
+				int exponentDigits = 0;
+				for (; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++)
+					exponentDigits++;
+				if (exponentDigits == 0)
+					return false;
+			}
+			return i == end;
+		}
+
+	}
+
+	/**
+	 * Potenze di dieci rappresentate esattamente come double.
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	/**
+	 * Dimensione massima, in byte, di una partizione, entro il limite di una
+	 * singola proiezione in memoria.
+	 */
+	private static final long MAX_PARTITION = 1L << 30;
+
+	/**
+	 * Dimensione minima, in byte, di una partizione, sotto la quale la lettura
+	 * parallela non è conveniente.
+	 */
+	private static final long MIN_PARTITION = 1L << 20;
+
+	/**
+	 * Percorso del file.
+	 */
+	private Path file;
+
+	/**
+	 * Carattere che separa i campi.
+	 */
+	private byte delimiter;
+
+	/**
+	 * Colonne del file, con il tipo ricavato dai valori; null finché il file non
+	 * è stato esaminato.
+	 */
+	private List<Column> columns;
+
+	/**
+	 * Posizioni di inizio di ciascuna partizione, seguite dalla dimensione del
+	 * file.
+	 */
+	private long[] bounds;
+
+	/**
+	 * Numero di transazioni di ciascuna partizione.
+	 */
+	private int[] sizes;
+
+	/**
+	 * Costruttore di classe. I campi sono separati da tabulazioni se il nome del
+	 * file termina con ".tsv", da virgole altrimenti.
+	 * 
+	 * @param file Percorso del file.
+	 */
+	public CsvSource(Path file) {
+		this(file, file.getFileName().toString().toLowerCase().endsWith(".tsv") ? '\t' : ',');
+	}
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param file      Percorso del file.
+	 * @param delimiter Carattere ASCII che separa i campi.
+	 * @throws IllegalArgumentException Se il delimitatore non è un carattere
+	 *                                  ASCII ammesso.
+	 */
+	public CsvSource(Path file, char delimiter) {
+		if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r')
+			throw new IllegalArgumentException("Invalid delimiter");
+		this.file = file;
+		this.delimiter = (byte) delimiter;
+	}
+
+	/**
+	 * Restituisce il percorso assoluto del file.
+	 */
+	public String getName() {
+		return file.toAbsolutePath().normalize().toString();
+	}
+
+	/**
+	 * Restituisce le colonne del file, esaminandolo alla prima invocazione.
+	 */
+	public synchronized List<Column> getColumns() throws TrainingDataException {
+		if (columns == null)
+			examine();
+		return columns;
+	}
+
+	/**
+	 * Calcola l'impronta del file dalla dimensione, dalla data di ultima modifica
+	 * e dal delimitatore.
+	 */
+	public String getFingerprint() throws TrainingDataException {
+		try {
+			return "file " + Files.size(file) + " " + Files.getLastModifiedTime(file).toMillis() + " delimiter "
+					+ delimiter;
+		} catch (IOException e) {
+			throw new TrainingDataException("File does not exist");
+		}
+	}
+
+	/**
+	 * Le righe identiche del file non sono raggruppate.
+	 */
+	public boolean supportsGrouping() {
+		return false;
+	}
+
+	/**
+	 * Restituisce il numero di transazioni contate nell'esame del file.
+	 */
+	public synchronized int[] getPartitionSizes(boolean grouped) throws TrainingDataException {
+		if (columns == null)
+			examine();
+		return sizes.clone();
+	}
+
+	/**
+	 * Proietta in memoria la partizione e ne trasferisce i valori, convertendo in
+	 * numero i campi delle colonne numeriche.
+	 */
+	public int scan(int partition, boolean grouped, ColumnSink sink) throws TrainingDataException {
+		boolean[] numeric = new boolean[columns.size()];
+		for (int i = 0; i < numeric.length; i++)
+			numeric[i] = columns.get(i).isNumber();
+		Records records = new Records(map(partition), numeric.length);
+		int row = 0;
+		try {
+			for (; records.next(); row++)
+				for (int i = 0; i < numeric.length; i++)
+					if (numeric[i])
+						sink.setNumber(row, i, records.number(i));
+					else
+						sink.setString(row, i, records.text(i));
+		} catch (SQLException e) {
+			throw new TrainingDataException("Error in data acquisition");
+		}
+		return row;
+	}
+
+	/**
+	 * Legge l'intestazione, suddivide il resto del file in partizioni e le esamina
+	 * in parallelo, contandone le transazioni e verificando quali colonne
+	 * contengono solo numeri.
+	 * 
+	 * @throws TrainingDataException Se il file è inesistente, non può essere
+	 *                               letto, non ha intestazione o contiene una riga
+	 *                               non valida.
+	 */
+	private void examine() throws TrainingDataException {
+		String[] names;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long body = lineEnd(channel, 0);
+			if (size == 0)
+				throw new TrainingDataException("Empty file");
+			ByteBuffer header = ByteBuffer.allocate((int) Math.min(body, MAX_PARTITION));
+			channel.read(header, 0);
+			header.flip();
+			names = header(header);
+			int count = (int) Math.max((size - body + MAX_PARTITION - 1) / MAX_PARTITION,
+					Math.min(Runtime.getRuntime().availableProcessors(), (size - body) / MIN_PARTITION));
+			List<Long> starts = new ArrayList<>();
+			starts.add(body);
+			for (int i = 1; i < count; i++) {
+				long start = lineEnd(channel, body + (size - body) * i / count);
+				if (start > starts.get(starts.size() - 1) && start < size)
+					starts.add(start);
+			}
+			bounds = new long[starts.size() + 1];
+			for (int i = 0; i < starts.size(); i++)
+				bounds[i] = starts.get(i);
+			bounds[starts.size()] = size;
+		} catch (IOException e) {
+			throw new TrainingDataException("File does not exist");
+		}
+		sizes = new int[bounds.length - 1];
+		boolean[][] numeric = new boolean[sizes.length][names.length];
+		TrainingDataException[] failures = new TrainingDataException[sizes.length];
+		Thread[] readers = new Thread[sizes.length];
+		for (int i = 0; i < readers.length; i++) {
+			int partition = i;
+			readers[i] = new Thread(() -> {
+				try {
+					Arrays.fill(numeric[partition], true);
+					Records records = new Records(map(partition), names.length);
+					while (records.next()) {
+						sizes[partition]++;
+						for (int c = 0; c < names.length; c++)
+							if (numeric[partition][c] && !records.isNumber(c))
+								numeric[partition][c] = false;
+					}
+				} catch (TrainingDataException e) {
+					failures[partition] = e;
+				}
+			});
+			readers[i].start();
+		}
+		try {
+			for (Thread reader : readers)
+				reader.join();
+		} catch (InterruptedException e) {
+			for (Thread reader : readers)
+				reader.interrupt();
+			Thread.currentThread().interrupt();
+			throw new TrainingDataException("Loading interrupted");
+		}
+		for (TrainingDataException e : failures)
+			if (e != null)
+				throw e;
+		columns = new ArrayList<>();
+		for (int c = 0; c < names.length; c++) {
+			boolean number = true;
+			for (boolean[] partition : numeric)
+				number &= partition[c];
+			columns.add(new Column(names[c], number ? "number" : "string"));
+		}
+	}
+
+	/**
+	 * Ricava i nomi delle colonne dalla riga di intestazione.
+	 * 
+	 * @param header Riga di intestazione.
+	 * @return Nomi delle colonne, senza spazi iniziali e finali.
+	 * @throws TrainingDataException Se l'intestazione non è valida.
+	 */
+	private String[] header(ByteBuffer header) throws TrainingDataException {
+		int width = 1;
+		boolean quoted = false;
+		for (int i = 0; i < header.limit(); i++)
+			if (header.get(i) == '"')
+				quoted = !quoted;
+			else if (header.get(i) == delimiter && !quoted)
+				width++;
+		Records records = new Records(header, width);
+		if (header.limit() >= 3 && header.get(0) == (byte) 0xEF && header.get(1) == (byte) 0xBB
+				&& header.get(2) == (byte) 0xBF)
+			records.position = 3;
+		if (!records.next())
+			throw new TrainingDataException("Empty file");
+		String[] names = new String[width];
+		for (int i = 0; i < width; i++)
+			names[i] = records.text(i).trim();
+		return names;
+	}
+
+	/**
+	 * Restituisce la posizione successiva al primo ritorno a capo che segue la
+	 * posizione in input, o la dimensione del file se non ve ne sono.
+	 * 
+	 * @param channel  Canale del file.
+	 * @param position Posizione da cui cercare.
+	 * @return Posizione d'inizio della riga successiva.
+	 * @throws IOException Se si verificano errori di lettura.
+	 */
+	private static long lineEnd(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				return channel.size();
+			for (int i = 0; i < read; i++)
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			position += read;
+		}
+	}
+
+	/**
+	 * Proietta in memoria la partizione indicata del file.
+	 * 
+	 * @param partition Indice della partizione.
+	 * @return Contenuto della partizione.
+	 * @throws TrainingDataException Se il file non può essere letto o la
+	 *                               partizione supera la dimensione massima.
+	 */
+	private ByteBuffer map(int partition) throws TrainingDataException {
+		long length = bounds[partition + 1] - bounds[partition];
+		if (length > Integer.MAX_VALUE)
+			throw new TrainingDataException("Row too long");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(MapMode.READ_ONLY, bounds[partition], length);
+		} catch (IOException e) {
+			throw new TrainingDataException("File does not exist");
+		}
+	}
+
+}
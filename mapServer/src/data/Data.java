@@ -1,24 +1,185 @@
 package data;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.TreeSet;
 import java.util.LinkedList;
-import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.sql.SQLException;
 import database.*;
 
 /**
- * Classe che modella il training set.
+ * Classe che modella il training set. I valori sono memorizzati per colonne di
+ * tipo primitivo allocate fuori dallo heap, così che training set di grandi
+ * dimensioni non allunghino le visite del garbage collector: gli attributi
+ * continui e l'attributo di classe come double, gli attributi discreti come
+ * codici interi che indicizzano i valori distinti ordinati dell'attributo.
+ * L'ordine degli esempi è rappresentato da una permutazione degli indici, così
+ * che l'ordinamento non sposti i valori: le viste ottenute con view()
+ * condividono i valori e ordinano ciascuna la propria permutazione. Il
+ * training set e le sue viste contano i riferimenti alle colonne condivise: il
+ * costruttore, ciascuna vista e ciascuna chiamata a retain() ne aggiungono
+ * uno, che va concluso con release(); al rilascio dell'ultimo la memoria delle
+ * colonne è liberata subito, senza attendere il garbage collector. Se il
+ * raggruppamento è
+ * attivo, le tuple identiche della tabella sono lette come un unico esempio il
+ * cui peso è il numero di tuple rappresentate.
  */
 public class Data {
 
 	/**
-	 * Lista degli oggetti Example che compongono il training set.
+	 * Classe che memorizza nelle colonne del training set le tuple di una
+	 * partizione della tabella, a partire da una posizione prefissata. I valori
+	 * discreti sono codificati nell'ordine in cui compaiono nella partizione;
+	 * tali codici provvisori sono poi sostituiti dalla posizione del valore nel
+	 * dizionario ordinato dell'attributo.
+	 */
+	private class ColumnWriter implements ColumnSink {
+
+		/**
+		 * Posizione, nelle colonne, della prima tupla della partizione.
+		 */
+		private int offset;
+
+		/**
+		 * Numero di tuple della partizione.
+		 */
+		private int count;
+
+		/**
+		 * Codici provvisori dei valori distinti letti per ciascun attributo
+		 * discreto, indicizzati dalla colonna della tabella. Vale null per le
+		 * colonne numeriche.
+		 */
+		private List<Map<String, Integer>> codes = new ArrayList<>();
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param offset Posizione della prima tupla della partizione.
+		 * @param count  Numero di tuple della partizione.
+		 */
+		ColumnWriter(int offset, int count) {
+			this.offset = offset;
+			this.count = count;
+			for (OffHeapColumn column : discreteValues)
+				codes.add(column != null ? new HashMap<>() : null);
+		}
+
+		public void setNumber(int row, int column, double value) throws SQLException {
+			checkRow(row);
+			if (column == continuousValues.length)
+				classValues.putDouble(offset + row, value);
+			else
+				continuousValues[column].putDouble(offset + row, value);
+		}
+
+		public void setString(int row, int column, String value) throws SQLException {
+			checkRow(row);
+			if (value == null)
+				throw new SQLException("Missing value");
+			Map<String, Integer> columnCodes = codes.get(column);
+			Integer code = columnCodes.get(value);
+			if (code == null) {
+				code = columnCodes.size();
+				columnCodes.put(value, code);
+			}
+			discreteValues[column].putInt(offset + row, code);
+		}
+
+		public void setWeight(int row, int weight) throws SQLException {
+			checkRow(row);
+			weights.putInt(offset + row, weight);
+		}
+
+		/**
+		 * Sostituisce i codici provvisori della colonna in input, nelle posizioni
+		 * della partizione, con la posizione di ciascun valore nel dizionario.
+		 * 
+		 * @param column     Indice della colonna di un attributo discreto.
+		 * @param dictionary Valori distinti e ordinati dell'attributo.
+		 */
+		void encode(int column, String[] dictionary) {
+			int[] finalCodes = new int[codes.get(column).size()];
+			for (Map.Entry<String, Integer> e : codes.get(column).entrySet())
+				finalCodes[e.getValue()] = Arrays.binarySearch(dictionary, e.getKey());
+			OffHeapColumn values = discreteValues[column];
+			for (int i = offset; i < offset + count; i++)
+				values.putInt(i, finalCodes[values.getInt(i)]);
+			codes.set(column, null);
+		}
+
+		/**
+		 * Verifica che la riga in input rientri nella partizione, cioè che la
+		 * tabella non abbia acquisito tuple dopo il conteggio.
+		 * 
+		 * @param row Indice della tupla nella partizione.
+		 * @throws SQLException Se la riga eccede il numero di tuple della
+		 *                      partizione.
+		 */
+		private void checkRow(int row) throws SQLException {
+			if (row >= count)
+				throw new SQLException("The table changed during acquisition");
+		}
+
+	}
+
+	/**
+	 * Permutazione degli esempi del training set: l'esempio in posizione i è
+	 * memorizzato alla riga rows[i] delle colonne.
+	 */
+	private int[] rows;
+
+	/**
+	 * Valori degli attributi continui, indicizzati dall'indice dell'attributo.
+	 * Vale null per gli attributi discreti.
+	 */
+	private OffHeapColumn[] continuousValues;
+
+	/**
+	 * Codici dei valori degli attributi discreti, indicizzati dall'indice
+	 * dell'attributo. Vale null per gli attributi continui.
+	 */
+	private OffHeapColumn[] discreteValues;
+
+	/**
+	 * Valori distinti e ordinati di ciascun attributo discreto, indicizzati dal
+	 * codice. Vale null per gli attributi continui.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Valori dell'attributo di classe.
 	 */
-	private List<Example> data = new ArrayList<Example>();
+	private OffHeapColumn classValues;
 
 	/**
-	 * Cardinalità del training set, ossia dimensione della lista data.
+	 * Pesi degli esempi, cioè numero di tuple identiche della tabella
+	 * rappresentate da ciascun esempio. Vale null se le tuple non sono
+	 * raggruppate e ogni esempio ha peso 1.
+	 */
+	private OffHeapColumn weights;
+
+	/**
+	 * Somma dei pesi degli esempi, pari al numero di tuple della tabella.
+	 */
+	private long totalWeight;
+
+	/**
+	 * Media dell'attributo di classe pesata sugli esempi, calcolata alla prima
+	 * richiesta; vale NaN finché non è calcolata.
+	 */
+	private volatile double classMean = Double.NaN;
+
+	/**
+	 * Cardinalità del training set.
 	 */
 	private int numberOfExamples;
 
@@ -33,11 +194,40 @@ public class Data {
 	 */
 	private ContinuousAttribute classAttribute;
 
+	/**
+	 * Numero di riferimenti non ancora rilasciati alle colonne, condiviso dal
+	 * training set e dalle sue viste.
+	 */
+	private AtomicInteger references = new AtomicInteger(1);
+
+	/**
+	 * Impronta dei dati della tabella da cui è stato caricato il training set.
+	 * Vale null se il DBMS non consente di calcolarla.
+	 */
+	private String fingerprint;
+
+	/**
+	 * Numero massimo di connessioni al database sulle quali caricare in parallelo
+	 * le partizioni di una tabella.
+	 */
+	private static int loadConnections = 1;
+
+	/**
+	 * Indica se le tuple identiche delle tabelle sono raggruppate in un unico
+	 * esempio pesato.
+	 */
+	private static boolean grouping = false;
+
 	/**
 	 * Costruttore di classe. Avvalora la lista explanatorySet con gli attributi
-	 * indipendenti e il membro classAttribute con il target. Inserisce gli esempi
-	 * di training contenuti nella tabella specificata in input all'interno della
-	 * lista data.
+	 * indipendenti e il membro classAttribute con il target. Dimensiona le colonne
+	 * sul numero di tuple della tabella specificata in input e vi memorizza gli
+	 * esempi di training, letti in streaming dal database; se la tabella può
+	 * essere partizionata, le partizioni sono lette in parallelo. I valori
+	 * distinti degli attributi discreti sono raccolti durante la stessa lettura.
+	 * Se il DBMS consente di calcolarne l'impronta, il training set è poi
+	 * memorizzato in una copia locale per colonne, che le richieste successive
+	 * leggono al posto del database finché l'impronta non cambia.
 	 * 
 	 * @param tableName Nome della tabella contenente il training set.
 	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
@@ -48,37 +238,329 @@ public class Data {
 	 *                               numerico.
 	 */
 	public Data(String tableName) throws TrainingDataException {
+		this(new Selection(tableName));
+	}
+
+	/**
+	 * Costruttore di classe. Acquisisce il training set come Data(String), ma dalle
+	 * sole colonne e tuple della selezione in input: la proiezione e il filtro
+	 * sono eseguiti dal DBMS, così che colonne e tuple escluse non siano
+	 * trasferite. L'attributo di classe è l'ultima colonna selezionata.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set, o la selezione indica una
+	 *                               colonna inesistente.
+	 */
+	public Data(Selection selection) throws TrainingDataException {
+		this(new DatabaseSource(selection));
+	}
+
+	/**
+	 * Costruttore di classe. Acquisisce il training set come Data(Selection),
+	 * con l'impronta già calcolata da fingerprint(Selection), così che il DBMS
+	 * non debba leggere nuovamente l'intera tabella per calcolarla.
+	 * 
+	 * @param selection   Porzione della tabella contenente il training set.
+	 * @param fingerprint Impronta del training set, o null se il DBMS non
+	 *                    consente di calcolarla.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set, o la selezione indica una
+	 *                               colonna inesistente.
+	 */
+	Data(Selection selection, String fingerprint) throws TrainingDataException {
+		this(new DatabaseSource(selection), fingerprint);
+	}
+
+	/**
+	 * Costruttore di classe. Acquisisce il training set dalla sorgente in input:
+	 * dimensiona le colonne sul numero di transazioni delle partizioni della
+	 * sorgente e vi memorizza le partizioni, lette in parallelo se sono più di
+	 * una. Le tuple sono raggruppate solo se la sorgente lo supporta. Se la
+	 * sorgente fornisce un'impronta dei dati, il training set è memorizzato in una
+	 * copia locale come per le tabelle del database.
+	 * 
+	 * @param source Sorgente del training set.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set: la sorgente è inesistente o non
+	 *                               può essere letta, ha meno di due colonne o
+	 *                               zero transazioni, l’ultima colonna non è
+	 *                               numerica.
+	 */
+	public Data(DataSource source) throws TrainingDataException {
+		this(source, withGrouping(source.getFingerprint(), isGrouping() && source.supportsGrouping()));
+	}
+
+	/**
+	 * Costruttore di classe. Acquisisce il training set come Data(DataSource), con
+	 * l'impronta del training set già calcolata.
+	 * 
+	 * @param source      Sorgente del training set.
+	 * @param fingerprint Impronta del training set, completata con le opzioni di
+	 *                    lettura, o null per non memorizzarlo nella copia
+	 *                    locale.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set.
+	 */
+	private Data(DataSource source, String fingerprint) throws TrainingDataException {
+		List<Column> columns = new ArrayList<>(source.getColumns());
+		if (columns.size() < 2)
+			throw new TrainingDataException("Less than two columns in the table");
+		Column classColumn = columns.remove(columns.size() - 1);
+		if (!classColumn.isNumber())
+			throw new TrainingDataException("Class attribute is not numeric");
+		boolean grouped = isGrouping() && source.supportsGrouping();
+		this.fingerprint = fingerprint;
+		Path snapshotFile = Snapshot.path(source.getName());
+		if (fingerprint != null && readSnapshot(snapshotFile, fingerprint, columns.size()))
+			return;
+		int[] counts = source.getPartitionSizes(grouped);
+		int total = 0;
+		for (int count : counts)
+			total += count;
+		if (total == 0)
+			throw new TrainingDataException("Empty table");
+		allocate(columns, total, grouped);
+		List<ColumnWriter> writers = new ArrayList<>();
+		for (int i = 0, offset = 0; i < counts.length; offset += counts[i++])
+			writers.add(new ColumnWriter(offset, counts[i]));
+		if (counts.length == 1)
+			load(source, 0, grouped, writers.get(0));
+		else
+			loadInParallel(source, grouped, writers);
+		encode(writers);
+		totalWeight = sumWeights();
+		String[] names = new String[columns.size()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = columns.get(i).getColumnName();
+		createAttributes(names, classColumn.getColumnName());
+		if (fingerprint != null)
+			writeSnapshot(snapshotFile, fingerprint, names);
+	}
+
+	/**
+	 * Costruttore di classe. Istanzia una vista del training set in input che ne
+	 * condivide i valori e gli attributi, con una propria permutazione degli
+	 * esempi. La vista aggiunge un riferimento alle colonne condivise.
+	 * 
+	 * @param source Training set di cui istanziare la vista.
+	 * @throws IllegalStateException Se le colonne sono già state liberate.
+	 */
+	private Data(Data source) {
+		source.retain();
+		references = source.references;
+		rows = source.rows.clone();
+		continuousValues = source.continuousValues;
+		discreteValues = source.discreteValues;
+		dictionaries = source.dictionaries;
+		classValues = source.classValues;
+		weights = source.weights;
+		totalWeight = source.totalWeight;
+		classMean = source.classMean;
+		numberOfExamples = source.numberOfExamples;
+		explanatorySet = source.explanatorySet;
+		classAttribute = source.classAttribute;
+		fingerprint = source.fingerprint;
+	}
+
+	/**
+	 * Restituisce una vista del training set che ne condivide i valori, con una
+	 * propria permutazione degli esempi: ordinare la vista non modifica l'ordine
+	 * degli esempi in questo training set né in altre viste. La vista va
+	 * conclusa con release().
+	 * 
+	 * @return Vista del training set.
+	 * @throws IllegalStateException Se le colonne sono già state liberate.
+	 */
+	public Data view() {
+		return new Data(this);
+	}
+
+	/**
+	 * Restituisce una vista del training set formata da un campione bootstrap dei
+	 * suoi esempi: tanti esempi quanti quelli del training set, estratti in modo
+	 * uniforme con reinserimento. Un esempio pesato è estratto come un'unica
+	 * transazione e conserva il proprio peso.
+	 * 
+	 * @param random Generatore dei numeri casuali.
+	 * @return Vista del campione, che condivide i valori del training set e va
+	 *         conclusa con release().
+	 * @throws IllegalStateException Se le colonne sono già state liberate.
+	 */
+	public Data bootstrap(Random random) {
+		Data sample = new Data(this);
+		sample.totalWeight = 0;
+		for (int i = 0; i < numberOfExamples; i++) {
+			sample.rows[i] = rows[random.nextInt(numberOfExamples)];
+			sample.totalWeight += sample.getWeight(i);
+		}
+		sample.classMean = Double.NaN;
+		return sample;
+	}
+
+	/**
+	 * Restituisce una vista del training set formata dagli esempi indicati in
+	 * input, nell'ordine dato; ciascun esempio conserva il proprio peso.
+	 * 
+	 * @param exampleIndices Posizioni degli esempi nel training set.
+	 * @return Vista degli esempi, che condivide i valori del training set e va
+	 *         conclusa con release().
+	 * @throws IllegalStateException Se le colonne sono già state liberate.
+	 */
+	public Data subset(int[] exampleIndices) {
+		Data subset = new Data(this);
+		subset.rows = new int[exampleIndices.length];
+		subset.numberOfExamples = exampleIndices.length;
+		subset.totalWeight = 0;
+		for (int i = 0; i < exampleIndices.length; i++) {
+			subset.rows[i] = rows[exampleIndices[i]];
+			subset.totalWeight += subset.getWeight(i);
+		}
+		subset.classMean = Double.NaN;
+		return subset;
+	}
+
+	/**
+	 * Aggiunge un riferimento alle colonne del training set, che va concluso con
+	 * release(). Consente a più utilizzatori di condividere la stessa istanza.
+	 * 
+	 * @throws IllegalStateException Se le colonne sono già state liberate.
+	 */
+	void retain() {
+		if (references.getAndUpdate(c -> c == 0 ? 0 : c + 1) == 0)
+			throw new IllegalStateException("Training set already released");
+	}
+
+	/**
+	 * Conclude un riferimento alle colonne del training set, aggiunto dal
+	 * costruttore, da una vista o da retain(). Al rilascio dell'ultimo
+	 * riferimento, condiviso con le viste, la memoria delle colonne è liberata e
+	 * né il training set né le sue viste possono più essere acceduti.
+	 * 
+	 * @throws IllegalStateException Se tutti i riferimenti sono già stati
+	 *                               rilasciati.
+	 */
+	public void release() {
+		int count = references.getAndUpdate(c -> c == 0 ? 0 : c - 1);
+		if (count == 0)
+			throw new IllegalStateException("Training set already released");
+		if (count == 1)
+			free();
+	}
+
+	/**
+	 * Libera la memoria delle colonne del training set.
+	 */
+	private void free() {
+		for (OffHeapColumn column : continuousValues)
+			if (column != null)
+				column.free();
+		for (OffHeapColumn column : discreteValues)
+			if (column != null)
+				column.free();
+		classValues.free();
+		if (weights != null)
+			weights.free();
+	}
+
+	/**
+	 * Verifica che la tabella esista e contenga tutte le colonne indicate nella
+	 * selezione in input.
+	 * 
+	 * @param tSchema   Schema della selezione.
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @throws TrainingDataException Se la tabella è inesistente o la selezione
+	 *                               indica una colonna inesistente.
+	 */
+	static void checkColumns(TableSchema tSchema, Selection selection) throws TrainingDataException {
+		if (tSchema.getNumberOfAttributes() == 0 && selection.getColumns() == null)
+			throw new TrainingDataException("Table does not exist in the database");
+		for (String column : selection.getReferencedColumns())
+			if (!tSchema.hasColumn(column))
+				throw new TrainingDataException("Column " + column + " does not exist in the table");
+	}
+
+	/**
+	 * Calcola l'impronta attuale dei dati della selezione specificata in input.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @return Impronta dei dati della selezione, o null se il DBMS non consente di
+	 *         calcolarla.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nella lettura dello schema.
+	 */
+	static String fingerprint(Selection selection) throws TrainingDataException {
 		DbAccess db = new DbAccess();
 		try {
 			db.initConnection();
-			TableData tData = new TableData(db);
-			TableSchema tSchema = new TableSchema(db, tableName);
-			if (tSchema.getNumberOfAttributes() == 0)
-				throw new TrainingDataException("Table does not exist in the database");
-			if (tSchema.getNumberOfAttributes() < 2)
-				throw new TrainingDataException("Less than two columns in the table");
-			Attribute currentAttribute;
-			for (Column c : tSchema) {
-				if (c.isNumber())
-					currentAttribute = new ContinuousAttribute(c.getColumnName(), explanatorySet.size());
-				else {
-					TreeSet<String> values = new TreeSet<>();
-					tData.getDistinctColumnValues(tableName, c).forEach(i -> values.add((String) i));
-					currentAttribute = new DiscreteAttribute(c.getColumnName(), explanatorySet.size(), values);
-				}
-				if (explanatorySet.size() != tSchema.getNumberOfAttributes() - 1)
-					explanatorySet.add(currentAttribute);
-				else if (c.isNumber())
-					classAttribute = (ContinuousAttribute) currentAttribute;
-				else
-					throw new TrainingDataException("Class attribute is not numeric");
+			return fingerprint(new TableData(db).getFingerprint(selection.getTable()), selection, isGrouping());
+		} catch (DatabaseConnectionException e) {
+			throw new TrainingDataException("Database connection failed");
+		} catch (SQLException e) {
+			throw new TrainingDataException("Error in data acquisition");
+		} finally {
+			try {
+				if (db.getConnection() != null)
+					db.closeConnection();
+			} catch (SQLException e) {
+				throw new TrainingDataException("Unable to close database connection");
 			}
-			data = tData.getTransazioni(tableName);
-			numberOfExamples = data.size();
+		}
+	}
+
+	/**
+	 * Completa l'impronta dei dati della tabella con la selezione e le opzioni di
+	 * lettura, così che training set letti con selezioni od opzioni diverse non
+	 * siano confusi.
+	 * 
+	 * @param fingerprint Impronta dei dati della tabella, o null.
+	 * @param selection   Porzione della tabella letta.
+	 * @param grouped     true se le tuple identiche sono raggruppate.
+	 * @return Impronta del training set, o null se fingerprint è null.
+	 */
+	static String fingerprint(String fingerprint, Selection selection, boolean grouped) {
+		if (fingerprint == null)
+			return null;
+		if (!selection.isWholeTable())
+			fingerprint += " selection " + selection;
+		return withGrouping(fingerprint, grouped);
+	}
+
+	/**
+	 * Completa l'impronta di una sorgente con l'indicazione del raggruppamento
+	 * delle tuple identiche.
+	 * 
+	 * @param fingerprint Impronta della sorgente, o null.
+	 * @param grouped     true se le tuple identiche sono raggruppate.
+	 * @return Impronta del training set, o null se fingerprint è null.
+	 */
+	private static String withGrouping(String fingerprint, boolean grouped) {
+		return fingerprint != null && grouped ? fingerprint + " grouped" : fingerprint;
+	}
+
+	/**
+	 * Stima se il training set contenuto nella selezione specificata in input può
+	 * essere caricato in memoria: la memoria occupata dalle colonne selezionate e
+	 * dalla permutazione degli esempi, calcolata sul numero stimato di tuple
+	 * della selezione, non deve superare la metà della memoria massima della JVM.
+	 * In caso contrario il training set va acquisito come ColumnFile.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @return true se il training set può essere caricato in memoria.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nella lettura della tabella.
+	 */
+	public static boolean fitsInMemory(Selection selection) throws TrainingDataException {
+		DbAccess db = new DbAccess();
+		try {
+			db.initConnection();
+			long width = Double.BYTES + Integer.BYTES;
+			for (Column column : new TableSchema(db, selection))
+				width += column.isNumber() ? Double.BYTES : Integer.BYTES;
+			long rows = new TableData(db).getEstimatedNumberOfRows(selection);
+			return rows * width <= Runtime.getRuntime().maxMemory() / 2;
 		} catch (DatabaseConnectionException e) {
 			throw new TrainingDataException("Database connection failed");
-		} catch (EmptySetException e) {
-			throw new TrainingDataException("Empty table");
 		} catch (SQLException e) {
 			throw new TrainingDataException("Error in data acquisition");
 		} finally {
@@ -91,6 +573,234 @@ public class Data {
 		}
 	}
 
+	/**
+	 * Dimensiona le colonne del training set sul numero di esempi in input e
+	 * inizializza la permutazione identica degli esempi.
+	 * 
+	 * @param columns          Colonne degli attributi indipendenti.
+	 * @param numberOfExamples Numero di esempi del training set.
+	 * @param weighted         true per dimensionare anche i pesi degli esempi.
+	 */
+	private void allocate(List<Column> columns, int numberOfExamples, boolean weighted) {
+		this.numberOfExamples = numberOfExamples;
+		rows = new int[numberOfExamples];
+		for (int i = 0; i < numberOfExamples; i++)
+			rows[i] = i;
+		continuousValues = new OffHeapColumn[columns.size()];
+		discreteValues = new OffHeapColumn[columns.size()];
+		dictionaries = new String[columns.size()][];
+		for (int i = 0; i < columns.size(); i++)
+			if (columns.get(i).isNumber())
+				continuousValues[i] = OffHeapColumn.allocate(numberOfExamples, false);
+			else
+				discreteValues[i] = OffHeapColumn.allocate(numberOfExamples, true);
+		classValues = OffHeapColumn.allocate(numberOfExamples, false);
+		if (weighted)
+			weights = OffHeapColumn.allocate(numberOfExamples, true);
+	}
+
+	/**
+	 * Somma i pesi degli esempi.
+	 * 
+	 * @return Numero di tuple della tabella rappresentate dagli esempi.
+	 */
+	private long sumWeights() {
+		if (weights == null)
+			return numberOfExamples;
+		long sum = 0;
+		for (int i = 0; i < numberOfExamples; i++)
+			sum += weights.getInt(i);
+		return sum;
+	}
+
+	/**
+	 * Memorizza nelle colonne, tramite writer, le transazioni della partizione
+	 * della sorgente indicata.
+	 * 
+	 * @param source    Sorgente del training set.
+	 * @param partition Indice della partizione.
+	 * @param grouped   true per leggere le tuple raggruppate.
+	 * @param writer    Oggetto che memorizza le transazioni della partizione.
+	 * @throws TrainingDataException Se si verificano errori nella lettura o il
+	 *                               numero di transazioni lette differisce da
+	 *                               quello della partizione.
+	 */
+	private void load(DataSource source, int partition, boolean grouped, ColumnWriter writer)
+			throws TrainingDataException {
+		if (source.scan(partition, grouped, writer) != writer.count)
+			throw new TrainingDataException("Error in data acquisition");
+	}
+
+	/**
+	 * Carica in parallelo le partizioni della sorgente, ciascuna tramite il
+	 * corrispondente oggetto di writers.
+	 * 
+	 * @param source  Sorgente del training set.
+	 * @param grouped true per leggere le tuple raggruppate.
+	 * @param writers Oggetti che memorizzano le transazioni di ciascuna
+	 *                partizione.
+	 * @throws TrainingDataException Se si verificano errori nella lettura di una
+	 *                               partizione o il caricamento è interrotto.
+	 */
+	private void loadInParallel(DataSource source, boolean grouped, List<ColumnWriter> writers)
+			throws TrainingDataException {
+		TrainingDataException[] failures = new TrainingDataException[writers.size()];
+		Thread[] loaders = new Thread[writers.size()];
+		for (int i = 0; i < loaders.length; i++) {
+			int partition = i;
+			loaders[i] = new Thread(() -> {
+				try {
+					load(source, partition, grouped, writers.get(partition));
+				} catch (TrainingDataException e) {
+					failures[partition] = e;
+				}
+			});
+			loaders[i].start();
+		}
+		try {
+			for (Thread loader : loaders)
+				loader.join();
+		} catch (InterruptedException e) {
+			for (Thread loader : loaders)
+				loader.interrupt();
+			Thread.currentThread().interrupt();
+			throw new TrainingDataException("Loading interrupted");
+		}
+		for (TrainingDataException e : failures)
+			if (e != null)
+				throw e;
+	}
+
+	/**
+	 * Costruisce il dizionario ordinato di ciascun attributo discreto, unendo i
+	 * valori distinti letti dalle partizioni, e ricodifica le colonne rispetto al
+	 * dizionario.
+	 * 
+	 * @param writers Oggetti che hanno memorizzato le tuple di ciascuna
+	 *                partizione.
+	 */
+	private void encode(List<ColumnWriter> writers) {
+		for (int column = 0; column < discreteValues.length; column++)
+			if (discreteValues[column] != null) {
+				TreeSet<String> values = new TreeSet<>();
+				for (ColumnWriter writer : writers)
+					values.addAll(writer.codes.get(column).keySet());
+				dictionaries[column] = values.toArray(new String[0]);
+				for (ColumnWriter writer : writers)
+					writer.encode(column, dictionaries[column]);
+			}
+	}
+
+	/**
+	 * Avvalora la lista explanatorySet e il membro classAttribute a partire dai
+	 * nomi delle colonne e dai dizionari degli attributi discreti.
+	 * 
+	 * @param names     Nomi degli attributi indipendenti.
+	 * @param className Nome dell'attributo di classe.
+	 */
+	private void createAttributes(String[] names, String className) {
+		for (int i = 0; i < names.length; i++)
+			if (dictionaries[i] == null)
+				explanatorySet.add(new ContinuousAttribute(names[i], i));
+			else
+				explanatorySet.add(new DiscreteAttribute(names[i], i, new TreeSet<>(Arrays.asList(dictionaries[i]))));
+		classAttribute = new ContinuousAttribute(className, names.length);
+	}
+
+	/**
+	 * Carica il training set dalla copia locale memorizzata nel file in input, se
+	 * esiste ed è stata ricavata da dati con l'impronta indicata. Eventuali errori
+	 * di lettura sono trattati come assenza della copia.
+	 * 
+	 * @param file        Percorso della copia locale.
+	 * @param fingerprint Impronta attuale dei dati della tabella.
+	 * @param columns     Numero di attributi indipendenti della tabella.
+	 * @return true se il training set è stato caricato dalla copia locale.
+	 */
+	private boolean readSnapshot(Path file, String fingerprint, int columns) {
+		Snapshot snapshot;
+		try {
+			snapshot = Files.exists(file) ? Snapshot.read(file, fingerprint) : null;
+		} catch (IOException e) {
+			snapshot = null;
+		}
+		if (snapshot == null || snapshot.getNames().length != columns)
+			return false;
+		continuousValues = snapshot.getContinuousValues();
+		discreteValues = snapshot.getDiscreteValues();
+		dictionaries = snapshot.getDictionaries();
+		classValues = snapshot.getClassValues();
+		weights = snapshot.getWeights();
+		numberOfExamples = classValues.size();
+		totalWeight = sumWeights();
+		rows = new int[numberOfExamples];
+		for (int i = 0; i < numberOfExamples; i++)
+			rows[i] = i;
+		createAttributes(snapshot.getNames(), snapshot.getClassName());
+		return true;
+	}
+
+	/**
+	 * Memorizza il training set appena caricato, nell'ordine di lettura, nella
+	 * copia locale indicata. Se la scrittura fallisce il training set resta
+	 * comunque disponibile e sarà riletto dal database alla richiesta successiva.
+	 * 
+	 * @param file        Percorso della copia locale.
+	 * @param fingerprint Impronta dei dati della tabella.
+	 * @param names       Nomi degli attributi indipendenti.
+	 */
+	private void writeSnapshot(Path file, String fingerprint, String[] names) {
+		try {
+			new Snapshot(fingerprint, names, classAttribute.getName(), continuousValues, discreteValues,
+					dictionaries, classValues, weights).write(file);
+		} catch (IOException e) {
+			// la copia locale è facoltativa
+		}
+	}
+
+	/**
+	 * Imposta il numero massimo di connessioni al database sulle quali caricare
+	 * in parallelo le partizioni di una tabella.
+	 * 
+	 * @param connections Numero massimo di connessioni.
+	 */
+	public static synchronized void setLoadConnections(int connections) {
+		if (connections < 1)
+			throw new IllegalArgumentException("Invalid number of connections");
+		loadConnections = connections;
+	}
+
+	/**
+	 * Imposta se le tuple identiche delle tabelle devono essere raggruppate, al
+	 * caricamento, in un unico esempio pesato. Il raggruppamento è eseguito dal
+	 * DBMS e riduce le tuple trasferite, la memoria occupata e il tempo di
+	 * apprendimento quando le tabelle contengono molte tuple ripetute.
+	 * 
+	 * @param grouping true per raggruppare le tuple identiche.
+	 */
+	public static synchronized void setGrouping(boolean grouping) {
+		Data.grouping = grouping;
+	}
+
+	/**
+	 * Indica se le tuple identiche delle tabelle sono raggruppate al caricamento.
+	 * 
+	 * @return true se le tuple identiche sono raggruppate.
+	 */
+	private static synchronized boolean isGrouping() {
+		return grouping;
+	}
+
+	/**
+	 * Restituisce il numero massimo di connessioni al database sulle quali
+	 * caricare in parallelo le partizioni di una tabella.
+	 * 
+	 * @return Numero massimo di connessioni.
+	 */
+	static synchronized int getLoadConnections() {
+		return loadConnections;
+	}
+
 	/**
 	 * Restituisce il valore del membro numberOfExamples.
 	 * 
@@ -100,6 +810,80 @@ public class Data {
 		return numberOfExamples;
 	}
 
+	/**
+	 * Restituisce il valore del membro totalWeight.
+	 * 
+	 * @return Numero di tuple della tabella rappresentate dagli esempi, pari alla
+	 *         cardinalità del training set se le tuple non sono raggruppate.
+	 */
+	public long getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Restituisce il peso dell'esempio corrispondente al parametro di input.
+	 * 
+	 * @param exampleIndex Posizione di uno specifico esempio nel training set.
+	 * @return Numero di tuple identiche rappresentate dall'esempio; 1 se le tuple
+	 *         non sono raggruppate.
+	 */
+	public int getWeight(int exampleIndex) {
+		return weights != null ? weights.getInt(rows[exampleIndex]) : 1;
+	}
+
+	/**
+	 * Restituisce la media dell'attributo di classe pesata sugli esempi del
+	 * training set. I valori sono sommati nell'ordine in cui sono memorizzati
+	 * nelle colonne, così che la media non dipenda dalla permutazione corrente e
+	 * sia la stessa per tutte le viste con gli stessi esempi.
+	 * 
+	 * @return Media dell'attributo di classe.
+	 */
+	public double getClassMean() {
+		double mean = classMean;
+		if (Double.isNaN(mean)) {
+			int[] stored = rows.clone();
+			Arrays.sort(stored);
+			double sum = 0;
+			for (int row : stored)
+				sum += (weights != null ? weights.getInt(row) : 1) * classValues.getDouble(row);
+			mean = sum / totalWeight;
+			classMean = mean;
+		}
+		return mean;
+	}
+
+	/**
+	 * Restituisce il valore del membro fingerprint.
+	 * 
+	 * @return Impronta dei dati della tabella da cui è stato caricato il training
+	 *         set, o null se non è disponibile.
+	 */
+	String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Stima la memoria occupata dai valori del training set, esclusa la
+	 * permutazione degli esempi.
+	 * 
+	 * @return Numero approssimato di byte occupati dalle colonne e dai dizionari.
+	 */
+	long getMemorySize() {
+		long size = (long) numberOfExamples * Double.BYTES;
+		for (int i = 0; i < continuousValues.length; i++)
+			if (continuousValues[i] != null)
+				size += (long) numberOfExamples * Double.BYTES;
+			else {
+				size += (long) numberOfExamples * Integer.BYTES;
+				for (String value : dictionaries[i])
+					size += 40 + 2L * value.length();
+			}
+		if (weights != null)
+			size += (long) numberOfExamples * Integer.BYTES;
+		return size;
+	}
+
 	/**
 	 * Restituisce la dimensione della lista explanatorySet.
 	 * 
@@ -113,24 +897,52 @@ public class Data {
 	 * Restituisce il valore dell'attributo di classe per l'esempio corrispondente
 	 * al parametro di input.
 	 * 
-	 * @param exampleIndex Indice di data relativo ad uno specifico esempio.
+	 * @param exampleIndex Posizione di uno specifico esempio nel training set.
 	 * @return Valore dell'attributo di classe per l'esempio indicizzato in input.
 	 */
-	public Double getClassValue(int exampleIndex) {
-		return (Double) data.get(exampleIndex).get(classAttribute.getIndex());
+	public double getClassValue(int exampleIndex) {
+		return classValues.getDouble(rows[exampleIndex]);
 	}
 
 	/**
 	 * Restituisce il valore dell'attributo indipendente indicizzato da
 	 * attributeIndex, relativo all'esempio exampleIndex.
 	 * 
-	 * @param exampleIndex   Indice di data relativo ad uno specifico esempio.
+	 * @param exampleIndex   Posizione di uno specifico esempio nel training set.
 	 * @param attributeIndex Indice di uno specifico attributo indipendente.
 	 * @return Valore dell'attributo indicizzato da attributeIndex, relativo
-	 *         all'esempio exampleIndex.
+	 *         all'esempio exampleIndex: un Double per gli attributi continui, una
+	 *         String per quelli discreti.
 	 */
 	public Object getExplanatoryValue(int exampleIndex, int attributeIndex) {
-		return data.get(exampleIndex).get(attributeIndex);
+		if (continuousValues[attributeIndex] != null)
+			return continuousValues[attributeIndex].getDouble(rows[exampleIndex]);
+		return dictionaries[attributeIndex][discreteValues[attributeIndex].getInt(rows[exampleIndex])];
+	}
+
+	/**
+	 * Restituisce il valore dell'attributo continuo indicizzato da attributeIndex,
+	 * relativo all'esempio exampleIndex, senza allocare oggetti.
+	 * 
+	 * @param exampleIndex   Posizione di uno specifico esempio nel training set.
+	 * @param attributeIndex Indice di uno specifico attributo continuo.
+	 * @return Valore dell'attributo per l'esempio indicizzato in input.
+	 */
+	public double getContinuousValue(int exampleIndex, int attributeIndex) {
+		return continuousValues[attributeIndex].getDouble(rows[exampleIndex]);
+	}
+
+	/**
+	 * Restituisce il codice del valore dell'attributo discreto indicizzato da
+	 * attributeIndex, relativo all'esempio exampleIndex. I codici rispettano
+	 * l'ordinamento dei valori.
+	 * 
+	 * @param exampleIndex   Posizione di uno specifico esempio nel training set.
+	 * @param attributeIndex Indice di uno specifico attributo discreto.
+	 * @return Codice del valore dell'attributo per l'esempio indicizzato in input.
+	 */
+	public int getDiscreteCode(int exampleIndex, int attributeIndex) {
+		return discreteValues[attributeIndex].getInt(rows[exampleIndex]);
 	}
 
 	/**
@@ -158,24 +970,26 @@ public class Data {
 
 	/**
 	 * Restituisce in forma di stringa i valori di ciascun attributo per tutti gli
-	 * esempi presenti nella lista data.
+	 * esempi del training set.
 	 */
 	public String toString() {
-		String value = "Attributes:";
+		StringBuilder value = new StringBuilder("Attributes:");
 		for (Attribute a : explanatorySet)
-			value += a.getName() + ",";
-		value += classAttribute.getName() + "\n";
+			value.append(a.getName()).append(",");
+		value.append(classAttribute.getName()).append("\n");
 		for (int i = 0; i < numberOfExamples; i++) {
 			for (Attribute a : explanatorySet)
-				value += data.get(i).get(explanatorySet.indexOf(a)) + ",";
-			value += data.get(i).get(explanatorySet.size()) + "\n";
+				value.append(getExplanatoryValue(i, a.getIndex())).append(",");
+			value.append(getClassValue(i)).append("\n");
 		}
-		return value;
+		return value.toString();
 	}
 
 	/**
 	 * Ordina il sottoinsieme di esempi del training set, compresi nell'intervallo
-	 * indicato e rispetto all'attributo specificato in input.
+	 * indicato e rispetto all'attributo specificato in input. A parità di valore
+	 * gli esempi seguono l'ordine in cui sono memorizzati nelle colonne, così che
+	 * l'ordinamento ottenuto non dipenda dalla permutazione di partenza.
 	 * 
 	 * @param attribute         Attributo rispetto al quale ordinare i valori del
 	 *                          sottoinsieme del training set.
@@ -188,9 +1002,25 @@ public class Data {
 		quicksort(attribute, beginExampleIndex, endExampleIndex);
 	}
 
+	/**
+	 * Riporta gli esempi del training set compresi nell'intervallo indicato
+	 * nell'ordine in cui sono memorizzati nelle colonne.
+	 * 
+	 * @param beginExampleIndex Estremo inferiore che delimita il sottoinsieme del
+	 *                          training set.
+	 * @param endExampleIndex   Estremo superiore che delimita il sottoinsieme del
+	 *                          training set.
+	 */
+	public void restoreOrder(int beginExampleIndex, int endExampleIndex) {
+		Arrays.sort(rows, beginExampleIndex, endExampleIndex + 1);
+	}
+
 	/**
 	 * Algoritmo quicksort per l'ordinamento di un array di interi. Utilizza &le;
-	 * come relazione di ordinamento totale.
+	 * come relazione di ordinamento totale sulle coppie formate dal valore e
+	 * dalla riga in cui l'esempio è memorizzato. Solo la parte minore è ordinata
+	 * ricorsivamente, così che la profondità della ricorsione resti logaritmica
+	 * anche con molti valori ripetuti.
 	 * 
 	 * @param attribute Attributo rispetto al quale ordinare i valori del
 	 *                  sottoinsieme del training set.
@@ -201,7 +1031,7 @@ public class Data {
 	 * @see sort
 	 */
 	private void quicksort(Attribute attribute, int inf, int sup) {
-		if (sup >= inf) {
+		while (sup >= inf) {
 			int pos;
 			if (attribute instanceof DiscreteAttribute)
 				pos = partition((DiscreteAttribute) attribute, inf, sup);
@@ -209,10 +1039,10 @@ public class Data {
 				pos = partition((ContinuousAttribute) attribute, inf, sup);
 			if ((pos - inf) < (sup - pos + 1)) {
 				quicksort(attribute, inf, pos - 1);
-				quicksort(attribute, pos + 1, sup);
+				inf = pos + 1;
 			} else {
 				quicksort(attribute, pos + 1, sup);
-				quicksort(attribute, inf, pos - 1);
+				sup = pos - 1;
 			}
 		}
 	}
@@ -234,12 +1064,14 @@ public class Data {
 		int i = inf;
 		int j = sup;
 		int med = (inf + sup) / 2;
-		String x = (String) getExplanatoryValue(med, attribute.getIndex());
+		OffHeapColumn column = discreteValues[attribute.getIndex()];
+		int x = column.getInt(rows[med]);
+		int row = rows[med];
 		swap(inf, med);
 		while (true) {
-			while (i <= sup && ((String) getExplanatoryValue(i, attribute.getIndex())).compareTo(x) <= 0)
+			while (i <= sup && (column.getInt(rows[i]) < x || column.getInt(rows[i]) == x && rows[i] <= row))
 				i++;
-			while (((String) getExplanatoryValue(j, attribute.getIndex())).compareTo(x) > 0)
+			while (column.getInt(rows[j]) > x || column.getInt(rows[j]) == x && rows[j] > row)
 				j--;
 			if (i < j)
 				swap(i, j);
@@ -267,12 +1099,14 @@ public class Data {
 		int i = inf;
 		int j = sup;
 		int med = (inf + sup) / 2;
-		Double x = (Double) getExplanatoryValue(med, attribute.getIndex());
+		OffHeapColumn column = continuousValues[attribute.getIndex()];
+		double x = column.getDouble(rows[med]);
+		int row = rows[med];
 		swap(inf, med);
 		while (true) {
-			while (i <= sup && ((Double) getExplanatoryValue(i, attribute.getIndex())).compareTo(x) <= 0)
+			while (i <= sup && compare(column.getDouble(rows[i]), rows[i], x, row) <= 0)
 				i++;
-			while (((Double) getExplanatoryValue(j, attribute.getIndex())).compareTo(x) > 0)
+			while (compare(column.getDouble(rows[j]), rows[j], x, row) > 0)
 				j--;
 			if (i < j)
 				swap(i, j);
@@ -284,15 +1118,32 @@ public class Data {
 	}
 
 	/**
-	 * Scambia gli esempi nelle posizioni i e j del training set.
+	 * Metodo ausiliario di partition, che confronta due esempi per valore di un
+	 * attributo continuo e, a parità di valore, per riga.
+	 * 
+	 * @param value      Valore del primo esempio.
+	 * @param row        Riga del primo esempio.
+	 * @param otherValue Valore del secondo esempio.
+	 * @param otherRow   Riga del secondo esempio.
+	 * @return Un intero negativo, zero o positivo se il primo esempio precede,
+	 *         coincide o segue il secondo.
+	 */
+	private static int compare(double value, int row, double otherValue, int otherRow) {
+		int c = Double.compare(value, otherValue);
+		return c != 0 ? c : Integer.compare(row, otherRow);
+	}
+
+	/**
+	 * Scambia gli esempi nelle posizioni i e j del training set, permutandone gli
+	 * indici.
 	 * 
 	 * @param i Posizione dell'esempio del training set a cui assegnare l'indice j.
 	 * @param j Posizione dell'esempio del training set a cui assegnare l'indice i.
 	 */
 	private void swap(int i, int j) {
-		Example temp = data.get(i);
-		data.set(i, data.get(j));
-		data.set(j, temp);
+		int temp = rows[i];
+		rows[i] = rows[j];
+		rows[j] = temp;
 	}
 
 }
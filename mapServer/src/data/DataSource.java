@@ -0,0 +1,74 @@
+package data;
+
+import java.util.List;
+import database.Column;
+import database.ColumnSink;
+
+/**
+ * Interfaccia che modella la sorgente da cui Data legge un training set: ne
+ * descrive le colonne, l'ultima delle quali è l'attributo di classe, e lo
+ * suddivide in partizioni disgiunte che Data dimensiona e legge, anche in
+ * parallelo, trasferendone i valori a un ColumnSink.
+ */
+public interface DataSource {
+
+	/**
+	 * Restituisce il nome che identifica i dati letti dalla sorgente, usato per la
+	 * copia locale del training set: sorgenti con lo stesso nome leggono gli
+	 * stessi dati.
+	 * 
+	 * @return Nome della sorgente.
+	 */
+	String getName();
+
+	/**
+	 * Restituisce le colonne della sorgente, nell'ordine in cui i valori sono
+	 * trasferiti; l'ultima colonna è l'attributo di classe.
+	 * 
+	 * @return Colonne della sorgente.
+	 * @throws TrainingDataException Se la sorgente è inesistente o non può essere
+	 *                               letta.
+	 */
+	List<Column> getColumns() throws TrainingDataException;
+
+	/**
+	 * Calcola l'impronta attuale dei dati della sorgente, che cambia quando i dati
+	 * cambiano.
+	 * 
+	 * @return Impronta dei dati, o null se non può essere calcolata.
+	 * @throws TrainingDataException Se la sorgente non può essere letta.
+	 */
+	String getFingerprint() throws TrainingDataException;
+
+	/**
+	 * Indica se la sorgente può leggere le tuple identiche raggruppate in
+	 * un'unica transazione pesata.
+	 * 
+	 * @return true se il raggruppamento è supportato.
+	 */
+	boolean supportsGrouping();
+
+	/**
+	 * Suddivide la sorgente in partizioni disgiunte e ne conta le transazioni.
+	 * Deve essere invocato prima di scan().
+	 * 
+	 * @param grouped true per contare le tuple raggruppate.
+	 * @return Numero di transazioni di ciascuna partizione.
+	 * @throws TrainingDataException Se la sorgente non può essere letta.
+	 */
+	int[] getPartitionSizes(boolean grouped) throws TrainingDataException;
+
+	/**
+	 * Trasferisce a sink le transazioni della partizione indicata, numerate a
+	 * partire da zero. Partizioni diverse possono essere lette in parallelo.
+	 * 
+	 * @param partition Indice della partizione.
+	 * @param grouped   true per leggere le tuple raggruppate.
+	 * @param sink      Destinatario dei valori.
+	 * @return Numero di transazioni lette.
+	 * @throws TrainingDataException Se la lettura fallisce o sink rifiuta un
+	 *                               valore.
+	 */
+	int scan(int partition, boolean grouped, ColumnSink sink) throws TrainingDataException;
+
+}
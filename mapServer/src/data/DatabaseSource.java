@@ -0,0 +1,178 @@
+package data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import database.Column;
+import database.ColumnSink;
+import database.DatabaseConnectionException;
+import database.DbAccess;
+import database.EmptySetException;
+import database.Selection;
+import database.TableData;
+import database.TableSchema;
+
+/**
+ * Classe che legge il training set da una selezione di una tabella del
+ * database. Ciascuna operazione impegna una propria connessione, così che le
+ * partizioni lette in parallelo non si contendano il pool in attesa l'una
+ * dell'altra.
+ */
+class DatabaseSource implements DataSource {
+
+	/**
+	 * Operazione eseguita su una connessione al database.
+	 * 
+	 * @param <T> Tipo del risultato dell'operazione.
+	 */
+	interface Operation<T> {
+
+		/**
+		 * Esegue l'operazione.
+		 * 
+		 * @param db Oggetto DbAccess con la connessione inizializzata.
+		 * @return Risultato dell'operazione.
+		 * @throws SQLException          Se si verificano errori nel database.
+		 * @throws TrainingDataException Se i dati letti non sono validi.
+		 */
+		T run(DbAccess db) throws SQLException, TrainingDataException;
+
+	}
+
+	/**
+	 * Porzione della tabella contenente il training set.
+	 */
+	private Selection selection;
+
+	/**
+	 * Condizioni SQL che individuano le partizioni; l'unica partizione
+	 * dell'intera tabella è indicata da null.
+	 */
+	private List<String> partitions;
+
+	/**
+	 * Indica se il training set letto va memorizzato nella copia locale.
+	 */
+	private boolean snapshot;
+
+	/**
+	 * Costruttore di classe. Il training set letto è memorizzato nella copia
+	 * locale.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 */
+	DatabaseSource(Selection selection) {
+		this(selection, true);
+	}
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @param snapshot  false per non calcolare l'impronta, così che il training
+	 *                  set non sia memorizzato nella copia locale.
+	 */
+	DatabaseSource(Selection selection, boolean snapshot) {
+		this.selection = selection;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Restituisce la forma canonica della selezione.
+	 */
+	public String getName() {
+		return selection.toString();
+	}
+
+	/**
+	 * Restituisce le colonne della selezione, verificando che la tabella esista e
+	 * contenga tutte le colonne indicate.
+	 */
+	public List<Column> getColumns() throws TrainingDataException {
+		return execute(db -> {
+			TableSchema tSchema = new TableSchema(db, selection);
+			Data.checkColumns(tSchema, selection);
+			List<Column> columns = new ArrayList<>();
+			for (Column c : tSchema)
+				columns.add(c);
+			return columns;
+		});
+	}
+
+	/**
+	 * Calcola l'impronta dei dati della tabella, completata con la selezione; null
+	 * se la copia locale non è richiesta.
+	 */
+	public String getFingerprint() throws TrainingDataException {
+		if (!snapshot)
+			return null;
+		return execute(db -> Data.fingerprint(new TableData(db).getFingerprint(selection.getTable()), selection,
+				false));
+	}
+
+	/**
+	 * Il raggruppamento è eseguito dal DBMS.
+	 */
+	public boolean supportsGrouping() {
+		return true;
+	}
+
+	/**
+	 * Suddivide la tabella in al più tante partizioni quante sono le connessioni
+	 * di caricamento e ne conta le tuple, o i gruppi di tuple identiche.
+	 */
+	public int[] getPartitionSizes(boolean grouped) throws TrainingDataException {
+		return execute(db -> {
+			TableData tData = new TableData(db);
+			partitions = tData.getPartitions(selection.getTable(), Data.getLoadConnections());
+			int[] counts = new int[partitions.size()];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = grouped ? tData.getNumberOfGroups(selection, partitions.get(i))
+						: tData.getNumberOfRows(selection, partitions.get(i));
+			return counts;
+		});
+	}
+
+	/**
+	 * Legge in streaming le tuple della partizione.
+	 */
+	public int scan(int partition, boolean grouped, ColumnSink sink) throws TrainingDataException {
+		return execute(db -> {
+			try {
+				return new TableData(db).scanTransazioni(selection, partitions.get(partition), grouped, sink);
+			} catch (EmptySetException e) {
+				return 0;
+			}
+		});
+	}
+
+	/**
+	 * Esegue l'operazione in input su una nuova connessione al database, chiusa al
+	 * termine.
+	 * 
+	 * @param <T>       Tipo del risultato dell'operazione.
+	 * @param operation Operazione da eseguire.
+	 * @return Risultato dell'operazione.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nell'esecuzione.
+	 */
+	static <T> T execute(Operation<T> operation) throws TrainingDataException {
+		DbAccess db = new DbAccess();
+		try {
+			db.initConnection();
+			return operation.run(db);
+		} catch (DatabaseConnectionException e) {
+			throw new TrainingDataException("Database connection failed");
+		} catch (SQLException e) {
+			throw new TrainingDataException("Error in data acquisition");
+		} finally {
+			try {
+				if (db.getConnection() != null)
+					db.closeConnection();
+			} catch (SQLException e) {
+				throw new TrainingDataException("Unable to close database connection");
+			}
+		}
+	}
+
+}
@@ -33,7 +33,7 @@ public class DiscreteAttribute extends Attribute implements Iterable<String> {
 	 * 
 	 * @return Numero di valori discreti che l'attributo può assumere.
 	 */
-	int getNumberOfDistinctValues() {
+	public int getNumberOfDistinctValues() {
 		return values.size();
 	}
 
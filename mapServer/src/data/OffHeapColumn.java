@@ -0,0 +1,335 @@
+package data;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Classe che modella una colonna di valori primitivi, double o int, memorizzata
+ * fuori dallo heap della JVM: in buffer diretti oppure in una regione di un
+ * file mappata in memoria. La colonna è suddivisa in blocchi, così che possa
+ * superare la dimensione massima di un singolo buffer, e non è visitata dal
+ * garbage collector. I valori sono memorizzati in ordine little-endian e sono
+ * acceduti per posizione assoluta: letture concorrenti, e scritture
+ * concorrenti su righe distinte, non interferiscono tra loro. La memoria dei
+ * blocchi può essere liberata esplicitamente con free(), senza attendere il
+ * garbage collector; in mancanza di tale chiamata è liberata quando la colonna
+ * non è più raggiungibile. Gli accessi successivi a free() sollevano
+ * IllegalStateException invece di leggere memoria già rilasciata; free() va
+ * comunque chiamato solo quando nessun altro thread accede alla colonna, come
+ * garantisce il conteggio dei riferimenti di Data: un accesso che ha superato
+ * il controllo prima della chiamata non è protetto.
+ */
+public class OffHeapColumn {
+
+	/**
+	 * Logaritmo in base 2 del numero di valori di ciascun blocco mappato.
+	 */
+	private static final int CHUNK_SHIFT = 24;
+
+	/**
+	 * Maschera che estrae da un indice di riga la posizione nel blocco.
+	 */
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	/**
+	 * Istanza di sun.misc.Unsafe con cui liberare i buffer diretti e mappati;
+	 * null se la JVM non la rende disponibile.
+	 */
+	private static final Object UNSAFE;
+
+	/**
+	 * Metodo invokeCleaner(ByteBuffer) di sun.misc.Unsafe; null se la JVM non lo
+	 * rende disponibile.
+	 */
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	/**
+	 * Blocchi della colonna.
+	 */
+	private ByteBuffer[] chunks;
+
+	/**
+	 * Blocchi di una colonna di double; null per le colonne di interi.
+	 */
+	private DoubleBuffer[] doubles;
+
+	/**
+	 * Blocchi di una colonna di interi; null per le colonne di double.
+	 */
+	private IntBuffer[] ints;
+
+	/**
+	 * Numero di valori della colonna.
+	 */
+	private int size;
+
+	/**
+	 * Indica se la memoria dei blocchi è stata liberata.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Costruttore di classe. Mappa la regione del file che contiene la colonna.
+	 * 
+	 * @param channel  Canale del file.
+	 * @param mode     Modalità di mappatura.
+	 * @param position Posizione della colonna nel file.
+	 * @param size     Numero di valori della colonna.
+	 * @param discrete true per una colonna di interi, false per una di double.
+	 * @throws IOException Se la mappatura fallisce.
+	 */
+	OffHeapColumn(FileChannel channel, FileChannel.MapMode mode, long position, int size, boolean discrete)
+			throws IOException {
+		this(size, discrete);
+		int width = discrete ? Integer.BYTES : Double.BYTES;
+		for (int i = 0; i < chunks.length; i++) {
+			long offset = position + ((long) i << CHUNK_SHIFT) * width;
+			setChunk(i, channel.map(mode, offset, (long) length(i) * width), discrete);
+		}
+	}
+
+	/**
+	 * Costruttore di classe. Predispone i blocchi di una colonna senza
+	 * allocarli.
+	 * 
+	 * @param size     Numero di valori della colonna.
+	 * @param discrete true per una colonna di interi, false per una di double.
+	 */
+	private OffHeapColumn(int size, boolean discrete) {
+		this.size = size;
+		chunks = new ByteBuffer[(size + CHUNK_MASK) >>> CHUNK_SHIFT];
+		if (discrete)
+			ints = new IntBuffer[chunks.length];
+		else
+			doubles = new DoubleBuffer[chunks.length];
+	}
+
+	/**
+	 * Alloca, fuori dallo heap, una colonna di valori inizializzati a zero. La
+	 * memoria è liberata da free() o, in sua assenza, dal garbage collector
+	 * quando la colonna non è più raggiungibile.
+	 * 
+	 * @param size     Numero di valori della colonna.
+	 * @param discrete true per una colonna di interi, false per una di double.
+	 * @return Colonna allocata.
+	 */
+	static OffHeapColumn allocate(int size, boolean discrete) {
+		OffHeapColumn column = new OffHeapColumn(size, discrete);
+		int width = discrete ? Integer.BYTES : Double.BYTES;
+		for (int i = 0; i < column.chunks.length; i++)
+			column.setChunk(i, ByteBuffer.allocateDirect(column.length(i) * width), discrete);
+		return column;
+	}
+
+	/**
+	 * Imposta il blocco indicato della colonna.
+	 * 
+	 * @param index    Indice del blocco.
+	 * @param chunk    Buffer del blocco.
+	 * @param discrete true per una colonna di interi, false per una di double.
+	 */
+	private void setChunk(int index, ByteBuffer chunk, boolean discrete) {
+		chunks[index] = chunk.order(ByteOrder.LITTLE_ENDIAN);
+		if (discrete)
+			ints[index] = chunks[index].asIntBuffer();
+		else
+			doubles[index] = chunks[index].asDoubleBuffer();
+	}
+
+	/**
+	 * Restituisce il numero di valori del blocco indicato.
+	 * 
+	 * @param index Indice del blocco.
+	 * @return Numero di valori del blocco.
+	 */
+	private int length(int index) {
+		return Math.min(size - (index << CHUNK_SHIFT), 1 << CHUNK_SHIFT);
+	}
+
+	/**
+	 * Mappa in lettura e scrittura una colonna di interi inizializzati a zero,
+	 * memorizzata in un file temporaneo che è cancellato subito: la mappatura
+	 * resta valida finché la colonna non è liberata con free() o non è più
+	 * raggiungibile.
+	 * 
+	 * @param size Numero di valori della colonna.
+	 * @return Colonna di interi temporanea.
+	 * @throws IOException Se il file temporaneo non può essere creato o mappato.
+	 */
+	public static OffHeapColumn createTemporary(int size) throws IOException {
+		Path file = Files.createTempFile("column", ".tmp");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return new OffHeapColumn(channel, FileChannel.MapMode.READ_WRITE, 0, size, true);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Restituisce il numero di valori della colonna.
+	 * 
+	 * @return Numero di valori.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Restituisce il valore, in una colonna di double, della riga indicata.
+	 * 
+	 * @param row Indice della riga.
+	 * @return Valore della riga.
+	 */
+	public double getDouble(int row) {
+		checkOpen();
+		return doubles[row >>> CHUNK_SHIFT].get(row & CHUNK_MASK);
+	}
+
+	/**
+	 * Restituisce il valore, in una colonna di interi, della riga indicata.
+	 * 
+	 * @param row Indice della riga.
+	 * @return Valore della riga.
+	 */
+	public int getInt(int row) {
+		checkOpen();
+		return ints[row >>> CHUNK_SHIFT].get(row & CHUNK_MASK);
+	}
+
+	/**
+	 * Memorizza un valore, in una colonna di double, alla riga indicata.
+	 * 
+	 * @param row   Indice della riga.
+	 * @param value Valore da memorizzare.
+	 */
+	public void putDouble(int row, double value) {
+		checkOpen();
+		doubles[row >>> CHUNK_SHIFT].put(row & CHUNK_MASK, value);
+	}
+
+	/**
+	 * Memorizza un valore, in una colonna di interi, alla riga indicata.
+	 * 
+	 * @param row   Indice della riga.
+	 * @param value Valore da memorizzare.
+	 */
+	public void putInt(int row, int value) {
+		checkOpen();
+		ints[row >>> CHUNK_SHIFT].put(row & CHUNK_MASK, value);
+	}
+
+	/**
+	 * Copia nell'array in input, da una colonna di double, i valori delle righe
+	 * consecutive a partire da begin.
+	 * 
+	 * @param begin  Indice della prima riga.
+	 * @param values Array in cui copiare i valori.
+	 * @param length Numero di valori da copiare.
+	 */
+	public void get(int begin, double[] values, int length) {
+		checkOpen();
+		for (int i = 0; i < length;) {
+			int row = begin + i;
+			int count = Math.min(length - i, (1 << CHUNK_SHIFT) - (row & CHUNK_MASK));
+			doubles[row >>> CHUNK_SHIFT].get(row & CHUNK_MASK, values, i, count);
+			i += count;
+		}
+	}
+
+	/**
+	 * Copia nell'array in input, da una colonna di interi, i valori delle righe
+	 * consecutive a partire da begin.
+	 * 
+	 * @param begin  Indice della prima riga.
+	 * @param values Array in cui copiare i valori.
+	 * @param length Numero di valori da copiare.
+	 */
+	public void get(int begin, int[] values, int length) {
+		checkOpen();
+		for (int i = 0; i < length;) {
+			int row = begin + i;
+			int count = Math.min(length - i, (1 << CHUNK_SHIFT) - (row & CHUNK_MASK));
+			ints[row >>> CHUNK_SHIFT].get(row & CHUNK_MASK, values, i, count);
+			i += count;
+		}
+	}
+
+	/**
+	 * Verifica che la memoria dei blocchi non sia stata liberata.
+	 * 
+	 * @throws IllegalStateException Se la colonna è stata liberata con free().
+	 */
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Column already freed");
+	}
+
+	/**
+	 * Scrive la colonna sul canale, a partire dalla sua posizione corrente.
+	 * 
+	 * @param channel Canale su cui scrivere.
+	 * @throws IOException Se si verificano errori di scrittura.
+	 */
+	void write(FileChannel channel) throws IOException {
+		checkOpen();
+		for (ByteBuffer chunk : chunks) {
+			ByteBuffer buffer = chunk.duplicate();
+			buffer.clear();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Libera subito la memoria dei blocchi, rilasciando i buffer diretti e
+	 * rimuovendo le mappature del file. Dopo la chiamata gli accessi alla colonna
+	 * sollevano IllegalStateException; chiamate successive non hanno effetto. Va
+	 * chiamato solo quando nessun altro thread accede alla colonna. Se la JVM
+	 * non consente il rilascio esplicito, la memoria è liberata dal garbage
+	 * collector.
+	 */
+	synchronized void free() {
+		if (closed)
+			return;
+		closed = true;
+		ByteBuffer[] released = chunks;
+		chunks = null;
+		doubles = null;
+		ints = null;
+		if (INVOKE_CLEANER == null)
+			return;
+		try {
+			for (ByteBuffer chunk : released)
+				INVOKE_CLEANER.invoke(UNSAFE, chunk);
+		} catch (ReflectiveOperationException e) {
+			// i blocchi non rilasciati sono liberati dal garbage collector
+		}
+	}
+
+}
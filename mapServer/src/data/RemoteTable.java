@@ -0,0 +1,272 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import database.AggregateSink;
+import database.Column;
+import database.Selection;
+import database.TableData;
+import database.TableSchema;
+
+/**
+ * Classe che modella un training set che resta nel database. Nello heap sono
+ * mantenuti solo lo schema, i valori distinti degli attributi discreti, il
+ * numero di tuple e la media dell'attributo di classe; le statistiche di split
+ * sono calcolate dal DBMS con interrogazioni di aggregazione, che trasferiscono
+ * un gruppo per valore o intervallo di valori anziché le tuple. Le tuple di una
+ * porzione abbastanza piccola del training set possono essere caricate in
+ * memoria con load().
+ */
+public class RemoteTable {
+
+	/**
+	 * Porzione della tabella contenente il training set.
+	 */
+	private Selection selection;
+
+	/**
+	 * Colonne degli attributi indipendenti.
+	 */
+	private List<Column> columns = new ArrayList<>();
+
+	/**
+	 * Nome della colonna dell'attributo di classe.
+	 */
+	private String classColumn;
+
+	/**
+	 * Lista di oggetti Attribute contenente gli attributi indipendenti.
+	 */
+	private List<Attribute> explanatorySet = new ArrayList<>();
+
+	/**
+	 * Valori distinti e ordinati di ciascun attributo discreto, indicizzati dal
+	 * codice. Vale null per gli attributi continui.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Cardinalità del training set.
+	 */
+	private int numberOfExamples;
+
+	/**
+	 * Media dell'attributo di classe nel training set.
+	 */
+	private double classMean;
+
+	/**
+	 * Memoria, in byte, occupata da un esempio caricato in un oggetto Data.
+	 */
+	private long exampleSize = Double.BYTES + Integer.BYTES;
+
+	/**
+	 * Costruttore di classe. Verifica lo schema della selezione e ne legge i
+	 * valori distinti degli attributi discreti, il numero di tuple e la media
+	 * dell'attributo di classe.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set: la connessione al database
+	 *                               fallisce, la tabella è inesistente, ha meno di
+	 *                               due colonne o ha zero tuple, l’attributo
+	 *                               corrispondente all’ultima colonna non è
+	 *                               numerico.
+	 */
+	public RemoteTable(Selection selection) throws TrainingDataException {
+		this.selection = selection;
+		DatabaseSource.execute(db -> {
+			TableSchema tSchema = new TableSchema(db, selection);
+			Data.checkColumns(tSchema, selection);
+			for (Column c : tSchema)
+				columns.add(c);
+			if (columns.size() < 2)
+				throw new TrainingDataException("Less than two columns in the table");
+			Column last = columns.remove(columns.size() - 1);
+			if (!last.isNumber())
+				throw new TrainingDataException("Class attribute is not numeric");
+			classColumn = last.getColumnName();
+			TableData tData = new TableData(db);
+			numberOfExamples = tData.getNumberOfRows(selection, null);
+			if (numberOfExamples == 0)
+				throw new TrainingDataException("Empty table");
+			classMean = tData.getAverage(selection, classColumn);
+			dictionaries = new String[columns.size()][];
+			for (int i = 0; i < columns.size(); i++) {
+				Column c = columns.get(i);
+				if (c.isNumber()) {
+					explanatorySet.add(new ContinuousAttribute(c.getColumnName(), i));
+					exampleSize += Double.BYTES;
+				} else {
+					Set<String> values = new TreeSet<>();
+					for (Object value : tData.getDistinctColumnValues(selection, c))
+						values.add((String) value);
+					dictionaries[i] = values.toArray(new String[0]);
+					explanatorySet.add(new DiscreteAttribute(c.getColumnName(), i, values));
+					exampleSize += Integer.BYTES;
+				}
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Restituisce il valore del membro selection.
+	 * 
+	 * @return Porzione della tabella contenente il training set.
+	 */
+	public Selection getSelection() {
+		return selection;
+	}
+
+	/**
+	 * Restituisce il valore del membro numberOfExamples.
+	 * 
+	 * @return Cardinalità del training set.
+	 */
+	public int getNumberOfExamples() {
+		return numberOfExamples;
+	}
+
+	/**
+	 * Restituisce il valore del membro classMean.
+	 * 
+	 * @return Media dell'attributo di classe nel training set.
+	 */
+	public double getClassMean() {
+		return classMean;
+	}
+
+	/**
+	 * Restituisce il numero degli attributi indipendenti.
+	 * 
+	 * @return Numero degli attributi indipendenti.
+	 */
+	public int getNumberOfExplanatoryAttributes() {
+		return explanatorySet.size();
+	}
+
+	/**
+	 * Restituisce l'attributo indipendente indicizzato in input.
+	 * 
+	 * @param index Indice dell'attributo indipendente.
+	 * @return Attributo indipendente indicizzato in input.
+	 */
+	public Attribute getExplanatoryAttribute(int index) {
+		return explanatorySet.get(index);
+	}
+
+	/**
+	 * Restituisce il nome della colonna di un attributo indipendente.
+	 * 
+	 * @param attributeIndex Indice dell'attributo indipendente.
+	 * @return Nome della colonna.
+	 */
+	public String getColumnName(int attributeIndex) {
+		return columns.get(attributeIndex).getColumnName();
+	}
+
+	/**
+	 * Restituisce il valore di un attributo discreto corrispondente al codice in
+	 * input.
+	 * 
+	 * @param attributeIndex Indice dell'attributo discreto.
+	 * @param code           Codice del valore.
+	 * @return Valore dell'attributo.
+	 */
+	public String getDiscreteValue(int attributeIndex, int code) {
+		return dictionaries[attributeIndex][code];
+	}
+
+	/**
+	 * Restituisce il codice del valore in input di un attributo discreto.
+	 * 
+	 * @param attributeIndex Indice dell'attributo discreto.
+	 * @param value          Valore dell'attributo.
+	 * @return Codice del valore, o un valore negativo se il valore non era
+	 *         presente alla lettura dello schema.
+	 */
+	public int getDiscreteCode(int attributeIndex, String value) {
+		return Arrays.binarySearch(dictionaries[attributeIndex], value);
+	}
+
+	/**
+	 * Restituisce il numero di valori distinti di un attributo discreto.
+	 * 
+	 * @param attributeIndex Indice dell'attributo discreto.
+	 * @return Numero di valori distinti dell'attributo.
+	 */
+	public int getNumberOfDiscreteValues(int attributeIndex) {
+		return dictionaries[attributeIndex].length;
+	}
+
+	/**
+	 * Restituisce il numero massimo di tuple che possono essere caricate con
+	 * load(): la memoria occupata non deve superare la metà della memoria
+	 * massima della JVM, come in Data.fitsInMemory().
+	 * 
+	 * @return Numero massimo di tuple caricabili in memoria.
+	 */
+	public int getMemoryThreshold() {
+		return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 2 / exampleSize);
+	}
+
+	/**
+	 * Stima le soglie degli intervalli di un attributo continuo, calcolate dal
+	 * DBMS.
+	 * 
+	 * @param attributeIndex Indice dell'attributo continuo.
+	 * @param n              Numero massimo di intervalli.
+	 * @return Soglie in ordine crescente, esatte se i valori distinti non
+	 *         superano n.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nell'interrogazione.
+	 * @see TableData#getQuantiles(Selection, String, int)
+	 */
+	public double[] getCuts(int attributeIndex, int n) throws TrainingDataException {
+		String column = columns.get(attributeIndex).getColumnName();
+		return DatabaseSource.execute(db -> new TableData(db).getQuantiles(selection, column, n));
+	}
+
+	/**
+	 * Calcola, con un'unica interrogazione, le statistiche di split di un
+	 * attributo per ciascuno dei nodi in input.
+	 * 
+	 * @param nodes          Selezioni disgiunte delle tuple di ciascun nodo.
+	 * @param attributeIndex Indice dell'attributo.
+	 * @param cuts           Soglie degli intervalli se l'attributo è continuo;
+	 *                       null altrimenti.
+	 * @param shift          Valore sottratto all'attributo di classe prima delle
+	 *                       somme.
+	 * @param sink           Destinatario delle statistiche di ciascun gruppo.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nell'interrogazione.
+	 * @see TableData#scanSplitStatistics(Selection, List, Column, double[],
+	 *      String, double, AggregateSink)
+	 */
+	public void scanSplitStatistics(List<Selection> nodes, int attributeIndex, double[] cuts, double shift,
+			AggregateSink sink) throws TrainingDataException {
+		Column column = columns.get(attributeIndex);
+		DatabaseSource.execute(db -> {
+			new TableData(db).scanSplitStatistics(selection, nodes, column, cuts, classColumn, shift, sink);
+			return null;
+		});
+	}
+
+	/**
+	 * Carica in memoria le tuple della selezione in input, che restringe quella
+	 * del training set, senza memorizzarle nella copia locale. Gli attributi del
+	 * training set caricato hanno gli stessi indici di quelli della tabella.
+	 * 
+	 * @param node Selezione delle tuple da caricare.
+	 * @return Training set caricato.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione.
+	 */
+	public Data load(Selection node) throws TrainingDataException {
+		return new Data(new DatabaseSource(node, false));
+	}
+
+}
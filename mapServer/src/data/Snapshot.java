@@ -0,0 +1,516 @@
+package data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import database.Selection;
+
+/**
+ * Classe che modella la copia locale, in formato binario per colonne, di un
+ * training set letto dal database. Il file contiene un'intestazione con
+ * l'impronta dei dati da cui è stato ricavato, lo schema e i dizionari degli
+ * attributi discreti, seguita dalle colonne di valori primitivi allineate a 8
+ * byte, così che possano essere lette tramite mappatura in memoria. Se il
+ * training set è stato letto raggruppando le tuple identiche, l'ultima colonna
+ * contiene il peso di ciascun esempio.
+ */
+class Snapshot {
+
+	/**
+	 * Valore iniziale che identifica il formato del file.
+	 */
+	private static final int MAGIC = 0x52545332;
+
+	/**
+	 * Impronta dei dati della tabella da cui è stata ricavata la copia.
+	 */
+	private String fingerprint;
+
+	/**
+	 * Nomi degli attributi indipendenti.
+	 */
+	private String[] names;
+
+	/**
+	 * Nome dell'attributo di classe.
+	 */
+	private String className;
+
+	/**
+	 * Valori degli attributi continui; null per gli attributi discreti.
+	 */
+	private OffHeapColumn[] continuousValues;
+
+	/**
+	 * Codici dei valori degli attributi discreti; null per gli attributi
+	 * continui.
+	 */
+	private OffHeapColumn[] discreteValues;
+
+	/**
+	 * Valori distinti e ordinati degli attributi discreti; null per gli attributi
+	 * continui.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Valori dell'attributo di classe.
+	 */
+	private OffHeapColumn classValues;
+
+	/**
+	 * Pesi degli esempi; null se gli esempi non sono pesati.
+	 */
+	private OffHeapColumn weights;
+
+	/**
+	 * Indica se il file contiene la colonna dei pesi degli esempi.
+	 */
+	private boolean weighted;
+
+	/**
+	 * Numero di esempi memorizzati nel file.
+	 */
+	private int numberOfExamples;
+
+	/**
+	 * Posizione nel file della prima colonna.
+	 */
+	private long dataPosition;
+
+	/**
+	 * Directory delle copie locali dei training set.
+	 */
+	private static final String DIRECTORY = "snapshots";
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param fingerprint      Impronta dei dati della tabella.
+	 * @param names            Nomi degli attributi indipendenti.
+	 * @param className        Nome dell'attributo di classe.
+	 * @param continuousValues Valori degli attributi continui.
+	 * @param discreteValues   Codici dei valori degli attributi discreti.
+	 * @param dictionaries     Valori distinti degli attributi discreti.
+	 * @param classValues      Valori dell'attributo di classe.
+	 * @param weights          Pesi degli esempi, o null se non sono pesati.
+	 */
+	Snapshot(String fingerprint, String[] names, String className, OffHeapColumn[] continuousValues,
+			OffHeapColumn[] discreteValues, String[][] dictionaries, OffHeapColumn classValues,
+			OffHeapColumn weights) {
+		this.fingerprint = fingerprint;
+		this.names = names;
+		this.className = className;
+		this.continuousValues = continuousValues;
+		this.discreteValues = discreteValues;
+		this.dictionaries = dictionaries;
+		this.classValues = classValues;
+		this.weights = weights;
+		weighted = weights != null;
+		numberOfExamples = classValues.size();
+	}
+
+	/**
+	 * Costruttore di classe per la sola intestazione di un file: le colonne non
+	 * sono lette.
+	 * 
+	 * @param fingerprint      Impronta dei dati della tabella.
+	 * @param names            Nomi degli attributi indipendenti.
+	 * @param className        Nome dell'attributo di classe.
+	 * @param dictionaries     Valori distinti degli attributi discreti.
+	 * @param numberOfExamples Numero di esempi memorizzati nel file.
+	 * @param weighted         true se il file contiene i pesi degli esempi.
+	 * @param dataPosition     Posizione nel file della prima colonna.
+	 */
+	Snapshot(String fingerprint, String[] names, String className, String[][] dictionaries,
+			int numberOfExamples, boolean weighted, long dataPosition) {
+		this.fingerprint = fingerprint;
+		this.names = names;
+		this.className = className;
+		this.dictionaries = dictionaries;
+		this.numberOfExamples = numberOfExamples;
+		this.weighted = weighted;
+		this.dataPosition = dataPosition;
+	}
+
+	/**
+	 * Restituisce il percorso della copia locale del training set contenuto nella
+	 * selezione in input.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @return Percorso della copia locale.
+	 */
+	static Path path(Selection selection) {
+		return path(selection.toString());
+	}
+
+	/**
+	 * Restituisce il percorso della copia locale del training set letto dalla
+	 * sorgente con il nome in input. I nomi che contengono caratteri non ammessi
+	 * in un nome di file, come le selezioni di una parte della tabella, sono
+	 * distinti da un codice ricavato dal nome completo.
+	 * 
+	 * @param name Nome della sorgente del training set.
+	 * @return Percorso della copia locale.
+	 */
+	static Path path(String name) {
+		String file = name.replaceAll("[^A-Za-z0-9_.-]", "_");
+		if (!file.equals(name))
+			file += "-" + Integer.toHexString(name.hashCode());
+		return Paths.get(DIRECTORY, file + ".snapshot");
+	}
+
+	/**
+	 * Legge l'intestazione del file aperto sul canale in input, se è stato
+	 * ricavato da dati con l'impronta indicata.
+	 * 
+	 * @param channel     Canale del file.
+	 * @param fingerprint Impronta attuale dei dati della tabella.
+	 * @return Intestazione del file, senza colonne, o null se l'impronta è
+	 *         diversa.
+	 * @throws IOException Se si verificano errori di lettura o il file non è nel
+	 *                     formato atteso.
+	 */
+	static Snapshot readHeader(FileChannel channel, String fingerprint) throws IOException {
+		ByteBuffer prefix = ByteBuffer.allocate(8);
+		readFully(channel, prefix, 0);
+		if (prefix.getInt(0) != MAGIC)
+			throw new IOException("Not a snapshot file");
+		ByteBuffer header = ByteBuffer.allocate(prefix.getInt(4));
+		readFully(channel, header, 8);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array()));
+		if (!in.readUTF().equals(fingerprint))
+			return null;
+		int numberOfExamples = in.readInt();
+		boolean weighted = in.readBoolean();
+		String[] names = new String[in.readInt()];
+		String[][] dictionaries = new String[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = in.readUTF();
+			if (in.readBoolean()) {
+				dictionaries[i] = new String[in.readInt()];
+				for (int j = 0; j < dictionaries[i].length; j++)
+					dictionaries[i][j] = in.readUTF();
+			}
+		}
+		String className = in.readUTF();
+		return new Snapshot(fingerprint, names, className, dictionaries, numberOfExamples, weighted,
+				align(8 + header.capacity()));
+	}
+
+	/**
+	 * Legge la copia memorizzata nel file in input, se è stata ricavata da dati
+	 * con l'impronta indicata. Le colonne non sono copiate: sono mappate in
+	 * memoria in sola lettura dalle regioni del file che le contengono, e la
+	 * mappatura resta valida anche se il file è poi sostituito.
+	 * 
+	 * @param file        Percorso del file.
+	 * @param fingerprint Impronta attuale dei dati della tabella.
+	 * @return Copia letta dal file, o null se l'impronta è diversa.
+	 * @throws IOException Se si verificano errori di lettura o il file non è nel
+	 *                     formato atteso.
+	 */
+	static Snapshot read(Path file, String fingerprint) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Snapshot snapshot = readHeader(channel, fingerprint);
+			if (snapshot == null)
+				return null;
+			try {
+				snapshot.mapColumns(channel);
+			} catch (IOException e) {
+				snapshot.free();
+				throw e;
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Mappa le colonne del file aperto sul canale in input e ne verifica i codici
+	 * dei valori discreti e i pesi.
+	 * 
+	 * @param channel Canale del file.
+	 * @throws IOException Se il file termina prima del previsto o contiene valori
+	 *                     non validi.
+	 */
+	private void mapColumns(FileChannel channel) throws IOException {
+		int n = numberOfExamples;
+		continuousValues = new OffHeapColumn[dictionaries.length];
+		discreteValues = new OffHeapColumn[dictionaries.length];
+		long position = dataPosition;
+		for (int i = 0; i < dictionaries.length; i++)
+			if (dictionaries[i] == null) {
+				continuousValues[i] = mapColumn(channel, position, n, false);
+				position = align(position + n * 8L);
+			} else {
+				discreteValues[i] = mapColumn(channel, position, n, true);
+				position = align(position + n * 4L);
+				for (int j = 0; j < n; j++) {
+					int code = discreteValues[i].getInt(j);
+					if (code < 0 || code >= dictionaries[i].length)
+						throw new IOException("Corrupted snapshot file");
+				}
+			}
+		classValues = mapColumn(channel, position, n, false);
+		position = align(position + n * 8L);
+		if (weighted) {
+			weights = mapColumn(channel, position, n, true);
+			for (int j = 0; j < n; j++)
+				if (weights.getInt(j) < 1)
+					throw new IOException("Corrupted snapshot file");
+		}
+	}
+
+	/**
+	 * Libera le colonne mappate della copia.
+	 */
+	private void free() {
+		for (OffHeapColumn[] columns : new OffHeapColumn[][] { continuousValues, discreteValues })
+			if (columns != null)
+				for (OffHeapColumn column : columns)
+					if (column != null)
+						column.free();
+		if (classValues != null)
+			classValues.free();
+		if (weights != null)
+			weights.free();
+	}
+
+	/**
+	 * Scrive la copia nel file in input. Il file è prima scritto in un file
+	 * temporaneo con un nome univoco nella stessa directory e poi sostituito, così
+	 * che una lettura concorrente non trovi mai un file incompleto e scritture
+	 * concorrenti della stessa copia non si sovrascrivano a vicenda. Se la
+	 * scrittura fallisce, il file temporaneo è rimosso.
+	 * 
+	 * @param file Percorso del file.
+	 * @throws IOException Se si verificano errori di scrittura.
+	 */
+	void write(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				writeFully(channel, header());
+				for (int i = 0; i < names.length; i++)
+					if (continuousValues[i] != null)
+						continuousValues[i].write(channel);
+					else {
+						discreteValues[i].write(channel);
+						if (numberOfExamples % 2 != 0)
+							writeFully(channel, ByteBuffer.allocate(4));
+					}
+				classValues.write(channel);
+				if (weights != null)
+					weights.write(channel);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Codifica l'intestazione del file: codice identificativo, lunghezza, impronta,
+	 * numero di esempi, presenza dei pesi, schema e dizionari, completata con byte nulli fino
+	 * all'allineamento a 8 byte.
+	 * 
+	 * @return Buffer pronto per la scrittura dell'intestazione.
+	 * @throws IOException Se l'intestazione non può essere codificata.
+	 */
+	ByteBuffer header() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(fingerprint);
+		out.writeInt(numberOfExamples);
+		out.writeBoolean(weighted);
+		out.writeInt(names.length);
+		for (int i = 0; i < names.length; i++) {
+			out.writeUTF(names[i]);
+			out.writeBoolean(dictionaries[i] != null);
+			if (dictionaries[i] != null) {
+				out.writeInt(dictionaries[i].length);
+				for (String value : dictionaries[i])
+					out.writeUTF(value);
+			}
+		}
+		out.writeUTF(className);
+		out.flush();
+		ByteBuffer header = ByteBuffer.allocate((int) align(8 + bytes.size()));
+		header.putInt(MAGIC).putInt(bytes.size()).put(bytes.toByteArray());
+		header.position(header.capacity()).flip();
+		return header;
+	}
+
+	/**
+	 * Restituisce i nomi degli attributi indipendenti.
+	 * 
+	 * @return Nomi degli attributi indipendenti.
+	 */
+	String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * Restituisce il nome dell'attributo di classe.
+	 * 
+	 * @return Nome dell'attributo di classe.
+	 */
+	String getClassName() {
+		return className;
+	}
+
+	/**
+	 * Restituisce i valori degli attributi continui.
+	 * 
+	 * @return Valori degli attributi continui, null per quelli discreti.
+	 */
+	OffHeapColumn[] getContinuousValues() {
+		return continuousValues;
+	}
+
+	/**
+	 * Restituisce i codici dei valori degli attributi discreti.
+	 * 
+	 * @return Codici dei valori degli attributi discreti, null per quelli
+	 *         continui.
+	 */
+	OffHeapColumn[] getDiscreteValues() {
+		return discreteValues;
+	}
+
+	/**
+	 * Restituisce i valori distinti e ordinati degli attributi discreti.
+	 * 
+	 * @return Dizionari degli attributi discreti, null per quelli continui.
+	 */
+	String[][] getDictionaries() {
+		return dictionaries;
+	}
+
+	/**
+	 * Restituisce i valori dell'attributo di classe.
+	 * 
+	 * @return Valori dell'attributo di classe.
+	 */
+	OffHeapColumn getClassValues() {
+		return classValues;
+	}
+
+	/**
+	 * Restituisce i pesi degli esempi.
+	 * 
+	 * @return Pesi degli esempi, o null se non sono pesati.
+	 */
+	OffHeapColumn getWeights() {
+		return weights;
+	}
+
+	/**
+	 * Indica se il file contiene i pesi degli esempi.
+	 * 
+	 * @return true se gli esempi sono pesati.
+	 */
+	boolean isWeighted() {
+		return weighted;
+	}
+
+	/**
+	 * Restituisce il numero di esempi memorizzati nel file.
+	 * 
+	 * @return Numero di esempi.
+	 */
+	int getNumberOfExamples() {
+		return numberOfExamples;
+	}
+
+	/**
+	 * Restituisce la posizione nel file della prima colonna.
+	 * 
+	 * @return Posizione della prima colonna, allineata a 8 byte.
+	 */
+	long getDataPosition() {
+		return dataPosition;
+	}
+
+	/**
+	 * Arrotonda la posizione in input al multiplo di 8 successivo.
+	 * 
+	 * @param position Posizione nel file.
+	 * @return Posizione allineata a 8 byte.
+	 */
+	static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Legge dal canale, a partire dalla posizione indicata, i byte necessari a
+	 * riempire il buffer.
+	 * 
+	 * @param channel  Canale da cui leggere.
+	 * @param buffer   Buffer da riempire.
+	 * @param position Posizione di partenza nel file.
+	 * @throws IOException Se il file termina prima del previsto.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("Truncated snapshot file");
+			position += read;
+		}
+	}
+
+	/**
+	 * Scrive sul canale tutti i byte rimanenti del buffer.
+	 * 
+	 * @param channel Canale su cui scrivere.
+	 * @param buffer  Buffer da scrivere.
+	 * @throws IOException Se si verificano errori di scrittura.
+	 */
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Mappa in sola lettura una colonna dalla regione del file che la contiene.
+	 * 
+	 * @param channel  Canale del file.
+	 * @param position Posizione della colonna nel file.
+	 * @param size     Numero di valori della colonna.
+	 * @param discrete true per una colonna di interi, false per una di double.
+	 * @return Colonna mappata.
+	 * @throws IOException Se il file termina prima del previsto o la mappatura
+	 *                     fallisce.
+	 */
+	private static OffHeapColumn mapColumn(FileChannel channel, long position, int size, boolean discrete)
+			throws IOException {
+		checkSize(channel, position, (long) size * (discrete ? 4 : 8));
+		return new OffHeapColumn(channel, FileChannel.MapMode.READ_ONLY, position, size, discrete);
+	}
+
+	/**
+	 * Verifica che il file contenga la regione indicata.
+	 * 
+	 * @param channel  Canale del file.
+	 * @param position Posizione iniziale della regione.
+	 * @param size     Dimensione della regione.
+	 * @throws IOException Se il file termina prima della fine della regione.
+	 */
+	static void checkSize(FileChannel channel, long position, long size) throws IOException {
+		if (channel.size() < position + size)
+			throw new IOException("Truncated snapshot file");
+	}
+
+}
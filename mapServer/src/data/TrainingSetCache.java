@@ -0,0 +1,282 @@
+package data;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import database.Selection;
+
+/**
+ * Classe che mantiene i training set caricati dalle sessioni, indicizzati dalla
+ * selezione da cui sono letti, così che sessioni che acquisiscono la stessa
+ * selezione condividano un'unica istanza e un unico caricamento. Un training
+ * set condiviso non è mai ordinato: l'apprendimento opera su viste con una
+ * propria permutazione degli esempi. Ciascuna istanza conta le sessioni che la
+ * utilizzano; quando la memoria occupata supera il limite, sono scartate, dalla
+ * meno recente, le istanze che nessuna sessione utilizza. La cache e ciascuna
+ * sessione mantengono un riferimento all'istanza: le colonne di un'istanza
+ * scartata sono liberate non appena l'ultima sessione che la utilizza la
+ * rilascia e ne sono rilasciate tutte le viste, senza attendere il garbage
+ * collector.
+ * <p>
+ * Un training set mantenuto è restituito senza interrogare il DBMS per un
+ * intervallo di validità dall'ultima verifica: le modifiche alla tabella
+ * apportate in questo intervallo sono quindi visibili solo alla sua scadenza,
+ * o subito dopo una chiamata a invalidate(). Alla scadenza l'istanza è
+ * verificata confrontandone l'impronta con quella attuale della tabella, che
+ * il DBMS calcola leggendo l'intera tabella.
+ */
+public class TrainingSetCache {
+
+	/**
+	 * Training set condiviso, con il numero di sessioni che lo utilizzano.
+	 */
+	private static class Entry {
+
+		/**
+		 * Training set condiviso.
+		 */
+		private Data data;
+
+		/**
+		 * Nome della tabella da cui è letto il training set.
+		 */
+		private String table;
+
+		/**
+		 * Numero di sessioni che utilizzano il training set.
+		 */
+		private int references = 1;
+
+		/**
+		 * Istante, in millisecondi, dell'ultima verifica dell'impronta.
+		 */
+		private long validated = System.currentTimeMillis();
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param data  Training set condiviso.
+		 * @param table Nome della tabella da cui è letto il training set.
+		 */
+		Entry(Data data, String table) {
+			this.data = data;
+			this.table = table;
+		}
+
+	}
+
+	/**
+	 * Training set condivisi, indicizzati dalla forma canonica della selezione e
+	 * ordinati per accesso.
+	 */
+	private static Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Selezioni in corso di caricamento.
+	 */
+	private static Set<String> loading = new HashSet<>();
+
+	/**
+	 * Memoria, in byte, oltre la quale sono scartati i training set inutilizzati.
+	 */
+	private static long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * Memoria, in byte, occupata dai training set mantenuti.
+	 */
+	private static long memorySize = 0;
+
+	/**
+	 * Intervallo, in millisecondi, dopo il quale un training set mantenuto è
+	 * verificato prima di essere restituito.
+	 */
+	private static long validity = 60_000;
+
+	/**
+	 * Sovrascrive il costruttore di default avente visibilità pubblica.
+	 */
+	private TrainingSetCache() {
+	}
+
+	/**
+	 * Restituisce il training set contenuto nella tabella specificata in input e
+	 * ne registra l'utilizzo, che deve essere concluso con release(). Se la
+	 * tabella è già mantenuta e l'intervallo di validità non è scaduto,
+	 * restituisce l'istanza condivisa; scaduto l'intervallo, la restituisce solo
+	 * se la sua impronta non è cambiata. Se un'altra sessione sta caricando la
+	 * tabella, ne attende il caricamento. Se il DBMS non consente di calcolare
+	 * l'impronta, il training set è caricato e non condiviso.
+	 * 
+	 * @param tableName Nome della tabella contenente il training set.
+	 * @return Training set da non ordinare, condiviso con altre sessioni.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set o l'attesa viene interrotta.
+	 */
+	public static Data acquire(String tableName) throws TrainingDataException {
+		return acquire(new Selection(tableName));
+	}
+
+	/**
+	 * Restituisce il training set contenuto nella selezione specificata in input,
+	 * come acquire(String). Selezioni diverse della stessa tabella sono mantenute
+	 * come training set distinti.
+	 * 
+	 * @param selection Porzione della tabella contenente il training set.
+	 * @return Training set da non ordinare, condiviso con altre sessioni.
+	 * @throws TrainingDataException Se si verificano errori nell'acquisizione del
+	 *                               training set o l'attesa viene interrotta.
+	 */
+	public static Data acquire(Selection selection) throws TrainingDataException {
+		String key = selection.toString();
+		synchronized (TrainingSetCache.class) {
+			awaitLoading(key);
+			Entry entry = entries.get(key);
+			if (entry != null && System.currentTimeMillis() - entry.validated < validity) {
+				entry.references++;
+				entry.data.retain();
+				return entry.data;
+			}
+		}
+		String fingerprint = Data.fingerprint(selection);
+		if (fingerprint == null)
+			return new Data(selection, null);
+		synchronized (TrainingSetCache.class) {
+			awaitLoading(key);
+			Entry entry = entries.get(key);
+			if (entry != null && fingerprint.equals(entry.data.getFingerprint())) {
+				entry.validated = System.currentTimeMillis();
+				entry.references++;
+				entry.data.retain();
+				return entry.data;
+			}
+			loading.add(key);
+		}
+		Data data = null;
+		try {
+			data = new Data(selection, fingerprint);
+		} finally {
+			synchronized (TrainingSetCache.class) {
+				loading.remove(key);
+				if (data != null && data.getFingerprint() != null) {
+					data.retain();
+					retire(entries.put(key, new Entry(data, selection.getTable())));
+					memorySize += data.getMemorySize();
+					evict();
+				}
+				TrainingSetCache.class.notifyAll();
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Attende che si concluda il caricamento in corso della selezione indicata.
+	 * Va invocato mantenendo il lock della classe.
+	 * 
+	 * @param key Forma canonica della selezione.
+	 * @throws TrainingDataException Se l'attesa viene interrotta.
+	 */
+	private static void awaitLoading(String key) throws TrainingDataException {
+		try {
+			while (loading.contains(key))
+				TrainingSetCache.class.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TrainingDataException("Loading interrupted");
+		}
+	}
+
+	/**
+	 * Rimuove dal conteggio della memoria un training set non più mantenuto e ne
+	 * rilascia il riferimento della cache. Le sessioni che lo utilizzano
+	 * continuano a farlo finché non lo rilasciano.
+	 * 
+	 * @param entry Training set non più mantenuto, o null.
+	 */
+	private static void retire(Entry entry) {
+		if (entry != null) {
+			memorySize -= entry.data.getMemorySize();
+			entry.data.release();
+		}
+	}
+
+	/**
+	 * Scarta i training set mantenuti letti dalla tabella specificata in input,
+	 * così che la successiva acquisizione la legga nuovamente. Va invocato dopo
+	 * aver modificato la tabella, se la modifica deve essere visibile prima della
+	 * scadenza dell'intervallo di validità.
+	 * 
+	 * @param tableName Nome della tabella modificata.
+	 */
+	public static synchronized void invalidate(String tableName) {
+		Iterator<Entry> i = entries.values().iterator();
+		while (i.hasNext()) {
+			Entry entry = i.next();
+			if (entry.table.equals(tableName)) {
+				i.remove();
+				retire(entry);
+			}
+		}
+	}
+
+	/**
+	 * Conclude l'utilizzo di un training set restituito da acquire(),
+	 * rilasciandone il riferimento della sessione. Il training set resta
+	 * mantenuto finché la memoria lo consente; se non è mantenuto, le sue
+	 * colonne sono liberate non appena ne sono rilasciate anche tutte le viste.
+	 * 
+	 * @param data Training set di cui concludere l'utilizzo.
+	 */
+	public static synchronized void release(Data data) {
+		for (Entry entry : entries.values())
+			if (entry.data == data) {
+				entry.references--;
+				break;
+			}
+		data.release();
+		evict();
+	}
+
+	/**
+	 * Imposta la memoria oltre la quale sono scartati i training set inutilizzati.
+	 * 
+	 * @param bytes Memoria massima, in byte.
+	 */
+	public static synchronized void setMemoryBudget(long bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("Invalid memory budget");
+		memoryBudget = bytes;
+		evict();
+	}
+
+	/**
+	 * Imposta l'intervallo dopo il quale un training set mantenuto è verificato
+	 * prima di essere restituito; con 0 è verificato a ogni acquisizione.
+	 * 
+	 * @param millis Intervallo di validità, in millisecondi.
+	 */
+	public static synchronized void setValidity(long millis) {
+		if (millis < 0)
+			throw new IllegalArgumentException("Invalid validity interval");
+		validity = millis;
+	}
+
+	/**
+	 * Scarta, dal meno recente, i training set non utilizzati da alcuna sessione
+	 * finché la memoria occupata supera il limite.
+	 */
+	private static void evict() {
+		Iterator<Entry> i = entries.values().iterator();
+		while (memorySize > memoryBudget && i.hasNext()) {
+			Entry entry = i.next();
+			if (entry.references == 0) {
+				i.remove();
+				retire(entry);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package database;
+
+/**
+ * Interfaccia che riceve, un gruppo alla volta, le statistiche dell'attributo di
+ * classe calcolate dal DBMS per le tuple di un nodo dell'albero che hanno lo
+ * stesso valore, o ricadono nello stesso intervallo, di una colonna.
+ */
+public interface AggregateSink {
+
+	/**
+	 * Riceve le statistiche di un gruppo di tuple.
+	 * 
+	 * @param node     Indice del nodo a cui appartengono le tuple.
+	 * @param group    Valore della colonna non numerica, o indice Integer
+	 *                 dell'intervallo della colonna numerica.
+	 * @param count    Numero di tuple del gruppo.
+	 * @param sum      Somma degli scarti dell'attributo di classe.
+	 * @param squares  Somma dei quadrati degli scarti dell'attributo di classe.
+	 * @param minClass Valore minimo dell'attributo di classe.
+	 * @param maxClass Valore massimo dell'attributo di classe.
+	 * @param minValue Valore minimo della colonna numerica; NaN per le colonne
+	 *                 non numeriche.
+	 * @param maxValue Valore massimo della colonna numerica; NaN per le colonne
+	 *                 non numeriche.
+	 */
+	void add(int node, Object group, long count, double sum, double squares, double minClass, double maxClass,
+			double minValue, double maxValue);
+
+}
@@ -19,9 +19,10 @@ public class Column {
 	 * Costruttore di classe.
 	 * 
 	 * @param name Nome dell'attributo contenuto nella colonna.
-	 * @param type Tipo dell'attributo contenuto nella colonna.
+	 * @param type Tipo dell'attributo contenuto nella colonna: "number" o
+	 *             "string".
 	 */
-	Column(String name, String type) {
+	public Column(String name, String type) {
 		this.name = name;
 		this.type = type;
 	}
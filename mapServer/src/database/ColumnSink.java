@@ -0,0 +1,44 @@
+package database;
+
+import java.sql.SQLException;
+
+/**
+ * Interfaccia che riceve, una cella alla volta, i valori delle transazioni lette
+ * da una tabella del database, così che possano essere memorizzati direttamente
+ * nella rappresentazione finale senza creare oggetti intermedi.
+ */
+public interface ColumnSink {
+
+	/**
+	 * Riceve il valore di una colonna numerica.
+	 * 
+	 * @param row    Indice della transazione, nell'ordine di lettura.
+	 * @param column Indice della colonna nello schema della tabella.
+	 * @param value  Valore della colonna.
+	 * @throws SQLException Se il valore non può essere memorizzato.
+	 */
+	void setNumber(int row, int column, double value) throws SQLException;
+
+	/**
+	 * Riceve il valore di una colonna non numerica.
+	 * 
+	 * @param row    Indice della transazione, nell'ordine di lettura.
+	 * @param column Indice della colonna nello schema della tabella.
+	 * @param value  Valore della colonna.
+	 * @throws SQLException Se il valore non può essere memorizzato.
+	 */
+	void setString(int row, int column, String value) throws SQLException;
+
+	/**
+	 * Riceve il numero di tuple identiche rappresentate dalla transazione, quando
+	 * le tuple sono lette raggruppate.
+	 * 
+	 * @param row    Indice della transazione, nell'ordine di lettura.
+	 * @param weight Numero di tuple rappresentate dalla transazione.
+	 * @throws SQLException Se il destinatario non memorizza i pesi.
+	 */
+	default void setWeight(int row, int weight) throws SQLException {
+		throw new SQLException("Weighted transactions not supported");
+	}
+
+}
@@ -0,0 +1,257 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Classe che mantiene un insieme limitato di connessioni al database,
+ * riutilizzate tra richieste successive per evitare di stabilire una nuova
+ * connessione a ogni acquisizione di un training set. Le connessioni inattive
+ * sono verificate prima di essere riassegnate e chiuse se restano inutilizzate
+ * troppo a lungo.
+ */
+class ConnectionPool {
+
+	/**
+	 * Connessione inattiva, con l'istante in cui è stata restituita al pool.
+	 */
+	private static class IdleConnection {
+
+		/**
+		 * Connessione al database.
+		 */
+		private Connection connection;
+
+		/**
+		 * Istante, in millisecondi, in cui la connessione è stata restituita.
+		 */
+		private long since;
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param connection Connessione al database.
+		 * @param since      Istante in cui la connessione è stata restituita.
+		 */
+		IdleConnection(Connection connection, long since) {
+			this.connection = connection;
+			this.since = since;
+		}
+
+	}
+
+	/**
+	 * Stringa di connessione al database.
+	 */
+	private String url;
+
+	/**
+	 * Nome utente per l'accesso al database.
+	 */
+	private String user;
+
+	/**
+	 * Password di autenticazione per l'utente user.
+	 */
+	private String password;
+
+	/**
+	 * Numero massimo di connessioni aperte contemporaneamente.
+	 */
+	private int maxSize;
+
+	/**
+	 * Tempo, in millisecondi, dopo il quale una connessione inattiva è chiusa.
+	 */
+	private long idleTimeout;
+
+	/**
+	 * Tempo massimo, in secondi, per la verifica di una connessione inattiva.
+	 */
+	private int validationTimeout;
+
+	/**
+	 * Tempo massimo, in millisecondi, di attesa di una connessione quando tutte
+	 * sono in uso.
+	 */
+	private long borrowTimeout;
+
+	/**
+	 * Connessioni inattive, dalla più recente alla meno recente.
+	 */
+	private Deque<IdleConnection> idle = new ArrayDeque<>();
+
+	/**
+	 * Numero di connessioni aperte, inattive o in uso.
+	 */
+	private int open = 0;
+
+	/**
+	 * Costruttore di classe. Avvia la chiusura periodica delle connessioni
+	 * inattive.
+	 * 
+	 * @param url               Stringa di connessione al database.
+	 * @param user              Nome utente per l'accesso al database.
+	 * @param password          Password di autenticazione.
+	 * @param maxSize           Numero massimo di connessioni aperte.
+	 * @param idleTimeout       Tempo, in millisecondi, dopo il quale una
+	 *                          connessione inattiva è chiusa.
+	 * @param validationTimeout Tempo massimo, in secondi, per la verifica di una
+	 *                          connessione.
+	 * @param borrowTimeout     Tempo massimo, in millisecondi, di attesa di una
+	 *                          connessione.
+	 */
+	ConnectionPool(String url, String user, String password, int maxSize, long idleTimeout, int validationTimeout,
+			long borrowTimeout) {
+		if (maxSize < 1 || idleTimeout < 1 || validationTimeout < 0 || borrowTimeout < 0)
+			throw new IllegalArgumentException("Invalid connection pool limits");
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.idleTimeout = idleTimeout;
+		this.validationTimeout = validationTimeout;
+		this.borrowTimeout = borrowTimeout;
+		new Timer("connection-pool", true).schedule(new TimerTask() {
+
+			public void run() {
+				evictIdle();
+			}
+
+		}, idleTimeout, idleTimeout);
+	}
+
+	/**
+	 * Assegna una connessione al chiamante: la connessione inattiva più recente
+	 * che risulti ancora valida o, se non ve ne sono e il limite lo consente, una
+	 * nuova connessione. Altrimenti attende che una connessione sia restituita.
+	 * 
+	 * @return Connessione al database.
+	 * @throws DatabaseConnectionException Se la connessione non può essere
+	 *                                     stabilita o nessuna si libera entro
+	 *                                     borrowTimeout.
+	 */
+	Connection borrow() throws DatabaseConnectionException {
+		long deadline = System.currentTimeMillis() + borrowTimeout;
+		while (true) {
+			IdleConnection candidate = null;
+			synchronized (this) {
+				while (idle.isEmpty() && open >= maxSize) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						throw new DatabaseConnectionException("No database connection available");
+					try {
+						wait(remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new DatabaseConnectionException(e.toString());
+					}
+				}
+				if (!idle.isEmpty())
+					candidate = idle.pop();
+				else
+					open++;
+			}
+			if (candidate == null)
+				return connect();
+			if (isValid(candidate.connection))
+				return candidate.connection;
+			discard(candidate.connection);
+		}
+	}
+
+	/**
+	 * Restituisce al pool una connessione assegnata con borrow(). Le connessioni
+	 * chiuse o con una transazione non conclusa sono scartate.
+	 * 
+	 * @param connection Connessione da restituire.
+	 */
+	void release(Connection connection) {
+		boolean reusable;
+		try {
+			reusable = !connection.isClosed() && connection.getAutoCommit();
+		} catch (SQLException e) {
+			reusable = false;
+		}
+		if (!reusable) {
+			discard(connection);
+			return;
+		}
+		synchronized (this) {
+			idle.push(new IdleConnection(connection, System.currentTimeMillis()));
+			notify();
+		}
+	}
+
+	/**
+	 * Stabilisce una nuova connessione, già conteggiata tra quelle aperte.
+	 * 
+	 * @return Nuova connessione al database.
+	 * @throws DatabaseConnectionException Se la connessione fallisce.
+	 */
+	private Connection connect() throws DatabaseConnectionException {
+		try {
+			return DriverManager.getConnection(url, user, password);
+		} catch (SQLException e) {
+			synchronized (this) {
+				open--;
+				notify();
+			}
+			throw new DatabaseConnectionException(e.toString());
+		}
+	}
+
+	/**
+	 * Verifica che una connessione inattiva sia ancora utilizzabile.
+	 * 
+	 * @param connection Connessione da verificare.
+	 * @return true se la connessione risponde entro validationTimeout.
+	 */
+	private boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(validationTimeout);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Chiude una connessione, ignorando eventuali errori, e la rimuove dal
+	 * conteggio di quelle aperte.
+	 * 
+	 * @param connection Connessione da chiudere.
+	 */
+	private void discard(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			// la connessione è comunque abbandonata
+		}
+		synchronized (this) {
+			open--;
+			notify();
+		}
+	}
+
+	/**
+	 * Chiude le connessioni rimaste inattive per più di idleTimeout millisecondi.
+	 */
+	private void evictIdle() {
+		List<Connection> expired = new ArrayList<>();
+		synchronized (this) {
+			long limit = System.currentTimeMillis() - idleTimeout;
+			while (!idle.isEmpty() && idle.peekLast().since < limit)
+				expired.add(idle.removeLast().connection);
+		}
+		for (Connection connection : expired)
+			discard(connection);
+	}
+
+}
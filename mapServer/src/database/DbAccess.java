@@ -1,48 +1,57 @@
 package database;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 /**
- * Classe che realizza l'accesso alla base di dati.
+ * Classe che realizza l'accesso alla base di dati. Le connessioni sono prese in
+ * prestito da un pool condiviso e restituite alla chiusura.
+ * 
+ * La configurazione è letta dal file indicato dalla proprietà di sistema
+ * mapdb.config o dalla variabile d'ambiente MAPDB_CONFIG (per default
+ * mapdb.properties, se esiste) e può essere sovrascritta da variabili
+ * d'ambiente con prefisso MAPDB_: ad esempio la chiave pool.maxSize corrisponde
+ * a MAPDB_POOL_MAXSIZE. Le chiavi riconosciute sono server, port, database,
+ * user, password, pool.maxSize, pool.idleTimeout, pool.validationTimeout e
+ * pool.borrowTimeout, con i tempi espressi in secondi. Le chiavi driver e url,
+ * se indicate, sostituiscono il driver MySQL e l'indirizzo ricavato da server,
+ * port e database, ad esempio per accedere a un database incorporato. La
+ * chiave fingerprint.checksum, se true, fa calcolare l'impronta delle tabelle
+ * con CHECKSUM TABLE, che legge l'intera tabella ma rileva ogni modifica.
  */
 public class DbAccess {
 
 	/**
 	 * Driver per il database a cui si desidera accedere.
 	 */
-	private final String DRIVER_CLASS_NAME = "com.mysql.cj.jdbc.Driver";
+	private static final String DRIVER_CLASS_NAME = "com.mysql.cj.jdbc.Driver";
 
 	/**
 	 * Sottoprotocollo per la connessione alla base di dati.
 	 */
-	private final String DBMS = "jdbc:mysql";
+	private static final String DBMS = "jdbc:mysql";
 
 	/**
-	 * Identificativo del server su cui risiede la base di dati.
+	 * File di configurazione predefinito.
 	 */
-	private String SERVER = "localhost";
+	private static final String CONFIGURATION_FILE = "mapdb.properties";
 
 	/**
-	 * Nome della base di dati.
+	 * Pool condiviso delle connessioni al database, creato al primo accesso.
 	 */
-	private String DATABASE = "MapDB";
+	private static ConnectionPool pool;
 
 	/**
-	 * Porta su cui il DBMS accetta le connessioni.
+	 * Indica se l'impronta delle tabelle è calcolata con CHECKSUM TABLE.
 	 */
-	private final String PORT = "3306";
-
-	/**
-	 * Nome utente per l’accesso alla base di dati.
-	 */
-	private String USER_ID = "MapUser";
-
-	/**
-	 * Password di autenticazione per l’utente USER_ID.
-	 */
-	private String PASSWORD = "map";
+	private static boolean checksum;
 
 	/**
 	 * Attributo per la gestione di una connessione;
@@ -50,19 +59,13 @@ public class DbAccess {
 	private Connection conn;
 
 	/**
-	 * Carica il driver per la connessione al database e inizializza il membro conn.
+	 * Prende in prestito dal pool una connessione al database e inizializza il
+	 * membro conn.
 	 * 
 	 * @throws DatabaseConnectionException Se la connessione al database fallisce.
 	 */
 	public void initConnection() throws DatabaseConnectionException {
-		try {
-			Class.forName(DRIVER_CLASS_NAME);
-			String connectionString = DBMS + "://" + SERVER + ":" + PORT + "/" + DATABASE + "?user=" + USER_ID
-					+ "&password=" + PASSWORD + "&serverTimezone=UTC";
-			conn = DriverManager.getConnection(connectionString);
-		} catch (ClassNotFoundException | SQLException e) {
-			throw new DatabaseConnectionException(e.toString());
-		}
+		conn = getPool().borrow();
 	}
 
 	/**
@@ -75,12 +78,92 @@ public class DbAccess {
 	}
 
 	/**
-	 * Chiude la connessione riferita da conn.
+	 * Indica se l'impronta delle tabelle va calcolata con CHECKSUM TABLE, come
+	 * richiesto dalla chiave fingerprint.checksum della configurazione.
+	 * 
+	 * @return true se il checksum è abilitato, false altrimenti.
+	 */
+	boolean isChecksumEnabled() {
+		return checksum;
+	}
+
+	/**
+	 * Restituisce al pool la connessione riferita da conn.
 	 * 
-	 * @throws SQLException Se la chiusura della connessione fallisce.
+	 * @throws SQLException Se la restituzione della connessione fallisce.
 	 */
 	public void closeConnection() throws SQLException {
-		conn.close();
+		Connection c = conn;
+		conn = null;
+		if (c != null)
+			pool.release(c);
+	}
+
+	/**
+	 * Restituisce il pool condiviso delle connessioni, creandolo al primo
+	 * accesso a partire dalla configurazione.
+	 * 
+	 * @return Pool delle connessioni al database.
+	 * @throws DatabaseConnectionException Se il driver non è disponibile o la
+	 *                                     configurazione non è valida.
+	 */
+	private static synchronized ConnectionPool getPool() throws DatabaseConnectionException {
+		if (pool == null)
+			try {
+				Properties config = loadConfiguration();
+				Class.forName(config.getProperty("driver"));
+				String url = config.getProperty("url");
+				if (url.isEmpty())
+					url = DBMS + "://" + config.getProperty("server") + ":" + config.getProperty("port") + "/"
+							+ config.getProperty("database") + "?serverTimezone=UTC&useCursorFetch=true";
+				pool = new ConnectionPool(url, config.getProperty("user"), config.getProperty("password"),
+						Integer.parseInt(config.getProperty("pool.maxSize")),
+						Long.parseLong(config.getProperty("pool.idleTimeout")) * 1000,
+						Integer.parseInt(config.getProperty("pool.validationTimeout")),
+						Long.parseLong(config.getProperty("pool.borrowTimeout")) * 1000);
+				checksum = Boolean.parseBoolean(config.getProperty("fingerprint.checksum"));
+			} catch (ClassNotFoundException | IOException e) {
+				throw new DatabaseConnectionException(e.toString());
+			} catch (IllegalArgumentException e) {
+				throw new DatabaseConnectionException("Invalid database configuration: " + e.getMessage());
+			}
+		return pool;
+	}
+
+	/**
+	 * Legge la configurazione dell'accesso al database: valori predefiniti,
+	 * sovrascritti da quelli del file di configurazione e poi da quelli delle
+	 * variabili d'ambiente.
+	 * 
+	 * @return Configurazione dell'accesso al database.
+	 * @throws IOException Se il file di configurazione non può essere letto.
+	 */
+	private static Properties loadConfiguration() throws IOException {
+		Properties config = new Properties();
+		config.setProperty("driver", DRIVER_CLASS_NAME);
+		config.setProperty("url", "");
+		config.setProperty("server", "localhost");
+		config.setProperty("port", "3306");
+		config.setProperty("database", "MapDB");
+		config.setProperty("user", "MapUser");
+		config.setProperty("password", "map");
+		config.setProperty("pool.maxSize", "10");
+		config.setProperty("pool.idleTimeout", "300");
+		config.setProperty("pool.validationTimeout", "2");
+		config.setProperty("pool.borrowTimeout", "30");
+		config.setProperty("fingerprint.checksum", "false");
+		String fileName = System.getProperty("mapdb.config", System.getenv("MAPDB_CONFIG"));
+		Path file = Paths.get(fileName != null ? fileName : CONFIGURATION_FILE);
+		if (fileName != null || Files.exists(file))
+			try (InputStream in = new FileInputStream(file.toFile())) {
+				config.load(in);
+			}
+		for (String key : config.stringPropertyNames()) {
+			String value = System.getenv("MAPDB_" + key.toUpperCase().replace('.', '_'));
+			if (value != null)
+				config.setProperty(key, value);
+		}
+		return config;
 	}
 
 }
@@ -0,0 +1,310 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classe che modella la porzione di una tabella da cui leggere un training set:
+ * un sottoinsieme facoltativo delle colonne, l'ultima delle quali è l'attributo
+ * di classe, e un filtro facoltativo sulle tuple, espresso come congiunzione di
+ * confronti tra una colonna e un valore. I nomi della tabella e delle colonne
+ * sono verificati come identificatori e i valori sono passati al DBMS come
+ * parametri di un'interrogazione preparata, così che il testo ricevuto dal
+ * client non entri mai nel codice SQL.
+ */
+public class Selection {
+
+	/**
+	 * Confronto tra una colonna e un valore.
+	 */
+	private static class Condition {
+
+		/**
+		 * Nome della colonna.
+		 */
+		private String column;
+
+		/**
+		 * Operatore di confronto SQL.
+		 */
+		private String operator;
+
+		/**
+		 * Valore di confronto: un Double per i valori numerici, una String
+		 * altrimenti.
+		 */
+		private Object value;
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param column   Nome della colonna.
+		 * @param operator Operatore di confronto SQL.
+		 * @param value    Valore di confronto.
+		 */
+		Condition(String column, String operator, Object value) {
+			this.column = column;
+			this.operator = operator;
+			this.value = value;
+		}
+
+		/**
+		 * Restituisce il confronto in forma di stringa, con i valori non numerici
+		 * tra apici e gli apici al loro interno raddoppiati, così che il testo
+		 * identifichi un unico confronto.
+		 */
+		public String toString() {
+			return column + " " + operator + " "
+					+ (value instanceof String ? "'" + ((String) value).replace("'", "''") + "'" : value);
+		}
+
+	}
+
+	/**
+	 * Forma di un nome di tabella o di colonna ammesso.
+	 */
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	/**
+	 * Forma di un confronto: colonna, operatore e valore, eventualmente tra apici;
+	 * in un valore tra apici ciascun apice è raddoppiato.
+	 */
+	private static final Pattern CONDITION = Pattern
+			.compile("\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*(<=|>=|<>|!=|=|<|>)\\s*+(?:'((?:[^']|'')*)'|((?!').*?))\\s*");
+
+	/**
+	 * Nome della tabella.
+	 */
+	private String table;
+
+	/**
+	 * Colonne da leggere, l'ultima delle quali è l'attributo di classe; null per
+	 * leggere tutte le colonne della tabella.
+	 */
+	private List<String> columns;
+
+	/**
+	 * Confronti che le tuple da leggere devono soddisfare.
+	 */
+	private List<Condition> conditions = new ArrayList<>();
+
+	/**
+	 * Costruttore di classe. Seleziona tutte le colonne e tutte le tuple della
+	 * tabella.
+	 * 
+	 * @param table Nome della tabella.
+	 * @throws IllegalArgumentException Se il nome della tabella non è valido.
+	 */
+	public Selection(String table) {
+		checkIdentifier(table);
+		this.table = table;
+	}
+
+	/**
+	 * Costruttore di classe. Seleziona le colonne e le tuple indicate. Ciascun
+	 * confronto ha la forma "colonna operatore valore", con operatore tra =, &lt;&gt;,
+	 * !=, &lt;, &lt;=, &gt;, &gt;=; un valore tra apici è sempre trattato come
+	 * stringa, in cui un apice va scritto raddoppiato, un valore senza apici come
+	 * numero se ne ha la forma.
+	 * 
+	 * @param table      Nome della tabella.
+	 * @param columns    Colonne da leggere, l'ultima delle quali è l'attributo di
+	 *                   classe; null o vuoto per leggerle tutte.
+	 * @param conditions Confronti che le tuple devono soddisfare; null o vuoto per
+	 *                   leggerle tutte.
+	 * @throws IllegalArgumentException Se il nome della tabella, un nome di
+	 *                                  colonna o un confronto non è valido.
+	 */
+	public Selection(String table, String[] columns, String[] conditions) {
+		checkIdentifier(table);
+		this.table = table;
+		if (columns != null && columns.length > 0) {
+			this.columns = new ArrayList<>();
+			for (String column : columns) {
+				String name = column.trim();
+				if (!IDENTIFIER.matcher(name).matches())
+					throw new IllegalArgumentException("Invalid column name: " + column);
+				this.columns.add(name);
+			}
+			this.columns = Collections.unmodifiableList(this.columns);
+		}
+		if (conditions != null)
+			for (String condition : conditions) {
+				Matcher m = CONDITION.matcher(condition);
+				if (!m.matches())
+					throw new IllegalArgumentException("Invalid condition: " + condition);
+				String operator = m.group(2).equals("!=") ? "<>" : m.group(2);
+				Object value = m.group(3) != null ? m.group(3).replace("''", "'") : null;
+				if (value == null)
+					try {
+						value = Double.valueOf(m.group(4));
+					} catch (NumberFormatException e) {
+						value = m.group(4);
+					}
+				this.conditions.add(new Condition(m.group(1), operator, value));
+			}
+	}
+
+	/**
+	 * Costruttore di classe. Istanzia una copia della selezione in input.
+	 * 
+	 * @param source Selezione da copiare.
+	 */
+	private Selection(Selection source) {
+		table = source.table;
+		columns = source.columns;
+		conditions = new ArrayList<>(source.conditions);
+	}
+
+	/**
+	 * Verifica che il nome in input, ricevuto dal client, sia un identificatore
+	 * ammesso e possa quindi comparire nel codice SQL.
+	 * 
+	 * @param name Nome di una tabella o di una colonna.
+	 * @throws IllegalArgumentException Se il nome non è un identificatore valido.
+	 */
+	static void checkIdentifier(String name) {
+		if (name == null || !IDENTIFIER.matcher(name).matches())
+			throw new IllegalArgumentException("Invalid identifier: " + name);
+	}
+
+	/**
+	 * Restituisce una nuova selezione che aggiunge ai confronti di quella
+	 * corrente il confronto in input, generato dal server e non dal client.
+	 * 
+	 * @param column   Nome di una colonna della tabella.
+	 * @param operator Operatore di confronto SQL: =, &lt;=, &gt;.
+	 * @param value    Valore di confronto: un Double o una String.
+	 * @return Selezione ristretta alle tuple che soddisfano anche il confronto.
+	 */
+	public Selection and(String column, String operator, Object value) {
+		Selection selection = new Selection(this);
+		selection.conditions.add(new Condition(column, operator, value));
+		return selection;
+	}
+
+	/**
+	 * Restituisce il valore del membro table.
+	 * 
+	 * @return Nome della tabella.
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Restituisce il valore del membro columns.
+	 * 
+	 * @return Colonne da leggere, o null se vanno lette tutte.
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Restituisce i nomi delle colonne a cui fa riferimento la selezione, tra le
+	 * colonne da leggere e quelle dei confronti.
+	 * 
+	 * @return Nomi delle colonne indicate nella selezione.
+	 */
+	public List<String> getReferencedColumns() {
+		List<String> referenced = new ArrayList<>();
+		if (columns != null)
+			referenced.addAll(columns);
+		for (Condition c : conditions)
+			referenced.add(c.column);
+		return referenced;
+	}
+
+	/**
+	 * Indica se la selezione comprende l'intera tabella.
+	 * 
+	 * @return true se sono lette tutte le colonne e tutte le tuple.
+	 */
+	public boolean isWholeTable() {
+		return columns == null && conditions.isEmpty();
+	}
+
+	/**
+	 * Restituisce la clausola WHERE che unisce la condizione in input ai confronti
+	 * della selezione, con un parametro al posto di ciascun valore.
+	 * 
+	 * @param condition Condizione SQL generata dal server, o null.
+	 * @return Clausola WHERE, o stringa vuota se non vi sono condizioni.
+	 * @see #bind(PreparedStatement)
+	 */
+	String where(String condition) {
+		List<String> terms = new ArrayList<>();
+		if (condition != null)
+			terms.add("(" + condition + ")");
+		if (!conditions.isEmpty())
+			terms.add(conjunction());
+		return terms.isEmpty() ? "" : " WHERE " + String.join(" AND ", terms);
+	}
+
+	/**
+	 * Restituisce la congiunzione dei confronti della selezione, con un parametro
+	 * al posto di ciascun valore.
+	 * 
+	 * @return Condizione SQL, sempre vera se non vi sono confronti.
+	 * @see #bind(PreparedStatement, int)
+	 */
+	String conjunction() {
+		List<String> terms = new ArrayList<>();
+		for (Condition c : conditions)
+			terms.add(c.column + " " + c.operator + " ?");
+		return terms.isEmpty() ? "1 = 1" : String.join(" AND ", terms);
+	}
+
+	/**
+	 * Assegna ai parametri dell'interrogazione i valori dei confronti, nell'ordine
+	 * della clausola generata da where().
+	 * 
+	 * @param statement Interrogazione preparata.
+	 * @throws SQLException Se l'assegnazione di un parametro fallisce.
+	 */
+	void bind(PreparedStatement statement) throws SQLException {
+		bind(statement, 1);
+	}
+
+	/**
+	 * Assegna ai parametri dell'interrogazione, a partire da quello indicato, i
+	 * valori dei confronti, nell'ordine della condizione generata da
+	 * conjunction().
+	 * 
+	 * @param statement Interrogazione preparata.
+	 * @param index     Indice del primo parametro da assegnare.
+	 * @return Indice del parametro successivo all'ultimo assegnato.
+	 * @throws SQLException Se l'assegnazione di un parametro fallisce.
+	 */
+	int bind(PreparedStatement statement, int index) throws SQLException {
+		for (Condition c : conditions)
+			if (c.value instanceof Double)
+				statement.setDouble(index++, (Double) c.value);
+			else
+				statement.setString(index++, (String) c.value);
+		return index;
+	}
+
+	/**
+	 * Restituisce la selezione in una forma canonica, che identifica il training
+	 * set letto: due selezioni con la stessa forma leggono gli stessi dati. Poiché
+	 * i nomi sono identificatori e gli apici dei valori sono raddoppiati, la
+	 * forma distingue le colonne e i confronti di selezioni diverse.
+	 */
+	public String toString() {
+		String value = table;
+		if (columns != null)
+			value += Arrays.toString(columns.toArray());
+		if (!conditions.isEmpty())
+			value += conditions;
+		return value;
+	}
+
+}
@@ -1,12 +1,15 @@
 package database;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.LinkedList;
 import java.util.TreeSet;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 
 /**
  * Classe che modella l’insieme di transazioni collezionate in una tabella del
@@ -14,6 +17,12 @@ import java.sql.Statement;
  */
 public class TableData {
 
+	/**
+	 * Numero di tuple trasferite dal DBMS a ogni accesso al cursore della
+	 * interrogazione.
+	 */
+	private static final int FETCH_SIZE = 1000;
+
 	/**
 	 * Attributo DbAccess per l'accesso alla base di dati.
 	 */
@@ -29,48 +38,353 @@ public class TableData {
 	}
 
 	/**
-	 * Ricava lo schema della tabella specificata in input ed esegue una
-	 * interrogazione per estrarre le tuple distinte dalla tabella. Per ogni tupla
-	 * del resultset si crea un oggetto Example, il cui riferimento è inserito nella
-	 * lista restituita in output.
+	 * Esegue una interrogazione SQL per contare le tuple della tabella specificata
+	 * in input.
+	 * 
+	 * @param table Nome della tabella nel database.
+	 * @return Numero di tuple della tabella.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public int getNumberOfRows(String table) throws SQLException {
+		return getNumberOfRows(table, null);
+	}
+
+	/**
+	 * Esegue una interrogazione SQL per contare le tuple della tabella specificata
+	 * in input che soddisfano la condizione indicata.
+	 * 
+	 * @param table     Nome della tabella nel database.
+	 * @param condition Condizione SQL sulle tuple, o null per contarle tutte.
+	 * @return Numero di tuple della tabella che soddisfano la condizione.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public int getNumberOfRows(String table, String condition) throws SQLException {
+		return getNumberOfRows(new Selection(table), condition);
+	}
+
+	/**
+	 * Esegue una interrogazione SQL preparata per contare le tuple della
+	 * selezione specificata in input che soddisfano anche la condizione indicata.
+	 * 
+	 * @param selection Porzione della tabella da considerare.
+	 * @param condition Condizione SQL sulle tuple, o null.
+	 * @return Numero di tuple della selezione che soddisfano la condizione.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public int getNumberOfRows(Selection selection, String condition) throws SQLException {
+		try (PreparedStatement statement = db.getConnection()
+				.prepareStatement("SELECT COUNT(*) FROM " + selection.getTable() + selection.where(condition))) {
+			selection.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				rs.next();
+				return rs.getInt(1);
+			}
+		}
+	}
+
+	/**
+	 * Stima il numero di tuple della selezione specificata in input. Se la
+	 * selezione comprende tutte le tuple della tabella e il DBMS mantiene una
+	 * stima nei metadati della tabella, la restituisce senza leggerne i dati;
+	 * altrimenti conta le tuple che soddisfano i confronti della selezione.
+	 * 
+	 * @param selection Porzione della tabella da considerare.
+	 * @return Numero stimato di tuple della selezione.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public long getEstimatedNumberOfRows(Selection selection) throws SQLException {
+		if (!selection.where(null).isEmpty())
+			return getNumberOfRows(selection, null);
+		try (PreparedStatement statement = db.getConnection().prepareStatement("SELECT TABLE_ROWS FROM "
+				+ "information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+			statement.setString(1, selection.getTable());
+			try (ResultSet rs = statement.executeQuery()) {
+				if (rs.next()) {
+					long rows = rs.getLong(1);
+					if (!rs.wasNull())
+						return rows;
+				}
+			}
+		} catch (SQLException e) {
+			// il DBMS non mantiene la stima: le tuple sono contate
+		}
+		return getNumberOfRows(selection, null);
+	}
+
+	/**
+	 * Esegue una interrogazione SQL preparata per contare i gruppi di tuple
+	 * identiche, rispetto alle colonne della selezione specificata in input, che
+	 * soddisfano anche la condizione indicata.
+	 * 
+	 * @param selection Porzione della tabella da considerare.
+	 * @param condition Condizione SQL sulle tuple, o null.
+	 * @return Numero di tuple distinte della selezione che soddisfano la
+	 *         condizione.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public int getNumberOfGroups(Selection selection, String condition) throws SQLException {
+		String columns = columnList(new TableSchema(db, selection));
+		try (PreparedStatement statement = db.getConnection().prepareStatement("SELECT COUNT(*) FROM (SELECT 1 FROM "
+				+ selection.getTable() + selection.where(condition) + " GROUP BY " + columns + ") g")) {
+			selection.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				rs.next();
+				return rs.getInt(1);
+			}
+		}
+	}
+
+	/**
+	 * Calcola un'impronta dei dati della tabella, che cambia al variare dello
+	 * schema o del contenuto, senza trasferire le tuple. Lo schema è unito
+	 * all'istante dell'ultima modifica registrato in information_schema.TABLES
+	 * e al massimo valore della chiave primaria intera o, in sua assenza, al
+	 * numero di tuple. Se il DBMS non registra l'istante dell'ultima modifica,
+	 * come InnoDB dopo un riavvio del server, l'impronta cambia solo con gli
+	 * inserimenti e le cancellazioni che alterano la chiave massima o il numero
+	 * di tuple: se occorre rilevare ogni modifica, la chiave
+	 * fingerprint.checksum della configurazione di DbAccess fa unire allo schema
+	 * il checksum calcolato con CHECKSUM TABLE, che richiede la lettura
+	 * dell'intera tabella da parte del DBMS.
+	 * 
+	 * @param table Nome della tabella nel database.
+	 * @return Impronta dei dati della tabella, o null se il checksum è
+	 *         abilitato e il DBMS non lo fornisce.
+	 * @throws SQLException             Se si verificano errori nella lettura dello
+	 *                                  schema o nel conteggio delle tuple.
+	 * @throws IllegalArgumentException Se il nome della tabella non è un
+	 *                                  identificatore valido.
+	 */
+	public String getFingerprint(String table) throws SQLException {
+		Selection.checkIdentifier(table);
+		StringBuilder fingerprint = new StringBuilder();
+		for (Column c : new TableSchema(db, table))
+			fingerprint.append(c.getColumnName()).append(c.isNumber() ? " number," : " string,");
+		String version = db.isChecksumEnabled() ? getChecksum(table) : getVersion(table);
+		return version != null ? fingerprint.append(version).toString() : null;
+	}
+
+	/**
+	 * Restituisce l'istante dell'ultima modifica della tabella unito al massimo
+	 * valore della chiave primaria intera o, in sua assenza, al numero di tuple.
+	 * 
+	 * @param table Nome della tabella nel database, già verificato come
+	 *              identificatore.
+	 * @return Versione della tabella in forma di stringa; l'istante è null se il
+	 *         DBMS non lo registra.
+	 * @throws SQLException Se si verificano errori nella lettura della chiave
+	 *                      massima o nel conteggio delle tuple.
+	 */
+	private String getVersion(String table) throws SQLException {
+		String updated = null;
+		try (PreparedStatement statement = db.getConnection().prepareStatement("SELECT UPDATE_TIME FROM "
+				+ "information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+			statement.setString(1, table);
+			try (ResultSet rs = statement.executeQuery()) {
+				if (rs.next())
+					updated = rs.getString(1);
+			}
+		} catch (SQLException e) {
+			// il DBMS non registra l'istante dell'ultima modifica
+		}
+		String key = getIntegerPrimaryKey(table);
+		String query = key != null ? "SELECT MAX(" + key + ") FROM " + table : "SELECT COUNT(*) FROM " + table;
+		try (Statement statement = db.getConnection().createStatement();
+				ResultSet rs = statement.executeQuery(query)) {
+			rs.next();
+			return "updated " + updated + (key != null ? " max " : " rows ") + rs.getString(1);
+		}
+	}
+
+	/**
+	 * Restituisce il checksum del contenuto della tabella calcolato dal DBMS.
+	 * 
+	 * @param table Nome della tabella nel database, già verificato come
+	 *              identificatore.
+	 * @return Checksum in forma di stringa, o null se il DBMS non lo fornisce.
+	 */
+	private String getChecksum(String table) {
+		try (Statement statement = db.getConnection().createStatement();
+				ResultSet rs = statement.executeQuery("CHECKSUM TABLE " + table)) {
+			String checksum = rs.next() ? rs.getString(2) : null;
+			return checksum != null ? "checksum " + checksum : null;
+		} catch (SQLException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Suddivide la tabella in al più n partizioni disgiunte, leggibili in modo
+	 * indipendente. Se la tabella ha una chiave primaria intera composta da una
+	 * sola colonna, ciascuna partizione è un intervallo di uguale ampiezza dei
+	 * valori della chiave; altrimenti la tabella costituisce un'unica partizione.
+	 * 
+	 * @param table Nome della tabella nel database.
+	 * @param n     Numero massimo di partizioni.
+	 * @return Condizioni SQL che individuano le partizioni, ordinate per valore
+	 *         della chiave; l'unica partizione dell'intera tabella è indicata da
+	 *         null.
+	 * @throws SQLException             Se si verificano errori nell'esecuzione
+	 *                                  della query.
+	 * @throws IllegalArgumentException Se il nome della tabella non è un
+	 *                                  identificatore valido.
+	 */
+	public List<String> getPartitions(String table, int n) throws SQLException {
+		Selection.checkIdentifier(table);
+		List<String> partitions = new ArrayList<>();
+		String key = n > 1 ? getIntegerPrimaryKey(table) : null;
+		if (key != null) {
+			long min;
+			long max;
+			boolean empty;
+			try (Statement statement = db.getConnection().createStatement();
+					ResultSet rs = statement.executeQuery("SELECT MIN(" + key + "), MAX(" + key + ") FROM " + table)) {
+				rs.next();
+				min = rs.getLong(1);
+				max = rs.getLong(2);
+				empty = rs.wasNull();
+			}
+			if (!empty && max - min >= 0) {
+				long width = (max - min) / n + 1;
+				for (int i = 0; i < n && min + i * width <= max; i++) {
+					long low = min + i * width;
+					if (i == n - 1 || low + width > max)
+						partitions.add(key + " >= " + low);
+					else
+						partitions.add(key + " >= " + low + " AND " + key + " < " + (low + width));
+				}
+			}
+		}
+		if (partitions.isEmpty())
+			partitions.add(null);
+		return partitions;
+	}
+
+	/**
+	 * Restituisce il nome della chiave primaria della tabella, se è composta da
+	 * una sola colonna di tipo intero.
 	 * 
 	 * @param table Nome della tabella nel database.
-	 * @return Lista di transazioni collezionate nella tabella.
+	 * @return Nome della colonna chiave, o null se la tabella non ha una chiave
+	 *         primaria intera composta da una sola colonna.
+	 * @throws SQLException Se si verificano errori nella lettura dei metadati.
+	 */
+	private String getIntegerPrimaryKey(String table) throws SQLException {
+		DatabaseMetaData meta = db.getConnection().getMetaData();
+		String key = null;
+		int columns = 0;
+		try (ResultSet rs = meta.getPrimaryKeys(null, null, table)) {
+			while (rs.next()) {
+				key = rs.getString("COLUMN_NAME");
+				columns++;
+			}
+		}
+		if (columns != 1)
+			return null;
+		int type;
+		try (ResultSet rs = meta.getColumns(null, null, table, key)) {
+			type = rs.next() ? rs.getInt("DATA_TYPE") : Types.OTHER;
+		}
+		if (type == Types.TINYINT || type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT)
+			return key;
+		return null;
+	}
+
+	/**
+	 * Ricava lo schema della tabella specificata in input ed esegue una
+	 * interrogazione per estrarre le tuple dalla tabella che soddisfano la
+	 * condizione indicata. Le tuple sono lette tramite un cursore, FETCH_SIZE alla
+	 * volta, senza trasferire in memoria l'intero resultset; il valore di ogni
+	 * colonna è passato a sink, nell'ordine di lettura.
+	 * 
+	 * @param table     Nome della tabella nel database.
+	 * @param condition Condizione SQL sulle tuple, o null per leggerle tutte.
+	 * @param sink      Destinatario dei valori di ciascuna tupla.
+	 * @return Numero di tuple lette.
 	 * @throws SQLException      Se si verificano errori nell'esecuzione della
-	 *                           query.
+	 *                           query o sink rifiuta un valore.
 	 * @throws EmptySetException Se il resultset è vuoto.
 	 */
-	public List<Example> getTransazioni(String table) throws SQLException, EmptySetException {
-		LinkedList<Example> transSet = new LinkedList<>();
-		TableSchema tSchema = new TableSchema(db, table);
-		String query = "SELECT ";
-		for (int i = 0; i < tSchema.getNumberOfAttributes(); i++) {
-			Column c = tSchema.getColumn(i);
-			if (i > 0)
-				query += ",";
-			query += c.getColumnName();
-		}
-		if (tSchema.getNumberOfAttributes() == 0)
+	public int scanTransazioni(String table, String condition, ColumnSink sink)
+			throws SQLException, EmptySetException {
+		return scanTransazioni(new Selection(table), condition, false, sink);
+	}
+
+	/**
+	 * Ricava lo schema della selezione specificata in input ed esegue una
+	 * interrogazione preparata per estrarre, dalle tuple della selezione che
+	 * soddisfano anche la condizione indicata, le sole colonne selezionate. Se
+	 * grouped è true, le tuple identiche sono raggruppate dal DBMS e ciascun
+	 * gruppo è letto una sola volta: dopo i valori delle colonne, sink riceve il
+	 * numero di tuple del gruppo.
+	 * 
+	 * @param selection Porzione della tabella da leggere.
+	 * @param condition Condizione SQL sulle tuple, o null.
+	 * @param grouped   true per leggere le tuple raggruppate.
+	 * @param sink      Destinatario dei valori di ciascuna tupla.
+	 * @return Numero di tuple, o di gruppi, letti.
+	 * @throws SQLException      Se si verificano errori nell'esecuzione della
+	 *                           query, un valore numerico è assente o sink
+	 *                           rifiuta un valore.
+	 * @throws EmptySetException Se il resultset è vuoto.
+	 * @see #scanTransazioni(String, String, ColumnSink)
+	 */
+	public int scanTransazioni(Selection selection, String condition, boolean grouped, ColumnSink sink)
+			throws SQLException, EmptySetException {
+		TableSchema tSchema = new TableSchema(db, selection);
+		int columns = tSchema.getNumberOfAttributes();
+		if (columns == 0)
 			throw new SQLException();
-		query += (" FROM " + table);
-		Statement statement = db.getConnection().createStatement();
-		ResultSet rs = statement.executeQuery(query);
-		boolean empty = true;
-		while (rs.next()) {
-			empty = false;
-			Example currentTuple = new Example();
-			for (int i = 0; i < tSchema.getNumberOfAttributes(); i++)
-				if (tSchema.getColumn(i).isNumber())
-					currentTuple.add(rs.getDouble(i + 1));
-				else
-					currentTuple.add(rs.getString(i + 1));
-			transSet.add(currentTuple);
-		}
-		rs.close();
-		statement.close();
-		if (empty)
+		boolean[] number = new boolean[columns];
+		for (int i = 0; i < columns; i++)
+			number[i] = tSchema.getColumn(i).isNumber();
+		String columnList = columnList(tSchema);
+		StringBuilder query = new StringBuilder("SELECT ").append(columnList);
+		if (grouped)
+			query.append(",COUNT(*)");
+		query.append(" FROM ").append(selection.getTable()).append(selection.where(condition));
+		if (grouped)
+			query.append(" GROUP BY ").append(columnList);
+		int rows = 0;
+		try (PreparedStatement statement = db.getConnection().prepareStatement(query.toString(),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			statement.setFetchSize(FETCH_SIZE);
+			selection.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					for (int i = 0; i < columns; i++)
+						if (number[i]) {
+							double value = rs.getDouble(i + 1);
+							if (rs.wasNull())
+								throw new SQLException("Missing value");
+							sink.setNumber(rows, i, value);
+						} else
+							sink.setString(rows, i, rs.getString(i + 1));
+					if (grouped)
+						sink.setWeight(rows, rs.getInt(columns + 1));
+					rows++;
+				}
+			}
+		}
+		if (rows == 0)
 			throw new EmptySetException();
-		return transSet;
+		return rows;
+	}
+
+	/**
+	 * Restituisce i nomi delle colonne dello schema, separati da virgole.
+	 * 
+	 * @param tSchema Schema della tabella.
+	 * @return Elenco delle colonne, nell'ordine dello schema.
+	 */
+	private static String columnList(TableSchema tSchema) {
+		StringBuilder columns = new StringBuilder();
+		for (Column c : tSchema) {
+			if (columns.length() > 0)
+				columns.append(",");
+			columns.append(c.getColumnName());
+		}
+		return columns.toString();
 	}
 
 	/**
@@ -84,19 +398,167 @@ public class TableData {
 	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
 	 */
 	public Set<Object> getDistinctColumnValues(String table, Column column) throws SQLException {
+		return getDistinctColumnValues(new Selection(table), column);
+	}
+
+	/**
+	 * Esegue una interrogazione SQL preparata per estrarre i valori distinti di
+	 * column nelle tuple della selezione specificata in input.
+	 * 
+	 * @param selection Porzione della tabella da considerare.
+	 * @param column    Colonna della tabella.
+	 * @return Insieme di valori distinti, ordinati in modo ascendente, che
+	 *         l’attributo identificato da column assume nella selezione.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public Set<Object> getDistinctColumnValues(Selection selection, Column column) throws SQLException {
 		Set<Object> valuesSet = new TreeSet<>();
-		String query = "SELECT DISTINCT " + column.getColumnName() + " FROM " + table + " ORDER BY " + column.getColumnName() + ";";
-		Statement statement = db.getConnection().createStatement();
-		ResultSet rs = statement.executeQuery(query);
-		if (column.isNumber())
-			while (rs.next())
-				valuesSet.add(rs.getDouble(1));
-		else
-			while (rs.next())
-				valuesSet.add(rs.getString(1));
-		rs.close();
-		statement.close();
+		try (PreparedStatement statement = db.getConnection().prepareStatement("SELECT DISTINCT "
+				+ column.getColumnName() + " FROM " + selection.getTable() + selection.where(null))) {
+			selection.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next())
+					if (column.isNumber())
+						valuesSet.add(rs.getDouble(1));
+					else if (rs.getString(1) != null)
+						valuesSet.add(rs.getString(1));
+			}
+		}
 		return valuesSet;
 	}
 
+	/**
+	 * Calcola la media di una colonna numerica nelle tuple della selezione
+	 * specificata in input.
+	 * 
+	 * @param selection Porzione della tabella da considerare.
+	 * @param column    Nome della colonna numerica.
+	 * @return Media della colonna, 0 se la selezione è vuota.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public double getAverage(Selection selection, String column) throws SQLException {
+		try (PreparedStatement statement = db.getConnection()
+				.prepareStatement("SELECT AVG(" + column + ") FROM " + selection.getTable() + selection.where(null))) {
+			selection.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				rs.next();
+				return rs.getDouble(1);
+			}
+		}
+	}
+
+	/**
+	 * Stima le soglie che suddividono i valori di una colonna numerica, nelle
+	 * tuple della selezione in input, in al più n intervalli di frequenza
+	 * approssimativamente uguale: ogni valore appartiene all'intervallo della
+	 * prima soglia non inferiore e l'ultima soglia è il valore massimo. Se i
+	 * valori distinti non superano n, le soglie sono esattamente i valori
+	 * distinti; altrimenti sono i massimi dei gruppi calcolati dal DBMS con
+	 * NTILE. In entrambi i casi sono trasferite al più n + 1 tuple. I valori
+	 * mancanti sono ignorati.
+	 * 
+	 * @param selection Porzione della tabella da considerare.
+	 * @param column    Nome della colonna numerica.
+	 * @param n         Numero massimo di intervalli.
+	 * @return Soglie in ordine crescente.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query.
+	 */
+	public double[] getQuantiles(Selection selection, String column, int n) throws SQLException {
+		String from = " FROM " + selection.getTable() + selection.where(column + " IS NOT NULL");
+		TreeSet<Double> cuts = new TreeSet<>();
+		try (PreparedStatement statement = db.getConnection()
+				.prepareStatement("SELECT DISTINCT " + column + from + " ORDER BY " + column)) {
+			statement.setMaxRows(n + 1);
+			selection.bind(statement);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next())
+					cuts.add(rs.getDouble(1));
+			}
+		}
+		if (cuts.size() > n) {
+			cuts.clear();
+			try (PreparedStatement statement = db.getConnection().prepareStatement("SELECT MAX(v) FROM (SELECT "
+					+ column + " AS v, NTILE(" + n + ") OVER (ORDER BY " + column + ") AS tile" + from
+					+ ") q GROUP BY tile")) {
+				selection.bind(statement);
+				try (ResultSet rs = statement.executeQuery()) {
+					while (rs.next())
+						cuts.add(rs.getDouble(1));
+				}
+			}
+		}
+		double[] values = new double[cuts.size()];
+		int i = 0;
+		for (double cut : cuts)
+			values[i++] = cut;
+		return values;
+	}
+
+	/**
+	 * Esegue una sola interrogazione preparata per calcolare, per ciascun nodo in
+	 * input e ciascun valore, o intervallo di valori, di column, il numero di
+	 * tuple e le statistiche dell'attributo di classe, trasferendo a sink solo
+	 * gli aggregati. Ogni nodo è una selezione che restringe quella in input; le
+	 * tuple soddisfano al più un nodo. Gli intervalli di una colonna numerica
+	 * sono delimitati da cuts come in getQuantiles(): ogni valore appartiene
+	 * all'intervallo della prima soglia non inferiore, o all'ultimo. Come nella
+	 * lettura delle tuple con scanTransazioni(), un valore mancante di column o
+	 * dell'attributo di classe in una tupla di un nodo è rifiutato.
+	 * 
+	 * @param selection   Porzione della tabella contenente il training set.
+	 * @param nodes       Selezioni delle tuple di ciascun nodo, disgiunte.
+	 * @param column      Colonna di cui raggruppare i valori.
+	 * @param cuts        Soglie degli intervalli se la colonna è numerica; null
+	 *                    altrimenti.
+	 * @param classColumn Nome della colonna dell'attributo di classe.
+	 * @param shift       Valore sottratto all'attributo di classe prima delle
+	 *                    somme.
+	 * @param sink        Destinatario delle statistiche di ciascun gruppo.
+	 * @throws SQLException Se si verificano errori nell'esecuzione della query o
+	 *                      un valore è mancante.
+	 */
+	public void scanSplitStatistics(Selection selection, List<Selection> nodes, Column column, double[] cuts,
+			String classColumn, double shift, AggregateSink sink) throws SQLException {
+		String name = column.getColumnName();
+		StringBuilder query = new StringBuilder(
+				"SELECT node, grp, COUNT(*), SUM(d), SUM(d * d), MIN(y), MAX(y), COUNT(y)");
+		if (cuts != null)
+			query.append(", MIN(v), MAX(v)");
+		query.append(" FROM (SELECT CASE");
+		for (int i = 0; i < nodes.size(); i++)
+			query.append(" WHEN ").append(nodes.get(i).conjunction()).append(" THEN ").append(i);
+		query.append(" END AS node, ");
+		if (cuts == null)
+			query.append(name);
+		else {
+			query.append("CASE WHEN ").append(name).append(" IS NULL THEN -1");
+			for (int i = 0; i < cuts.length - 1; i++)
+				query.append(" WHEN ").append(name).append(" <= ? THEN ").append(i);
+			query.append(" ELSE ").append(cuts.length - 1).append(" END");
+		}
+		query.append(" AS grp, ").append(classColumn).append(" - ? AS d, ").append(classColumn).append(" AS y, ")
+				.append(name).append(" AS v FROM ").append(selection.getTable()).append(selection.where(null))
+				.append(") q WHERE node IS NOT NULL GROUP BY node, grp");
+		try (PreparedStatement statement = db.getConnection().prepareStatement(query.toString())) {
+			int index = 1;
+			for (Selection node : nodes)
+				index = node.bind(statement, index);
+			if (cuts != null)
+				for (int i = 0; i < cuts.length - 1; i++)
+					statement.setDouble(index++, cuts[i]);
+			statement.setDouble(index++, shift);
+			selection.bind(statement, index);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					Object group = cuts != null ? (Object) rs.getInt(2) : rs.getString(2);
+					if (group == null || group.equals(-1) || rs.getLong(8) != rs.getLong(3))
+						throw new SQLException("Missing value");
+					sink.add(rs.getInt(1), group, rs.getLong(3), rs.getDouble(4), rs.getDouble(5), rs.getDouble(6),
+							rs.getDouble(7), cuts != null ? rs.getDouble(9) : Double.NaN,
+							cuts != null ? rs.getDouble(10) : Double.NaN);
+				}
+			}
+		}
+	}
+
 }
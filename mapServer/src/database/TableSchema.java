@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -19,6 +21,12 @@ public class TableSchema implements Iterable<Column> {
 	 */
 	private List<Column> tableSchema = new ArrayList<>();
 
+	/**
+	 * Nomi di tutte le colonne della tabella, di qualunque tipo, senza
+	 * distinzione tra maiuscole e minuscole.
+	 */
+	private Set<String> tableColumns = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
 	/**
 	 * Costruttore di classe. Modella la tabella del database specificata in input.
 	 * 
@@ -27,6 +35,19 @@ public class TableSchema implements Iterable<Column> {
 	 * @throws SQLException Se si verificano errori nel modellare la tabella.
 	 */
 	public TableSchema(DbAccess db, String tableName) throws SQLException {
+		this(db, new Selection(tableName));
+	}
+
+	/**
+	 * Costruttore di classe. Modella le colonne della selezione in input,
+	 * nell'ordine indicato dalla selezione; se la selezione non indica colonne,
+	 * modella l'intera tabella. Le colonne di tipo non supportato sono escluse.
+	 * 
+	 * @param db        Oggetto DbAccess per l'accesso al database.
+	 * @param selection Porzione della tabella da modellare.
+	 * @throws SQLException Se si verificano errori nel modellare la tabella.
+	 */
+	public TableSchema(DbAccess db, Selection selection) throws SQLException {
 		HashMap<String, String> mapSQL_JAVATypes = new HashMap<>();
 		mapSQL_JAVATypes.put("CHAR", "string");
 		mapSQL_JAVATypes.put("VARCHAR", "string");
@@ -39,12 +60,32 @@ public class TableSchema implements Iterable<Column> {
 		mapSQL_JAVATypes.put("DOUBLE", "number");
 		Connection con = db.getConnection();
 		DatabaseMetaData meta = con.getMetaData();
-		ResultSet res = meta.getColumns(null, null, tableName, null);
-		while (res.next())
+		ResultSet res = meta.getColumns(null, null, selection.getTable(), null);
+		while (res.next()) {
+			tableColumns.add(res.getString("COLUMN_NAME"));
 			if (mapSQL_JAVATypes.containsKey(res.getString("TYPE_NAME")))
 				tableSchema.add(
 						new Column(res.getString("COLUMN_NAME"), mapSQL_JAVATypes.get(res.getString("TYPE_NAME"))));
+		}
 		res.close();
+		if (selection.getColumns() != null) {
+			List<Column> projection = new ArrayList<>();
+			for (String name : selection.getColumns())
+				for (Column c : tableSchema)
+					if (c.getColumnName().equalsIgnoreCase(name))
+						projection.add(c);
+			tableSchema = projection;
+		}
+	}
+
+	/**
+	 * Verifica se la tabella contiene la colonna indicata, di qualunque tipo.
+	 * 
+	 * @param name Nome della colonna.
+	 * @return true se la colonna appartiene alla tabella.
+	 */
+	public boolean hasColumn(String name) {
+		return tableColumns.contains(name);
 	}
 
 	/**
@@ -2,6 +2,7 @@ package mapServer;
 
 import java.io.IOException;
 import server.MultiServer;
+import server.ServerConfig;
 
 /**
  * Classe per l'avvio di un server che utilizza il multithreading.
@@ -11,13 +12,14 @@ public class MainTest {
 	/**
 	 * Avvia un server che utilizza il multithreading.
 	 * 
-	 * @param args null
+	 * @param args Opzioni di avvio facoltative, nella forma "--nome=valore" o
+	 *             "--nome" descritta da ServerConfig.
 	 */
 	public static void main(String[] args) {
 		System.out.println("Server started");
 		try {
-			new MultiServer(8080);
-		} catch (IOException e) {
+			new MultiServer(8080, new ServerConfig(args));
+		} catch (IOException | IllegalArgumentException e) {
 			System.err.println(e.toString());
 		}
 	}
@@ -0,0 +1,76 @@
+package server;
+
+/**
+ * Classe che modella il cursore opaco scambiato con il client durante la
+ * predizione interattiva. Il cursore identifica il modello e il nodo corrente,
+ * così che il server non mantenga alcuno stato tra due passi successivi.
+ */
+class Cursor {
+
+	/**
+	 * Versione del modello sul quale si esegue la predizione.
+	 */
+	private long version;
+
+	/**
+	 * Identificativo di visita del nodo corrente.
+	 */
+	private int node;
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param version Versione del modello sul quale si esegue la predizione.
+	 * @param node    Identificativo di visita del nodo corrente.
+	 */
+	Cursor(long version, int node) {
+		this.version = version;
+		this.node = node;
+	}
+
+	/**
+	 * Ricostruisce il cursore a partire dalla sua rappresentazione testuale.
+	 * 
+	 * @param cursor Rappresentazione testuale del cursore ricevuta dal client.
+	 * @return Cursore corrispondente.
+	 * @throws UnknownValueException Se la stringa non rappresenta un cursore
+	 *                               valido.
+	 */
+	static Cursor parse(String cursor) throws UnknownValueException {
+		int separator = cursor.indexOf('.');
+		try {
+			if (separator < 0)
+				throw new NumberFormatException();
+			return new Cursor(Long.parseLong(cursor.substring(0, separator), 16),
+					Integer.parseInt(cursor.substring(separator + 1), 16));
+		} catch (NumberFormatException e) {
+			throw new UnknownValueException("Invalid cursor " + cursor);
+		}
+	}
+
+	/**
+	 * Restituisce il valore del membro version.
+	 * 
+	 * @return Versione del modello sul quale si esegue la predizione.
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Restituisce il valore del membro node.
+	 * 
+	 * @return Identificativo di visita del nodo corrente.
+	 */
+	int getNode() {
+		return node;
+	}
+
+	/**
+	 * Restituisce il cursore in forma di stringa, da comunicare al client.
+	 */
+	public String toString() {
+		return Long.toHexString(version) + "." + Integer.toHexString(node);
+	}
+
+}
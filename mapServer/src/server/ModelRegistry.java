@@ -0,0 +1,67 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import tree.InferenceTree;
+
+/**
+ * Classe che raccoglie gli alberi di regressione appresi o caricati dalle
+ * sessioni, nella forma per l'inferenza, indicizzati dalla loro versione. Consente di risolvere i cursori
+ * della predizione interattiva indipendentemente dalla sessione che li ha
+ * generati e fa sì che sessioni che caricano lo stesso modello condividano la
+ * stessa istanza.
+ */
+class ModelRegistry {
+
+	/**
+	 * Numero massimo di modelli mantenuti in memoria.
+	 */
+	private static final int CAPACITY = 16;
+
+	/**
+	 * Modelli registrati, indicizzati dalla versione e ordinati per accesso.
+	 */
+	private static Map<Long, InferenceTree> models = new LinkedHashMap<Long, InferenceTree>(CAPACITY, 0.75f, true) {
+
+		protected boolean removeEldestEntry(Map.Entry<Long, InferenceTree> eldest) {
+			return size() > CAPACITY;
+		}
+
+	};
+
+	/**
+	 * Sovrascrive il costruttore di default avente visibilità pubblica.
+	 */
+	private ModelRegistry() {
+	}
+
+	/**
+	 * Registra l'albero in input. Se un albero con la stessa versione è già
+	 * registrato, restituisce l'istanza esistente.
+	 * 
+	 * @param tree Albero di regressione da registrare.
+	 * @return Istanza registrata per la versione dell'albero.
+	 */
+	static synchronized InferenceTree register(InferenceTree tree) {
+		InferenceTree registered = models.get(tree.getVersion());
+		if (registered != null)
+			return registered;
+		models.put(tree.getVersion(), tree);
+		return tree;
+	}
+
+	/**
+	 * Restituisce l'albero registrato con la versione in input.
+	 * 
+	 * @param version Versione del modello.
+	 * @return Albero di regressione corrispondente.
+	 * @throws UnknownValueException Se il modello non è più disponibile.
+	 */
+	static synchronized InferenceTree get(long version) throws UnknownValueException {
+		InferenceTree tree = models.get(version);
+		if (tree == null)
+			throw new UnknownValueException("The model is no longer available");
+		return tree;
+	}
+
+}
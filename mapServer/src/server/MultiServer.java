@@ -1,8 +1,9 @@
 package server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 
 /**
  * Classe che modella un server con multithreading.
@@ -27,18 +28,36 @@ public class MultiServer {
 	}
 
 	/**
-	 * Istanzia un oggetto ServerSocket che pone in attesa di richiesta di
+	 * Costruttore di classe. Applica le opzioni di avvio in input, inizializza la
+	 * porta e invoca il metodo run().
+	 * 
+	 * @param port   Numero di porta su cui il server è in ascolto.
+	 * @param config Opzioni di avvio del server.
+	 * @throws IOException Se si verificano errori di input-output nella
+	 *                     comunicazione con il client.
+	 */
+	public MultiServer(int port, ServerConfig config) throws IOException {
+		config.apply();
+		PORT = port;
+		run();
+	}
+
+	/**
+	 * Istanzia un oggetto ServerSocketChannel che pone in attesa di richiesta di
 	 * connessione da parte di un client. Per ogni nuova richiesta di connessione
-	 * viene istanziato un oggetto della classe ServerOneClient.
+	 * viene istanziato un oggetto della classe ServerOneClient. Il canale associato
+	 * a ciascun socket consente di trasferire i file dei modelli senza copie
+	 * intermedie.
 	 * 
 	 * @throws IOException Se si verificano errori di input-output nella
 	 *                     comunicazione con il client.
 	 */
 	private void run() throws IOException {
-		ServerSocket s = new ServerSocket(PORT);
+		ServerSocketChannel s = ServerSocketChannel.open();
 		try {
+			s.bind(new InetSocketAddress(PORT));
 			while (true) {
-				Socket socket = s.accept();
+				Socket socket = s.accept().socket();
 				try {
 					new ServerOneClient(socket);
 				} catch (IOException e) {
@@ -0,0 +1,223 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import tree.Model;
+
+/**
+ * Classe che estende Thread per raggruppare in piccoli lotti le predizioni di
+ * singoli esempi richieste in modo concorrente da più client sullo stesso
+ * modello, identificato dalla sua versione così che le sessioni che ne hanno
+ * caricato istanze distinte condividano lo stesso batcher. Ciascun lotto è
+ * predetto con un'unica invocazione del modello, che per un albero di
+ * regressione lo visita una sola volta, e i risultati sono restituiti alle
+ * sessioni in attesa.
+ */
+class PredictionBatcher extends Thread {
+
+	/**
+	 * Richiesta di predizione di un singolo esempio, in attesa di essere servita.
+	 */
+	private static class Request {
+
+		/**
+		 * Valori degli attributi indipendenti dell'esempio da predire.
+		 */
+		private Object[] example;
+
+		/**
+		 * Risultato della predizione, completato dal thread del batcher.
+		 */
+		private CompletableFuture<Double> prediction = new CompletableFuture<>();
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param example Valori degli attributi indipendenti dell'esempio da
+		 *                predire.
+		 */
+		Request(Object[] example) {
+			this.example = example;
+		}
+
+	}
+
+	/**
+	 * Batcher attivi, indicizzati dalla versione del modello sul quale operano.
+	 */
+	private static Map<Long, PredictionBatcher> batchers = new HashMap<>();
+
+	/**
+	 * Numero massimo di esempi predetti in un singolo lotto.
+	 */
+	private static int maxBatchSize = 64;
+
+	/**
+	 * Tempo massimo, in microsecondi, per cui una richiesta attende l'arrivo di
+	 * altre richieste prima che il lotto venga predetto. Limita la latenza
+	 * aggiunta a ciascuna predizione.
+	 */
+	private static long maxWaitMicros = 200;
+
+	/**
+	 * Tempo, in secondi, dopo il quale un batcher senza richieste termina.
+	 */
+	private static final long IDLE_TIMEOUT = 30;
+
+	/**
+	 * Tempo massimo, in secondi, per cui una sessione attende la predizione di
+	 * un esempio.
+	 */
+	private static final long PREDICTION_TIMEOUT = 60;
+
+	/**
+	 * Modello sul quale predire gli esempi.
+	 */
+	private Model model;
+
+	/**
+	 * Coda delle richieste in attesa di essere servite.
+	 */
+	private LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+	/**
+	 * Costruttore di classe. Avvia il thread come demone.
+	 * 
+	 * @param model Modello sul quale predire gli esempi.
+	 */
+	private PredictionBatcher(Model model) {
+		this.model = model;
+		setDaemon(true);
+		start();
+	}
+
+	/**
+	 * Configura i limiti dei lotti di predizione.
+	 * 
+	 * @param maxWait Tempo massimo, in microsecondi, di attesa di un lotto.
+	 * @param maxSize Numero massimo di esempi in un lotto.
+	 */
+	static synchronized void configure(long maxWait, int maxSize) {
+		if (maxWait < 0 || maxSize < 1)
+			throw new IllegalArgumentException("Invalid batch limits");
+		maxWaitMicros = maxWait;
+		maxBatchSize = maxSize;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe dell'esempio in input, accodando
+	 * la richiesta al batcher associato alla versione del modello e attendendone
+	 * il risultato per al più PREDICTION_TIMEOUT secondi.
+	 * 
+	 * @param model   Modello sul quale predire l'esempio.
+	 * @param example Valori degli attributi indipendenti dell'esempio.
+	 * @return Valore predetto per l'attributo di classe.
+	 * @throws UnknownValueException Se un valore dell'esempio non consente di
+	 *                               essere predetto dal modello, la predizione
+	 *                               fallisce o non termina entro il tempo
+	 *                               massimo.
+	 * @throws InterruptedException  Se il thread viene interrotto durante l'attesa.
+	 */
+	static Double predict(Model model, Object[] example) throws UnknownValueException, InterruptedException {
+		Request request = new Request(example);
+		synchronized (PredictionBatcher.class) {
+			PredictionBatcher batcher = batchers.get(model.getVersion());
+			if (batcher == null) {
+				batcher = new PredictionBatcher(model);
+				batchers.put(model.getVersion(), batcher);
+			}
+			batcher.queue.add(request);
+		}
+		try {
+			return request.prediction.get(PREDICTION_TIMEOUT, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UnknownValueException)
+				throw (UnknownValueException) e.getCause();
+			throw new UnknownValueException(e.getCause().toString());
+		} catch (TimeoutException e) {
+			throw new UnknownValueException("The prediction did not complete in time");
+		}
+	}
+
+	/**
+	 * Ridefinisce il metodo run() della classe Thread. Attende la prima richiesta
+	 * di un lotto, raccoglie le successive finché il lotto non è pieno o il tempo
+	 * massimo di attesa non è scaduto, quindi predice l'intero lotto. Termina se
+	 * non riceve richieste per IDLE_TIMEOUT secondi. Se termina per un errore
+	 * qualsiasi, si rimuove dai batcher attivi e completa con l'errore tutte le
+	 * richieste in attesa, così che nessuna sessione resti bloccata.
+	 */
+	public void run() {
+		List<Request> batch = new ArrayList<>();
+		try {
+			while (true) {
+				Request first = queue.poll(IDLE_TIMEOUT, TimeUnit.SECONDS);
+				if (first == null)
+					synchronized (PredictionBatcher.class) {
+						if (queue.isEmpty()) {
+							batchers.remove(model.getVersion(), this);
+							return;
+						}
+						continue;
+					}
+				int size;
+				long wait;
+				synchronized (PredictionBatcher.class) {
+					size = maxBatchSize;
+					wait = maxWaitMicros;
+				}
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(wait);
+				while (batch.size() < size) {
+					Request next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+					batch.add(next);
+				}
+				serve(batch);
+				batch.clear();
+			}
+		} catch (Throwable e) {
+			synchronized (PredictionBatcher.class) {
+				batchers.remove(model.getVersion(), this);
+				batch.addAll(queue);
+			}
+			for (Request r : batch)
+				r.prediction.completeExceptionally(e);
+			if (e instanceof Error)
+				throw (Error) e;
+		}
+	}
+
+	/**
+	 * Predice con un'unica visita dell'albero gli esempi del lotto e completa le
+	 * richieste corrispondenti.
+	 * 
+	 * @param batch Lotto di richieste da servire.
+	 */
+	private void serve(List<Request> batch) {
+		Object[][] examples = new Object[batch.size()][];
+		for (int i = 0; i < examples.length; i++)
+			examples[i] = batch.get(i).example;
+		try {
+			Double[] predictions = model.predictClass(examples);
+			for (int i = 0; i < predictions.length; i++)
+				if (predictions[i] != null)
+					batch.get(i).prediction.complete(predictions[i]);
+				else
+					batch.get(i).prediction.completeExceptionally(
+							new UnknownValueException("The example contains a missing or unknown value"));
+		} catch (RuntimeException e) {
+			for (Request r : batch)
+				r.prediction.completeExceptionally(e);
+		}
+	}
+
+}
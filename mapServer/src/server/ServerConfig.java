@@ -0,0 +1,148 @@
+package server;
+
+import data.Data;
+import data.TrainingSetCache;
+
+/**
+ * Classe che modella le opzioni di avvio del server: i limiti dei lotti in cui
+ * sono raggruppate le predizioni concorrenti di singoli esempi, il numero di
+ * connessioni al database sulle quali caricare in parallelo i training set, la
+ * memoria e l'intervallo di validità dei training set condivisi tra le
+ * sessioni, il raggruppamento delle tuple identiche in esempi pesati e il
+ * calcolo nel database delle statistiche di split dei training set che non
+ * possono essere caricati in memoria. I valori predefiniti sono quelli del
+ * server avviato senza opzioni.
+ */
+public class ServerConfig {
+
+	/**
+	 * Tempo massimo, in microsecondi, per cui una predizione attende di essere
+	 * raggruppata con altre.
+	 */
+	private long batchWait = 200;
+
+	/**
+	 * Numero massimo di predizioni raggruppate in un lotto.
+	 */
+	private int batchSize = 64;
+
+	/**
+	 * Numero massimo di connessioni al database per il caricamento di un
+	 * training set.
+	 */
+	private int loadConnections = 1;
+
+	/**
+	 * Memoria, in megabyte, oltre la quale sono scartati i training set non
+	 * utilizzati.
+	 */
+	private long cacheSize = Runtime.getRuntime().maxMemory() / 4 >> 20;
+
+	/**
+	 * Intervallo, in secondi, dopo il quale un training set condiviso è
+	 * verificato prima di essere restituito.
+	 */
+	private long cacheValidity = 60;
+
+	/**
+	 * Indica se le tuple identiche dei training set sono raggruppate in esempi
+	 * pesati.
+	 */
+	private boolean grouping = false;
+
+	/**
+	 * Indica se i training set che non possono essere caricati in memoria sono
+	 * appresi dalle statistiche di split calcolate dal database.
+	 */
+	private boolean pushdown = false;
+
+	/**
+	 * Costruttore di classe. Istanzia le opzioni predefinite.
+	 */
+	public ServerConfig() {
+	}
+
+	/**
+	 * Costruttore di classe. Istanzia le opzioni predefinite, sostituite da
+	 * quelle indicate. Ciascuna opzione ha la forma "--nome=valore", con nome tra
+	 * batchWait (in microsecondi), batchSize, loadConnections, cacheSize (in
+	 * megabyte) e cacheValidity (in secondi); le opzioni --grouping e --pushdown
+	 * attivano il raggruppamento delle tuple identiche e il calcolo nel database
+	 * delle statistiche di split, e accettano anche un valore true o false.
+	 * 
+	 * @param args Opzioni di avvio; null o vuoto per quelle predefinite.
+	 * @throws IllegalArgumentException Se un'opzione è sconosciuta o ha un valore
+	 *                                  non valido.
+	 */
+	public ServerConfig(String[] args) {
+		if (args == null)
+			return;
+		for (String arg : args) {
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Invalid option: " + arg);
+			int equals = arg.indexOf('=');
+			String name = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+			String value = equals < 0 ? null : arg.substring(equals + 1).trim();
+			try {
+				if (name.equals("grouping"))
+					grouping = parseFlag(name, value);
+				else if (name.equals("pushdown"))
+					pushdown = parseFlag(name, value);
+				else if (value == null)
+					throw new IllegalArgumentException("Missing value for " + name);
+				else if (name.equals("batchWait"))
+					batchWait = Long.parseLong(value);
+				else if (name.equals("batchSize"))
+					batchSize = Integer.parseInt(value);
+				else if (name.equals("loadConnections"))
+					loadConnections = Integer.parseInt(value);
+				else if (name.equals("cacheSize"))
+					cacheSize = Long.parseLong(value);
+				else if (name.equals("cacheValidity"))
+					cacheValidity = Long.parseLong(value);
+				else
+					throw new IllegalArgumentException("Unknown option: " + name);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+			}
+		}
+		if (batchWait < 0 || batchSize < 1)
+			throw new IllegalArgumentException("Invalid batch limits");
+		if (loadConnections < 1)
+			throw new IllegalArgumentException("loadConnections must be at least one");
+		if (cacheSize < 0 || cacheSize > Long.MAX_VALUE >> 20)
+			throw new IllegalArgumentException("Invalid cacheSize");
+		if (cacheValidity < 0 || cacheValidity > Long.MAX_VALUE / 1000)
+			throw new IllegalArgumentException("Invalid cacheValidity");
+	}
+
+	/**
+	 * Interpreta il valore di un'opzione booleana, che in assenza di valore è
+	 * attivata.
+	 * 
+	 * @param name  Nome dell'opzione.
+	 * @param value Valore dell'opzione, o null.
+	 * @return true se l'opzione è attivata.
+	 * @throws IllegalArgumentException Se il valore non è né true né false.
+	 */
+	private static boolean parseFlag(String name, String value) {
+		if (value == null || value.equals("true"))
+			return true;
+		if (value.equals("false"))
+			return false;
+		throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+	}
+
+	/**
+	 * Applica le opzioni ai componenti del server.
+	 */
+	void apply() {
+		ServerOneClient.setPushdown(pushdown);
+		Data.setGrouping(grouping);
+		TrainingSetCache.setMemoryBudget(cacheSize << 20);
+		TrainingSetCache.setValidity(cacheValidity * 1000);
+		PredictionBatcher.configure(batchWait, batchSize);
+		Data.setLoadConnections(loadConnections);
+	}
+
+}
@@ -1,12 +1,28 @@
 package server;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import data.ColumnFile;
 import data.Data;
+import data.RemoteTable;
 import data.TrainingDataException;
+import data.TrainingSetCache;
+import database.Selection;
+import tree.GradientBoosting;
+import tree.InferenceTree;
+import tree.Model;
+import tree.RegressionForest;
 import tree.RegressionTree;
+import tree.TrainingConfig;
 
 /**
  * Classe che estende Thread per gestire le richieste provenienti da un client.
@@ -28,6 +44,19 @@ class ServerOneClient extends Thread {
 	 */
 	private ObjectOutputStream out;
 
+	/**
+	 * Indica se i training set che non possono essere caricati in memoria restano
+	 * nel database, che calcola le statistiche di split, anziché essere copiati in
+	 * un ColumnFile.
+	 */
+	private static boolean pushdown = false;
+
+	/**
+	 * Numero di predizioni misurate per confrontare i tempi di predizione
+	 * dell'albero appreso e dell'albero potato.
+	 */
+	private static final int PREDICTION_RUNS = 3;
+
 	/**
 	 * Costruttore di classe. Inizializza gli attributi socket, in e out. Avvia il
 	 * thread.
@@ -38,63 +67,303 @@ class ServerOneClient extends Thread {
 	 */
 	ServerOneClient(Socket s) throws IOException {
 		socket = s;
+		socket.setTcpNoDelay(true);
 		in = new ObjectInputStream(socket.getInputStream());
 		out = new ObjectOutputStream(socket.getOutputStream());
 		start();
 	}
 
+	/**
+	 * Imposta la modalità di apprendimento dei training set che non possono essere
+	 * caricati in memoria.
+	 * 
+	 * @param pushdown true per calcolare le statistiche di split nel database.
+	 */
+	static synchronized void setPushdown(boolean pushdown) {
+		ServerOneClient.pushdown = pushdown;
+	}
+
+	/**
+	 * Restituisce la modalità di apprendimento dei training set che non possono
+	 * essere caricati in memoria.
+	 * 
+	 * @return true se le statistiche di split sono calcolate nel database.
+	 */
+	private static synchronized boolean isPushdown() {
+		return pushdown;
+	}
+
 	/**
 	 * Ridefinisce il metodo run() della classe Thread al fine di gestire le
-	 * richieste del client.
+	 * richieste del client, una alla volta, fino a quella di chiusura.
+	 * 
+	 * Il training set acquisito è condiviso con le altre sessioni che utilizzano
+	 * la stessa tabella ed è rilasciato alla chiusura. Se la tabella non può
+	 * essere caricata in memoria, è acquisito come ColumnFile e l'albero è
+	 * appreso fuori memoria oppure, se è attivo il pushdown, resta nel database,
+	 * che calcola le statistiche di split.
+	 * 
+	 * Gli alberi sono archiviati, registrati e usati per le predizioni nella
+	 * forma per l'inferenza, mentre l'albero appreso resta nella sessione per la
+	 * potatura. Le predizioni non interattive usano l'ultimo modello acquisito;
+	 * le predizioni interattive e la forma compilata richiedono un albero.
 	 */
 	public void run() {
 		String tableName = null;
 		Data trainingSet = null;
-		RegressionTree tree = null;
+		ColumnFile columnFile = null;
+		RemoteTable remoteTable = null;
+		RegressionTree learnt = null;
+		InferenceTree tree = null;
+		Model model = null;
+		TrainingConfig config = new TrainingConfig();
 		try {
 			while (true) {
 				int answer = (int) in.readObject();
-				if (answer == 0) {
+				if (answer == 0 || answer == 11) {
+					// 0: acquisizione del training set dall'intera tabella; 11:
+					// dalle sole colonne e tuple indicate dal client,
+					// selezionate dal DBMS
 					tableName = (String) in.readObject();
+					Selection selection;
+					try {
+						selection = answer == 0 ? new Selection(tableName)
+								: new Selection(tableName, (String[]) in.readObject(), (String[]) in.readObject());
+					} catch (IllegalArgumentException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					if (trainingSet != null) {
+						TrainingSetCache.release(trainingSet);
+						trainingSet = null;
+					}
+					columnFile = null;
+					remoteTable = null;
 					try {
-						trainingSet = new Data(tableName);
+						if (Data.fitsInMemory(selection))
+							trainingSet = TrainingSetCache.acquire(selection);
+						else if (isPushdown())
+							remoteTable = new RemoteTable(selection);
+						else
+							columnFile = new ColumnFile(selection);
 					} catch (TrainingDataException e) {
 						out.writeObject(e.toString());
 						return;
 					}
 					out.writeObject("OK");
-				} else if (answer == 1) {
-					tree = new RegressionTree(trainingSet);
+				} else if (answer == 1 || answer == 14) {
+					// 1: apprendimento dell'albero; 14: con i criteri di
+					// arresto indicati dal client
+					try {
+						config = answer == 1 ? new TrainingConfig() : new TrainingConfig((String[]) in.readObject());
+					} catch (IllegalArgumentException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					try {
+						if (remoteTable != null)
+							learnt = new RegressionTree(remoteTable, config);
+						else if (columnFile != null)
+							learnt = new RegressionTree(columnFile, config);
+						else
+							learnt = new RegressionTree(trainingSet, config);
+					} catch (IOException | TrainingDataException | IllegalArgumentException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					tree = new InferenceTree(learnt);
 					try {
 						tree.salva(tableName + ".dmp");
 					} catch (IOException e) {
 						out.writeObject(e.toString());
 						return;
 					}
+					try {
+						tree.compila(tableName + ".model");
+					} catch (IOException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					tree = ModelRegistry.register(tree);
+					model = tree;
 					out.writeObject("OK");
+				} else if (answer == 15) {
+					// potatura per costo-complessità, che sceglie il
+					// sottoalbero sulla tabella di validazione indicata o, se
+					// assente, per convalida incrociata e lo archivia al posto
+					// dell'originale; riporta le dimensioni dei due alberi e i
+					// tempi di predizione degli esempi di validazione, o del
+					// training set in loro assenza, e richiede il training set
+					// in memoria
+					String validationTable = (String) in.readObject();
+					int folds = (int) in.readObject();
+					RegressionTree pruned;
+					InferenceTree prunedTree;
+					Object[][] examples;
+					long size = new File(tableName + ".dmp").length();
+					try {
+						if (learnt == null)
+							throw new IllegalArgumentException("No regression tree available");
+						if (trainingSet == null)
+							throw new IllegalArgumentException("The training set is not available in memory");
+						Data validationSet = validationTable == null ? null : TrainingSetCache.acquire(validationTable);
+						try {
+							pruned = validationSet == null ? learnt.prune(trainingSet, config, folds)
+									: learnt.prune(trainingSet, validationSet);
+							examples = examples(validationSet == null ? trainingSet : validationSet);
+						} finally {
+							if (validationSet != null)
+								TrainingSetCache.release(validationSet);
+						}
+						prunedTree = new InferenceTree(pruned);
+						prunedTree.salva(tableName + ".dmp");
+						prunedTree.compila(tableName + ".model");
+					} catch (IllegalArgumentException | TrainingDataException | IOException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					String report = "Nodes: " + learnt.getNumberOfNodes() + " -> " + pruned.getNumberOfNodes()
+							+ ", leaves: " + learnt.getNumberOfLeaves() + " -> " + pruned.getNumberOfLeaves()
+							+ ", depth: " + learnt.getDepth() + " -> " + pruned.getDepth()
+							+ ", file: " + size + " -> " + new File(tableName + ".dmp").length() + " bytes"
+							+ String.format(", prediction of %d examples: %.3f -> %.3f ms", examples.length,
+									predictionTime(new InferenceTree(learnt), examples) / 1e6,
+									predictionTime(prunedTree, examples) / 1e6);
+					learnt = pruned;
+					tree = ModelRegistry.register(prunedTree);
+					model = tree;
+					out.writeObject("OK");
+					out.writeObject(report);
 				} else if (answer == 2) {
+					// caricamento del modello da archivio
 					tableName = (String) in.readObject();
 					try {
-						tree = RegressionTree.carica(tableName + ".dmp");
+						model = carica(tableName + ".dmp");
 					} catch (ClassNotFoundException | IOException e) {
 						out.writeObject(e.toString());
 						return;
 					}
+					learnt = model instanceof RegressionTree ? (RegressionTree) model : null;
+					if (learnt != null)
+						model = new InferenceTree(learnt);
+					tree = model instanceof InferenceTree ? ModelRegistry.register((InferenceTree) model) : null;
+					if (tree != null)
+						model = tree;
 					out.writeObject("OK");
-				} else if (answer == 3)
+				} else if (answer == 12) {
+					// foresta casuale appresa dal training set in memoria,
+					// archiviata come un albero
+					int numberOfTrees = (int) in.readObject();
 					try {
-						double prediction = tree.predictClass(in, out);
+						if (trainingSet == null)
+							throw new IllegalArgumentException("The training set is not available in memory");
+						model = new RegressionForest(trainingSet, numberOfTrees);
+						model.salva(tableName + ".dmp");
+						new File(tableName + ".model").delete();
+					} catch (IllegalArgumentException | IOException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					learnt = null;
+					tree = null;
+					out.writeObject("OK");
+				} else if (answer == 13) {
+					// gradient boosting appreso dal training set in memoria,
+					// archiviato come un albero
+					int numberOfTrees = (int) in.readObject();
+					double learningRate = (double) in.readObject();
+					int maxDepth = (int) in.readObject();
+					try {
+						if (trainingSet == null)
+							throw new IllegalArgumentException("The training set is not available in memory");
+						model = new GradientBoosting(trainingSet, numberOfTrees, learningRate, maxDepth);
+						model.salva(tableName + ".dmp");
+						new File(tableName + ".model").delete();
+					} catch (IllegalArgumentException | IOException e) {
+						out.writeObject(e.toString());
+						return;
+					}
+					learnt = null;
+					tree = null;
+					out.writeObject("OK");
+				} else if (answer == 4)
+					// chiusura della sessione
+					break;
+				else if (answer == 5) {
+					// predizione di un esempio completo con l'ultimo modello
+					// acquisito
+					Object[] example = (Object[]) in.readObject();
+					try {
+						if (model == null)
+							throw new UnknownValueException("No model available");
+						Double prediction = PredictionBatcher.predict(model, example);
 						out.writeObject("OK");
 						out.writeObject(prediction);
 					} catch (UnknownValueException e) {
 						out.writeObject(e.toString());
 					}
-				else if (answer == 4)
-					break;
+				} else if (answer == 6)
+					// primo passo della predizione interattiva: la sessione non
+					// resta in attesa delle scelte del client, che le invia con
+					// i passi successivi
+					try {
+						if (tree == null)
+							throw new UnknownValueException("No regression tree available");
+						sendStep(tree, 0);
+					} catch (UnknownValueException e) {
+						out.writeObject(e.toString());
+					}
+				else if (answer == 7) {
+					// passo successivo della predizione interattiva: il cursore
+					// è risolto sull'albero della sessione se ne ha la
+					// versione, e solo altrimenti sul registro dei modelli, che
+					// può averlo rimosso
+					String cursor = (String) in.readObject();
+					int choice = (int) in.readObject();
+					try {
+						Cursor current = Cursor.parse(cursor);
+						InferenceTree cursorTree = tree != null && tree.getVersion() == current.getVersion() ? tree
+								: ModelRegistry.get(current.getVersion());
+						sendStep(cursorTree, cursorTree.getChild(current.getNode(), choice));
+					} catch (UnknownValueException e) {
+						out.writeObject(e.toString());
+					}
+				} else if (answer == 10) {
+					// predizione in blocco di più esempi con l'ultimo modello
+					// acquisito
+					Object[][] examples = (Object[][]) in.readObject();
+					if (model == null)
+						out.writeObject(new UnknownValueException("No model available").toString());
+					else {
+						Double[] predictions = model.predictClass(examples);
+						double[] values = new double[predictions.length];
+						for (int i = 0; i < values.length; i++)
+							values[i] = predictions[i] != null ? predictions[i] : Double.NaN;
+						out.writeObject("OK");
+						out.writeObject(values);
+					}
+					out.reset();
+				} else if (answer == 8 || answer == 9) {
+					// 9: versione della forma compilata dell'albero; 8: anche
+					// il suo file
+					String modelName = (String) in.readObject();
+					try {
+						String fileName = compiledModel(modelName);
+						long version = InferenceTree.leggiVersione(fileName);
+						out.writeObject("OK");
+						out.writeObject(version);
+						if (answer == 8)
+							sendFile(fileName);
+					} catch (IOException e) {
+						out.writeObject(e.toString());
+					}
+				}
 			}
-		} catch (IOException | ClassNotFoundException e) {
+		} catch (IOException | ClassNotFoundException | InterruptedException e) {
 			System.out.println(e);
 		} finally {
+			if (trainingSet != null)
+				TrainingSetCache.release(trainingSet);
 			try {
 				in.close();
 				out.close();
@@ -105,4 +374,138 @@ class ServerOneClient extends Thread {
 		}
 	}
 
+	/**
+	 * Restituisce il nome del file contenente la forma compilata del modello
+	 * appreso dalla tabella specificata. Se il file non esiste, lo genera a
+	 * partire dall'albero archiviato.
+	 * 
+	 * @param tableName Nome della tabella da cui è stato appreso il modello.
+	 * @return Nome del file contenente la forma compilata del modello.
+	 * @throws IOException Se il modello non è archiviato o la compilazione
+	 *                     fallisce.
+	 */
+	private String compiledModel(String tableName) throws IOException {
+		String fileName = tableName + ".model";
+		if (!new File(fileName).exists())
+			try {
+				Model model = carica(tableName + ".dmp");
+				if (model instanceof RegressionTree)
+					model = new InferenceTree((RegressionTree) model);
+				if (!(model instanceof InferenceTree))
+					throw new IOException("Only regression trees can be compiled");
+				((InferenceTree) model).compila(fileName);
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+		return fileName;
+	}
+
+	/**
+	 * Restituisce gli esempi del training set in input come array di valori degli
+	 * attributi indipendenti, nella forma delle predizioni non interattive.
+	 * 
+	 * @param data Training set.
+	 * @return Esempi del training set.
+	 */
+	private static Object[][] examples(Data data) {
+		Object[][] examples = new Object[data.getNumberOfExamples()][data.getNumberOfExplanatoryAttributes()];
+		for (int i = 0; i < examples.length; i++)
+			for (int a = 0; a < examples[i].length; a++)
+				examples[i][a] = data.getExplanatoryValue(i, a);
+		return examples;
+	}
+
+	/**
+	 * Misura il tempo di predizione non interattiva degli esempi in input con il
+	 * modello indicato. Dopo una predizione di riscaldamento, restituisce il
+	 * minore dei tempi di PREDICTION_RUNS predizioni, meno sensibile al rumore
+	 * del carico del server.
+	 * 
+	 * @param model    Modello da misurare.
+	 * @param examples Esempi da predire.
+	 * @return Tempo di predizione degli esempi, in nanosecondi.
+	 */
+	private static long predictionTime(Model model, Object[][] examples) {
+		model.predictClass(examples);
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < PREDICTION_RUNS; run++) {
+			long start = System.nanoTime();
+			model.predictClass(examples);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	/**
+	 * Carica il modello archiviato nel file specificato.
+	 * 
+	 * @param fileName Nome del file in cui è archiviato il modello.
+	 * @return Modello contenuto nel file.
+	 * @throws IOException            Se si verificano errori nel caricamento del
+	 *                                file o il file non contiene un modello.
+	 * @throws ClassNotFoundException Se la classe dell'oggetto serializzato non
+	 *                                viene trovata.
+	 */
+	private static Model carica(String fileName) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new FileInputStream(fileName));
+			Object model = in.readObject();
+			if (!(model instanceof Model))
+				throw new IOException(fileName + " does not contain a model");
+			return (Model) model;
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+
+	/**
+	 * Invia al client la dimensione e il contenuto del file specificato. Il
+	 * contenuto è trasferito dal file al socket senza copie intermedie e non è
+	 * codificato come oggetto: il client lo legge direttamente dal socket.
+	 * 
+	 * @param fileName Nome del file da inviare.
+	 * @throws IOException Se si verificano errori nella lettura del file o nella
+	 *                     comunicazione con il client.
+	 */
+	private void sendFile(String fileName) throws IOException {
+		FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			long size = file.size();
+			out.writeObject(size);
+			out.flush();
+			WritableByteChannel channel = socket.getChannel() != null ? socket.getChannel()
+					: Channels.newChannel(socket.getOutputStream());
+			for (long position = 0; position < size;)
+				position += file.transferTo(position, size - position, channel);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Comunica al client il passo corrente della predizione interattiva. Se il
+	 * nodo è di split invia il cursore che lo identifica, seguito dalle opzioni di
+	 * test; se è una foglia invia il valore predetto.
+	 * 
+	 * @param tree Albero di regressione, nella forma per l'inferenza, sul quale si
+	 *             esegue la predizione.
+	 * @param node Identificativo di visita del nodo corrente.
+	 * @throws UnknownValueException Se il nodo non appartiene all'albero.
+	 * @throws IOException           Se si verificano errori di input-output nella
+	 *                               comunicazione con il client.
+	 */
+	private void sendStep(InferenceTree tree, int node) throws UnknownValueException, IOException {
+		String query = tree.getQuery(node);
+		if (query != null) {
+			out.writeObject("QUERY");
+			out.writeObject(new Cursor(tree.getVersion(), node).toString());
+			out.writeObject(query);
+		} else {
+			out.writeObject("OK");
+			out.writeObject(tree.getPredictedClassValue(node));
+		}
+	}
+
 }
@@ -0,0 +1,588 @@
+package tree;
+
+import java.util.Arrays;
+import java.util.List;
+import data.Attribute;
+import data.ContinuousAttribute;
+import data.DiscreteAttribute;
+
+/**
+ * Classe che apprende un albero di regressione per livelli a partire da
+ * statistiche aggregate: per ciascun nodo della frontiera, conteggio, somma e
+ * somma dei quadrati degli scarti dell'attributo di classe per ciascun valore
+ * discreto o intervallo di valori continui. Le sottoclassi raccolgono le
+ * statistiche di un livello da una particolare rappresentazione del training
+ * set; la scelta degli split segue gli stessi criteri dell'induzione in
+ * memoria, così che, se le soglie degli intervalli coincidono con i valori
+ * distinti, l'albero prodotto è lo stesso.
+ */
+abstract class AggregateLearner {
+
+	/**
+	 * Nodo dell'albero in costruzione.
+	 */
+	static class Grown {
+
+		/**
+		 * Indice del primo esempio coperto dal nodo, nell'ordine in cui i nodi
+		 * dell'albero partizionano il training set.
+		 */
+		int begin;
+
+		/**
+		 * Numero di esempi del training set coperti dal nodo.
+		 */
+		int rows;
+
+		/**
+		 * Numero di tuple rappresentate dagli esempi coperti dal nodo, pari a rows
+		 * se gli esempi non sono pesati.
+		 */
+		long count;
+
+		/**
+		 * Somma degli scarti dell'attributo di classe dalla media del training set.
+		 */
+		double sum;
+
+		/**
+		 * Somma dei quadrati degli scarti dell'attributo di classe.
+		 */
+		double squares;
+
+		/**
+		 * Posizione del nodo nella frontiera del livello corrente; -1 se il nodo è
+		 * già stato determinato.
+		 */
+		int slot = -1;
+
+		/**
+		 * Nodo determinato, fogliare o di split; null finché il nodo è nella
+		 * frontiera.
+		 */
+		Node node;
+
+		/**
+		 * Figli del nodo di split; null per le foglie.
+		 */
+		Grown[] children;
+
+		/**
+		 * Sottoalbero già appreso per il nodo con un'altra tecnica; null se il
+		 * nodo è costruito dalle statistiche.
+		 */
+		RegressionTree subtree;
+
+		/**
+		 * Profondità del nodo nell'albero; 0 per la radice.
+		 */
+		int depth;
+
+		/**
+		 * Indice dell'attributo dello split.
+		 */
+		int attribute;
+
+		/**
+		 * Soglia dello split su un attributo continuo.
+		 */
+		double threshold;
+
+		/**
+		 * Figlio corrispondente a ciascun codice dell'attributo discreto dello split.
+		 */
+		int[] childOfCode;
+
+		/**
+		 * Costruttore di classe per un nodo i cui esempi non sono pesati.
+		 * 
+		 * @param begin   Indice del primo esempio coperto dal nodo.
+		 * @param count   Numero di esempi coperti dal nodo.
+		 * @param sum     Somma degli scarti dell'attributo di classe.
+		 * @param squares Somma dei quadrati degli scarti.
+		 */
+		Grown(int begin, int count, double sum, double squares) {
+			this(begin, count, count, sum, squares);
+		}
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param begin   Indice del primo esempio coperto dal nodo.
+		 * @param rows    Numero di esempi coperti dal nodo.
+		 * @param count   Numero di tuple rappresentate dagli esempi.
+		 * @param sum     Somma degli scarti dell'attributo di classe.
+		 * @param squares Somma dei quadrati degli scarti.
+		 */
+		Grown(int begin, int rows, long count, double sum, double squares) {
+			this.begin = begin;
+			this.rows = rows;
+			this.count = count;
+			this.sum = sum;
+			this.squares = squares;
+		}
+
+	}
+
+	/**
+	 * Statistiche raccolte per un nodo della frontiera in una lettura del
+	 * training set.
+	 */
+	static class Statistics {
+
+		/**
+		 * Numero di tuple rappresentate dagli esempi del nodo.
+		 */
+		long count;
+
+		/**
+		 * Somma degli scarti dell'attributo di classe.
+		 */
+		double sum;
+
+		/**
+		 * Somma dei quadrati degli scarti dell'attributo di classe.
+		 */
+		double squares;
+
+		/**
+		 * Valore minimo dell'attributo di classe.
+		 */
+		double minClass = Double.POSITIVE_INFINITY;
+
+		/**
+		 * Valore massimo dell'attributo di classe.
+		 */
+		double maxClass = Double.NEGATIVE_INFINITY;
+
+		/**
+		 * Numero di tuple per attributo e intervallo.
+		 */
+		long[][] counts;
+
+		/**
+		 * Numero di esempi per attributo e intervallo; null se gli esempi non
+		 * sono pesati, nel qual caso coincide con counts.
+		 */
+		int[][] rowCounts;
+
+		/**
+		 * Somma degli scarti dell'attributo di classe per attributo e intervallo.
+		 */
+		double[][] sums;
+
+		/**
+		 * Somma dei quadrati degli scarti per attributo e intervallo.
+		 */
+		double[][] squareSums;
+
+		/**
+		 * Valore minimo di ciascun attributo continuo per intervallo.
+		 */
+		double[][] minValues;
+
+		/**
+		 * Valore massimo di ciascun attributo continuo per intervallo.
+		 */
+		double[][] maxValues;
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param bins     Numero di intervalli di ciascun attributo.
+		 * @param discrete Natura di ciascun attributo.
+		 */
+		Statistics(int[] bins, boolean[] discrete) {
+			counts = new long[bins.length][];
+			sums = new double[bins.length][];
+			squareSums = new double[bins.length][];
+			minValues = new double[bins.length][];
+			maxValues = new double[bins.length][];
+			for (int a = 0; a < bins.length; a++) {
+				counts[a] = new long[bins[a]];
+				sums[a] = new double[bins[a]];
+				squareSums[a] = new double[bins[a]];
+				if (!discrete[a]) {
+					minValues[a] = new double[bins[a]];
+					maxValues[a] = new double[bins[a]];
+					Arrays.fill(minValues[a], Double.POSITIVE_INFINITY);
+					Arrays.fill(maxValues[a], Double.NEGATIVE_INFINITY);
+				}
+			}
+		}
+
+		/**
+		 * Restituisce il numero di esempi dell'intervallo indicato.
+		 * 
+		 * @param a   Indice dell'attributo.
+		 * @param bin Indice dell'intervallo.
+		 * @return Numero di esempi dell'intervallo.
+		 */
+		int rows(int a, int bin) {
+			return rowCounts != null ? rowCounts[a][bin] : (int) counts[a][bin];
+		}
+
+	}
+
+	/**
+	 * Split candidato per un nodo della frontiera.
+	 */
+	static class Candidate {
+
+		/**
+		 * Indice dell'attributo dello split.
+		 */
+		private int attribute;
+
+		/**
+		 * SSE a seguito del partizionamento indotto dallo split.
+		 */
+		private double variance;
+
+		/**
+		 * Codice di ciascun ramo di uno split su un attributo discreto.
+		 */
+		private int[] codes;
+
+		/**
+		 * Numero di rami dello split.
+		 */
+		private int children;
+
+		/**
+		 * Soglia di uno split su un attributo continuo.
+		 */
+		private double threshold;
+
+		/**
+		 * Ramo sinistro di uno split su un attributo continuo, di cui sono noti
+		 * numero di esempi e statistiche ma non la posizione.
+		 */
+		private Grown left;
+
+		/**
+		 * Costruttore di classe per uno split su un attributo discreto.
+		 * 
+		 * @param attribute Indice dell'attributo dello split.
+		 * @param variance  SSE a seguito del partizionamento.
+		 * @param codes     Codice di ciascun ramo.
+		 */
+		Candidate(int attribute, double variance, int[] codes) {
+			this.attribute = attribute;
+			this.variance = variance;
+			this.codes = codes;
+			children = codes.length;
+		}
+
+		/**
+		 * Costruttore di classe per uno split su un attributo continuo.
+		 * 
+		 * @param attribute Indice dell'attributo dello split.
+		 * @param variance  SSE a seguito del partizionamento.
+		 * @param children  Numero di rami dello split: 0 se l'attributo è costante
+		 *                  nel nodo, 1 se il ramo destro è stato scartato.
+		 * @param threshold Soglia dello split.
+		 * @param left      Ramo sinistro dello split; null se children è 0.
+		 */
+		Candidate(int attribute, double variance, int children, double threshold, Grown left) {
+			this.attribute = attribute;
+			this.variance = variance;
+			this.children = children;
+			this.threshold = threshold;
+			this.left = left;
+		}
+
+	}
+
+	/**
+	 * Numero massimo di intervalli in cui sono suddivisi i valori di un attributo
+	 * continuo.
+	 */
+	static final int MAX_BINS = 256;
+
+	/**
+	 * Numero massimo di esempi che una foglia deve contenere.
+	 */
+	int numberOfExamplesPerLeaf;
+
+	/**
+	 * Stato dei criteri di arresto dell'induzione.
+	 */
+	TrainingConfig.Budget budget;
+
+	/**
+	 * Natura di ciascun attributo indipendente.
+	 */
+	boolean[] discrete;
+
+	/**
+	 * Soglie degli intervalli di ciascun attributo continuo; null per gli
+	 * attributi discreti.
+	 */
+	double[][] cuts;
+
+	/**
+	 * Numero di intervalli, o di valori distinti, di ciascun attributo.
+	 */
+	int[] bins;
+
+	/**
+	 * Media dell'attributo di classe nel training set, sottratta a ciascun valore
+	 * per limitare gli errori di arrotondamento delle somme dei quadrati.
+	 */
+	double shift;
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param budget Stato dei criteri di arresto dell'induzione.
+	 */
+	AggregateLearner(TrainingConfig.Budget budget) {
+		this.budget = budget;
+		numberOfExamplesPerLeaf = budget.getNumberOfExamplesPerLeaf();
+	}
+
+	/**
+	 * Restituisce l'attributo indipendente indicizzato in input.
+	 * 
+	 * @param a Indice dell'attributo indipendente.
+	 * @return Attributo indipendente.
+	 */
+	abstract Attribute getAttribute(int a);
+
+	/**
+	 * Restituisce il valore di un attributo discreto corrispondente al codice in
+	 * input.
+	 * 
+	 * @param a    Indice dell'attributo discreto.
+	 * @param code Codice del valore.
+	 * @return Valore dell'attributo.
+	 */
+	abstract String getDiscreteValue(int a, int code);
+
+	/**
+	 * Determina un nodo della frontiera a partire dalle sue statistiche: lo rende
+	 * foglia se copre al più numberOfExamplesPerLeaf esempi, tutti gli esempi
+	 * hanno lo stesso valore di classe o la profondità massima o il tempo massimo
+	 * sono stati raggiunti; altrimenti sceglie lo split con SSE minore e, se
+	 * questo genera più di un ramo ed è accettato dai criteri di arresto, ne
+	 * aggiunge i figli alla frontiera successiva.
+	 * 
+	 * @param node       Nodo della frontiera.
+	 * @param statistics Statistiche del nodo.
+	 * @param next       Frontiera del livello successivo.
+	 */
+	void determine(Grown node, Statistics statistics, List<Grown> next) {
+		node.sum = statistics.sum;
+		node.squares = statistics.squares;
+		if (node.count <= numberOfExamplesPerLeaf || statistics.minClass == statistics.maxClass
+				|| !budget.canExpand(node.depth)) {
+			makeLeaf(node);
+			return;
+		}
+		Candidate best = null;
+		for (int a = 0; a < discrete.length; a++) {
+			Candidate candidate = discrete[a] ? discreteSplit(statistics, a) : continuousSplit(node, statistics, a);
+			if (candidate != null && (best == null || candidate.variance < best.variance))
+				best = candidate;
+		}
+		if (best == null || best.children <= 1 || !budget.acceptSplit(sse(node) - best.variance, best.children)) {
+			makeLeaf(node);
+			return;
+		}
+		int a = best.attribute;
+		node.attribute = a;
+		node.children = new Grown[best.children];
+		if (discrete[a]) {
+			long[] counts = statistics.counts[a];
+			double[] sums = statistics.sums[a];
+			double[] squareSums = statistics.squareSums[a];
+			node.childOfCode = new int[bins[a]];
+			Arrays.fill(node.childOfCode, -1);
+			Object[] splitValues = new Object[best.children];
+			int[] childCounts = new int[best.children];
+			for (int i = 0, begin = node.begin; i < best.children; begin += childCounts[i++]) {
+				int code = best.codes[i];
+				node.childOfCode[code] = i;
+				splitValues[i] = getDiscreteValue(a, code);
+				childCounts[i] = statistics.rows(a, code);
+				node.children[i] = new Grown(begin, childCounts[i], counts[code], sums[code], squareSums[code]);
+			}
+			node.node = new DiscreteNode(node.begin, node.begin + node.rows - 1, sse(node),
+					(DiscreteAttribute) getAttribute(a), splitValues, childCounts,
+					best.variance);
+		} else {
+			Grown left = best.left;
+			left.begin = node.begin;
+			node.threshold = best.threshold;
+			node.children[0] = left;
+			node.children[1] = new Grown(node.begin + left.rows, node.rows - left.rows, node.count - left.count,
+					node.sum - left.sum, node.squares - left.squares);
+			node.node = new ContinuousNode(node.begin, node.begin + node.rows - 1, sse(node),
+					(ContinuousAttribute) getAttribute(a), node.threshold, left.rows,
+					best.variance);
+		}
+		for (int i = 0; i < node.children.length; i++) {
+			node.children[i].depth = node.depth + 1;
+			expand(node, i, next);
+		}
+	}
+
+	/**
+	 * Stabilisce come proseguire la costruzione di un figlio del nodo di split in
+	 * input: lo rende foglia se copre al più numberOfExamplesPerLeaf esempi o se
+	 * la profondità massima o il tempo massimo sono stati raggiunti, altrimenti
+	 * lo aggiunge alla frontiera successiva.
+	 * 
+	 * @param parent Nodo di split.
+	 * @param branch Indice del figlio nel nodo di split.
+	 * @param next   Frontiera del livello successivo.
+	 */
+	void expand(Grown parent, int branch, List<Grown> next) {
+		Grown child = parent.children[branch];
+		if (child.count <= numberOfExamplesPerLeaf || !budget.canExpand(child.depth))
+			makeLeaf(child);
+		else {
+			child.slot = next.size();
+			next.add(child);
+		}
+	}
+
+	/**
+	 * Determina lo split con SSE minore su un attributo continuo, tra le soglie
+	 * che separano intervalli non vuoti consecutivi. Come nell'induzione in
+	 * memoria, un attributo costante nel nodo produce uno split senza rami e SSE
+	 * nullo, mentre uno split il cui ramo destro contiene un solo esempio
+	 * mantiene il solo ramo sinistro.
+	 * 
+	 * @param node       Nodo della frontiera.
+	 * @param statistics Statistiche del nodo.
+	 * @param a          Indice dell'attributo continuo.
+	 * @return Split candidato, o null se gli esempi del nodo ricadono in un unico
+	 *         intervallo con valori diversi.
+	 */
+	Candidate continuousSplit(Grown node, Statistics statistics, int a) {
+		long[] counts = statistics.counts[a];
+		int first = -1;
+		int last = -1;
+		for (int b = 0; b < counts.length; b++)
+			if (counts[b] > 0) {
+				if (first < 0)
+					first = b;
+				last = b;
+			}
+		if (first == last) {
+			if (statistics.minValues[a][first] == statistics.maxValues[a][first])
+				return new Candidate(a, 0, 0, 0, null);
+			return null;
+		}
+		int leftRows = 0;
+		long leftCount = 0;
+		double leftSum = 0;
+		double leftSquares = 0;
+		int bestBin = -1;
+		Grown bestLeft = null;
+		double bestLeftVariance = 0;
+		double bestVariance = 0;
+		for (int b = first; b < last; b++) {
+			if (counts[b] == 0)
+				continue;
+			leftRows += statistics.rows(a, b);
+			leftCount += counts[b];
+			leftSum += statistics.sums[a][b];
+			leftSquares += statistics.squareSums[a][b];
+			double leftVariance = Node.sse(leftCount, leftSum, leftSquares);
+			double variance = leftVariance + Node.sse(statistics.count - leftCount, statistics.sum - leftSum,
+					statistics.squares - leftSquares);
+			if (bestBin < 0 || variance < bestVariance) {
+				bestBin = b;
+				bestLeft = new Grown(0, leftRows, leftCount, leftSum, leftSquares);
+				bestLeftVariance = leftVariance;
+				bestVariance = variance;
+			}
+		}
+		return continuousCandidate(statistics, a, statistics.maxValues[a][bestBin], bestLeft, bestLeftVariance,
+				bestVariance);
+	}
+
+	/**
+	 * Costruisce lo split candidato su un attributo continuo a partire dalla
+	 * soglia scelta, scartando il ramo destro se contiene un solo esempio.
+	 * 
+	 * @param statistics   Statistiche del nodo.
+	 * @param a            Indice dell'attributo continuo.
+	 * @param threshold    Soglia dello split.
+	 * @param left         Ramo sinistro dello split.
+	 * @param leftVariance SSE del ramo sinistro.
+	 * @param variance     SSE a seguito del partizionamento.
+	 * @return Split candidato.
+	 */
+	static Candidate continuousCandidate(Statistics statistics, int a, double threshold, Grown left,
+			double leftVariance, double variance) {
+		if (statistics.count - left.count == 1)
+			return new Candidate(a, leftVariance, 1, threshold, left);
+		return new Candidate(a, variance, 2, threshold, left);
+	}
+
+	/**
+	 * Determina lo split su un attributo discreto, con un ramo per ciascun valore
+	 * presente nel nodo, in ordine di codice.
+	 * 
+	 * @param statistics Statistiche del nodo.
+	 * @param a          Indice dell'attributo discreto.
+	 * @return Split candidato.
+	 */
+	Candidate discreteSplit(Statistics statistics, int a) {
+		long[] counts = statistics.counts[a];
+		int[] codes = new int[counts.length];
+		int children = 0;
+		double variance = 0;
+		for (int code = 0; code < counts.length; code++)
+			if (counts[code] > 0) {
+				codes[children++] = code;
+				variance += Node.sse(counts[code], statistics.sums[a][code], statistics.squareSums[a][code]);
+			}
+		return new Candidate(a, variance, Arrays.copyOf(codes, children));
+	}
+
+	/**
+	 * Rende foglia il nodo in input, che predice la media dell'attributo di
+	 * classe negli esempi che copre.
+	 * 
+	 * @param node Nodo da rendere foglia.
+	 */
+	void makeLeaf(Grown node) {
+		node.node = new LeafNode(node.begin, node.begin + node.rows - 1, sse(node),
+				shift + node.sum / node.count);
+		node.children = null;
+		node.slot = -1;
+	}
+
+	/**
+	 * Costruisce il sottoalbero avente radice nel nodo determinato in input.
+	 * 
+	 * @param node Nodo determinato.
+	 * @return Sottoalbero corrispondente.
+	 */
+	RegressionTree build(Grown node) {
+		if (node.subtree != null)
+			return node.subtree;
+		if (node.children == null)
+			return new RegressionTree(node.node, null);
+		RegressionTree[] childTree = new RegressionTree[node.children.length];
+		for (int i = 0; i < childTree.length; i++)
+			childTree[i] = build(node.children[i]);
+		return new RegressionTree(node.node, childTree);
+	}
+
+	/**
+	 * Calcola lo SSE dell'attributo di classe negli esempi coperti dal nodo.
+	 * 
+	 * @param node Nodo dell'albero.
+	 * @return SSE del nodo.
+	 */
+	private static double sse(Grown node) {
+		return Node.sse(node.count, node.sum, node.squares);
+	}
+
+}
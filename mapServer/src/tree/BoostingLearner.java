@@ -0,0 +1,391 @@
+package tree;
+
+import java.util.Arrays;
+import data.Data;
+import data.DiscreteAttribute;
+
+/**
+ * Classe che apprende gli alberi di un modello di gradient boosting. Ciascun
+ * albero, di profondità limitata, approssima i residui dell'attributo di classe
+ * rispetto alla somma degli alberi precedenti, e il suo contributo è ridotto da
+ * un fattore di apprendimento. I valori di ciascun attributo indipendente sono
+ * discretizzati una sola volta, prima del primo albero, negli intervalli
+ * delimitati da soglie stimate con QuantileSketch, esatte se i valori distinti
+ * sono pochi, o nei codici dei valori discreti: nessun albero riordina gli
+ * esempi. Ciascun albero è costruito per livelli, con una lettura degli esempi
+ * per livello che accumula peso e somma dei residui per nodo della frontiera,
+ * attributo e intervallo; lo split scelto è quello che riduce maggiormente lo
+ * SSE dei residui, come nell'induzione degli alberi di regressione.
+ * 
+ * I nodi di tutti gli alberi sono memorizzati in array paralleli, con un
+ * elemento per nodo, da cui GradientBoosting ricava la forma usata per le
+ * predizioni.
+ */
+class BoostingLearner {
+
+	/**
+	 * Capacità di ciascun livello degli stimatori dei quantili.
+	 */
+	private static final int SKETCH_CAPACITY = 4096;
+
+	/**
+	 * Riduzione minima dello SSE dei residui di un nodo, relativa allo SSE, per
+	 * cui il nodo è suddiviso.
+	 */
+	private static final double TOLERANCE = 1e-10;
+
+	/**
+	 * Fattore per cui è moltiplicato il valore di ciascun nodo.
+	 */
+	private double learningRate;
+
+	/**
+	 * Profondità massima di ciascun albero.
+	 */
+	private int maxDepth;
+
+	/**
+	 * Natura di ciascun attributo indipendente.
+	 */
+	private boolean[] discrete;
+
+	/**
+	 * Soglie degli intervalli di ciascun attributo continuo; null per gli
+	 * attributi discreti.
+	 */
+	private double[][] cuts;
+
+	/**
+	 * Numero di intervalli, o di valori distinti, di ciascun attributo.
+	 */
+	private int[] bins;
+
+	/**
+	 * Posizione del primo intervallo di ciascun attributo negli istogrammi di un
+	 * nodo.
+	 */
+	private int[] offsets;
+
+	/**
+	 * Numero complessivo di intervalli degli attributi.
+	 */
+	private int totalBins;
+
+	/**
+	 * Intervallo, o codice del valore discreto, di ciascun attributo per ciascun
+	 * esempio.
+	 */
+	private int[][] codes;
+
+	/**
+	 * Valore dell'attributo di classe di ciascun esempio.
+	 */
+	private double[] classValues;
+
+	/**
+	 * Peso di ciascun esempio.
+	 */
+	private double[] weights;
+
+	/**
+	 * Predizione corrente di ciascun esempio, somma degli alberi appresi.
+	 */
+	private double[] predictions;
+
+	/**
+	 * Residuo corrente di ciascun esempio.
+	 */
+	private double[] residuals;
+
+	/**
+	 * Nodo dell'albero in costruzione che copre ciascun esempio.
+	 */
+	private int[] positions;
+
+	/**
+	 * Media pesata dell'attributo di classe, da cui partono le predizioni.
+	 */
+	double base;
+
+	/**
+	 * Radice di ciascun albero appreso.
+	 */
+	int[] roots = new int[16];
+
+	/**
+	 * Numero di alberi appresi.
+	 */
+	int numberOfTrees;
+
+	/**
+	 * Attributo dello split di ciascun nodo; -1 per le foglie.
+	 */
+	int[] attribute = new int[256];
+
+	/**
+	 * Soglia dello split di ciascun nodo su un attributo continuo.
+	 */
+	double[] threshold = new double[256];
+
+	/**
+	 * Per i nodi di split su un attributo continuo, figlio sinistro, seguito dal
+	 * destro; per quelli su un attributo discreto, posizione in branches del
+	 * figlio corrispondente al primo codice.
+	 */
+	int[] next = new int[256];
+
+	/**
+	 * Valore di ciascun nodo: media dei residui degli esempi coperti,
+	 * moltiplicata per il fattore di apprendimento.
+	 */
+	double[] value = new double[256];
+
+	/**
+	 * Numero di nodi appresi.
+	 */
+	int size;
+
+	/**
+	 * Figlio di ciascun nodo di split discreto per ciascun codice; -1 se il
+	 * codice non era presente negli esempi del nodo.
+	 */
+	int[] branches = new int[256];
+
+	/**
+	 * Numero di elementi di branches utilizzati.
+	 */
+	int branchCount;
+
+	/**
+	 * Costruttore di classe. Discretizza i valori degli attributi indipendenti
+	 * del training set e inizializza le predizioni con la media pesata
+	 * dell'attributo di classe.
+	 * 
+	 * @param trainingSet  Training set.
+	 * @param learningRate Fattore di apprendimento.
+	 * @param maxDepth     Profondità massima di ciascun albero.
+	 */
+	BoostingLearner(Data trainingSet, double learningRate, int maxDepth) {
+		this.learningRate = learningRate;
+		this.maxDepth = maxDepth;
+		int n = trainingSet.getNumberOfExamples();
+		int attributes = trainingSet.getNumberOfExplanatoryAttributes();
+		discrete = new boolean[attributes];
+		cuts = new double[attributes][];
+		bins = new int[attributes];
+		offsets = new int[attributes];
+		codes = new int[attributes][n];
+		for (int a = 0; a < attributes; a++) {
+			offsets[a] = totalBins;
+			if (trainingSet.getExplanatoryAttribute(a) instanceof DiscreteAttribute) {
+				discrete[a] = true;
+				bins[a] = ((DiscreteAttribute) trainingSet.getExplanatoryAttribute(a)).getNumberOfDistinctValues();
+				for (int i = 0; i < n; i++)
+					codes[a][i] = trainingSet.getDiscreteCode(i, a);
+			} else {
+				QuantileSketch sketch = new QuantileSketch(SKETCH_CAPACITY, AggregateLearner.MAX_BINS);
+				for (int i = 0; i < n; i++)
+					sketch.add(trainingSet.getContinuousValue(i, a));
+				cuts[a] = sketch.getCuts(AggregateLearner.MAX_BINS);
+				bins[a] = cuts[a].length;
+				for (int i = 0; i < n; i++) {
+					int bin = Arrays.binarySearch(cuts[a], trainingSet.getContinuousValue(i, a));
+					codes[a][i] = bin < 0 ? Math.min(-bin - 1, cuts[a].length - 1) : bin;
+				}
+			}
+			totalBins += bins[a];
+		}
+		classValues = new double[n];
+		weights = new double[n];
+		double sum = 0;
+		double totalWeight = 0;
+		for (int i = 0; i < n; i++) {
+			classValues[i] = trainingSet.getClassValue(i);
+			weights[i] = trainingSet.getWeight(i);
+			sum += weights[i] * classValues[i];
+			totalWeight += weights[i];
+		}
+		base = sum / totalWeight;
+		predictions = new double[n];
+		Arrays.fill(predictions, base);
+		residuals = new double[n];
+		positions = new int[n];
+	}
+
+	/**
+	 * Apprende un albero dai residui delle predizioni correnti e ne somma i
+	 * valori alle predizioni.
+	 */
+	void learnTree() {
+		double totalWeight = 0;
+		double sum = 0;
+		for (int i = 0; i < residuals.length; i++) {
+			residuals[i] = classValues[i] - predictions[i];
+			totalWeight += weights[i];
+			sum += weights[i] * residuals[i];
+		}
+		int root = addNode(learningRate * sum / totalWeight);
+		if (numberOfTrees == roots.length)
+			roots = Arrays.copyOf(roots, 2 * roots.length);
+		roots[numberOfTrees++] = root;
+		Arrays.fill(positions, root);
+		for (int depth = 0, levelBegin = root, levelEnd = size; depth < maxDepth
+				&& levelBegin < levelEnd; depth++) {
+			int[] splitBins = splitLevel(levelBegin, levelEnd);
+			for (int i = 0; i < positions.length; i++) {
+				int node = positions[i];
+				if (node < levelBegin || attribute[node] < 0)
+					continue;
+				int code = codes[attribute[node]][i];
+				positions[i] = discrete[attribute[node]] ? branches[next[node] + code]
+						: next[node] + (code <= splitBins[node - levelBegin] ? 0 : 1);
+			}
+			levelBegin = levelEnd;
+			levelEnd = size;
+		}
+		for (int i = 0; i < predictions.length; i++)
+			predictions[i] += value[positions[i]];
+	}
+
+	/**
+	 * Legge una volta gli esempi coperti dai nodi della frontiera, accumulandone
+	 * peso e somma dei residui per nodo, attributo e intervallo, e suddivide
+	 * ciascun nodo con lo split che riduce maggiormente lo SSE dei residui,
+	 * aggiungendone i figli all'albero. Un attributo continuo genera due rami,
+	 * separati dalla soglia di un intervallo; uno discreto un ramo per ciascun
+	 * valore presente nel nodo. Il nodo resta foglia se nessuno split riduce lo
+	 * SSE.
+	 * 
+	 * @param levelBegin Primo nodo della frontiera.
+	 * @param levelEnd   Nodo successivo all'ultimo della frontiera.
+	 * @return Ultimo intervallo del ramo sinistro di ciascun nodo della frontiera
+	 *         suddiviso su un attributo continuo.
+	 */
+	private int[] splitLevel(int levelBegin, int levelEnd) {
+		int frontier = levelEnd - levelBegin;
+		double[] binWeights = new double[frontier * totalBins];
+		double[] binSums = new double[frontier * totalBins];
+		double[] nodeWeights = new double[frontier];
+		double[] nodeSums = new double[frontier];
+		double[] nodeSquares = new double[frontier];
+		for (int i = 0; i < positions.length; i++) {
+			int slot = positions[i] - levelBegin;
+			if (slot < 0)
+				continue;
+			double w = weights[i];
+			double r = residuals[i];
+			nodeWeights[slot] += w;
+			nodeSums[slot] += w * r;
+			nodeSquares[slot] += w * r * r;
+			int h = slot * totalBins;
+			for (int a = 0; a < discrete.length; a++) {
+				binWeights[h + offsets[a] + codes[a][i]] += w;
+				binSums[h + offsets[a] + codes[a][i]] += w * r;
+			}
+		}
+		int[] splitBins = new int[frontier];
+		for (int slot = 0; slot < frontier; slot++) {
+			double parentScore = nodeSums[slot] * nodeSums[slot] / nodeWeights[slot];
+			double bestGain = TOLERANCE * (nodeSquares[slot] - parentScore);
+			int bestAttribute = -1;
+			int h = slot * totalBins;
+			for (int a = 0; a < discrete.length; a++) {
+				int first = h + offsets[a];
+				if (discrete[a]) {
+					double score = 0;
+					int children = 0;
+					for (int b = first; b < first + bins[a]; b++)
+						if (binWeights[b] > 0) {
+							score += binSums[b] * binSums[b] / binWeights[b];
+							children++;
+						}
+					if (children > 1 && score - parentScore > bestGain) {
+						bestGain = score - parentScore;
+						bestAttribute = a;
+					}
+				} else {
+					double leftWeight = 0;
+					double leftSum = 0;
+					for (int b = 0; b < bins[a] - 1; b++) {
+						leftWeight += binWeights[first + b];
+						leftSum += binSums[first + b];
+						double rightWeight = nodeWeights[slot] - leftWeight;
+						if (leftWeight == 0 || binWeights[first + b] == 0)
+							continue;
+						if (rightWeight <= 0)
+							break;
+						double rightSum = nodeSums[slot] - leftSum;
+						double score = leftSum * leftSum / leftWeight + rightSum * rightSum / rightWeight;
+						if (score - parentScore > bestGain) {
+							bestGain = score - parentScore;
+							bestAttribute = a;
+							splitBins[slot] = b;
+						}
+					}
+				}
+			}
+			if (bestAttribute >= 0)
+				split(levelBegin + slot, bestAttribute, splitBins[slot], binWeights, binSums,
+						h + offsets[bestAttribute], nodeWeights[slot], nodeSums[slot]);
+		}
+		return splitBins;
+	}
+
+	/**
+	 * Suddivide un nodo della frontiera, aggiungendone i figli all'albero.
+	 * 
+	 * @param node        Nodo da suddividere.
+	 * @param a           Indice dell'attributo dello split.
+	 * @param last        Ultimo intervallo del ramo sinistro, se l'attributo è
+	 *                    continuo.
+	 * @param binWeights  Peso degli esempi per nodo, attributo e intervallo.
+	 * @param binSums     Somma dei residui per nodo, attributo e intervallo.
+	 * @param first       Posizione del primo intervallo dell'attributo del nodo
+	 *                    negli istogrammi.
+	 * @param nodeWeight  Peso degli esempi del nodo.
+	 * @param nodeSum     Somma dei residui degli esempi del nodo.
+	 */
+	private void split(int node, int a, int last, double[] binWeights, double[] binSums, int first,
+			double nodeWeight, double nodeSum) {
+		attribute[node] = a;
+		if (discrete[a]) {
+			if (branchCount + bins[a] > branches.length)
+				branches = Arrays.copyOf(branches, Math.max(2 * branches.length, branchCount + bins[a]));
+			next[node] = branchCount;
+			branchCount += bins[a];
+			for (int code = 0; code < bins[a]; code++)
+				branches[next[node] + code] = binWeights[first + code] > 0
+						? addNode(learningRate * binSums[first + code] / binWeights[first + code])
+						: -1;
+		} else {
+			double leftWeight = 0;
+			double leftSum = 0;
+			for (int b = 0; b <= last; b++) {
+				leftWeight += binWeights[first + b];
+				leftSum += binSums[first + b];
+			}
+			threshold[node] = cuts[a][last];
+			next[node] = addNode(learningRate * leftSum / leftWeight);
+			addNode(learningRate * (nodeSum - leftSum) / (nodeWeight - leftWeight));
+		}
+	}
+
+	/**
+	 * Aggiunge all'albero una foglia con il valore in input.
+	 * 
+	 * @param nodeValue Valore della foglia.
+	 * @return Indice della foglia.
+	 */
+	private int addNode(double nodeValue) {
+		if (size == attribute.length) {
+			attribute = Arrays.copyOf(attribute, 2 * size);
+			threshold = Arrays.copyOf(threshold, 2 * size);
+			next = Arrays.copyOf(next, 2 * size);
+			value = Arrays.copyOf(value, 2 * size);
+		}
+		attribute[size] = -1;
+		value[size] = nodeValue;
+		return size++;
+	}
+
+}
@@ -26,9 +26,37 @@ class ContinuousNode extends SplitNode {
 		super(trainingSet, beginExampleIndex, endExampleIndex, attribute);
 	}
 
+	/**
+	 * Costruttore di classe per uno split già determinato: il ramo sinistro
+	 * copre i primi leftCount esempi del sottoinsieme, con valori non superiori
+	 * alla soglia.
+	 * 
+	 * @param beginExampleIndex Estremo inferiore del sottoinsieme di training.
+	 * @param endExampleIndex   Estremo superiore del sottoinsieme di training.
+	 * @param variance          SSE dell'attributo di classe nel sottoinsieme.
+	 * @param attribute         Attributo indipendente continuo sul quale è
+	 *                          definito lo split.
+	 * @param splitValue        Soglia dello split.
+	 * @param leftCount         Numero di esempi del ramo sinistro.
+	 * @param splitVariance     SSE a seguito del partizionamento indotto dallo
+	 *                          split.
+	 */
+	ContinuousNode(int beginExampleIndex, int endExampleIndex, double variance, ContinuousAttribute attribute,
+			double splitValue, int leftCount, double splitVariance) {
+		super(beginExampleIndex, endExampleIndex, variance, attribute, splitVariance);
+		int split = beginExampleIndex + leftCount;
+		getMapSplit().add(new SplitInfo(splitValue, beginExampleIndex, split - 1, 0, "<="));
+		getMapSplit().add(new SplitInfo(splitValue, split, endExampleIndex, 1, ">"));
+	}
+
 	/**
 	 * Avvalora la lista mapSplit definita in SplitNode, in relazione ad attributo
-	 * continuo e sottoinsieme di training correnti.
+	 * continuo e sottoinsieme di training correnti. Una sola scansione degli
+	 * esempi, ordinati per valore, accumula le somme del ramo sinistro: la soglia
+	 * tra due valori distinti consecutivi è valutata quando il secondo è
+	 * incontrato, e le somme del ramo destro sono la differenza da quelle del
+	 * nodo. È scelta la prima soglia con SSE minore; il ramo destro è scartato se
+	 * rappresenta una sola tupla.
 	 * 
 	 * @param trainingSet       Oggetto di tipo Data contenente il training set
 	 *                          completo.
@@ -36,32 +64,54 @@ class ContinuousNode extends SplitNode {
 	 * @param endExampleIndex   Estremo superiore del sottoinsieme di training.
 	 * @param attribute         Attributo indipendente sul quale si definisce lo
 	 *                          split.
+	 * @return SSE a seguito del partizionamento, nullo se l'attributo è costante
+	 *         nel sottoinsieme.
 	 */
-	void setSplitInfo(Data trainingSet, int beginExampleIndex, int endExampleIndex, Attribute attribute) {
-		Double currentSplitValue = (Double) trainingSet.getExplanatoryValue(beginExampleIndex, attribute.getIndex());
+	double setSplitInfo(Data trainingSet, int beginExampleIndex, int endExampleIndex, Attribute attribute) {
+		double shift = trainingSet.getClassMean();
+		double currentSplitValue = trainingSet.getContinuousValue(beginExampleIndex, attribute.getIndex());
+		long leftWeight = 0;
+		double leftSum = 0;
+		double leftSquares = 0;
+		int bestSplit = -1;
+		long bestLeftWeight = 0;
+		double bestValue = 0;
+		double bestLeftVariance = 0;
 		double bestInfoVariance = 0;
-		List<SplitInfo> bestMapSplit = null;
-		for (int i = beginExampleIndex + 1; i <= endExampleIndex; i++) {
-			Double value = (Double) trainingSet.getExplanatoryValue(i, attribute.getIndex());
-			if (value.doubleValue() != currentSplitValue.doubleValue()) {
-				double candidateSplitVariance = new LeafNode(trainingSet, beginExampleIndex, i - 1).getVariance();
-				candidateSplitVariance += new LeafNode(trainingSet, i, endExampleIndex).getVariance();
-				if (bestMapSplit == null) {
-					bestMapSplit = new ArrayList<SplitInfo>();
-					bestMapSplit.add(new SplitInfo(currentSplitValue, beginExampleIndex, i - 1, 0, "<="));
-					bestMapSplit.add(new SplitInfo(currentSplitValue, i, endExampleIndex, 1, ">"));
-					bestInfoVariance = candidateSplitVariance;
-				} else if (candidateSplitVariance < bestInfoVariance) {
+		for (int i = beginExampleIndex; i <= endExampleIndex; i++) {
+			double value = trainingSet.getContinuousValue(i, attribute.getIndex());
+			if (value != currentSplitValue) {
+				double leftVariance = sse(leftWeight, leftSum, leftSquares);
+				double candidateSplitVariance = leftVariance
+						+ sse(getWeight() - leftWeight, getSum() - leftSum, getSquares() - leftSquares);
+				if (bestSplit < 0 || candidateSplitVariance < bestInfoVariance) {
+					bestSplit = i;
+					bestLeftWeight = leftWeight;
+					bestValue = currentSplitValue;
+					bestLeftVariance = leftVariance;
 					bestInfoVariance = candidateSplitVariance;
-					bestMapSplit.set(0, new SplitInfo(currentSplitValue, beginExampleIndex, i - 1, 0, "<="));
-					bestMapSplit.set(1, new SplitInfo(currentSplitValue, i, endExampleIndex, 1, ">"));
 				}
 				currentSplitValue = value;
 			}
+			int w = trainingSet.getWeight(i);
+			double d = trainingSet.getClassValue(i) - shift;
+			leftWeight += w;
+			leftSum += w * d;
+			leftSquares += w * d * d;
 		}
+		if (bestSplit < 0) {
+			setMapSplit(null);
+			return 0;
+		}
+		List<SplitInfo> bestMapSplit = new ArrayList<SplitInfo>();
+		bestMapSplit.add(new SplitInfo(bestValue, beginExampleIndex, bestSplit - 1, 0, "<="));
+		bestMapSplit.add(new SplitInfo(bestValue, bestSplit, endExampleIndex, 1, ">"));
 		setMapSplit(bestMapSplit);
-		if (getMapSplit() != null && (getSplitInfo(1).getBeginIndex() == getSplitInfo(1).getEndIndex()))
+		if (getWeight() - bestLeftWeight == 1) {
 			getMapSplit().remove(1);
+			return bestLeftVariance;
+		}
+		return bestInfoVariance;
 	}
 
 	/**
@@ -69,12 +119,24 @@ class ContinuousNode extends SplitNode {
 	 * collezionati in mapSplit e restituisce l'identificativo dello split con cui
 	 * il test ha esito positivo.
 	 * 
-	 * @param value Valore continuo dell'attributo che si vuole testare.
+	 * @param value Valore continuo dell'attributo che si vuole testare, espresso
+	 *              come numero o come stringa numerica.
 	 * @return Identificativo del ramo di split in mapSplit, con cui il test ha
-	 *         esito positivo.
+	 *         esito positivo, o -1 se il valore non è numerico.
 	 */
 	int testCondition(Object value) {
-		if ((Double) value > (Double) getSplitInfo(0).getSplitValue())
+		double number;
+		if (value instanceof Number)
+			number = ((Number) value).doubleValue();
+		else if (value instanceof String)
+			try {
+				number = Double.parseDouble((String) value);
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		else
+			return -1;
+		if (number > (Double) getSplitInfo(0).getSplitValue())
 			return 1;
 		return 0;
 	}
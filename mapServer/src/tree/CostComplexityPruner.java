@@ -0,0 +1,376 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import data.Data;
+
+/**
+ * Classe che calcola la sequenza di potatura per costo-complessità di un albero
+ * di regressione. Per un parametro di complessità alfa, il sottoalbero potato
+ * minimizza la somma dello SSE di training delle foglie e di alfa per il numero
+ * di foglie; al crescere di alfa i sottoalberi sono annidati, e ciascun nodo di
+ * split diventa foglia a partire da un valore di alfa, calcolato eliminando
+ * ripetutamente gli split con il minor aumento dello SSE per foglia rimossa.
+ * Un nodo di split che diventa foglia predice la media pesata dell'attributo di
+ * classe negli esempi di training che lo attraversano.
+ * 
+ * I nodi dell'albero sono elencati in ordine anticipato, così che i
+ * discendenti di ciascun nodo ne seguano la posizione in un intervallo
+ * contiguo e che una visita in ordine inverso incontri i figli prima dei
+ * padri.
+ */
+class CostComplexityPruner {
+
+	/**
+	 * Sottoalberi dell'albero in ordine anticipato.
+	 */
+	private RegressionTree[] nodes;
+
+	/**
+	 * Posizione dei figli di ciascun nodo; null per le foglie.
+	 */
+	private int[][] children;
+
+	/**
+	 * Numero di nodi del sottoalbero avente radice in ciascun nodo.
+	 */
+	private int[] sizes;
+
+	/**
+	 * Valore predetto da ciascun nodo se reso foglia: il valore della foglia per
+	 * le foglie dell'albero, la media degli esempi di training per i nodi di
+	 * split.
+	 */
+	private double[] means;
+
+	/**
+	 * SSE di training di ciascun nodo.
+	 */
+	private double[] risks;
+
+	/**
+	 * Valore di alfa a partire dal quale ciascun nodo di split diventa foglia.
+	 */
+	private double[] prunedAt;
+
+	/**
+	 * Valori crescenti di alfa, il primo nullo, a cui il sottoalbero potato
+	 * cambia.
+	 */
+	private double[] alphas;
+
+	/**
+	 * Costruttore di classe. Calcola medie e SSE di ciascun nodo instradando gli
+	 * esempi di training e determina la sequenza di potatura.
+	 * 
+	 * @param tree        Albero da potare.
+	 * @param trainingSet Training set da cui l'albero è stato appreso.
+	 */
+	CostComplexityPruner(RegressionTree tree, Data trainingSet) {
+		List<RegressionTree> visit = new ArrayList<>();
+		visit(tree, visit);
+		nodes = visit.toArray(new RegressionTree[0]);
+		int n = nodes.length;
+		children = new int[n][];
+		sizes = new int[n];
+		for (int t = n - 1; t >= 0; t--) {
+			sizes[t] = 1;
+			RegressionTree[] childTree = nodes[t].getChildTree();
+			if (nodes[t].getRoot() instanceof SplitNode) {
+				children[t] = new int[childTree.length];
+				for (int i = 0, c = t + 1; i < childTree.length; c += sizes[c], i++) {
+					children[t][i] = c;
+					sizes[t] += sizes[c];
+				}
+			}
+		}
+		double shift = 0;
+		for (int i = 0; i < trainingSet.getNumberOfExamples(); i++)
+			shift += trainingSet.getWeight(i) * trainingSet.getClassValue(i);
+		shift /= trainingSet.getTotalWeight();
+		double[] weights = new double[n];
+		double[] sums = new double[n];
+		double[] squares = new double[n];
+		Object[] example = new Object[trainingSet.getNumberOfExplanatoryAttributes()];
+		for (int i = 0; i < trainingSet.getNumberOfExamples(); i++) {
+			for (int a = 0; a < example.length; a++)
+				example[a] = trainingSet.getExplanatoryValue(i, a);
+			double w = trainingSet.getWeight(i);
+			double d = trainingSet.getClassValue(i) - shift;
+			for (int t = 0; t >= 0; t = next(t, example)) {
+				weights[t] += w;
+				sums[t] += w * d;
+				squares[t] += w * d * d;
+			}
+		}
+		means = new double[n];
+		risks = new double[n];
+		for (int t = 0; t < n; t++) {
+			if (children[t] == null)
+				means[t] = ((LeafNode) nodes[t].getRoot()).getPredictedClassValue();
+			else
+				means[t] = weights[t] > 0 ? shift + sums[t] / weights[t] : shift;
+			risks[t] = weights[t] > 0 ? Math.max(0, squares[t] - sums[t] * sums[t] / weights[t]) : 0;
+		}
+		weakestLinks();
+	}
+
+	/**
+	 * Aggiunge alla lista in input il sottoalbero e, ricorsivamente, i suoi
+	 * sottoalberi in ordine anticipato.
+	 * 
+	 * @param tree  Sottoalbero da visitare.
+	 * @param visit Lista dei sottoalberi visitati.
+	 */
+	private static void visit(RegressionTree tree, List<RegressionTree> visit) {
+		visit.add(tree);
+		if (tree.getRoot() instanceof SplitNode)
+			for (RegressionTree child : tree.getChildTree())
+				visit(child, visit);
+	}
+
+	/**
+	 * Restituisce il figlio del nodo di split verso cui è instradato l'esempio.
+	 * 
+	 * @param t       Posizione del nodo.
+	 * @param example Valori degli attributi indipendenti dell'esempio.
+	 * @return Posizione del figlio, o -1 se il nodo è una foglia o nessun ramo
+	 *         corrisponde al valore dell'esempio.
+	 */
+	private int next(int t, Object[] example) {
+		if (children[t] == null)
+			return -1;
+		SplitNode split = (SplitNode) nodes[t].getRoot();
+		int a = split.getAttribute().getIndex();
+		int branch = a < example.length ? split.testCondition(example[a]) : -1;
+		return branch >= 0 && branch < children[t].length ? children[t][branch] : -1;
+	}
+
+	/**
+	 * Determina la sequenza di potatura: a ogni passo calcola per ciascun nodo
+	 * di split del sottoalbero corrente l'aumento dello SSE per foglia rimossa
+	 * se il nodo diventasse foglia, e rende foglie i nodi con l'aumento minimo,
+	 * finché la radice non diventa foglia.
+	 */
+	private void weakestLinks() {
+		int n = nodes.length;
+		prunedAt = new double[n];
+		Arrays.fill(prunedAt, Double.POSITIVE_INFINITY);
+		boolean[] removed = new boolean[n];
+		int[] leaves = new int[n];
+		double[] subtreeRisks = new double[n];
+		double[] links = new double[n];
+		List<Double> sequence = new ArrayList<>();
+		double alpha = 0;
+		sequence.add(alpha);
+		while (children[0] != null && prunedAt[0] == Double.POSITIVE_INFINITY) {
+			double weakest = Double.POSITIVE_INFINITY;
+			for (int t = n - 1; t >= 0; t--)
+				if (children[t] == null || prunedAt[t] != Double.POSITIVE_INFINITY) {
+					leaves[t] = 1;
+					subtreeRisks[t] = risks[t];
+				} else {
+					leaves[t] = 0;
+					subtreeRisks[t] = 0;
+					for (int c : children[t]) {
+						leaves[t] += leaves[c];
+						subtreeRisks[t] += subtreeRisks[c];
+					}
+					links[t] = (risks[t] - subtreeRisks[t]) / (leaves[t] - 1);
+					if (!removed[t])
+						weakest = Math.min(weakest, links[t]);
+				}
+			if (weakest > alpha) {
+				alpha = weakest;
+				sequence.add(alpha);
+			}
+			for (int t = 0; t < n; t++)
+				if (children[t] != null && !removed[t] && prunedAt[t] == Double.POSITIVE_INFINITY
+						&& links[t] <= alpha) {
+					prunedAt[t] = alpha;
+					Arrays.fill(removed, t + 1, t + sizes[t], true);
+				}
+		}
+		alphas = new double[sequence.size()];
+		for (int k = 0; k < alphas.length; k++)
+			alphas[k] = sequence.get(k);
+	}
+
+	/**
+	 * Restituisce il valore del membro alphas.
+	 * 
+	 * @return Valori crescenti di alfa a cui il sottoalbero potato cambia.
+	 */
+	double[] getAlphas() {
+		return alphas;
+	}
+
+	/**
+	 * Calcola lo SSE pesato degli esempi in input per il sottoalbero potato con
+	 * ciascuno dei valori di alfa indicati. Gli esempi sono instradati una sola
+	 * volta nell'albero completo, accumulando in ciascun nodo attraversato
+	 * l'errore che avrebbero se il nodo fosse foglia. Un esempio con un valore
+	 * che non corrisponde ad alcun ramo è valutato con la media del nodo in cui
+	 * il percorso si interrompe.
+	 * 
+	 * @param examples Esempi da valutare, con gli attributi del training set.
+	 * @param alphas   Valori di alfa.
+	 * @return SSE degli esempi per ciascun valore di alfa.
+	 */
+	double[] errors(Data examples, double[] alphas) {
+		int n = nodes.length;
+		double[] errors = new double[n];
+		double[] stopped = new double[n];
+		Object[] example = new Object[examples.getNumberOfExplanatoryAttributes()];
+		for (int i = 0; i < examples.getNumberOfExamples(); i++) {
+			for (int a = 0; a < example.length; a++)
+				example[a] = examples.getExplanatoryValue(i, a);
+			double w = examples.getWeight(i);
+			double y = examples.getClassValue(i);
+			int t = 0;
+			while (true) {
+				errors[t] += w * (y - means[t]) * (y - means[t]);
+				int c = next(t, example);
+				if (c < 0) {
+					if (children[t] != null)
+						stopped[t] += w * (y - means[t]) * (y - means[t]);
+					break;
+				}
+				t = c;
+			}
+		}
+		double[] result = new double[alphas.length];
+		double[] costs = new double[n];
+		for (int k = 0; k < alphas.length; k++) {
+			for (int t = n - 1; t >= 0; t--)
+				if (children[t] == null || prunedAt[t] <= alphas[k])
+					costs[t] = errors[t];
+				else {
+					costs[t] = stopped[t];
+					for (int c : children[t])
+						costs[t] += costs[c];
+				}
+			result[k] = costs[0];
+		}
+		return result;
+	}
+
+	/**
+	 * Costruisce il sottoalbero potato con il valore di alfa in input. I nodi non
+	 * potati sono condivisi con l'albero completo.
+	 * 
+	 * @param alpha Parametro di complessità.
+	 * @return Sottoalbero potato.
+	 */
+	RegressionTree prune(double alpha) {
+		return prune(0, alpha);
+	}
+
+	/**
+	 * Supporta il metodo prune(double), costruendo il sottoalbero potato avente
+	 * radice nel nodo in input.
+	 * 
+	 * @param t     Posizione del nodo.
+	 * @param alpha Parametro di complessità.
+	 * @return Sottoalbero potato.
+	 */
+	private RegressionTree prune(int t, double alpha) {
+		Node root = nodes[t].getRoot();
+		if (children[t] == null)
+			return new RegressionTree(root, null);
+		if (prunedAt[t] <= alpha)
+			return new RegressionTree(new LeafNode(root.getBeginExampleIndex(), root.getEndExampleIndex(),
+					root.getVariance(), means[t]), null);
+		RegressionTree[] childTree = new RegressionTree[children[t].length];
+		for (int i = 0; i < childTree.length; i++)
+			childTree[i] = prune(children[t][i], alpha);
+		return new RegressionTree(root, childTree);
+	}
+
+	/**
+	 * Sceglie il valore di alfa con cui il sottoalbero potato ha l'errore minore
+	 * sugli esempi di validazione; a parità di errore, il sottoalbero più
+	 * piccolo.
+	 * 
+	 * @param validationSet Esempi di validazione.
+	 * @return Valore di alfa scelto.
+	 */
+	double select(Data validationSet) {
+		return alphas[argmin(errors(validationSet, alphas))];
+	}
+
+	/**
+	 * Sceglie il valore di alfa per validazione incrociata. Il training set è
+	 * suddiviso casualmente in gruppi; per ciascun gruppo un albero è appreso
+	 * dagli altri con gli stessi criteri di arresto e ne è calcolata la sequenza
+	 * di potatura. Ciascun intervallo [alphas[k], alphas[k+1]) della sequenza
+	 * completa è rappresentato dalla media geometrica degli estremi, con cui sono
+	 * potati gli alberi dei gruppi; è scelto l'intervallo con la somma minore
+	 * degli errori sui gruppi esclusi.
+	 * 
+	 * @param trainingSet Training set da cui l'albero è stato appreso.
+	 * @param config      Criteri di arresto dell'induzione.
+	 * @param folds       Numero di gruppi, almeno due.
+	 * @param random      Generatore dei numeri casuali.
+	 * @return Valore di alfa scelto.
+	 */
+	double select(Data trainingSet, TrainingConfig config, int folds, Random random) {
+		int n = trainingSet.getNumberOfExamples();
+		int[] permutation = new int[n];
+		for (int i = 0; i < n; i++)
+			permutation[i] = i;
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = swap;
+		}
+		double[] representatives = new double[alphas.length];
+		for (int k = 0; k < alphas.length; k++)
+			representatives[k] = k + 1 < alphas.length ? Math.sqrt(alphas[k] * alphas[k + 1]) : alphas[k];
+		double[] errors = new double[alphas.length];
+		for (int f = 0; f < folds; f++) {
+			int[] training = new int[n - (n - f + folds - 1) / folds];
+			int[] test = new int[(n - f + folds - 1) / folds];
+			for (int i = 0, r = 0, s = 0; i < n; i++)
+				if (i % folds == f)
+					test[s++] = permutation[i];
+				else
+					training[r++] = permutation[i];
+			Data learning = trainingSet.subset(training);
+			CostComplexityPruner fold;
+			try {
+				fold = new CostComplexityPruner(new RegressionTree(learning, config), learning);
+			} finally {
+				learning.release();
+			}
+			Data testing = trainingSet.subset(test);
+			double[] foldErrors;
+			try {
+				foldErrors = fold.errors(testing, representatives);
+			} finally {
+				testing.release();
+			}
+			for (int k = 0; k < errors.length; k++)
+				errors[k] += foldErrors[k];
+		}
+		return alphas[argmin(errors)];
+	}
+
+	/**
+	 * Restituisce la posizione dell'ultimo minimo dell'array in input.
+	 * 
+	 * @param values Valori da confrontare.
+	 * @return Posizione del minimo.
+	 */
+	private static int argmin(double[] values) {
+		int best = 0;
+		for (int k = 1; k < values.length; k++)
+			if (values[k] <= values[best])
+				best = k;
+		return best;
+	}
+
+}
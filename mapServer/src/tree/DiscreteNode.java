@@ -24,10 +24,32 @@ class DiscreteNode extends SplitNode {
 		super(trainingSet, beginExampleIndex, endExampleIndex, attribute);
 	}
 
+	/**
+	 * Costruttore di classe per uno split già determinato: i rami coprono, in
+	 * ordine, gruppi consecutivi di esempi del sottoinsieme.
+	 * 
+	 * @param beginExampleIndex Estremo inferiore del sottoinsieme di training.
+	 * @param endExampleIndex   Estremo superiore del sottoinsieme di training.
+	 * @param variance          SSE dell'attributo di classe nel sottoinsieme.
+	 * @param attribute         Attributo indipendente discreto sul quale è
+	 *                          definito lo split.
+	 * @param splitValues       Valore dell'attributo di ciascun ramo.
+	 * @param counts            Numero di esempi di ciascun ramo.
+	 * @param splitVariance     SSE a seguito del partizionamento indotto dallo
+	 *                          split.
+	 */
+	DiscreteNode(int beginExampleIndex, int endExampleIndex, double variance, DiscreteAttribute attribute,
+			Object[] splitValues, int[] counts, double splitVariance) {
+		super(beginExampleIndex, endExampleIndex, variance, attribute, splitVariance);
+		for (int i = 0, begin = beginExampleIndex; i < splitValues.length; begin += counts[i++])
+			getMapSplit().add(new SplitInfo(splitValues[i], begin, begin + counts[i] - 1, i));
+	}
+
 	/**
 	 * Avvalora la lista mapSplit definita in SplitNode, istanziando oggetti
 	 * SplitInfo con ciascuno dei valori discreti assunti dall’attributo nel
-	 * sottoinsieme di training corrente.
+	 * sottoinsieme di training corrente. L'ultimo valore è scartato se
+	 * rappresenta una sola tupla, ossia se la somma dei pesi dei suoi esempi è 1.
 	 * 
 	 * @param trainingSet       Oggetto di tipo Data contenente il training set
 	 *                          completo.
@@ -35,15 +57,30 @@ class DiscreteNode extends SplitNode {
 	 * @param endExampleIndex   Estremo superiore del sottoinsieme di training.
 	 * @param attribute         Attributo indipendente sul quale si definisce lo
 	 *                          split.
+	 * @return Somma degli SSE dei rami mantenuti.
 	 */
-	void setSplitInfo(Data trainingSet, int beginExampleIndex, int endExampleIndex, Attribute attribute) {
-		for (int begin = beginExampleIndex, end = beginExampleIndex + 1; end <= endExampleIndex; end++) {
+	double setSplitInfo(Data trainingSet, int beginExampleIndex, int endExampleIndex, Attribute attribute) {
+		double shift = trainingSet.getClassMean();
+		double splitVariance = 0;
+		for (int begin = beginExampleIndex, end; begin <= endExampleIndex; begin = end) {
 			Object value = trainingSet.getExplanatoryValue(begin, attribute.getIndex());
-			while (end <= endExampleIndex && value.equals(trainingSet.getExplanatoryValue(end, attribute.getIndex())))
-				end++;
-			getMapSplit().add(new SplitInfo(value, begin, end - 1, getNumberOfChildren()));
-			begin = end;
+			int weight = 0;
+			double sum = 0;
+			double squares = 0;
+			for (end = begin; end <= endExampleIndex
+					&& value.equals(trainingSet.getExplanatoryValue(end, attribute.getIndex())); end++) {
+				int w = trainingSet.getWeight(end);
+				double d = trainingSet.getClassValue(end) - shift;
+				weight += w;
+				sum += w * d;
+				squares += w * d * d;
+			}
+			if (end <= endExampleIndex || weight > 1) {
+				getMapSplit().add(new SplitInfo(value, begin, end - 1, getNumberOfChildren()));
+				splitVariance += sse(weight, sum, squares);
+			}
 		}
+		return splitVariance;
 	}
 
 	/**
@@ -54,13 +91,13 @@ class DiscreteNode extends SplitNode {
 	 * @param value Valore discreto dell'attributo che si vuole testare rispetto a
 	 *              tutti gli split.
 	 * @return Identificativo del ramo di split in mapSplit, con cui il test ha
-	 *         esito positivo.
+	 *         esito positivo, o -1 se il valore non corrisponde ad alcuno split.
 	 */
 	int testCondition(Object value) {
 		for (SplitInfo i : getMapSplit())
-			if (value.equals(i.getSplitValue()))
+			if (i.getSplitValue().equals(value))
 				return i.getNumberChild();
-		return 0;
+		return -1;
 	}
 
 	/**
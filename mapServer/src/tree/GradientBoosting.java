@@ -0,0 +1,317 @@
+package tree;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import data.Data;
+import data.DiscreteAttribute;
+import server.UnknownValueException;
+
+/**
+ * Classe che modella un modello di gradient boosting: una somma di alberi di
+ * regressione poco profondi, ciascuno appreso dai residui dei precedenti con un
+ * fattore di apprendimento che ne riduce il contributo. I nodi di tutti gli
+ * alberi sono compilati in array paralleli, con un elemento per nodo, così che
+ * la predizione di un esempio visiti gli alberi senza allocare oggetti: i
+ * valori dell'esempio sono codificati una sola volta e ciascun albero è
+ * percorso confrontandoli con attributo e soglia di ciascun nodo.
+ */
+public class GradientBoosting implements Model, Serializable {
+
+	/**
+	 * Nome di ciascun attributo indipendente.
+	 */
+	private String[] names;
+
+	/**
+	 * Valori distinti e ordinati di ciascun attributo discreto, indicizzati dal
+	 * codice; null per gli attributi continui.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Fattore di apprendimento.
+	 */
+	private double learningRate;
+
+	/**
+	 * Media pesata dell'attributo di classe nel training set, a cui sono sommati
+	 * i valori degli alberi.
+	 */
+	private double base;
+
+	/**
+	 * Radice di ciascun albero.
+	 */
+	private int[] roots;
+
+	/**
+	 * Attributo dello split di ciascun nodo; -1 per le foglie.
+	 */
+	private int[] attribute;
+
+	/**
+	 * Soglia dello split di ciascun nodo su un attributo continuo.
+	 */
+	private double[] threshold;
+
+	/**
+	 * Per i nodi di split su un attributo continuo, figlio sinistro, seguito dal
+	 * destro; per quelli su un attributo discreto, posizione in branches del
+	 * figlio corrispondente al primo codice.
+	 */
+	private int[] next;
+
+	/**
+	 * Figlio di ciascun nodo di split discreto per ciascun codice; -1 se il
+	 * codice non era presente negli esempi del nodo.
+	 */
+	private int[] branches;
+
+	/**
+	 * Valore sommato alla predizione da ciascun nodo in cui termina il percorso.
+	 */
+	private double[] value;
+
+	/**
+	 * Versione del modello, rigenerata a ogni apprendimento.
+	 */
+	private long version;
+
+	/**
+	 * Costruttore di classe. Apprende gli alberi uno alla volta, ciascuno dai
+	 * residui della somma dei precedenti.
+	 * 
+	 * @param trainingSet   Training set.
+	 * @param numberOfTrees Numero di alberi del modello.
+	 * @param learningRate  Fattore di apprendimento, in (0, 1].
+	 * @param maxDepth      Profondità massima di ciascun albero.
+	 */
+	public GradientBoosting(Data trainingSet, int numberOfTrees, double learningRate, int maxDepth) {
+		if (numberOfTrees < 1)
+			throw new IllegalArgumentException("The model must contain at least one tree");
+		if (!(learningRate > 0 && learningRate <= 1))
+			throw new IllegalArgumentException("The learning rate must be in (0, 1]");
+		if (maxDepth < 1)
+			throw new IllegalArgumentException("The maximum depth must be at least one");
+		BoostingLearner learner = new BoostingLearner(trainingSet, learningRate, maxDepth);
+		for (int t = 0; t < numberOfTrees; t++)
+			learner.learnTree();
+		int attributes = trainingSet.getNumberOfExplanatoryAttributes();
+		names = new String[attributes];
+		dictionaries = new String[attributes][];
+		for (int a = 0; a < attributes; a++) {
+			names[a] = trainingSet.getExplanatoryAttribute(a).toString();
+			if (trainingSet.getExplanatoryAttribute(a) instanceof DiscreteAttribute) {
+				List<String> values = new ArrayList<>();
+				for (String v : (DiscreteAttribute) trainingSet.getExplanatoryAttribute(a))
+					values.add(v);
+				dictionaries[a] = values.toArray(new String[0]);
+			}
+		}
+		this.learningRate = learningRate;
+		base = learner.base;
+		roots = Arrays.copyOf(learner.roots, learner.numberOfTrees);
+		attribute = Arrays.copyOf(learner.attribute, learner.size);
+		threshold = Arrays.copyOf(learner.threshold, learner.size);
+		next = Arrays.copyOf(learner.next, learner.size);
+		value = Arrays.copyOf(learner.value, learner.size);
+		branches = Arrays.copyOf(learner.branches, learner.branchCount);
+		version = new Random().nextLong() & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Restituisce il valore del membro version.
+	 * 
+	 * @return Versione del modello.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Restituisce il numero di alberi del modello.
+	 * 
+	 * @return Numero di alberi.
+	 */
+	public int getNumberOfTrees() {
+		return roots.length;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un esempio completo, come
+	 * somma della media del training set e dei valori degli alberi.
+	 * 
+	 * @see predictClass(Object[][])
+	 */
+	public Double predictClass(Object[] example) throws UnknownValueException {
+		Double prediction = predictClass(new Object[][] { example })[0];
+		if (prediction == null)
+			throw new UnknownValueException("The example contains a missing or unknown value");
+		return prediction;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un insieme di esempi
+	 * completi. I valori di ciascun esempio sono codificati in un unico array,
+	 * riutilizzato per tutti gli esempi: i valori continui come numeri, quelli
+	 * discreti come codici del dizionario. La predizione è null se un percorso
+	 * incontra un valore mancante o sconosciuto al modello; se invece un nodo non
+	 * ha il ramo di un valore noto, assente dai suoi esempi, il percorso termina
+	 * nel nodo, il cui valore è la media dei residui degli esempi che copre.
+	 */
+	public Double[] predictClass(Object[][] examples) {
+		Double[] predictions = new Double[examples.length];
+		double[] encoded = new double[dictionaries.length];
+		for (int e = 0; e < examples.length; e++) {
+			encode(examples[e], encoded);
+			double sum = base;
+			int t = 0;
+			for (int node; t < roots.length && (node = leaf(roots[t], encoded)) >= 0; t++)
+				sum += value[node];
+			if (t == roots.length)
+				predictions[e] = sum;
+		}
+		return predictions;
+	}
+
+	/**
+	 * Codifica i valori di un esempio: un valore continuo come numero, uno
+	 * discreto come codice del dizionario; NaN se il valore è mancante o
+	 * sconosciuto.
+	 * 
+	 * @param example Valori degli attributi indipendenti dell'esempio.
+	 * @param encoded Array in cui memorizzare i valori codificati.
+	 */
+	private void encode(Object[] example, double[] encoded) {
+		for (int a = 0; a < encoded.length; a++) {
+			Object v = a < example.length ? example[a] : null;
+			encoded[a] = Double.NaN;
+			if (dictionaries[a] != null) {
+				int code = v instanceof String ? Arrays.binarySearch(dictionaries[a], v) : -1;
+				if (code >= 0)
+					encoded[a] = code;
+			} else if (v instanceof Number)
+				encoded[a] = ((Number) v).doubleValue();
+			else if (v instanceof String)
+				try {
+					encoded[a] = Double.parseDouble((String) v);
+				} catch (NumberFormatException e) {
+					encoded[a] = Double.NaN;
+				}
+		}
+	}
+
+	/**
+	 * Percorre un albero dalla radice in input fino al nodo in cui termina il
+	 * percorso dell'esempio codificato.
+	 * 
+	 * @param node    Radice dell'albero.
+	 * @param encoded Valori codificati dell'esempio.
+	 * @return Indice del nodo in cui termina il percorso, o -1 se il percorso
+	 *         incontra un valore mancante o sconosciuto.
+	 */
+	private int leaf(int node, double[] encoded) {
+		while (attribute[node] >= 0) {
+			double x = encoded[attribute[node]];
+			if (Double.isNaN(x))
+				return -1;
+			int child = dictionaries[attribute[node]] != null ? branches[next[node] + (int) x]
+					: next[node] + (x <= threshold[node] ? 0 : 1);
+			if (child < 0)
+				return node;
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * Concatena in una stringa la descrizione del modello e le regole di ciascun
+	 * albero.
+	 */
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append("Gradient boosting: ").append(roots.length).append(" trees, learning rate ")
+				.append(learningRate).append(", base ").append(base).append("\n");
+		for (int t = 0; t < roots.length; t++) {
+			text.append("********* TREE ").append(t).append(" **********\n");
+			rules(roots[t], "", text);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Supporta il metodo toString(), aggiungendo una regola per ciascuna foglia
+	 * del sottoalbero avente radice nel nodo in input.
+	 * 
+	 * @param node    Radice del sottoalbero.
+	 * @param current Condizioni lungo il cammino dalla radice dell'albero.
+	 * @param text    Testo a cui aggiungere le regole.
+	 */
+	private void rules(int node, String current, StringBuilder text) {
+		int a = attribute[node];
+		if (a < 0) {
+			text.append(current.isEmpty() ? "" : current + " ==> ").append("Residual = ").append(value[node])
+					.append("\n");
+			return;
+		}
+		String prefix = current.isEmpty() ? "" : current + " AND ";
+		if (dictionaries[a] == null) {
+			rules(next[node], prefix + names[a] + "<=" + threshold[node], text);
+			rules(next[node] + 1, prefix + names[a] + ">" + threshold[node], text);
+		} else
+			for (int code = 0; code < dictionaries[a].length; code++)
+				if (branches[next[node] + code] >= 0)
+					rules(branches[next[node] + code], prefix + names[a] + "=" + dictionaries[a][code], text);
+	}
+
+	/**
+	 * Serializza il modello all'interno del file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui salvare il modello.
+	 * @throws IOException Se si verificano errori nella creazione del file.
+	 */
+	public void salva(String nomeFile) throws IOException {
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new FileOutputStream(nomeFile));
+			out.writeObject(this);
+		} finally {
+			if (out != null)
+				out.close();
+		}
+	}
+
+	/**
+	 * Carica il modello conservato nel file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui è salvato il modello.
+	 * @return Modello contenuto nel file.
+	 * @throws IOException            Se si verificano errori nel caricamento del
+	 *                                file o il file non contiene un modello di
+	 *                                gradient boosting.
+	 * @throws ClassNotFoundException Se la classe dell'oggetto serializzato non
+	 *                                viene trovata.
+	 */
+	public static GradientBoosting carica(String nomeFile) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new FileInputStream(nomeFile));
+			Object model = in.readObject();
+			if (!(model instanceof GradientBoosting))
+				throw new IOException(nomeFile + " does not contain a gradient boosting model");
+			return (GradientBoosting) model;
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import data.Attribute;
+import data.Data;
+import data.DiscreteAttribute;
+import data.RemoteTable;
+import data.TrainingDataException;
+import database.Selection;
+
+/**
+ * Classe che apprende un albero di regressione da un training set che resta nel
+ * database. L'albero è costruito per livelli: per ciascun livello e attributo
+ * un'unica interrogazione di aggregazione calcola, per tutti i nodi della
+ * frontiera, conteggio, somma e somma dei quadrati dell'attributo di classe per
+ * ciascun valore discreto o intervallo di valori continui, così che dal DBMS
+ * sono trasferiti solo gli aggregati. Ciascun nodo è individuato dalla
+ * congiunzione dei test lungo il cammino dalla radice, i cui valori sono
+ * passati come parametri. Le soglie degli intervalli sono calcolate dal DBMS,
+ * esatte se i valori distinti sono pochi.
+ * 
+ * I nodi che coprono al più memoryThreshold esempi sono caricati in memoria e
+ * appresi con l'induzione in memoria, che da quel punto è più rapida di una
+ * interrogazione per livello.
+ */
+class InDatabaseLearner extends AggregateLearner {
+
+	/**
+	 * Training set.
+	 */
+	private RemoteTable trainingSet;
+
+	/**
+	 * Numero massimo di esempi di un nodo appreso in memoria.
+	 */
+	private int memoryThreshold;
+
+	/**
+	 * Selezione delle tuple coperte da ciascun nodo della frontiera e del livello
+	 * successivo.
+	 */
+	private Map<Grown, Selection> selections = new IdentityHashMap<>();
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param trainingSet     Training set.
+	 * @param budget          Stato dei criteri di arresto dell'induzione.
+	 * @param memoryThreshold Numero massimo di esempi di un nodo appreso in
+	 *                        memoria.
+	 */
+	InDatabaseLearner(RemoteTable trainingSet, TrainingConfig.Budget budget, int memoryThreshold) {
+		super(budget);
+		this.trainingSet = trainingSet;
+		this.memoryThreshold = memoryThreshold;
+		int attributes = trainingSet.getNumberOfExplanatoryAttributes();
+		discrete = new boolean[attributes];
+		for (int a = 0; a < attributes; a++)
+			discrete[a] = trainingSet.getExplanatoryAttribute(a) instanceof DiscreteAttribute;
+	}
+
+	/**
+	 * Apprende l'albero: calcola le soglie degli attributi continui, poi
+	 * interroga il database una volta per attributo e livello finché restano
+	 * nodi da determinare che non possono essere appresi in memoria.
+	 * 
+	 * @return Albero appreso.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nelle interrogazioni.
+	 */
+	RegressionTree learn() throws TrainingDataException {
+		cuts = new double[discrete.length][];
+		bins = new int[discrete.length];
+		for (int a = 0; a < discrete.length; a++)
+			if (discrete[a])
+				bins[a] = trainingSet.getNumberOfDiscreteValues(a);
+			else {
+				cuts[a] = trainingSet.getCuts(a, MAX_BINS);
+				bins[a] = cuts[a].length;
+			}
+		shift = trainingSet.getClassMean();
+		Grown root = new Grown(0, trainingSet.getNumberOfExamples(), 0, 0);
+		selections.put(root, trainingSet.getSelection());
+		List<Grown> frontier = learnInMemory(List.of(root));
+		while (!frontier.isEmpty()) {
+			Statistics[] statistics = scan(frontier);
+			List<Grown> next = new ArrayList<>();
+			for (int i = 0; i < frontier.size(); i++) {
+				determine(frontier.get(i), statistics[i], next);
+				selections.remove(frontier.get(i));
+			}
+			frontier = learnInMemory(next);
+		}
+		return build(root);
+	}
+
+	/**
+	 * Calcola le statistiche di ciascun nodo della frontiera, con
+	 * un'interrogazione per attributo. Conteggio, somme e valori estremi
+	 * dell'attributo di classe del nodo sono ricavati dai gruppi del primo
+	 * attributo.
+	 * 
+	 * @param frontier Nodi della frontiera.
+	 * @return Statistiche di ciascun nodo della frontiera.
+	 * @throws TrainingDataException Se si verificano errori nelle interrogazioni.
+	 */
+	private Statistics[] scan(List<Grown> frontier) throws TrainingDataException {
+		Statistics[] statistics = new Statistics[frontier.size()];
+		List<Selection> nodes = new ArrayList<>();
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = new Statistics(bins, discrete);
+			nodes.add(selections.get(frontier.get(i)));
+		}
+		for (int a = 0; a < discrete.length; a++) {
+			int attribute = a;
+			trainingSet.scanSplitStatistics(nodes, a, cuts[a], shift,
+					(node, group, count, sum, squares, minClass, maxClass, minValue, maxValue) -> {
+						int bin = discrete[attribute] ? trainingSet.getDiscreteCode(attribute, (String) group)
+								: (Integer) group;
+						if (bin < 0)
+							return;
+						Statistics s = statistics[node];
+						s.counts[attribute][bin] += count;
+						s.sums[attribute][bin] += sum;
+						s.squareSums[attribute][bin] += squares;
+						if (!discrete[attribute]) {
+							s.minValues[attribute][bin] = Math.min(s.minValues[attribute][bin], minValue);
+							s.maxValues[attribute][bin] = Math.max(s.maxValues[attribute][bin], maxValue);
+						}
+						if (attribute == 0) {
+							s.count += count;
+							s.sum += sum;
+							s.squares += squares;
+							s.minClass = Math.min(s.minClass, minClass);
+							s.maxClass = Math.max(s.maxClass, maxClass);
+						}
+					});
+		}
+		return statistics;
+	}
+
+	/**
+	 * Se il figlio in input è aggiunto alla frontiera successiva, ne ricava la
+	 * selezione restringendo quella del nodo di split con il test del ramo
+	 * corrispondente.
+	 */
+	void expand(Grown parent, int branch, List<Grown> next) {
+		super.expand(parent, branch, next);
+		if (parent.children[branch].slot < 0)
+			return;
+		String column = trainingSet.getColumnName(parent.attribute);
+		Object value = discrete[parent.attribute] ? ((SplitNode) parent.node).getSplitInfo(branch).getSplitValue()
+				: parent.threshold;
+		String operator = discrete[parent.attribute] ? "=" : branch == 0 ? "<=" : ">";
+		selections.put(parent.children[branch], selections.get(parent).and(column, operator, value));
+	}
+
+	/**
+	 * Apprende in memoria il sottoalbero di ciascun nodo in input che copre al più
+	 * memoryThreshold esempi, caricandone le tuple, e restituisce i nodi restanti,
+	 * che formano la frontiera.
+	 * 
+	 * @param nodes Nodi da determinare.
+	 * @return Nodi da determinare con le statistiche calcolate dal database.
+	 * @throws TrainingDataException Se il caricamento delle tuple fallisce.
+	 */
+	private List<Grown> learnInMemory(List<Grown> nodes) throws TrainingDataException {
+		List<Grown> frontier = new ArrayList<>();
+		for (Grown node : nodes)
+			if (node.count > memoryThreshold) {
+				node.slot = frontier.size();
+				frontier.add(node);
+			} else {
+				Data data = trainingSet.load(selections.remove(node));
+				node.subtree = new RegressionTree();
+				try {
+					node.subtree.learnTree(data, 0, data.getNumberOfExamples() - 1, budget, node.depth);
+				} finally {
+					data.release();
+				}
+				node.subtree.shift(node.begin);
+			}
+		return frontier;
+	}
+
+	/**
+	 * Restituisce l'attributo indipendente del training set.
+	 */
+	Attribute getAttribute(int a) {
+		return trainingSet.getExplanatoryAttribute(a);
+	}
+
+	/**
+	 * Restituisce il valore dal dizionario del training set.
+	 */
+	String getDiscreteValue(int a, int code) {
+		return trainingSet.getDiscreteValue(a, code);
+	}
+
+}
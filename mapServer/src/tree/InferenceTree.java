@@ -0,0 +1,468 @@
+package tree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import server.UnknownValueException;
+
+/**
+ * Classe che modella la forma per l'inferenza di un albero di regressione: i
+ * nodi della sua forma compatta sono compilati in array paralleli, con un
+ * elemento per nodo, che conservano solo quanto serve a percorrerlo. Rispetto
+ * all'albero appreso mancano gli intervalli di esempi di training, gli SSE, gli
+ * attributi con i loro valori e le descrizioni dei rami, così che il modello
+ * occupi meno memoria e sia archiviato e caricato più rapidamente. Le
+ * predizioni coincidono con quelle dell'albero. La predizione interattiva e la
+ * forma compilata per i client sono fornite solo da questa forma.
+ */
+public class InferenceTree implements Model, Serializable {
+
+	/**
+	 * Codice identificativo dei file contenenti la forma compilata dell'albero.
+	 */
+	private static final int COMPILED_MAGIC = 0x52544d31;
+
+	/**
+	 * Nome di ciascun attributo indipendente usato dagli split; null per gli
+	 * altri.
+	 */
+	private String[] names;
+
+	/**
+	 * Valori distinti e ordinati di ciascun attributo discreto negli split,
+	 * indicizzati dal codice; null per gli altri attributi.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Attributo dello split di ciascun nodo; -1 per le foglie.
+	 */
+	private int[] attribute;
+
+	/**
+	 * Soglia dello split di ciascun nodo su un attributo continuo.
+	 */
+	private double[] threshold;
+
+	/**
+	 * Posizione in branches del primo figlio di ciascun nodo di split.
+	 */
+	private int[] next;
+
+	/**
+	 * Figli dei nodi di split: il sinistro e il destro per gli split su un
+	 * attributo continuo, uno per ciascun codice per quelli su un attributo
+	 * discreto; -1 se il codice non ha un ramo nel nodo.
+	 */
+	private int[] branches;
+
+	/**
+	 * Valore predetto da ciascuna foglia.
+	 */
+	private double[] value;
+
+	/**
+	 * Versione dell'albero da cui il modello è prodotto.
+	 */
+	private long version;
+
+	/**
+	 * Testo delle opzioni di test di ciascun nodo, generato alla prima richiesta
+	 * e riutilizzato nelle visite successive; null finché nessun nodo è visitato.
+	 */
+	private transient String[] queries;
+
+	/**
+	 * Costruttore di classe. Compila la forma compatta dell'albero in input,
+	 * elencando i nodi con i loro identificativi di visita, e ne conserva la
+	 * versione.
+	 * 
+	 * @param tree Albero di regressione appreso.
+	 */
+	public InferenceTree(RegressionTree tree) {
+		RegressionTree[] nodes = tree.compact().getNodes();
+		int attributes = 0;
+		for (RegressionTree t : nodes)
+			if (t.getRoot() instanceof SplitNode)
+				attributes = Math.max(attributes, ((SplitNode) t.getRoot()).getAttribute().getIndex() + 1);
+		names = new String[attributes];
+		List<TreeSet<String>> values = new ArrayList<>();
+		for (int a = 0; a < attributes; a++)
+			values.add(null);
+		for (RegressionTree t : nodes)
+			if (t.getRoot() instanceof SplitNode) {
+				SplitNode split = (SplitNode) t.getRoot();
+				int a = split.getAttribute().getIndex();
+				names[a] = split.getAttribute().toString();
+				if (split instanceof DiscreteNode) {
+					if (values.get(a) == null)
+						values.set(a, new TreeSet<>());
+					for (int i = 0; i < split.getNumberOfChildren(); i++)
+						values.get(a).add((String) split.getSplitInfo(i).getSplitValue());
+				}
+			}
+		dictionaries = new String[attributes][];
+		for (int a = 0; a < attributes; a++)
+			if (values.get(a) != null)
+				dictionaries[a] = values.get(a).toArray(new String[0]);
+		attribute = new int[nodes.length];
+		threshold = new double[nodes.length];
+		next = new int[nodes.length];
+		value = new double[nodes.length];
+		int size = 0;
+		for (int n = 0; n < nodes.length; n++)
+			if (nodes[n].getRoot() instanceof SplitNode) {
+				int a = ((SplitNode) nodes[n].getRoot()).getAttribute().getIndex();
+				size += dictionaries[a] != null ? dictionaries[a].length : 2;
+			}
+		branches = new int[size];
+		Arrays.fill(branches, -1);
+		for (int n = 0, offset = 0; n < nodes.length; n++) {
+			RegressionTree[] childTree = nodes[n].getChildTree();
+			if (nodes[n].getRoot() instanceof LeafNode) {
+				attribute[n] = -1;
+				value[n] = ((LeafNode) nodes[n].getRoot()).getPredictedClassValue();
+				continue;
+			}
+			SplitNode split = (SplitNode) nodes[n].getRoot();
+			int a = split.getAttribute().getIndex();
+			attribute[n] = a;
+			next[n] = offset;
+			if (dictionaries[a] != null) {
+				for (int i = 0; i < childTree.length; i++) {
+					int code = Arrays.binarySearch(dictionaries[a], split.getSplitInfo(i).getSplitValue());
+					branches[offset + code] = childTree[i].getNodeId();
+				}
+				offset += dictionaries[a].length;
+			} else {
+				threshold[n] = (Double) split.getSplitInfo(0).getSplitValue();
+				for (int i = 0; i < childTree.length; i++)
+					branches[offset + i] = childTree[i].getNodeId();
+				offset += 2;
+			}
+		}
+		version = tree.getVersion();
+	}
+
+	/**
+	 * Restituisce il valore del membro version.
+	 * 
+	 * @return Versione del modello.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un esempio completo.
+	 * 
+	 * @see predictClass(Object[][])
+	 */
+	public Double predictClass(Object[] example) throws UnknownValueException {
+		Double prediction = predictClass(new Object[][] { example })[0];
+		if (prediction == null)
+			throw new UnknownValueException("The example contains a missing or unknown value");
+		return prediction;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un insieme di esempi
+	 * completi. I valori di ciascun esempio sono codificati in un unico array,
+	 * riutilizzato per tutti gli esempi, e l'albero è percorso confrontandoli con
+	 * attributo e soglia di ciascun nodo. La predizione è null se il percorso
+	 * incontra un valore mancante o senza ramo nel nodo.
+	 */
+	public Double[] predictClass(Object[][] examples) {
+		Double[] predictions = new Double[examples.length];
+		double[] encoded = new double[names.length];
+		for (int e = 0; e < examples.length; e++) {
+			encode(examples[e], encoded);
+			int node = leaf(encoded);
+			if (node >= 0)
+				predictions[e] = value[node];
+		}
+		return predictions;
+	}
+
+	/**
+	 * Codifica i valori di un esempio: un valore continuo come numero, uno
+	 * discreto come codice del dizionario; NaN se il valore è mancante o
+	 * sconosciuto. Un valore continuo NaN, che l'albero dirige nel ramo sinistro,
+	 * è codificato come meno infinito.
+	 * 
+	 * @param example Valori degli attributi indipendenti dell'esempio.
+	 * @param encoded Array in cui memorizzare i valori codificati.
+	 */
+	private void encode(Object[] example, double[] encoded) {
+		for (int a = 0; a < encoded.length; a++) {
+			Object v = a < example.length ? example[a] : null;
+			encoded[a] = Double.NaN;
+			if (names[a] == null)
+				continue;
+			if (dictionaries[a] != null) {
+				int code = v instanceof String ? Arrays.binarySearch(dictionaries[a], v) : -1;
+				if (code >= 0)
+					encoded[a] = code;
+				continue;
+			}
+			double number;
+			if (v instanceof Number)
+				number = ((Number) v).doubleValue();
+			else if (v instanceof String)
+				try {
+					number = Double.parseDouble((String) v);
+				} catch (NumberFormatException e) {
+					continue;
+				}
+			else
+				continue;
+			encoded[a] = Double.isNaN(number) ? Double.NEGATIVE_INFINITY : number;
+		}
+	}
+
+	/**
+	 * Percorre l'albero dalla radice fino alla foglia dell'esempio codificato.
+	 * 
+	 * @param encoded Valori codificati dell'esempio.
+	 * @return Indice della foglia, o -1 se il percorso incontra un valore
+	 *         mancante o senza ramo nel nodo.
+	 */
+	private int leaf(double[] encoded) {
+		int node = 0;
+		while (attribute[node] >= 0) {
+			double x = encoded[attribute[node]];
+			if (Double.isNaN(x))
+				return -1;
+			int branch = dictionaries[attribute[node]] != null ? (int) x : x > threshold[node] ? 1 : 0;
+			node = branches[next[node] + branch];
+			if (node < 0)
+				return -1;
+		}
+		return node;
+	}
+
+	/**
+	 * Restituisce il numero di rami, anche assenti, del nodo di split in input.
+	 * 
+	 * @param node Indice del nodo di split.
+	 * @return Numero di posizioni in branches riservate al nodo.
+	 */
+	private int width(int node) {
+		int a = attribute[node];
+		return dictionaries[a] != null ? dictionaries[a].length : 2;
+	}
+
+	/**
+	 * Verifica che l'indice in input identifichi un nodo del modello.
+	 * 
+	 * @param node Indice del nodo.
+	 * @throws UnknownValueException Se l'indice non appartiene al modello.
+	 */
+	private void check(int node) throws UnknownValueException {
+		if (node < 0 || node >= attribute.length)
+			throw new UnknownValueException("Unknown node " + node);
+	}
+
+	/**
+	 * Restituisce il testo delle opzioni di test del nodo specificato, nel formato
+	 * comunicato al client durante la predizione interattiva. Il testo è generato
+	 * una sola volta per nodo; sessioni concorrenti possono generarlo entrambe,
+	 * ottenendo lo stesso testo.
+	 * 
+	 * @param node Indice del nodo.
+	 * @return Opzioni di test del nodo, o null se il nodo è una foglia.
+	 * @throws UnknownValueException Se l'indice non appartiene al modello.
+	 */
+	public String getQuery(int node) throws UnknownValueException {
+		check(node);
+		if (attribute[node] < 0)
+			return null;
+		String[] cache = queries;
+		if (cache == null)
+			queries = cache = new String[attribute.length];
+		if (cache[node] == null)
+			cache[node] = formulateQuery(node);
+		return cache[node];
+	}
+
+	/**
+	 * Genera il testo delle opzioni di test del nodo di split specificato.
+	 * 
+	 * @param node Indice di un nodo di split.
+	 * @return Opzioni di test del nodo.
+	 */
+	private String formulateQuery(int node) {
+		int a = attribute[node];
+		StringBuilder text = new StringBuilder("\n");
+		for (int b = 0, choice = 0; b < width(node); b++)
+			if (branches[next[node] + b] >= 0) {
+				text.append(choice++).append(":\t").append(names[a]).append("\t");
+				if (dictionaries[a] != null)
+					text.append("=\t").append(dictionaries[a][b]);
+				else
+					text.append(b == 0 ? "<=" : ">").append("\t").append(threshold[node]);
+				text.append("\n");
+			}
+		return text.append("\nInsert value: ").toString();
+	}
+
+	/**
+	 * Restituisce il valore predetto dal nodo specificato.
+	 * 
+	 * @param node Indice del nodo.
+	 * @return Valore dell'attributo di classe espresso dalla foglia, o null se il
+	 *         nodo è di split.
+	 * @throws UnknownValueException Se l'indice non appartiene al modello.
+	 */
+	public Double getPredictedClassValue(int node) throws UnknownValueException {
+		check(node);
+		return attribute[node] < 0 ? value[node] : null;
+	}
+
+	/**
+	 * Restituisce l'indice del figlio del nodo specificato, selezionato
+	 * dall'opzione in input tra i rami presenti, nell'ordine di getQuery().
+	 * 
+	 * @param node   Indice del nodo di split.
+	 * @param choice Opzione scelta tra quelle del nodo.
+	 * @return Indice del figlio selezionato.
+	 * @throws UnknownValueException Se l'indice non appartiene al modello,
+	 *                               individua una foglia o l'opzione non
+	 *                               corrisponde ad alcun ramo.
+	 */
+	public int getChild(int node, int choice) throws UnknownValueException {
+		check(node);
+		if (attribute[node] < 0)
+			throw new UnknownValueException("Node " + node + " is a leaf");
+		int children = 0;
+		for (int b = 0; b < width(node); b++)
+			if (branches[next[node] + b] >= 0 && children++ == choice)
+				return branches[next[node] + b];
+		throw new UnknownValueException("The answer should be an integer between 0 and " + (children - 1));
+	}
+
+	/**
+	 * Serializza il modello all'interno del file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui salvare il modello.
+	 * @throws IOException Se si verificano errori nella creazione del file.
+	 */
+	public void salva(String nomeFile) throws IOException {
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new FileOutputStream(nomeFile));
+			out.writeObject(this);
+		} finally {
+			if (out != null)
+				out.close();
+		}
+	}
+
+	/**
+	 * Carica il modello conservato nel file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui è salvato il modello.
+	 * @return Modello contenuto nel file.
+	 * @throws IOException            Se si verificano errori nel caricamento del
+	 *                                file o il file non contiene un albero nella
+	 *                                forma per l'inferenza.
+	 * @throws ClassNotFoundException Se la classe dell'oggetto serializzato non
+	 *                                viene trovata.
+	 */
+	public static InferenceTree carica(String nomeFile) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new FileInputStream(nomeFile));
+			Object model = in.readObject();
+			if (!(model instanceof InferenceTree))
+				throw new IOException(nomeFile + " does not contain an inference tree");
+			return (InferenceTree) model;
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+
+	/**
+	 * Scrive nel file specificato in input la forma compilata dell'albero: un
+	 * formato binario compatto, leggibile dai client senza le classi del server,
+	 * che consente di eseguire le predizioni localmente. Dopo un'intestazione con
+	 * codice identificativo, versione e numero di nodi, i nodi sono elencati
+	 * nell'ordine del modello, così che un indice possa riferire un nodo già
+	 * elencato. Una foglia contiene il valore predetto; un nodo di split contiene
+	 * nome e indice dell'attributo, numero di figli, soglia (se continuo) e, per
+	 * ciascun figlio, valore di split (se discreto) e indice.
+	 * 
+	 * @param nomeFile Nome del file in cui salvare la forma compilata.
+	 * @throws IOException Se si verificano errori nella scrittura del file.
+	 */
+	public void compila(String nomeFile) throws IOException {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(nomeFile)));
+			out.writeInt(COMPILED_MAGIC);
+			out.writeLong(version);
+			out.writeInt(attribute.length);
+			for (int node = 0; node < attribute.length; node++) {
+				int a = attribute[node];
+				if (a < 0) {
+					out.writeByte(0);
+					out.writeDouble(value[node]);
+					continue;
+				}
+				int children = 0;
+				for (int b = 0; b < width(node); b++)
+					if (branches[next[node] + b] >= 0)
+						children++;
+				out.writeByte(dictionaries[a] == null ? 1 : 2);
+				out.writeUTF(names[a]);
+				out.writeInt(a);
+				out.writeInt(children);
+				if (dictionaries[a] == null)
+					out.writeDouble(threshold[node]);
+				for (int b = 0; b < width(node); b++)
+					if (branches[next[node] + b] >= 0) {
+						if (dictionaries[a] != null)
+							out.writeUTF(dictionaries[a][b]);
+						out.writeInt(branches[next[node] + b]);
+					}
+			}
+		} finally {
+			if (out != null)
+				out.close();
+		}
+	}
+
+	/**
+	 * Legge la versione del modello dall'intestazione di un file prodotto da
+	 * compila(), senza caricarne i nodi.
+	 * 
+	 * @param nomeFile Nome del file contenente la forma compilata.
+	 * @return Versione del modello compilato.
+	 * @throws IOException Se il file non esiste o non contiene un modello
+	 *                     compilato.
+	 */
+	public static long leggiVersione(String nomeFile) throws IOException {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(nomeFile));
+			if (in.readInt() != COMPILED_MAGIC)
+				throw new IOException(nomeFile + " is not a compiled model");
+			return in.readLong();
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+
+}
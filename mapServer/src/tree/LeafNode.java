@@ -14,9 +14,10 @@ class LeafNode extends Node {
 
 	/**
 	 * Costruttore di classe. Invoca il costruttore della superclasse e avvalora
-	 * l'attributo predictedClassValue, calcolando la media dei valori assunti
-	 * dall'attributo di classe all'interno della partizione (ovvero il sottoinsieme
-	 * di training compreso nell'intervallo specificato in input).
+	 * l'attributo predictedClassValue, calcolando la media, pesata dai pesi degli
+	 * esempi, dei valori assunti dall'attributo di classe all'interno della
+	 * partizione (ovvero il sottoinsieme di training compreso nell'intervallo
+	 * specificato in input).
 	 * 
 	 * @param trainingSet       Oggetto di tipo Data contenente il training set
 	 *                          completo.
@@ -28,12 +29,31 @@ class LeafNode extends Node {
 	LeafNode(Data trainingSet, int beginExampleIndex, int endExampleIndex) {
 		super(trainingSet, beginExampleIndex, endExampleIndex);
 		double mean = 0;
-		for (int i = beginExampleIndex; i <= endExampleIndex; i++)
-			mean += trainingSet.getClassValue(i);
-		mean /= endExampleIndex - beginExampleIndex + 1;
+		double weight = 0;
+		for (int i = beginExampleIndex; i <= endExampleIndex; i++) {
+			mean += trainingSet.getWeight(i) * trainingSet.getClassValue(i);
+			weight += trainingSet.getWeight(i);
+		}
+		mean /= weight;
 		predictedClassValue = mean;
 	}
 
+	/**
+	 * Costruttore di classe. Avvalora gli attributi a partire dalle statistiche già
+	 * calcolate per il sottoinsieme di training coperto dal nodo fogliare.
+	 * 
+	 * @param beginExampleIndex   Estremo inferiore del sottoinsieme di training
+	 *                            coperto dal nodo fogliare.
+	 * @param endExampleIndex     Estremo superiore del sottoinsieme di training
+	 *                            coperto dal nodo fogliare.
+	 * @param variance            SSE dell'attributo di classe nel sottoinsieme.
+	 * @param predictedClassValue Media dell'attributo di classe nel sottoinsieme.
+	 */
+	LeafNode(int beginExampleIndex, int endExampleIndex, double variance, double predictedClassValue) {
+		super(beginExampleIndex, endExampleIndex, variance);
+		this.predictedClassValue = predictedClassValue;
+	}
+
 	/**
 	 * Restituisce il valore del membro predictedClassValue.
 	 * 
@@ -0,0 +1,356 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import data.Attribute;
+import data.Data;
+import data.DiscreteAttribute;
+
+/**
+ * Classe che apprende un albero di regressione per livelli da un training set
+ * in memoria. Per ciascun livello gli esempi sono letti una sola volta,
+ * nell'ordine in cui sono memorizzati, e ciascuno è instradato verso il nodo
+ * della frontiera che lo copre, per il quale sono accumulati conteggio, somma e
+ * somma dei quadrati dell'attributo di classe per ciascun valore discreto. Gli
+ * esempi di ciascun attributo continuo sono ordinati una sola volta,
+ * all'inizio: una scansione dell'ordinamento per livello valuta insieme, per
+ * tutti i nodi della frontiera, le soglie tra valori distinti consecutivi. Le
+ * soglie sono quindi esatte e, a differenza dell'induzione ricorsiva, gli
+ * esempi non sono riordinati per ciascun nodo: di ciascun esempio è
+ * memorizzata solo la posizione nella frontiera del nodo che lo copre.
+ * 
+ * Le somme di ciascun nodo e ramo sono accumulate nello stesso ordine
+ * dell'induzione ricorsiva, che riporta gli esempi di ciascun nodo nell'ordine
+ * di memorizzazione e, a parità di valore, ordina gli esempi per riga; gli split
+ * sono scelti con gli stessi criteri, incluso lo scarto dell'ultimo valore
+ * discreto che rappresenta una sola tupla. L'albero prodotto è quindi lo
+ * stesso, con gli stessi SSE e le stesse medie; i nodi sono però espansi per
+ * livelli, e un numero massimo di foglie è speso nello stesso ordine.
+ */
+class LevelWiseLearner extends AggregateLearner {
+
+	/**
+	 * Training set, di cui sono letti gli esempi nell'ordine della vista.
+	 */
+	private Data trainingSet;
+
+	/**
+	 * Valori distinti e ordinati di ciascun attributo discreto, indicizzati dal
+	 * codice; null per gli attributi continui.
+	 */
+	private String[][] dictionaries;
+
+	/**
+	 * Esempi ordinati per valore di ciascun attributo continuo; null per gli
+	 * attributi discreti.
+	 */
+	private int[][] order;
+
+	/**
+	 * Posizione nella frontiera del nodo che copre ciascun esempio; -1 se
+	 * l'esempio appartiene a una foglia.
+	 */
+	private int[] assignment;
+
+	/**
+	 * Miglior split di ciascun nodo della frontiera corrente per ciascun
+	 * attributo continuo.
+	 */
+	private Candidate[][] continuousSplits;
+
+	/**
+	 * Somma pesata dell'attributo di classe negli esempi di ciascun nodo della
+	 * frontiera corrente, da cui le foglie calcolano la media come LeafNode.
+	 */
+	private double[] classSums;
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param trainingSet Training set, i cui esempi sono riportati nell'ordine di
+	 *                    memorizzazione.
+	 * @param budget      Stato dei criteri di arresto dell'induzione.
+	 */
+	LevelWiseLearner(Data trainingSet, TrainingConfig.Budget budget) {
+		super(budget);
+		this.trainingSet = trainingSet;
+		int attributes = trainingSet.getNumberOfExplanatoryAttributes();
+		discrete = new boolean[attributes];
+		bins = new int[attributes];
+		dictionaries = new String[attributes][];
+		for (int a = 0; a < attributes; a++)
+			if (trainingSet.getExplanatoryAttribute(a) instanceof DiscreteAttribute) {
+				List<String> values = new ArrayList<>();
+				for (String v : (DiscreteAttribute) trainingSet.getExplanatoryAttribute(a))
+					values.add(v);
+				dictionaries[a] = values.toArray(new String[0]);
+				discrete[a] = true;
+				bins[a] = dictionaries[a].length;
+			}
+	}
+
+	/**
+	 * Apprende l'albero: riporta gli esempi nell'ordine di memorizzazione e li
+	 * ordina per ciascun attributo continuo, poi una lettura per livello
+	 * determina i nodi della frontiera.
+	 * 
+	 * @return Albero appreso.
+	 */
+	RegressionTree learn() {
+		int n = trainingSet.getNumberOfExamples();
+		trainingSet.restoreOrder(0, n - 1);
+		shift = trainingSet.getClassMean();
+		order = new int[discrete.length][];
+		for (int a = 0; a < discrete.length; a++)
+			if (!discrete[a])
+				order[a] = sort(a);
+		assignment = new int[n];
+		Grown root = new Grown(0, n, trainingSet.getTotalWeight(), 0, 0);
+		root.slot = 0;
+		List<Grown> previous = null;
+		List<Grown> frontier = new ArrayList<>();
+		frontier.add(root);
+		while (!frontier.isEmpty()) {
+			Statistics[] statistics = scan(previous, frontier);
+			continuousSplits = new Candidate[frontier.size()][discrete.length];
+			for (int a = 0; a < discrete.length; a++)
+				if (!discrete[a])
+					sweep(a, statistics);
+			List<Grown> next = new ArrayList<>();
+			for (int i = 0; i < frontier.size(); i++)
+				determine(frontier.get(i), statistics[i], next);
+			previous = frontier;
+			frontier = next;
+		}
+		return build(root);
+	}
+
+	/**
+	 * Ordina gli esempi per valore dell'attributo continuo in input, assegnando
+	 * a ciascun esempio il rango del proprio valore tra quelli distinti e
+	 * distribuendo gli esempi per rango; a parità di valore gli esempi restano
+	 * nell'ordine di memorizzazione, come in Data.sort().
+	 * 
+	 * @param a Indice dell'attributo continuo.
+	 * @return Indici degli esempi in ordine di valore.
+	 */
+	private int[] sort(int a) {
+		int n = trainingSet.getNumberOfExamples();
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++)
+			values[i] = trainingSet.getContinuousValue(i, a);
+		double[] distinct = values.clone();
+		Arrays.sort(distinct);
+		int size = 0;
+		for (int i = 0; i < n; i++)
+			if (size == 0 || Double.compare(distinct[i], distinct[size - 1]) != 0)
+				distinct[size++] = distinct[i];
+		int[] ranks = new int[n];
+		int[] starts = new int[size + 1];
+		for (int i = 0; i < n; i++) {
+			ranks[i] = Arrays.binarySearch(distinct, 0, size, values[i]);
+			starts[ranks[i] + 1]++;
+		}
+		for (int r = 0; r < size; r++)
+			starts[r + 1] += starts[r];
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++)
+			sorted[starts[ranks[i]]++] = i;
+		return sorted;
+	}
+
+	/**
+	 * Legge una volta il training set: instrada ciascun esempio dal nodo del
+	 * livello precedente che lo copriva al figlio corrispondente, memorizzandone
+	 * la posizione nella frontiera, e accumula le statistiche del nodo per
+	 * ciascun attributo discreto.
+	 * 
+	 * @param previous Nodi del livello precedente, indicizzati dalla posizione
+	 *                 memorizzata per ciascun esempio; null per la radice.
+	 * @param frontier Nodi della frontiera.
+	 * @return Statistiche di ciascun nodo della frontiera.
+	 */
+	private Statistics[] scan(List<Grown> previous, List<Grown> frontier) {
+		boolean weighted = trainingSet.getTotalWeight() != trainingSet.getNumberOfExamples();
+		Statistics[] statistics = new Statistics[frontier.size()];
+		classSums = new double[frontier.size()];
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = new Statistics(bins, discrete);
+			if (weighted) {
+				statistics[i].rowCounts = new int[bins.length][];
+				for (int a = 0; a < bins.length; a++)
+					statistics[i].rowCounts[a] = new int[bins[a]];
+			}
+		}
+		for (int r = 0; r < assignment.length; r++) {
+			int slot = assignment[r];
+			if (previous != null) {
+				if (slot < 0)
+					continue;
+				Grown parent = previous.get(slot);
+				slot = -1;
+				if (parent.children != null) {
+					int a = parent.attribute;
+					int child = discrete[a] ? parent.childOfCode[trainingSet.getDiscreteCode(r, a)]
+							: (trainingSet.getContinuousValue(r, a) <= parent.threshold ? 0 : 1);
+					if (child >= 0)
+						slot = parent.children[child].slot;
+				}
+				assignment[r] = slot;
+				if (slot < 0)
+					continue;
+			}
+			Statistics s = statistics[slot];
+			int w = trainingSet.getWeight(r);
+			double y = trainingSet.getClassValue(r);
+			double d = y - shift;
+			classSums[slot] += w * y;
+			s.count += w;
+			s.sum += w * d;
+			s.squares += w * d * d;
+			s.minClass = Math.min(s.minClass, y);
+			s.maxClass = Math.max(s.maxClass, y);
+			for (int a = 0; a < discrete.length; a++)
+				if (discrete[a]) {
+					int code = trainingSet.getDiscreteCode(r, a);
+					s.counts[a][code] += w;
+					if (weighted)
+						s.rowCounts[a][code]++;
+					s.sums[a][code] += w * d;
+					s.squareSums[a][code] += w * d * d;
+				}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Scandisce gli esempi in ordine di valore dell'attributo continuo in input
+	 * e determina per ciascun nodo della frontiera lo split con SSE minore: come
+	 * nell'induzione in memoria, la soglia tra due valori distinti consecutivi
+	 * di un nodo è valutata quando il secondo è incontrato, accumulando nel ramo
+	 * sinistro gli esempi del nodo già letti. Un attributo costante nel nodo
+	 * produce uno split senza rami e SSE nullo.
+	 * 
+	 * @param a          Indice dell'attributo continuo.
+	 * @param statistics Statistiche di ciascun nodo della frontiera.
+	 */
+	private void sweep(int a, Statistics[] statistics) {
+		int nodes = statistics.length;
+		double[] last = new double[nodes];
+		int[] leftRows = new int[nodes];
+		long[] leftCount = new long[nodes];
+		double[] leftSum = new double[nodes];
+		double[] leftSquares = new double[nodes];
+		double[] threshold = new double[nodes];
+		int[] bestRows = new int[nodes];
+		long[] bestCount = new long[nodes];
+		double[] bestSum = new double[nodes];
+		double[] bestSquares = new double[nodes];
+		double[] bestLeftVariance = new double[nodes];
+		double[] bestVariance = new double[nodes];
+		for (int r : order[a]) {
+			int slot = assignment[r];
+			if (slot < 0)
+				continue;
+			double value = trainingSet.getContinuousValue(r, a);
+			if (leftRows[slot] > 0 && value != last[slot]) {
+				Statistics s = statistics[slot];
+				double leftVariance = Node.sse(leftCount[slot], leftSum[slot], leftSquares[slot]);
+				double variance = leftVariance + Node.sse(s.count - leftCount[slot], s.sum - leftSum[slot],
+						s.squares - leftSquares[slot]);
+				if (bestRows[slot] == 0 || variance < bestVariance[slot]) {
+					threshold[slot] = last[slot];
+					bestRows[slot] = leftRows[slot];
+					bestCount[slot] = leftCount[slot];
+					bestSum[slot] = leftSum[slot];
+					bestSquares[slot] = leftSquares[slot];
+					bestLeftVariance[slot] = leftVariance;
+					bestVariance[slot] = variance;
+				}
+			}
+			int w = trainingSet.getWeight(r);
+			double d = trainingSet.getClassValue(r) - shift;
+			leftRows[slot]++;
+			leftCount[slot] += w;
+			leftSum[slot] += w * d;
+			leftSquares[slot] += w * d * d;
+			last[slot] = value;
+		}
+		for (int slot = 0; slot < nodes; slot++)
+			if (bestRows[slot] == 0)
+				continuousSplits[slot][a] = new Candidate(a, 0, 0, 0, null);
+			else
+				continuousSplits[slot][a] = continuousCandidate(statistics[slot], a, threshold[slot],
+						new Grown(0, bestRows[slot], bestCount[slot], bestSum[slot], bestSquares[slot]),
+						bestLeftVariance[slot], bestVariance[slot]);
+	}
+
+	/**
+	 * Restituisce lo split determinato dalla scansione dell'attributo per il
+	 * nodo in input.
+	 */
+	Candidate continuousSplit(Grown node, Statistics statistics, int a) {
+		return continuousSplits[node.slot][a];
+	}
+
+	/**
+	 * Determina lo split su un attributo discreto come AggregateLearner, ma
+	 * scarta l'ultimo valore presente nel nodo se rappresenta una sola tupla,
+	 * come DiscreteNode.setSplitInfo(): gli esempi di quel valore non
+	 * appartengono ad alcun ramo.
+	 */
+	Candidate discreteSplit(Statistics statistics, int a) {
+		long[] counts = statistics.counts[a];
+		int last = counts.length - 1;
+		while (last > 0 && counts[last] == 0)
+			last--;
+		int[] codes = new int[counts.length];
+		int children = 0;
+		double variance = 0;
+		for (int code = 0; code < counts.length; code++)
+			if (counts[code] > 0 && (code < last || counts[code] > 1)) {
+				codes[children++] = code;
+				variance += Node.sse(counts[code], statistics.sums[a][code], statistics.squareSums[a][code]);
+			}
+		return new Candidate(a, variance, Arrays.copyOf(codes, children));
+	}
+
+	/**
+	 * Aggiunge il figlio alla frontiera successiva anche se diverrà foglia, così
+	 * che le sue somme siano accumulate dalla lettura del livello seguente
+	 * nell'ordine di memorizzazione, come nell'induzione ricorsiva, anziché
+	 * derivate da quelle del nodo padre.
+	 */
+	void expand(Grown parent, int branch, List<Grown> next) {
+		Grown child = parent.children[branch];
+		child.slot = next.size();
+		next.add(child);
+	}
+
+	/**
+	 * Rende foglia il nodo in input come AggregateLearner, ma calcola la media
+	 * dalla somma dei valori di classe anziché degli scarti, come LeafNode.
+	 */
+	void makeLeaf(Grown node) {
+		node.node = new LeafNode(node.begin, node.begin + node.rows - 1,
+				Node.sse(node.count, node.sum, node.squares), classSums[node.slot] / node.count);
+		node.children = null;
+		node.slot = -1;
+	}
+
+	/**
+	 * Restituisce l'attributo indipendente del training set.
+	 */
+	Attribute getAttribute(int a) {
+		return trainingSet.getExplanatoryAttribute(a);
+	}
+
+	/**
+	 * Restituisce il valore dal dizionario dell'attributo discreto.
+	 */
+	String getDiscreteValue(int a, int code) {
+		return dictionaries[a][code];
+	}
+
+}
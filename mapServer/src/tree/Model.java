@@ -0,0 +1,50 @@
+package tree;
+
+import java.io.IOException;
+import server.UnknownValueException;
+
+/**
+ * Interfaccia che modella un modello di regressione appreso dal server, di cui
+ * possono essere richieste predizioni non interattive di esempi completi e che
+ * può essere archiviato in un file.
+ */
+public interface Model {
+
+	/**
+	 * Restituisce la versione del modello, che lo identifica tra quelli appresi.
+	 * 
+	 * @return Versione del modello.
+	 */
+	long getVersion();
+
+	/**
+	 * Predice il valore dell'attributo di classe per un esempio completo, i cui
+	 * valori sono indicizzati come gli attributi indipendenti del training set.
+	 * 
+	 * @param example Valori degli attributi indipendenti dell'esempio da predire.
+	 * @return Valore predetto per l'attributo di classe dell'esempio.
+	 * @throws UnknownValueException Se un valore dell'esempio è mancante o
+	 *                               sconosciuto al modello.
+	 */
+	Double predictClass(Object[] example) throws UnknownValueException;
+
+	/**
+	 * Predice il valore dell'attributo di classe per un insieme di esempi
+	 * completi.
+	 * 
+	 * @param examples Esempi da predire, ciascuno espresso come array di valori
+	 *                 degli attributi indipendenti.
+	 * @return Array dei valori predetti, nello stesso ordine degli esempi in input.
+	 *         Contiene null per gli esempi con un valore mancante o sconosciuto.
+	 */
+	Double[] predictClass(Object[][] examples);
+
+	/**
+	 * Serializza il modello all'interno del file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui salvare il modello.
+	 * @throws IOException Se si verificano errori nella creazione del file.
+	 */
+	void salva(String nomeFile) throws IOException;
+
+}
@@ -1,6 +1,7 @@
 package tree;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 import data.Data;
 
 /**
@@ -10,9 +11,10 @@ import data.Data;
 abstract class Node implements Serializable {
 
 	/**
-	 * Contatore dei nodi generati nell'albero.
+	 * Contatore dei nodi generati nell'albero, condiviso dagli alberi appresi in
+	 * parallelo.
 	 */
-	private static int idNodeCount = 0;
+	private static AtomicInteger idNodeCount = new AtomicInteger();
 
 	/**
 	 * Identificativo numerico del nodo.
@@ -37,10 +39,33 @@ abstract class Node implements Serializable {
 	 */
 	private double variance;
 
+	/**
+	 * Somma dei pesi degli esempi coperti dal nodo; disponibile solo durante
+	 * l'apprendimento.
+	 */
+	private transient long weight;
+
+	/**
+	 * Somma degli scarti pesati dell'attributo di classe dalla sua media nel
+	 * training set; disponibile solo durante l'apprendimento.
+	 */
+	private transient double sum;
+
+	/**
+	 * Somma dei quadrati degli scarti pesati; disponibile solo durante
+	 * l'apprendimento.
+	 */
+	private transient double squares;
+
 	/**
 	 * Costruttore di classe. Avvalora gli attributi, incluso lo SSE calcolato
 	 * rispetto all'attributo di classe nel sottoinsieme di training coperto dal
-	 * nodo.
+	 * nodo. Ogni esempio contribuisce alla media e allo SSE con il proprio peso,
+	 * come le tuple identiche che rappresenta. Gli esempi del sottoinsieme sono
+	 * riportati nell'ordine in cui sono memorizzati e sommati in tale ordine, come
+	 * scarti dalla media del training set: lo SSE non dipende così dall'ordine in
+	 * cui i nodi antenati hanno lasciato gli esempi ed è lo stesso calcolato, a
+	 * partire dalle stesse somme, dalla crescita per livelli.
 	 * 
 	 * @param trainingSet       Oggetto di tipo Data contenente il training set
 	 *                          completo.
@@ -50,16 +75,37 @@ abstract class Node implements Serializable {
 	 *                          dal nodo corrente.
 	 */
 	Node(Data trainingSet, int beginExampleIndex, int endExampleIndex) {
-		idNode = idNodeCount++;
+		idNode = idNodeCount.getAndIncrement();
 		this.beginExampleIndex = beginExampleIndex;
 		this.endExampleIndex = endExampleIndex;
-		double mean = 0;
-		for (int i = beginExampleIndex; i <= endExampleIndex; i++)
-			mean += trainingSet.getClassValue(i);
-		mean /= endExampleIndex - beginExampleIndex + 1;
-		variance = 0;
-		for (int i = beginExampleIndex; i <= endExampleIndex; i++)
-			variance += Math.pow(trainingSet.getClassValue(i) - mean, 2);
+		trainingSet.restoreOrder(beginExampleIndex, endExampleIndex);
+		double shift = trainingSet.getClassMean();
+		for (int i = beginExampleIndex; i <= endExampleIndex; i++) {
+			int w = trainingSet.getWeight(i);
+			double d = trainingSet.getClassValue(i) - shift;
+			weight += w;
+			sum += w * d;
+			squares += w * d * d;
+		}
+		variance = sse(weight, sum, squares);
+	}
+
+	/**
+	 * Costruttore di classe. Avvalora gli attributi a partire dallo SSE già
+	 * calcolato per il sottoinsieme di training coperto dal nodo.
+	 * 
+	 * @param beginExampleIndex Indice nel training set del primo esempio coperto
+	 *                          dal nodo corrente.
+	 * @param endExampleIndex   Indice nel training set dell'ultimo esempio coperto
+	 *                          dal nodo corrente.
+	 * @param variance          SSE calcolato rispetto all'attributo di classe nel
+	 *                          sottoinsieme coperto dal nodo.
+	 */
+	Node(int beginExampleIndex, int endExampleIndex, double variance) {
+		idNode = idNodeCount.getAndIncrement();
+		this.beginExampleIndex = beginExampleIndex;
+		this.endExampleIndex = endExampleIndex;
+		this.variance = variance;
 	}
 
 	/**
@@ -90,6 +136,19 @@ abstract class Node implements Serializable {
 		return endExampleIndex;
 	}
 
+	/**
+	 * Trasla gli indici degli esempi coperti dal nodo, così che un nodo appreso da
+	 * una porzione del training set si riferisca all'ordinamento dell'intero
+	 * training set.
+	 * 
+	 * @param offset Indice nell'intero training set del primo esempio della
+	 *               porzione.
+	 */
+	void shift(int offset) {
+		beginExampleIndex += offset;
+		endExampleIndex += offset;
+	}
+
 	/**
 	 * Restituisce il valore del membro variance.
 	 * 
@@ -100,6 +159,47 @@ abstract class Node implements Serializable {
 		return variance;
 	}
 
+	/**
+	 * Restituisce il valore del membro weight.
+	 * 
+	 * @return Somma dei pesi degli esempi coperti dal nodo.
+	 */
+	long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Restituisce il valore del membro sum.
+	 * 
+	 * @return Somma degli scarti pesati dell'attributo di classe dalla sua media
+	 *         nel training set.
+	 */
+	double getSum() {
+		return sum;
+	}
+
+	/**
+	 * Restituisce il valore del membro squares.
+	 * 
+	 * @return Somma dei quadrati degli scarti pesati.
+	 */
+	double getSquares() {
+		return squares;
+	}
+
+	/**
+	 * Calcola lo SSE a partire da numero di valori, somma e somma dei quadrati
+	 * degli scarti.
+	 * 
+	 * @param count   Numero di valori.
+	 * @param sum     Somma degli scarti.
+	 * @param squares Somma dei quadrati degli scarti.
+	 * @return SSE dei valori, non negativo.
+	 */
+	static double sse(long count, double sum, double squares) {
+		return count == 0 ? 0 : Math.max(0, squares - sum * sum / count);
+	}
+
 	/**
 	 * Restituisce il numero di nodi figli del nodo corrente. L'implementazione
 	 * differisce a seconda che si tratti di un nodo foglia o intermedio.
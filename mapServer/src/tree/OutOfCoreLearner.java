@@ -0,0 +1,220 @@
+package tree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import data.Attribute;
+import data.ColumnFile;
+import data.ContinuousAttribute;
+import data.DiscreteAttribute;
+import data.OffHeapColumn;
+
+/**
+ * Classe che apprende un albero di regressione da un training set le cui
+ * colonne risiedono in un file mappato in memoria. L'albero è costruito per
+ * livelli: per ciascun livello le colonne sono lette una sola volta, in ordine,
+ * e ogni esempio è instradato verso il nodo della frontiera che lo copre, per
+ * il quale sono accumulati conteggio, somma e somma dei quadrati dell'attributo
+ * di classe per ciascun valore discreto o intervallo di valori continui. Gli
+ * intervalli sono delimitati da soglie stimate con QuantileSketch, esatte se i
+ * valori distinti sono pochi. In memoria restano solo tali aggregati; il nodo
+ * corrente di ciascun esempio è memorizzato in un file temporaneo.
+ * 
+ * Gli split sono scelti con gli stessi criteri dell'induzione in memoria: se le
+ * soglie coincidono con i valori distinti, l'albero prodotto è lo stesso.
+ */
+class OutOfCoreLearner extends AggregateLearner {
+
+	/**
+	 * Numero di esempi letti da ciascuna colonna in un'unica operazione.
+	 */
+	private static final int BLOCK = 1 << 16;
+
+	/**
+	 * Capacità di ciascun livello degli stimatori dei quantili.
+	 */
+	private static final int SKETCH_CAPACITY = 4096;
+
+	/**
+	 * Training set.
+	 */
+	private ColumnFile trainingSet;
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param trainingSet Training set.
+	 * @param budget      Stato dei criteri di arresto dell'induzione.
+	 */
+	OutOfCoreLearner(ColumnFile trainingSet, TrainingConfig.Budget budget) {
+		super(budget);
+		this.trainingSet = trainingSet;
+		int attributes = trainingSet.getNumberOfExplanatoryAttributes();
+		discrete = new boolean[attributes];
+		for (int a = 0; a < attributes; a++)
+			discrete[a] = trainingSet.getExplanatoryAttribute(a) instanceof DiscreteAttribute;
+	}
+
+	/**
+	 * Apprende l'albero: una prima lettura stima le soglie degli attributi
+	 * continui, poi una lettura per livello determina i nodi della frontiera.
+	 * 
+	 * @return Albero appreso.
+	 * @throws IOException Se il file temporaneo dei nodi correnti non può essere
+	 *                     creato.
+	 */
+	RegressionTree learn() throws IOException {
+		estimateCuts();
+		OffHeapColumn assignment = OffHeapColumn.createTemporary(trainingSet.getNumberOfExamples());
+		Grown root = new Grown(0, trainingSet.getNumberOfExamples(), 0, 0);
+		root.slot = 0;
+		List<Grown> previous = null;
+		List<Grown> frontier = new ArrayList<>();
+		frontier.add(root);
+		while (!frontier.isEmpty()) {
+			Statistics[] statistics = scan(previous, frontier, assignment);
+			List<Grown> next = new ArrayList<>();
+			for (int i = 0; i < frontier.size(); i++)
+				determine(frontier.get(i), statistics[i], next);
+			previous = frontier;
+			frontier = next;
+		}
+		return build(root);
+	}
+
+	/**
+	 * Legge una volta il training set per calcolare la media dell'attributo di
+	 * classe e stimare le soglie degli intervalli di ciascun attributo continuo.
+	 */
+	private void estimateCuts() {
+		int n = trainingSet.getNumberOfExamples();
+		cuts = new double[discrete.length][];
+		bins = new int[discrete.length];
+		QuantileSketch[] sketches = new QuantileSketch[discrete.length];
+		for (int a = 0; a < discrete.length; a++)
+			if (!discrete[a])
+				sketches[a] = new QuantileSketch(SKETCH_CAPACITY, MAX_BINS);
+			else
+				bins[a] = trainingSet.getNumberOfDiscreteValues(a);
+		double[] values = new double[BLOCK];
+		double sum = 0;
+		for (int begin = 0; begin < n; begin += BLOCK) {
+			int length = Math.min(BLOCK, n - begin);
+			trainingSet.getClassColumn().get(begin, values, length);
+			for (int r = 0; r < length; r++)
+				sum += values[r];
+			for (int a = 0; a < discrete.length; a++)
+				if (!discrete[a]) {
+					trainingSet.getColumn(a).get(begin, values, length);
+					for (int r = 0; r < length; r++)
+						sketches[a].add(values[r]);
+				}
+		}
+		shift = sum / n;
+		for (int a = 0; a < discrete.length; a++)
+			if (!discrete[a]) {
+				cuts[a] = sketches[a].getCuts(MAX_BINS);
+				bins[a] = cuts[a].length;
+			}
+	}
+
+	/**
+	 * Legge una volta il training set: instrada ciascun esempio dal nodo del
+	 * livello precedente che lo copriva al figlio corrispondente, memorizzandone
+	 * la posizione nella frontiera, e accumula le statistiche del nodo.
+	 * 
+	 * @param previous   Nodi del livello precedente, indicizzati dalla posizione
+	 *                   memorizzata per ciascun esempio; null per la radice.
+	 * @param frontier   Nodi della frontiera.
+	 * @param assignment Posizione, nel livello precedente, del nodo che copre
+	 *                   ciascun esempio; -1 se l'esempio appartiene a una foglia.
+	 * @return Statistiche di ciascun nodo della frontiera.
+	 */
+	private Statistics[] scan(List<Grown> previous, List<Grown> frontier, OffHeapColumn assignment) {
+		int n = trainingSet.getNumberOfExamples();
+		Statistics[] statistics = new Statistics[frontier.size()];
+		for (int i = 0; i < statistics.length; i++)
+			statistics[i] = new Statistics(bins, discrete);
+		double[] classValues = new double[BLOCK];
+		double[][] continuousValues = new double[discrete.length][];
+		int[][] discreteValues = new int[discrete.length][];
+		for (int a = 0; a < discrete.length; a++)
+			if (discrete[a])
+				discreteValues[a] = new int[BLOCK];
+			else
+				continuousValues[a] = new double[BLOCK];
+		int[] slots = new int[BLOCK];
+		for (int begin = 0; begin < n; begin += BLOCK) {
+			int length = Math.min(BLOCK, n - begin);
+			trainingSet.getClassColumn().get(begin, classValues, length);
+			for (int a = 0; a < discrete.length; a++)
+				if (discrete[a])
+					trainingSet.getColumn(a).get(begin, discreteValues[a], length);
+				else
+					trainingSet.getColumn(a).get(begin, continuousValues[a], length);
+			if (previous != null)
+				assignment.get(begin, slots, length);
+			for (int r = 0; r < length; r++) {
+				int slot = slots[r];
+				if (previous != null) {
+					if (slot < 0)
+						continue;
+					Grown parent = previous.get(slot);
+					slot = -1;
+					if (parent.children != null) {
+						int a = parent.attribute;
+						int child = discrete[a] ? parent.childOfCode[discreteValues[a][r]]
+								: (continuousValues[a][r] <= parent.threshold ? 0 : 1);
+						slot = parent.children[child].slot;
+					}
+					assignment.putInt(begin + r, slot);
+					if (slot < 0)
+						continue;
+				}
+				Statistics s = statistics[slot];
+				double y = classValues[r];
+				double d = y - shift;
+				s.count++;
+				s.sum += d;
+				s.squares += d * d;
+				s.minClass = Math.min(s.minClass, y);
+				s.maxClass = Math.max(s.maxClass, y);
+				for (int a = 0; a < discrete.length; a++) {
+					int bin;
+					if (discrete[a])
+						bin = discreteValues[a][r];
+					else {
+						double value = continuousValues[a][r];
+						bin = Arrays.binarySearch(cuts[a], value);
+						if (bin < 0)
+							bin = Math.min(-bin - 1, cuts[a].length - 1);
+						if (value < s.minValues[a][bin])
+							s.minValues[a][bin] = value;
+						if (value > s.maxValues[a][bin])
+							s.maxValues[a][bin] = value;
+					}
+					s.counts[a][bin]++;
+					s.sums[a][bin] += d;
+					s.squareSums[a][bin] += d * d;
+				}
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Restituisce l'attributo indipendente del training set.
+	 */
+	Attribute getAttribute(int a) {
+		return trainingSet.getExplanatoryAttribute(a);
+	}
+
+	/**
+	 * Restituisce il valore dal dizionario del training set.
+	 */
+	String getDiscreteValue(int a, int code) {
+		return trainingSet.getDiscreteValue(a, code);
+	}
+
+}
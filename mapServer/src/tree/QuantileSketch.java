@@ -0,0 +1,147 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Classe che stima i quantili di una sequenza di valori letta una sola volta,
+ * con memoria limitata. I valori sono raccolti in livelli di capacità fissa:
+ * quando un livello è pieno viene ordinato e ne è promossa al livello
+ * successivo una metà alterna, scelta a caso, che rappresenta i valori scartati
+ * con peso doppio. Finché i valori distinti non superano il limite indicato
+ * sono inoltre mantenuti in modo esatto.
+ */
+class QuantileSketch {
+
+	/**
+	 * Numero di valori di ciascun livello.
+	 */
+	private int capacity;
+
+	/**
+	 * Numero massimo di valori distinti mantenuti in modo esatto.
+	 */
+	private int maxDistinct;
+
+	/**
+	 * Valori di ciascun livello; un valore del livello h rappresenta 2^h valori
+	 * della sequenza.
+	 */
+	private List<double[]> levels = new ArrayList<>();
+
+	/**
+	 * Numero di valori presenti in ciascun livello.
+	 */
+	private int[] sizes = new int[0];
+
+	/**
+	 * Valori distinti della sequenza; null se superano maxDistinct.
+	 */
+	private Set<Double> distinct = new HashSet<>();
+
+	/**
+	 * Valore massimo della sequenza.
+	 */
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Generatore della scelta della metà promossa, con seme fisso perché la
+	 * stima sia riproducibile.
+	 */
+	private Random random = new Random(0);
+
+	/**
+	 * Costruttore di classe.
+	 * 
+	 * @param capacity    Numero di valori di ciascun livello, pari.
+	 * @param maxDistinct Numero massimo di valori distinti mantenuti in modo
+	 *                    esatto.
+	 */
+	QuantileSketch(int capacity, int maxDistinct) {
+		this.capacity = capacity;
+		this.maxDistinct = maxDistinct;
+	}
+
+	/**
+	 * Aggiunge un valore della sequenza.
+	 * 
+	 * @param value Valore da aggiungere.
+	 */
+	void add(double value) {
+		if (Double.compare(value, max) > 0)
+			max = value;
+		if (distinct != null && distinct.add(value) && distinct.size() > maxDistinct)
+			distinct = null;
+		insert(0, value);
+	}
+
+	/**
+	 * Inserisce un valore nel livello indicato, compattando il livello se
+	 * raggiunge la capacità.
+	 * 
+	 * @param level Livello in cui inserire il valore.
+	 * @param value Valore da inserire.
+	 */
+	private void insert(int level, double value) {
+		if (level == levels.size()) {
+			levels.add(new double[capacity]);
+			sizes = Arrays.copyOf(sizes, level + 1);
+		}
+		double[] buffer = levels.get(level);
+		buffer[sizes[level]++] = value;
+		if (sizes[level] == capacity) {
+			Arrays.sort(buffer);
+			sizes[level] = 0;
+			for (int i = random.nextInt(2); i < capacity; i += 2)
+				insert(level + 1, buffer[i]);
+		}
+	}
+
+	/**
+	 * Restituisce al più count soglie ordinate e distinte che suddividono la
+	 * sequenza in intervalli di frequenza approssimativamente uguale: ogni valore
+	 * appartiene all'intervallo della prima soglia non inferiore. L'ultima soglia
+	 * è il valore massimo. Se i valori distinti non superano count, le soglie
+	 * sono esattamente i valori distinti.
+	 * 
+	 * @param count Numero massimo di soglie.
+	 * @return Soglie in ordine crescente.
+	 */
+	double[] getCuts(int count) {
+		TreeSet<Double> cuts = new TreeSet<>();
+		if (distinct != null && distinct.size() <= count)
+			cuts.addAll(distinct);
+		else {
+			List<double[]> items = new ArrayList<>();
+			long total = 0;
+			for (int level = 0; level < levels.size(); level++)
+				for (int i = 0; i < sizes[level]; i++) {
+					items.add(new double[] { levels.get(level)[i], 1L << level });
+					total += 1L << level;
+				}
+			items.sort((a, b) -> Double.compare(a[0], b[0]));
+			long cumulative = 0;
+			int next = 1;
+			for (double[] item : items) {
+				cumulative += (long) item[1];
+				while (next < count && cumulative * count >= total * next) {
+					cuts.add(item[0]);
+					next++;
+				}
+			}
+			if (max != Double.NEGATIVE_INFINITY)
+				cuts.add(max);
+		}
+		double[] values = new double[cuts.size()];
+		int i = 0;
+		for (double cut : cuts)
+			values[i++] = cut;
+		return values;
+	}
+
+}
@@ -0,0 +1,271 @@
+package tree;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Random;
+import data.Data;
+import server.UnknownValueException;
+
+/**
+ * Classe che modella una foresta casuale di alberi di regressione. Ciascun
+ * albero è appreso da un campione bootstrap del training set, valutando in
+ * ogni nodo gli split su un sottoinsieme casuale degli attributi indipendenti;
+ * la predizione è la media delle predizioni degli alberi. Gli alberi sono
+ * appresi in parallelo da viste del training set, che ne condividono i valori
+ * in sola lettura con una propria permutazione degli esempi.
+ */
+public class RegressionForest implements Model, Serializable {
+
+	/**
+	 * Numero minimo di predizioni, per esempi e alberi, oltre il quale gli alberi
+	 * di un lotto sono visitati in parallelo.
+	 */
+	private static final int PARALLEL_PREDICTIONS = 1 << 14;
+
+	/**
+	 * Alberi della foresta.
+	 */
+	private RegressionTree[] trees;
+
+	/**
+	 * Versione del modello, rigenerata a ogni apprendimento.
+	 */
+	private long version;
+
+	/**
+	 * Costruttore di classe. Avvia l'apprendimento della foresta valutando in
+	 * ciascun nodo un terzo degli attributi indipendenti, e almeno uno.
+	 * 
+	 * @param trainingSet   Training set completo, che resta invariato.
+	 * @param numberOfTrees Numero di alberi della foresta.
+	 * @throws InterruptedException Se l'apprendimento è interrotto.
+	 */
+	public RegressionForest(Data trainingSet, int numberOfTrees) throws InterruptedException {
+		this(trainingSet, numberOfTrees, Math.max(1, trainingSet.getNumberOfExplanatoryAttributes() / 3),
+				new Random().nextLong());
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'apprendimento della foresta su tanti thread
+	 * quanti sono i processori, e non più degli alberi. L'albero i-esimo è
+	 * appreso con un generatore inizializzato da seed e i, così che la foresta
+	 * non dipenda dall'ordine in cui i thread apprendono gli alberi, ed è
+	 * conservato nella forma compatta.
+	 * 
+	 * @param trainingSet       Training set completo, che resta invariato.
+	 * @param numberOfTrees     Numero di alberi della foresta.
+	 * @param attributesPerNode Numero di attributi indipendenti valutati in
+	 *                          ciascun nodo.
+	 * @param seed              Seme dei generatori dei numeri casuali.
+	 * @throws InterruptedException Se l'apprendimento è interrotto.
+	 */
+	public RegressionForest(Data trainingSet, int numberOfTrees, int attributesPerNode, long seed)
+			throws InterruptedException {
+		if (numberOfTrees < 1)
+			throw new IllegalArgumentException("The forest must contain at least one tree");
+		if (attributesPerNode < 1)
+			throw new IllegalArgumentException("At least one attribute must be evaluated in each node");
+		trees = new RegressionTree[numberOfTrees];
+		Thread[] learners = new Thread[Math.min(numberOfTrees, Runtime.getRuntime().availableProcessors())];
+		RuntimeException[] failures = new RuntimeException[learners.length];
+		for (int i = 0; i < learners.length; i++) {
+			int learner = i;
+			learners[i] = new Thread(() -> {
+				try {
+					for (int t = learner; t < trees.length; t += learners.length) {
+						Random random = new Random(seed + t);
+						Data sample = trainingSet.bootstrap(random);
+						try {
+							trees[t] = new RegressionTree(sample, attributesPerNode, random).compact();
+						} finally {
+							sample.release();
+						}
+					}
+				} catch (RuntimeException e) {
+					failures[learner] = e;
+				}
+			});
+			learners[i].start();
+		}
+		join(learners);
+		for (RuntimeException e : failures)
+			if (e != null)
+				throw e;
+		version = new Random(seed).nextLong() & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Restituisce il valore del membro version.
+	 * 
+	 * @return Versione del modello.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Restituisce il numero di alberi della foresta.
+	 * 
+	 * @return Numero di alberi.
+	 */
+	public int getNumberOfTrees() {
+		return trees.length;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un esempio completo, come
+	 * media delle predizioni degli alberi.
+	 * 
+	 * @see predictClass(Object[][])
+	 */
+	public Double predictClass(Object[] example) throws UnknownValueException {
+		Double prediction = predictClass(new Object[][] { example })[0];
+		if (prediction == null)
+			throw new UnknownValueException("The example contains a missing or unknown value");
+		return prediction;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un insieme di esempi
+	 * completi, come media delle predizioni degli alberi. Un albero non predice
+	 * gli esempi con un valore discreto assente dal proprio campione, che sono
+	 * predetti dagli altri alberi; la predizione è null solo se nessun albero
+	 * predice l'esempio. Se il lotto è abbastanza grande, gli alberi sono
+	 * ripartiti tra tanti thread quanti sono i processori, ciascuno dei quali
+	 * accumula le predizioni dei propri alberi; le somme parziali sono poi unite
+	 * nell'ordine dei thread, così che il risultato non dipenda dalla loro
+	 * esecuzione.
+	 */
+	public Double[] predictClass(Object[][] examples) {
+		int workers = (long) examples.length * trees.length < PARALLEL_PREDICTIONS ? 1
+				: Math.min(trees.length, Runtime.getRuntime().availableProcessors());
+		double[][] sums = new double[workers][examples.length];
+		int[][] counts = new int[workers][examples.length];
+		if (workers == 1)
+			accumulate(examples, 0, 1, sums[0], counts[0]);
+		else {
+			Thread[] predictors = new Thread[workers];
+			for (int i = 0; i < workers; i++) {
+				int worker = i;
+				predictors[i] = new Thread(
+						() -> accumulate(examples, worker, workers, sums[worker], counts[worker]));
+				predictors[i].start();
+			}
+			try {
+				join(predictors);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Prediction interrupted");
+			}
+		}
+		Double[] predictions = new Double[examples.length];
+		for (int e = 0; e < examples.length; e++) {
+			double sum = 0;
+			int count = 0;
+			for (int w = 0; w < workers; w++) {
+				sum += sums[w][e];
+				count += counts[w][e];
+			}
+			if (count > 0)
+				predictions[e] = sum / count;
+		}
+		return predictions;
+	}
+
+	/**
+	 * Supporta il metodo predictClass(Object[][]), sommando le predizioni degli
+	 * alberi di indice first, first + step, ... per ciascun esempio.
+	 * 
+	 * @param examples Esempi da predire.
+	 * @param first    Indice del primo albero.
+	 * @param step     Distanza tra gli indici di due alberi successivi.
+	 * @param sums     Array in cui accumulare le predizioni.
+	 * @param counts   Array in cui contare gli alberi che predicono ciascun
+	 *                 esempio.
+	 * @see predictClass(Object[][])
+	 */
+	private void accumulate(Object[][] examples, int first, int step, double[] sums, int[] counts) {
+		for (int t = first; t < trees.length; t += step) {
+			Double[] predictions = trees[t].predictClass(examples);
+			for (int e = 0; e < examples.length; e++)
+				if (predictions[e] != null) {
+					sums[e] += predictions[e];
+					counts[e]++;
+				}
+		}
+	}
+
+	/**
+	 * Attende la terminazione dei thread in input, interrompendoli tutti se
+	 * l'attesa è interrotta.
+	 * 
+	 * @param threads Thread da attendere.
+	 * @throws InterruptedException Se l'attesa è interrotta.
+	 */
+	private static void join(Thread[] threads) throws InterruptedException {
+		try {
+			for (Thread thread : threads)
+				thread.join();
+		} catch (InterruptedException e) {
+			for (Thread thread : threads)
+				thread.interrupt();
+			throw e;
+		}
+	}
+
+	/**
+	 * Concatena in una stringa le regole di ciascun albero della foresta.
+	 */
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (int t = 0; t < trees.length; t++)
+			text.append("********* TREE ").append(t).append(" **********\n").append(trees[t]).append("\n");
+		return text.toString();
+	}
+
+	/**
+	 * Serializza la foresta all'interno del file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui salvare la foresta.
+	 * @throws IOException Se si verificano errori nella creazione del file.
+	 */
+	public void salva(String nomeFile) throws IOException {
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(new FileOutputStream(nomeFile));
+			out.writeObject(this);
+		} finally {
+			if (out != null)
+				out.close();
+		}
+	}
+
+	/**
+	 * Carica la foresta conservata nel file specificato in input.
+	 * 
+	 * @param nomeFile Nome del file in cui è salvata la foresta.
+	 * @return Foresta contenuta nel file.
+	 * @throws IOException            Se si verificano errori nel caricamento del
+	 *                                file o il file non contiene una foresta.
+	 * @throws ClassNotFoundException Se la classe dell'oggetto serializzato non
+	 *                                viene trovata.
+	 */
+	public static RegressionForest carica(String nomeFile) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = null;
+		try {
+			in = new ObjectInputStream(new FileInputStream(nomeFile));
+			Object forest = in.readObject();
+			if (!(forest instanceof RegressionForest))
+				throw new IOException(nomeFile + " does not contain a regression forest");
+			return (RegressionForest) forest;
+		} finally {
+			if (in != null)
+				in.close();
+		}
+	}
+
+}
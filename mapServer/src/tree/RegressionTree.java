@@ -1,5 +1,16 @@
 package tree;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
 import java.util.TreeSet;
 import java.io.Serializable;
 import java.io.FileInputStream;
@@ -13,7 +24,7 @@ import server.UnknownValueException;
 /**
  * Classe che modella l'intero albero di decisione come insieme di sottoalberi.
  */
-public class RegressionTree implements Serializable {
+public class RegressionTree implements Model, Serializable {
 
 	/**
 	 * Radice del sottoalbero corrente.
@@ -25,6 +36,77 @@ public class RegressionTree implements Serializable {
 	 */
 	private RegressionTree childTree[];
 
+	/**
+	 * Nodo candidato all'espansione nella crescita best-first: un sottoalbero non
+	 * ancora determinato e il miglior split del sottoinsieme di training che
+	 * copre.
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+
+		/**
+		 * Sottoalbero da determinare.
+		 */
+		private RegressionTree tree;
+
+		/**
+		 * Profondità del sottoalbero nell'albero appreso.
+		 */
+		private int depth;
+
+		/**
+		 * Miglior split del sottoinsieme di training coperto dal sottoalbero.
+		 */
+		private SplitNode split;
+
+		/**
+		 * Ordine di creazione del candidato, che a parità di riduzione dello SSE
+		 * privilegia i candidati creati prima.
+		 */
+		private int order;
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param tree  Sottoalbero da determinare.
+		 * @param depth Profondità del sottoalbero.
+		 * @param split Miglior split del sottoinsieme di training.
+		 */
+		Candidate(RegressionTree tree, int depth, SplitNode split) {
+			this.tree = tree;
+			this.depth = depth;
+			this.split = split;
+		}
+
+		/**
+		 * Ordina i candidati per riduzione dello SSE decrescente e, a parità, per
+		 * ordine di creazione.
+		 */
+		public int compareTo(Candidate o) {
+			int c = Double.compare(o.split.getVarianceReduction(), split.getVarianceReduction());
+			return c != 0 ? c : Integer.compare(order, o.order);
+		}
+
+	}
+
+	/**
+	 * Versione del modello, generata casualmente al termine dell'apprendimento.
+	 * Identifica l'albero anche dopo la serializzazione.
+	 */
+	private long version;
+
+	/**
+	 * Sottoalberi distinti dell'albero in ordine anticipato, indicizzati
+	 * dall'identificativo di visita; un sottoalbero condiviso compare una sola
+	 * volta. Costruito alla prima richiesta sulla sola radice.
+	 */
+	private transient RegressionTree[] nodes;
+
+	/**
+	 * Identificativo di visita del sottoalbero, ossia la sua posizione
+	 * nell'ordine anticipato dell'albero che lo contiene.
+	 */
+	private transient int nodeId;
+
 	/**
 	 * Costruttore di classe. Istanzia un sottoalbero.
 	 */
@@ -33,19 +115,378 @@ public class RegressionTree implements Serializable {
 
 	/**
 	 * Costruttore di classe. Istanzia un sottoalbero e avvia l'induzione
-	 * dell'albero di decisione dagli esempi di training in input.
+	 * dell'albero di decisione dagli esempi di training in input. L'induzione
+	 * ordina una vista del training set, che resta quindi invariato e può essere
+	 * condiviso tra apprendimenti concorrenti. Il numero di esempi per foglia è
+	 * riferito alle tuple rappresentate, così che un training set pesato produca
+	 * lo stesso albero delle tuple da cui è stato raggruppato.
 	 * 
 	 * @param trainingSet Oggetto di tipo Data contenente il training set completo.
 	 */
 	public RegressionTree(Data trainingSet) {
-		learnTree(trainingSet, 0, trainingSet.getNumberOfExamples() - 1, trainingSet.getNumberOfExamples() * 10 / 100);
+		this(trainingSet, new TrainingConfig());
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione dell'albero come
+	 * RegressionTree(Data), arrestandola secondo i criteri in input, in
+	 * profondità, best-first o per livelli.
+	 * 
+	 * @param trainingSet Oggetto di tipo Data contenente il training set completo.
+	 * @param config      Criteri di arresto dell'induzione.
+	 */
+	public RegressionTree(Data trainingSet, TrainingConfig config) {
+		Data job = trainingSet.view();
+		try {
+			if (config.isBestFirst())
+				learnBestFirst(job, config.start(job.getTotalWeight()));
+			else if (config.isLevelWise()) {
+				RegressionTree learnt = new LevelWiseLearner(job, config.start(job.getTotalWeight())).learn();
+				root = learnt.root;
+				childTree = learnt.childTree;
+			} else
+				learnTree(job, 0, job.getNumberOfExamples() - 1, config.start(job.getTotalWeight()), 0);
+		} finally {
+			job.release();
+		}
+		version = new Random().nextLong() & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione dell'albero da un campione del
+	 * training set, valutando in ciascun nodo gli split su un sottoinsieme casuale
+	 * degli attributi indipendenti, come richiesto dagli alberi di una foresta.
+	 * 
+	 * @param trainingSet       Vista del training set di cui l'albero ordina gli
+	 *                          esempi.
+	 * @param attributesPerNode Numero di attributi indipendenti estratti in
+	 *                          ciascun nodo.
+	 * @param random            Generatore dei numeri casuali.
+	 * @see RegressionForest
+	 */
+	RegressionTree(Data trainingSet, int attributesPerNode, Random random) {
+		learnTree(trainingSet, 0, trainingSet.getNumberOfExamples() - 1,
+				new TrainingConfig().start(trainingSet.getTotalWeight()), 0, attributesPerNode, random);
+		version = random.nextLong() & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione out-of-core dell'albero dagli
+	 * esempi di training mappati in memoria: le statistiche di split sono
+	 * raccolte con una lettura sequenziale delle colonne per ciascun livello
+	 * dell'albero.
+	 * 
+	 * @param trainingSet Training set le cui colonne risiedono in un file.
+	 * @throws IOException Se il file di lavoro dell'induzione non può essere
+	 *                     creato.
+	 * @see OutOfCoreLearner
+	 */
+	public RegressionTree(ColumnFile trainingSet) throws IOException {
+		this(trainingSet, new TrainingConfig());
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione out-of-core dell'albero come
+	 * RegressionTree(ColumnFile), arrestandola secondo i criteri in input.
+	 * L'induzione per livelli non supporta la crescita best-first.
+	 * 
+	 * @param trainingSet Training set le cui colonne risiedono in un file.
+	 * @param config      Criteri di arresto dell'induzione.
+	 * @throws IOException              Se il file di lavoro dell'induzione non
+	 *                                  può essere creato.
+	 * @throws IllegalArgumentException Se è richiesta la crescita best-first.
+	 */
+	public RegressionTree(ColumnFile trainingSet, TrainingConfig config) throws IOException {
+		if (config.isBestFirst())
+			throw new IllegalArgumentException("Best-first growth requires a training set in memory");
+		RegressionTree learnt = new OutOfCoreLearner(trainingSet, config.start(trainingSet.getNumberOfExamples()))
+				.learn();
+		root = learnt.root;
+		childTree = learnt.childTree;
+		version = new Random().nextLong() & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione dell'albero da un training set che
+	 * resta nel database: le statistiche di split sono calcolate dal DBMS con una
+	 * interrogazione di aggregazione per attributo e livello, finché i nodi non
+	 * possono essere caricati nella metà della memoria della JVM.
+	 * 
+	 * @param trainingSet Training set che resta nel database.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nelle interrogazioni.
+	 * @see InDatabaseLearner
+	 */
+	public RegressionTree(RemoteTable trainingSet) throws TrainingDataException {
+		this(trainingSet, trainingSet.getMemoryThreshold(), new TrainingConfig());
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione dell'albero come
+	 * RegressionTree(RemoteTable), arrestandola secondo i criteri in input.
+	 * 
+	 * @param trainingSet Training set che resta nel database.
+	 * @param config      Criteri di arresto dell'induzione.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nelle interrogazioni.
+	 */
+	public RegressionTree(RemoteTable trainingSet, TrainingConfig config) throws TrainingDataException {
+		this(trainingSet, trainingSet.getMemoryThreshold(), config);
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione dell'albero da un training set che
+	 * resta nel database, apprendendo in memoria i nodi che coprono al più
+	 * memoryThreshold esempi.
+	 * 
+	 * @param trainingSet     Training set che resta nel database.
+	 * @param memoryThreshold Numero massimo di esempi di un nodo appreso in
+	 *                        memoria; 0 per calcolare nel database le statistiche
+	 *                        di tutti i nodi.
+	 * @throws TrainingDataException Se la connessione al database fallisce o si
+	 *                               verificano errori nelle interrogazioni.
+	 */
+	public RegressionTree(RemoteTable trainingSet, int memoryThreshold) throws TrainingDataException {
+		this(trainingSet, memoryThreshold, new TrainingConfig());
+	}
+
+	/**
+	 * Costruttore di classe. Avvia l'induzione dell'albero come
+	 * RegressionTree(RemoteTable, int), arrestandola secondo i criteri in input.
+	 * L'induzione per livelli non supporta la crescita best-first.
+	 * 
+	 * @param trainingSet     Training set che resta nel database.
+	 * @param memoryThreshold Numero massimo di esempi di un nodo appreso in
+	 *                        memoria; 0 per calcolare nel database le statistiche
+	 *                        di tutti i nodi.
+	 * @param config          Criteri di arresto dell'induzione.
+	 * @throws TrainingDataException    Se la connessione al database fallisce o
+	 *                                  si verificano errori nelle
+	 *                                  interrogazioni.
+	 * @throws IllegalArgumentException Se è richiesta la crescita best-first.
+	 */
+	public RegressionTree(RemoteTable trainingSet, int memoryThreshold, TrainingConfig config)
+			throws TrainingDataException {
+		if (config.isBestFirst())
+			throw new IllegalArgumentException("Best-first growth requires a training set in memory");
+		RegressionTree learnt = new InDatabaseLearner(trainingSet, config.start(trainingSet.getNumberOfExamples()),
+				memoryThreshold).learn();
+		root = learnt.root;
+		childTree = learnt.childTree;
+		version = new Random().nextLong() & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Costruttore di classe. Istanzia un sottoalbero a partire dalla radice e dai
+	 * sottoalberi già determinati.
+	 * 
+	 * @param root      Radice del sottoalbero.
+	 * @param childTree Sottoalberi aventi radice nei figli di root; null se root è
+	 *                  una foglia.
+	 */
+	RegressionTree(Node root, RegressionTree[] childTree) {
+		this.root = root;
+		this.childTree = childTree;
+	}
+
+	/**
+	 * Restituisce il valore del membro version.
+	 * 
+	 * @return Versione del modello.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Restituisce il valore del membro root.
+	 * 
+	 * @return Radice del sottoalbero.
+	 */
+	Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Restituisce il valore del membro childTree.
+	 * 
+	 * @return Sottoalberi aventi radice nei figli di root; null se root è una
+	 *         foglia.
+	 */
+	RegressionTree[] getChildTree() {
+		return childTree;
+	}
+
+	/**
+	 * Restituisce il numero di nodi dell'albero.
+	 * 
+	 * @return Numero di nodi, di split e fogliari.
+	 */
+	public int getNumberOfNodes() {
+		return getNodes().length;
+	}
+
+	/**
+	 * Restituisce il numero di foglie dell'albero.
+	 * 
+	 * @return Numero di nodi fogliari.
+	 */
+	public int getNumberOfLeaves() {
+		int leaves = 0;
+		for (RegressionTree node : getNodes())
+			if (node.root instanceof LeafNode)
+				leaves++;
+		return leaves;
+	}
+
+	/**
+	 * Restituisce la profondità dell'albero.
+	 * 
+	 * @return Lunghezza del cammino più lungo dalla radice a una foglia; 0 se la
+	 *         radice è una foglia.
+	 */
+	public int getDepth() {
+		int depth = 0;
+		if (root instanceof SplitNode)
+			for (RegressionTree child : childTree)
+				depth = Math.max(depth, child.getDepth() + 1);
+		return depth;
+	}
+
+	/**
+	 * Pota l'albero per costo-complessità, scegliendo tra i sottoalberi della
+	 * sequenza di potatura quello con l'errore quadratico minore sugli esempi di
+	 * validazione. L'albero resta invariato.
+	 * 
+	 * @param trainingSet   Training set da cui l'albero è stato appreso.
+	 * @param validationSet Esempi di validazione, con gli stessi attributi del
+	 *                      training set.
+	 * @return Albero potato, con una nuova versione.
+	 * @throws IllegalArgumentException Se gli attributi degli esempi di
+	 *                                  validazione non corrispondono a quelli del
+	 *                                  training set.
+	 * @see CostComplexityPruner
+	 */
+	public RegressionTree prune(Data trainingSet, Data validationSet) {
+		int attributes = trainingSet.getNumberOfExplanatoryAttributes();
+		boolean compatible = validationSet.getNumberOfExplanatoryAttributes() == attributes;
+		for (int a = 0; a < attributes && compatible; a++) {
+			Attribute expected = trainingSet.getExplanatoryAttribute(a);
+			Attribute actual = validationSet.getExplanatoryAttribute(a);
+			compatible = expected.toString().equals(actual.toString()) && expected.getClass() == actual.getClass();
+		}
+		if (!compatible)
+			throw new IllegalArgumentException("The validation set does not match the training set attributes");
+		CostComplexityPruner pruner = new CostComplexityPruner(this, trainingSet);
+		return pruned(pruner.prune(pruner.select(validationSet)));
+	}
+
+	/**
+	 * Pota l'albero per costo-complessità, scegliendo il sottoalbero della
+	 * sequenza di potatura per validazione incrociata sul training set. L'albero
+	 * resta invariato.
+	 * 
+	 * @param trainingSet Training set da cui l'albero è stato appreso.
+	 * @param config      Criteri di arresto con cui l'albero è stato appreso,
+	 *                    usati per apprendere gli alberi della validazione.
+	 * @param folds       Numero di gruppi della validazione incrociata.
+	 * @return Albero potato, con una nuova versione.
+	 * @throws IllegalArgumentException Se il numero di gruppi è minore di due o
+	 *                                  maggiore del numero di esempi.
+	 * @see CostComplexityPruner
+	 */
+	public RegressionTree prune(Data trainingSet, TrainingConfig config, int folds) {
+		if (folds < 2 || folds > trainingSet.getNumberOfExamples())
+			throw new IllegalArgumentException("The number of folds must be between 2 and the number of examples");
+		CostComplexityPruner pruner = new CostComplexityPruner(this, trainingSet);
+		return pruned(pruner.prune(pruner.select(trainingSet, config, folds, new Random(version))));
+	}
+
+	/**
+	 * Supporta i metodi prune(), assegnando una nuova versione all'albero potato.
+	 * 
+	 * @param tree Albero potato.
+	 * @return Albero potato.
+	 */
+	private static RegressionTree pruned(RegressionTree tree) {
+		tree.version = new Random().nextLong() & Long.MAX_VALUE;
+		return tree;
+	}
+
+	/**
+	 * Restituisce la forma compatta dell'albero, con la stessa versione e le
+	 * stesse predizioni, anche per gli esempi con valori sconosciuti o mancanti:
+	 * i sottoalberi identici sono condivisi, così che l'albero diventi un grafo
+	 * aciclico, e un nodo di split i cui figli predicono tutti uno stesso valore
+	 * è sostituito da una foglia solo se non può rifiutare un valore che i suoi
+	 * antenati accettano. È il caso di uno split continuo su un attributo già
+	 * verificato da un antenato, che accetta qualsiasi valore numerico; uno
+	 * split discreto rifiuta invece i valori che non ha incontrato, e resta. I
+	 * nodi sono condivisi con l'albero, che resta invariato; un sottoalbero
+	 * condiviso conserva l'intervallo di esempi di training di una sola delle sue
+	 * occorrenze.
+	 * 
+	 * @return Albero compattato.
+	 */
+	public RegressionTree compact() {
+		RegressionTree compact = compact(new HashMap<>(), new HashSet<>());
+		compact = new RegressionTree(compact.root, compact.childTree);
+		compact.version = version;
+		return compact;
+	}
+
+	/**
+	 * Supporta il metodo compact(), compattando prima i sottoalberi e
+	 * restituendo, tra quelli già compattati, l'unico sottoalbero identico al
+	 * corrente. Due foglie sono identiche se predicono lo stesso valore, due nodi
+	 * di split se hanno stessi tipo, attributo, valori di split e figli.
+	 * 
+	 * @param canonical Sottoalberi compattati, indicizzati dalla loro struttura.
+	 * @param tested    Indici degli attributi continui verificati dagli antenati
+	 *                  del sottoalbero.
+	 * @return Sottoalbero compattato.
+	 */
+	private RegressionTree compact(Map<List<Object>, RegressionTree> canonical, Set<Integer> tested) {
+		List<Object> key = new ArrayList<>();
+		RegressionTree[] children = null;
+		if (root instanceof LeafNode)
+			key.add(((LeafNode) root).getPredictedClassValue());
+		else {
+			SplitNode split = (SplitNode) root;
+			int attribute = split.getAttribute().getIndex();
+			boolean accepting = split instanceof ContinuousNode && tested.contains(attribute);
+			boolean added = split instanceof ContinuousNode && tested.add(attribute);
+			children = new RegressionTree[childTree.length];
+			boolean uniform = true;
+			for (int i = 0; i < children.length; i++) {
+				children[i] = childTree[i].compact(canonical, tested);
+				uniform &= children[i] == children[0];
+			}
+			if (added)
+				tested.remove(attribute);
+			if (accepting && uniform && children[0].root instanceof LeafNode)
+				return children[0];
+			key.add(split.getClass());
+			key.add(attribute);
+			for (int i = 0; i < children.length; i++) {
+				key.add(split.getSplitInfo(i).getComparator());
+				key.add(split.getSplitInfo(i).getSplitValue());
+				key.add(children[i]);
+			}
+		}
+		RegressionTree shared = canonical.get(key);
+		if (shared == null) {
+			shared = new RegressionTree(root, children);
+			canonical.put(key, shared);
+		}
+		return shared;
 	}
 
 	/**
 	 * Verifica se il sottoinsieme corrente può essere coperto da un nodo foglia,
-	 * controllando che il numero di esempi compresi tra begin ed end sia minore o
-	 * uguale del parametro in input o, alternativamente, se tutti gli esempi
-	 * presentano uno stesso valore per l'attributo di classe.
+	 * controllando che la somma dei pesi degli esempi compresi tra begin ed end
+	 * sia minore o uguale del parametro in input o, alternativamente, se tutti
+	 * gli esempi presentano uno stesso valore per l'attributo di classe.
 	 * 
 	 * @param trainingSet             Oggetto di tipo Data contenente il training
 	 *                                set completo.
@@ -56,9 +497,12 @@ public class RegressionTree implements Serializable {
 	 * @return Esito sulle condizioni richieste dai nodi fogliari.
 	 */
 	private boolean isLeaf(Data trainingSet, int begin, int end, int numberOfExamplesPerLeaf) {
-		if (end - begin + 1 > numberOfExamplesPerLeaf)
+		long weight = 0;
+		for (int i = begin; i <= end && weight <= numberOfExamplesPerLeaf; i++)
+			weight += trainingSet.getWeight(i);
+		if (weight > numberOfExamplesPerLeaf)
 			for (int i = begin; i < end; i++)
-				if (!trainingSet.getClassValue(i).equals(trainingSet.getClassValue(i + 1)))
+				if (trainingSet.getClassValue(i) != trainingSet.getClassValue(i + 1))
 					return false;
 		return true;
 	}
@@ -71,12 +515,13 @@ public class RegressionTree implements Serializable {
 	 * @param trainingSet Oggetto di tipo Data contenente il training set completo.
 	 * @param begin       Indice iniziale del sottoinsieme di training.
 	 * @param end         Indice finale del sottoinsieme di training.
+	 * @param attributes  Indici degli attributi indipendenti da valutare.
 	 * @return Miglior nodo di split per il sottoinsieme di training corrente.
 	 */
-	private SplitNode determineBestSplitNode(Data trainingSet, int begin, int end) {
+	private SplitNode determineBestSplitNode(Data trainingSet, int begin, int end, int[] attributes) {
 		TreeSet<SplitNode> ts = new TreeSet<>();
 		SplitNode currentNode;
-		for (int i = 0; i < trainingSet.getNumberOfExplanatoryAttributes(); i++) {
+		for (int i : attributes) {
 			Attribute a = trainingSet.getExplanatoryAttribute(i);
 			if (a instanceof DiscreteAttribute)
 				currentNode = new DiscreteNode(trainingSet, begin, end, (DiscreteAttribute) a);
@@ -96,32 +541,166 @@ public class RegressionTree implements Serializable {
 	 * dallo split. Per ciascun oggetto dell'array childTree, si invocherà
 	 * ricorsivamente il metodo learnTree() al fin di eseguire l'apprendimento su un
 	 * insieme ridotto rispetto all'insieme attuale. Se il nodo di split non genera
-	 * figli diviene foglia.
+	 * figli, o un criterio di arresto è raggiunto, diviene foglia.
 	 * 
-	 * @param trainingSet             Oggetto di tipo Data contenente il training
-	 *                                set completo.
-	 * @param begin                   Indice iniziale del sottoinsieme di training.
-	 * @param end                     Indice finale del sottoinsieme di training.
-	 * @param numberOfExamplesPerLeaf Numero massimo di esempi che una foglia deve
-	 *                                contenere.
+	 * @param trainingSet Oggetto di tipo Data contenente il training set completo.
+	 * @param begin       Indice iniziale del sottoinsieme di training.
+	 * @param end         Indice finale del sottoinsieme di training.
+	 * @param budget      Stato dei criteri di arresto dell'induzione.
+	 * @param depth       Profondità del sottoalbero nell'albero appreso.
+	 */
+	void learnTree(Data trainingSet, int begin, int end, TrainingConfig.Budget budget, int depth) {
+		learnTree(trainingSet, begin, end, budget, depth, trainingSet.getNumberOfExplanatoryAttributes(), null);
+	}
+
+	/**
+	 * Genera un sottoalbero come learnTree(Data, int, int, TrainingConfig.Budget,
+	 * int), valutando in ciascun nodo gli split su attributesPerNode attributi
+	 * indipendenti estratti senza reinserimento.
+	 * 
+	 * @param trainingSet       Oggetto di tipo Data contenente il training set
+	 *                          completo.
+	 * @param begin             Indice iniziale del sottoinsieme di training.
+	 * @param end               Indice finale del sottoinsieme di training.
+	 * @param budget            Stato dei criteri di arresto dell'induzione.
+	 * @param depth             Profondità del sottoalbero nell'albero appreso.
+	 * @param attributesPerNode Numero di attributi indipendenti valutati in
+	 *                          ciascun nodo.
+	 * @param random            Generatore dei numeri casuali; null se sono
+	 *                          valutati tutti gli attributi.
 	 */
-	void learnTree(Data trainingSet, int begin, int end, int numberOfExamplesPerLeaf) {
-		if (isLeaf(trainingSet, begin, end, numberOfExamplesPerLeaf))
+	void learnTree(Data trainingSet, int begin, int end, TrainingConfig.Budget budget, int depth,
+			int attributesPerNode, Random random) {
+		if (!budget.canExpand(depth) || isLeaf(trainingSet, begin, end, budget.getNumberOfExamplesPerLeaf()))
 			root = new LeafNode(trainingSet, begin, end);
 		else {
-			root = determineBestSplitNode(trainingSet, begin, end);
-			if (root.getNumberOfChildren() > 1) {
-				childTree = new RegressionTree[root.getNumberOfChildren()];
-				for (int i = 0; i < root.getNumberOfChildren(); i++) {
+			SplitNode split = determineBestSplitNode(trainingSet, begin, end,
+					sampleAttributes(trainingSet.getNumberOfExplanatoryAttributes(), attributesPerNode, random));
+			if (split.getNumberOfChildren() > 1
+					&& budget.acceptSplit(split.getVarianceReduction(), split.getNumberOfChildren())) {
+				root = split;
+				childTree = new RegressionTree[split.getNumberOfChildren()];
+				for (int i = 0; i < split.getNumberOfChildren(); i++) {
 					childTree[i] = new RegressionTree();
-					childTree[i].learnTree(trainingSet, ((SplitNode) root).getSplitInfo(i).getBeginIndex(),
-							((SplitNode) root).getSplitInfo(i).getEndIndex(), numberOfExamplesPerLeaf);
+					childTree[i].learnTree(trainingSet, split.getSplitInfo(i).getBeginIndex(),
+							split.getSplitInfo(i).getEndIndex(), budget, depth + 1, attributesPerNode, random);
 				}
 			} else
 				root = new LeafNode(trainingSet, begin, end);
 		}
 	}
 
+	/**
+	 * Genera l'albero con la crescita best-first: mantiene una coda di priorità
+	 * dei nodi candidati, ordinati per riduzione dello SSE del loro miglior
+	 * split, ed espande sempre il candidato migliore, valutando i figli come
+	 * nuovi candidati. Un candidato il cui split non è accettato dai criteri di
+	 * arresto, ad esempio perché supererebbe il numero massimo di foglie, diviene
+	 * foglia; i candidati restanti possono ancora essere espansi. Senza limiti
+	 * l'albero prodotto coincide con quello della crescita in profondità, poiché
+	 * ciascun nodo ordina solo il proprio sottoinsieme di training.
+	 * 
+	 * @param trainingSet Oggetto di tipo Data contenente il training set completo.
+	 * @param budget      Stato dei criteri di arresto dell'induzione.
+	 */
+	private void learnBestFirst(Data trainingSet, TrainingConfig.Budget budget) {
+		int[] attributes = sampleAttributes(trainingSet.getNumberOfExplanatoryAttributes(),
+				trainingSet.getNumberOfExplanatoryAttributes(), null);
+		PriorityQueue<Candidate> queue = new PriorityQueue<>();
+		Candidate candidate = evaluate(trainingSet, 0, trainingSet.getNumberOfExamples() - 1, budget, 0, attributes);
+		if (candidate != null)
+			queue.add(candidate);
+		for (int order = 1; !queue.isEmpty();) {
+			Candidate best = queue.poll();
+			SplitNode split = best.split;
+			RegressionTree tree = best.tree;
+			if (budget.canExpand(best.depth)
+					&& budget.acceptSplit(split.getVarianceReduction(), split.getNumberOfChildren())) {
+				tree.root = split;
+				tree.childTree = new RegressionTree[split.getNumberOfChildren()];
+				for (int i = 0; i < split.getNumberOfChildren(); i++) {
+					tree.childTree[i] = new RegressionTree();
+					candidate = tree.childTree[i].evaluate(trainingSet, split.getSplitInfo(i).getBeginIndex(),
+							split.getSplitInfo(i).getEndIndex(), budget, best.depth + 1, attributes);
+					if (candidate != null) {
+						candidate.order = order++;
+						queue.add(candidate);
+					}
+				}
+			} else
+				tree.root = new LeafNode(trainingSet, split.getBeginExampleIndex(), split.getEndExampleIndex());
+		}
+	}
+
+	/**
+	 * Supporta il metodo learnBestFirst(), rendendo foglia il sottoalbero
+	 * corrente se il sottoinsieme di training in input non può essere suddiviso,
+	 * o restituendolo come candidato all'espansione con il suo miglior split.
+	 * 
+	 * @param trainingSet Oggetto di tipo Data contenente il training set completo.
+	 * @param begin       Indice iniziale del sottoinsieme di training.
+	 * @param end         Indice finale del sottoinsieme di training.
+	 * @param budget      Stato dei criteri di arresto dell'induzione.
+	 * @param depth       Profondità del sottoalbero nell'albero appreso.
+	 * @param attributes  Indici degli attributi indipendenti da valutare.
+	 * @return Candidato all'espansione, o null se il sottoalbero è una foglia.
+	 */
+	private Candidate evaluate(Data trainingSet, int begin, int end, TrainingConfig.Budget budget, int depth,
+			int[] attributes) {
+		if (!budget.canExpand(depth) || isLeaf(trainingSet, begin, end, budget.getNumberOfExamplesPerLeaf())) {
+			root = new LeafNode(trainingSet, begin, end);
+			return null;
+		}
+		SplitNode split = determineBestSplitNode(trainingSet, begin, end, attributes);
+		if (split.getNumberOfChildren() <= 1) {
+			root = new LeafNode(trainingSet, begin, end);
+			return null;
+		}
+		return new Candidate(this, depth, split);
+	}
+
+	/**
+	 * Estrae senza reinserimento gli indici degli attributi indipendenti da
+	 * valutare in un nodo, restituendoli in ordine crescente così che, a parità
+	 * di SSE, sia scelto l'attributo di indice minore come senza estrazione.
+	 * 
+	 * @param numberOfAttributes Numero degli attributi indipendenti.
+	 * @param attributesPerNode  Numero di attributi da estrarre.
+	 * @param random             Generatore dei numeri casuali; null per
+	 *                           restituire tutti gli attributi.
+	 * @return Indici degli attributi estratti.
+	 */
+	private static int[] sampleAttributes(int numberOfAttributes, int attributesPerNode, Random random) {
+		int[] attributes = new int[numberOfAttributes];
+		for (int i = 0; i < attributes.length; i++)
+			attributes[i] = i;
+		if (random == null || attributesPerNode >= numberOfAttributes)
+			return attributes;
+		for (int i = 0; i < attributesPerNode; i++) {
+			int j = i + random.nextInt(numberOfAttributes - i);
+			int swap = attributes[i];
+			attributes[i] = attributes[j];
+			attributes[j] = swap;
+		}
+		int[] sample = Arrays.copyOf(attributes, attributesPerNode);
+		Arrays.sort(sample);
+		return sample;
+	}
+
+	/**
+	 * Trasla gli indici degli esempi coperti da ciascun nodo del sottoalbero.
+	 * 
+	 * @param offset Indice nell'intero training set del primo esempio della
+	 *               porzione da cui il sottoalbero è stato appreso.
+	 * @see Node#shift(int)
+	 */
+	void shift(int offset) {
+		root.shift(offset);
+		if (childTree != null)
+			for (RegressionTree child : childTree)
+				child.shift(offset);
+	}
+
 	/**
 	 * Stampa a video le informazioni dell'intero albero inserendo un'opportuna
 	 * intestazione.
@@ -185,40 +764,131 @@ public class RegressionTree implements Serializable {
 	}
 
 	/**
-	 * Comunica al client le informazioni di ciascuno split dell'albero e per il
-	 * corrispondente attributo acquisisce il valore dell'esempio da
-	 * predire. Se la radice corrente è un nodo foglia, viene restituita la
-	 * predizione per l’attributo di classe, altrimenti il metodo è invocato
-	 * ricorsivamente sul nodo figlio individuato dal valore acquisito.
+	 * Restituisce i sottoalberi in ordine anticipato, costruendo l'indice alla
+	 * prima invocazione.
 	 * 
-	 * @param in  Oggetto per la gestione delle operazioni di lettura dal client.
-	 * @param out Oggetto per la gestione delle operazioni di scrittura verso il
-	 *            client.
-	 * @return Valore predetto per l'attributo di classe dell'esempio acquisito.
-	 * @throws UnknownValueException  Se il valore acquisito non consente
-	 *                                di selezionare un ramo valido del nodo di
-	 *                                split.
-	 * @throws IOException            Se si verificano errori di input-output.
-	 * @throws ClassNotFoundException Se il tipo del valore letto non è noto.
+	 * @return Sottoalberi indicizzati dal loro identificativo di visita.
 	 */
-	public Double predictClass(ObjectInputStream in, ObjectOutputStream out)
-			throws UnknownValueException, IOException, ClassNotFoundException {
-		if (root instanceof LeafNode)
-			return ((LeafNode) root).getPredictedClassValue();
-		else {
-			out.writeObject("QUERY");
-			out.writeObject(((SplitNode) root).formulateQuery() + "\nInsert value: ");
-			int risp = (int) in.readObject();
-			if (risp < 0 || risp >= root.getNumberOfChildren())
-				throw new UnknownValueException(
-						"The answer should be an integer between 0 and " + (root.getNumberOfChildren() - 1));
-			else
-				return childTree[risp].predictClass(in, out);
+	synchronized RegressionTree[] getNodes() {
+		if (nodes == null) {
+			List<RegressionTree> visit = new ArrayList<>();
+			index(visit, Collections.newSetFromMap(new IdentityHashMap<>()));
+			nodes = visit.toArray(new RegressionTree[0]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Supporta il metodo getNodes(), aggiungendo alla lista in input il
+	 * sottoalbero corrente e, ricorsivamente, i suoi sottoalberi, se non sono già
+	 * stati visitati.
+	 * 
+	 * @param visit   Lista dei sottoalberi visitati.
+	 * @param visited Insieme dei sottoalberi visitati.
+	 */
+	private void index(List<RegressionTree> visit, Set<RegressionTree> visited) {
+		if (!visited.add(this))
+			return;
+		nodeId = visit.size();
+		visit.add(this);
+		if (root instanceof SplitNode)
+			for (RegressionTree child : childTree)
+				child.index(visit, visited);
+	}
+
+	/**
+	 * Restituisce il valore del membro nodeId, avvalorato da getNodes() sulla
+	 * radice dell'albero che contiene il sottoalbero.
+	 * 
+	 * @return Identificativo di visita del sottoalbero.
+	 */
+	int getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un esempio completo, i cui
+	 * valori sono indicizzati come gli attributi indipendenti del training set.
+	 * 
+	 * @param example Valori degli attributi indipendenti dell'esempio da predire.
+	 * @return Valore predetto per l'attributo di classe dell'esempio.
+	 * @throws UnknownValueException Se un valore dell'esempio non consente di
+	 *                               selezionare un ramo valido di un nodo di
+	 *                               split.
+	 */
+	public Double predictClass(Object[] example) throws UnknownValueException {
+		Double prediction = predictClass(new Object[][] { example })[0];
+		if (prediction == null)
+			throw new UnknownValueException("The example contains a missing or unknown value");
+		return prediction;
+	}
+
+	/**
+	 * Predice il valore dell'attributo di classe per un insieme di esempi completi,
+	 * visitando l'albero una sola volta per l'intero insieme: a ciascun nodo di
+	 * split gli esempi sono partizionati tra i rami e ogni sottoalbero è visitato
+	 * con il blocco di esempi che gli compete.
+	 * 
+	 * @param examples Esempi da predire, ciascuno espresso come array di valori
+	 *                 degli attributi indipendenti.
+	 * @return Array dei valori predetti, nello stesso ordine degli esempi in input.
+	 *         Contiene null per gli esempi con un valore che non consente di
+	 *         selezionare un ramo valido.
+	 */
+	public Double[] predictClass(Object[][] examples) {
+		Double[] predictions = new Double[examples.length];
+		int[] rows = new int[examples.length];
+		for (int i = 0; i < rows.length; i++)
+			rows[i] = i;
+		predictClass(examples, rows, 0, rows.length, predictions);
+		return predictions;
+	}
+
+	/**
+	 * Supporta il metodo predictClass(Object[][]), predicendo gli esempi indicati
+	 * da rows nell'intervallo [begin, end). Riordina l'intervallo in modo che gli
+	 * esempi diretti verso uno stesso ramo risultino contigui.
+	 * 
+	 * @param examples    Esempi da predire.
+	 * @param rows        Indici degli esempi, da riordinare per ramo.
+	 * @param begin       Estremo inferiore (incluso) dell'intervallo di rows.
+	 * @param end         Estremo superiore (escluso) dell'intervallo di rows.
+	 * @param predictions Array in cui memorizzare i valori predetti.
+	 * @see predictClass(Object[][])
+	 */
+	private void predictClass(Object[][] examples, int[] rows, int begin, int end, Double[] predictions) {
+		if (begin >= end)
+			return;
+		if (root instanceof LeafNode) {
+			Double value = ((LeafNode) root).getPredictedClassValue();
+			for (int i = begin; i < end; i++)
+				predictions[rows[i]] = value;
+			return;
+		}
+		SplitNode split = (SplitNode) root;
+		int attributeIndex = split.getAttribute().getIndex();
+		int[] branch = new int[end - begin];
+		int[] offset = new int[childTree.length + 2];
+		for (int i = begin; i < end; i++) {
+			Object[] example = examples[rows[i]];
+			branch[i - begin] = attributeIndex < example.length ? split.testCondition(example[attributeIndex]) : -1;
+			offset[branch[i - begin] + 2]++;
 		}
+		offset[0] = begin;
+		for (int i = 1; i < offset.length; i++)
+			offset[i] += offset[i - 1];
+		int[] routed = new int[end - begin];
+		int[] next = offset.clone();
+		for (int i = begin; i < end; i++)
+			routed[next[branch[i - begin] + 1]++ - begin] = rows[i];
+		System.arraycopy(routed, 0, rows, begin, routed.length);
+		for (int i = 0; i < childTree.length; i++)
+			childTree[i].predictClass(examples, rows, offset[i + 1], offset[i + 2], predictions);
 	}
 
 	/**
-	 * Serializza l'albero di regressione all'interno del file specificato in input.
+	 * Serializza l'albero di regressione all'interno del file specificato in
+	 * input, nella sua forma compatta.
 	 * 
 	 * @param nomeFile Nome del file in cui salvare l'albero.
 	 * @throws IOException Se si verificano errori nella creazione del file
@@ -228,7 +898,7 @@ public class RegressionTree implements Serializable {
 		ObjectOutputStream out = null;
 		try {
 			out = new ObjectOutputStream(new FileOutputStream(nomeFile));
-			out.writeObject(this);
+			out.writeObject(compact());
 		} finally {
 			if (out != null)
 				out.close();
@@ -155,9 +155,9 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 	/**
 	 * Costruttore di classe. Invoca il costruttore della superclasse e ordina i
 	 * valori dell'attributo in input per l'intervallo specificato, al fin di
-	 * determinare i possibili split e avvalorare la lista mapSplit. Calcola lo SSE
-	 * per l'attributo indicato, come somma degli SSE calcolati su ciascuno
-	 * SplitInfo collezionato in mapSplit.
+	 * determinare i possibili split e avvalorare la lista mapSplit. Lo SSE per
+	 * l'attributo indicato, somma degli SSE di ciascuno SplitInfo collezionato in
+	 * mapSplit, è calcolato durante la stessa scansione.
 	 * 
 	 * @param trainingSet       Oggetto di tipo Data contenente il training set
 	 *                          completo.
@@ -169,16 +169,34 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 		super(trainingSet, beginExampleIndex, endExampleIndex);
 		this.attribute = attribute;
 		trainingSet.sort(attribute, beginExampleIndex, endExampleIndex);
-		setSplitInfo(trainingSet, beginExampleIndex, endExampleIndex, attribute);
-		splitVariance = 0;
-		if (mapSplit != null)
-			for (SplitInfo i : mapSplit)
-				splitVariance += new LeafNode(trainingSet, i.getBeginIndex(), i.getEndIndex()).getVariance();
+		splitVariance = setSplitInfo(trainingSet, beginExampleIndex, endExampleIndex, attribute);
+	}
+
+	/**
+	 * Costruttore di classe. Avvalora gli attributi a partire dalle statistiche già
+	 * calcolate per il sottoinsieme di training; i rami dello split sono aggiunti
+	 * dalle sottoclassi.
+	 * 
+	 * @param beginExampleIndex Estremo inferiore del sottoinsieme di training.
+	 * @param endExampleIndex   Estremo superiore del sottoinsieme di training.
+	 * @param variance          SSE dell'attributo di classe nel sottoinsieme.
+	 * @param attribute         Attributo indipendente sul quale è definito lo
+	 *                          split.
+	 * @param splitVariance     SSE a seguito del partizionamento indotto dallo
+	 *                          split.
+	 */
+	SplitNode(int beginExampleIndex, int endExampleIndex, double variance, Attribute attribute,
+			double splitVariance) {
+		super(beginExampleIndex, endExampleIndex, variance);
+		this.attribute = attribute;
+		this.splitVariance = splitVariance;
 	}
 
 	/**
 	 * Genera le informazioni necessarie per ciascuno degli split candidati,
-	 * memorizzandole in mapSplit.
+	 * memorizzandole in mapSplit, a partire dal sottoinsieme di training ordinato
+	 * rispetto all'attributo. Le somme di ciascun ramo sono accumulate in tale
+	 * ordine, come scarti dalla media del training set.
 	 * 
 	 * @param trainingSet       Oggetto di tipo Data contenente il training set
 	 *                          completo.
@@ -186,8 +204,9 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 	 * @param endExampleIndex   Estremo superiore del sottoinsieme di training.
 	 * @param attribute         Attributo indipendente sul quale si definisce lo
 	 *                          split.
+	 * @return SSE a seguito del partizionamento indotto dai rami in mapSplit.
 	 */
-	abstract void setSplitInfo(Data trainingSet, int beginExampelIndex, int endExampleIndex, Attribute attribute);
+	abstract double setSplitInfo(Data trainingSet, int beginExampelIndex, int endExampleIndex, Attribute attribute);
 
 	/**
 	 * Modella la condizione di test. Ad ogni valore di test corrisponde un ramo
@@ -196,7 +215,8 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 	 * @param value Valore dell'attributo che si vuole testare rispetto a tutti gli
 	 *              split.
 	 * @return Identificativo del ramo di split in mapSplit, con cui il test ha
-	 *         esito positivo.
+	 *         esito positivo, o -1 se il valore non consente di selezionare
+	 *         alcun ramo.
 	 */
 	abstract int testCondition(Object value);
 
@@ -228,6 +248,18 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 		this.mapSplit = mapSplit;
 	}
 
+	/**
+	 * Trasla anche gli indici degli esempi di ciascun ramo dello split.
+	 */
+	void shift(int offset) {
+		super.shift(offset);
+		if (mapSplit != null)
+			for (SplitInfo i : mapSplit) {
+				i.beginIndex += offset;
+				i.endIndex += offset;
+			}
+	}
+
 	/**
 	 * Restituisce il valore del membro splitVariance.
 	 * 
@@ -238,6 +270,17 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 		return splitVariance;
 	}
 
+	/**
+	 * Restituisce la riduzione dello SSE indotta dallo split, come differenza
+	 * tra lo SSE del sottoinsieme di training e quello a seguito del
+	 * partizionamento.
+	 * 
+	 * @return Riduzione dello SSE indotta dallo split corrente.
+	 */
+	double getVarianceReduction() {
+		return super.getVariance() - splitVariance;
+	}
+
 	/**
 	 * Restituisce il numero di rami aventi origine nel nodo corrente.
 	 * 
@@ -257,20 +300,6 @@ abstract class SplitNode extends Node implements Comparable<SplitNode> {
 		return mapSplit.get(child);
 	}
 
-	/**
-	 * Restituisce attributo, operatore e valore di ciascun test in forma di
-	 * stringa. Utile per la predizione di nuovi esempi.
-	 * 
-	 * @return Stringa contenente attributo, operatore e valore relativi a ciascun
-	 *         test.
-	 */
-	String formulateQuery() {
-		String query = "\n";
-		for (SplitInfo i : mapSplit)
-			query += mapSplit.indexOf(i) + ":\t" + attribute + "\t" + i.getComparator() + "\t" + i.getSplitValue() + "\n";
-		return query;
-	}
-
 	/**
 	 * Restituisce le informazioni relative a ciascun test in forma di stringa.
 	 */
@@ -0,0 +1,270 @@
+package tree;
+
+/**
+ * Classe che modella i criteri di arresto dell'induzione di un albero di
+ * regressione: la percentuale delle tuple del training set sotto la quale un
+ * nodo diventa foglia, la profondità massima dell'albero, il numero massimo di
+ * foglie, la riduzione minima dello SSE per cui un nodo è suddiviso e il tempo
+ * massimo di apprendimento. L'induzione smette di espandere i nodi non appena
+ * uno dei limiti è raggiunto: i nodi ancora da espandere diventano foglie. I
+ * valori predefiniti riproducono l'induzione senza limiti, con foglie di al più
+ * il 10% delle tuple. Con la crescita best-first i nodi sono espansi in ordine
+ * di riduzione dello SSE anziché in profondità, così che il numero massimo di
+ * foglie sia speso per gli split migliori; con la crescita per livelli sono
+ * espansi insieme tutti i nodi di un livello, con una lettura del training set
+ * per livello.
+ */
+public class TrainingConfig {
+
+	/**
+	 * Stato dei limiti durante l'apprendimento di un albero.
+	 */
+	static class Budget {
+
+		/**
+		 * Criteri di arresto.
+		 */
+		private TrainingConfig config;
+
+		/**
+		 * Numero massimo di esempi che una foglia deve contenere.
+		 */
+		private int numberOfExamplesPerLeaf;
+
+		/**
+		 * Istante di inizio dell'apprendimento, in nanosecondi.
+		 */
+		private long start = System.nanoTime();
+
+		/**
+		 * Numero di foglie dell'albero se nessun altro nodo fosse suddiviso.
+		 */
+		private int leaves = 1;
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param config      Criteri di arresto.
+		 * @param totalWeight Numero di tuple rappresentate dal training set.
+		 */
+		Budget(TrainingConfig config, long totalWeight) {
+			this.config = config;
+			numberOfExamplesPerLeaf = (int) (totalWeight * config.leafPercentage / 100);
+		}
+
+		/**
+		 * Restituisce il valore del membro numberOfExamplesPerLeaf.
+		 * 
+		 * @return Numero massimo di esempi che una foglia deve contenere.
+		 */
+		int getNumberOfExamplesPerLeaf() {
+			return numberOfExamplesPerLeaf;
+		}
+
+		/**
+		 * Verifica se un nodo alla profondità in input può essere ancora espanso:
+		 * la profondità massima e il tempo massimo non devono essere stati
+		 * raggiunti.
+		 * 
+		 * @param depth Profondità del nodo; 0 per la radice.
+		 * @return true se il nodo può essere suddiviso.
+		 */
+		boolean canExpand(int depth) {
+			return depth < config.maxDepth
+					&& (config.timeBudget == 0 || System.nanoTime() - start < config.timeBudget * 1000000);
+		}
+
+		/**
+		 * Verifica se uno split può essere accettato: la riduzione dello SSE non
+		 * deve essere inferiore al minimo e le foglie aggiunte non devono superare
+		 * il numero massimo. In tal caso conta le foglie aggiunte.
+		 * 
+		 * @param reduction Riduzione dello SSE indotta dallo split.
+		 * @param children  Numero di rami dello split.
+		 * @return true se lo split è accettato.
+		 */
+		boolean acceptSplit(double reduction, int children) {
+			if (config.minVarianceReduction > 0 && reduction < config.minVarianceReduction)
+				return false;
+			if (children - 1 > config.maxLeaves - leaves)
+				return false;
+			leaves += children - 1;
+			return true;
+		}
+
+	}
+
+	/**
+	 * Percentuale delle tuple del training set che una foglia deve contenere al
+	 * più.
+	 */
+	private int leafPercentage = 10;
+
+	/**
+	 * Profondità massima dell'albero; la radice ha profondità 0.
+	 */
+	private int maxDepth = Integer.MAX_VALUE;
+
+	/**
+	 * Numero massimo di foglie dell'albero.
+	 */
+	private int maxLeaves = Integer.MAX_VALUE;
+
+	/**
+	 * Riduzione minima dello SSE per cui un nodo è suddiviso.
+	 */
+	private double minVarianceReduction = 0;
+
+	/**
+	 * Tempo massimo di apprendimento, in millisecondi; 0 se illimitato.
+	 */
+	private long timeBudget = 0;
+
+	/**
+	 * Indica se l'albero cresce espandendo per primo il nodo con la maggiore
+	 * riduzione dello SSE, anziché in profondità.
+	 */
+	private boolean bestFirst = false;
+
+	/**
+	 * Indica se l'albero cresce per livelli, anziché in profondità.
+	 */
+	private boolean levelWise = false;
+
+	/**
+	 * Costruttore di classe. Istanzia i criteri di arresto predefiniti.
+	 */
+	public TrainingConfig() {
+	}
+
+	/**
+	 * Costruttore di classe. Istanzia i criteri di arresto predefiniti, sostituiti
+	 * da quelli indicati. Ciascun criterio ha la forma "nome=valore", con nome tra
+	 * leafPercentage, maxDepth, maxLeaves, minVarianceReduction, timeBudget (in
+	 * millisecondi) e growth (depthFirst, bestFirst o levelWise).
+	 * 
+	 * @param settings Criteri di arresto; null o vuoto per quelli predefiniti.
+	 * @throws IllegalArgumentException Se un criterio è sconosciuto o ha un valore
+	 *                                  non valido.
+	 */
+	public TrainingConfig(String[] settings) {
+		if (settings == null)
+			return;
+		for (String setting : settings) {
+			if (setting.trim().isEmpty())
+				continue;
+			int equals = setting.indexOf('=');
+			if (equals < 0)
+				throw new IllegalArgumentException("Invalid training setting: " + setting);
+			String name = setting.substring(0, equals).trim();
+			String value = setting.substring(equals + 1).trim();
+			try {
+				if (name.equals("leafPercentage"))
+					leafPercentage = Integer.parseInt(value);
+				else if (name.equals("maxDepth"))
+					maxDepth = Integer.parseInt(value);
+				else if (name.equals("maxLeaves"))
+					maxLeaves = Integer.parseInt(value);
+				else if (name.equals("minVarianceReduction"))
+					minVarianceReduction = Double.parseDouble(value);
+				else if (name.equals("timeBudget"))
+					timeBudget = Long.parseLong(value);
+				else if (name.equals("growth") && (value.equals("bestFirst") || value.equals("depthFirst")
+						|| value.equals("levelWise"))) {
+					bestFirst = value.equals("bestFirst");
+					levelWise = value.equals("levelWise");
+				} else if (name.equals("growth"))
+					throw new IllegalArgumentException("Invalid value for growth: " + value);
+				else
+					throw new IllegalArgumentException("Unknown training setting: " + name);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+			}
+		}
+		if (leafPercentage < 0 || leafPercentage > 100)
+			throw new IllegalArgumentException("leafPercentage must be between 0 and 100");
+		if (maxDepth < 0)
+			throw new IllegalArgumentException("maxDepth must not be negative");
+		if (maxLeaves < 1)
+			throw new IllegalArgumentException("maxLeaves must be at least one");
+		if (!(minVarianceReduction >= 0))
+			throw new IllegalArgumentException("minVarianceReduction must not be negative");
+		if (timeBudget < 0)
+			throw new IllegalArgumentException("timeBudget must not be negative");
+	}
+
+	/**
+	 * Restituisce il valore del membro leafPercentage.
+	 * 
+	 * @return Percentuale delle tuple che una foglia deve contenere al più.
+	 */
+	public int getLeafPercentage() {
+		return leafPercentage;
+	}
+
+	/**
+	 * Restituisce il valore del membro maxDepth.
+	 * 
+	 * @return Profondità massima dell'albero.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Restituisce il valore del membro maxLeaves.
+	 * 
+	 * @return Numero massimo di foglie dell'albero.
+	 */
+	public int getMaxLeaves() {
+		return maxLeaves;
+	}
+
+	/**
+	 * Restituisce il valore del membro minVarianceReduction.
+	 * 
+	 * @return Riduzione minima dello SSE per cui un nodo è suddiviso.
+	 */
+	public double getMinVarianceReduction() {
+		return minVarianceReduction;
+	}
+
+	/**
+	 * Restituisce il valore del membro timeBudget.
+	 * 
+	 * @return Tempo massimo di apprendimento, in millisecondi; 0 se illimitato.
+	 */
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Restituisce il valore del membro bestFirst.
+	 * 
+	 * @return true se l'albero cresce espandendo per primo il nodo con la
+	 *         maggiore riduzione dello SSE.
+	 */
+	public boolean isBestFirst() {
+		return bestFirst;
+	}
+
+	/**
+	 * Restituisce il valore del membro levelWise.
+	 * 
+	 * @return true se l'albero cresce per livelli.
+	 */
+	public boolean isLevelWise() {
+		return levelWise;
+	}
+
+	/**
+	 * Avvia il conteggio dei limiti per l'apprendimento di un albero.
+	 * 
+	 * @param totalWeight Numero di tuple rappresentate dal training set.
+	 * @return Stato dei limiti all'inizio dell'apprendimento.
+	 */
+	Budget start(long totalWeight) {
+		return new Budget(this, totalWeight);
+	}
+
+}
@@ -0,0 +1,150 @@
+package data;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import database.Column;
+
+/**
+ * Verifica della lettura dei training set da file delimitati: il tipo ricavato
+ * per ciascuna colonna, i campi tra virgolette e le transazioni lette, e il
+ * rilascio delle colonne del training set letto. Si
+ * esegue con il server nel classpath e termina con un AssertionError al primo
+ * controllo non superato.
+ */
+class CsvSourceTest {
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Scrive un file temporaneo con le righe in input.
+	 * 
+	 * @param suffix Estensione del file.
+	 * @param lines  Righe del file.
+	 * @return Percorso del file.
+	 * @throws IOException Se il file non può essere scritto.
+	 */
+	private static Path write(String suffix, String... lines) throws IOException {
+		Path file = Files.createTempFile("csvsource", suffix);
+		file.toFile().deleteOnExit();
+		Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+		return file;
+	}
+
+	/**
+	 * Carica il training set dal file in input, rimuovendone poi la copia locale.
+	 * 
+	 * @param source Sorgente del training set.
+	 * @return Training set letto.
+	 * @throws Exception Se il training set non può essere letto.
+	 */
+	private static Data load(CsvSource source) throws Exception {
+		try {
+			return new Data(source);
+		} finally {
+			Files.deleteIfExists(Snapshot.path(source.getName()));
+		}
+	}
+
+	/**
+	 * Verifica il tipo delle colonne: numerica se tutti i valori sono numeri,
+	 * stringa se un valore non lo è o se un campo è vuoto.
+	 */
+	private static void typeInference() throws Exception {
+		Path file = write(".csv", "number,word,empty,quoted,y", "1,a,1,\"2\",1.5", "2.5,3,,\"-4e1\",2",
+				"-3,b,2,5,3.25");
+		List<Column> columns = new CsvSource(file).getColumns();
+		check(columns.size() == 5, "five columns expected: " + columns);
+		check(columns.get(0).isNumber(), "numeric column read as string");
+		check(!columns.get(1).isNumber(), "column with words read as numeric");
+		check(!columns.get(2).isNumber(), "column with an empty field read as numeric");
+		check(columns.get(3).isNumber(), "quoted numbers read as string");
+		check(columns.get(4).isNumber(), "class column read as string");
+		Data data = load(new CsvSource(file));
+		check(data.getNumberOfExamples() == 3, "three examples expected: " + data.getNumberOfExamples());
+		check(data.getExplanatoryAttribute(0) instanceof ContinuousAttribute, "continuous attribute expected");
+		check(data.getExplanatoryAttribute(1) instanceof DiscreteAttribute, "discrete attribute expected");
+		check(data.getExplanatoryAttribute(2) instanceof DiscreteAttribute, "discrete attribute expected");
+		check(data.getExplanatoryAttribute(3) instanceof ContinuousAttribute, "continuous attribute expected");
+		double sum = 0;
+		for (int i = 0; i < data.getNumberOfExamples(); i++)
+			sum += data.getClassValue(i) * data.getWeight(i);
+		check(sum == 6.75, "class values do not add up: " + sum);
+	}
+
+	/**
+	 * Verifica i campi tra virgolette, con delimitatori e virgolette raddoppiate
+	 * al loro interno, il delimitatore dei file TSV e le righe vuote.
+	 */
+	private static void quoting() throws Exception {
+		String[] expected = { "plain", "a, b", "say \"hi\"", "", "tab\tinside" };
+		Path csv = write(".csv", "text,y", "plain,1", "\"a, b\",2", "\"say \"\"hi\"\"\",3", "", "\"\",4",
+				"\"tab\tinside\",5");
+		Path tsv = write(".tsv", "text\ty", "plain\t1", "a, b\t2", "\"say \"\"hi\"\"\"\t3", "\"\"\t4",
+				"\"tab\tinside\"\t5");
+		for (Path file : new Path[] { csv, tsv }) {
+			Data data = load(new CsvSource(file));
+			check(data.getNumberOfExamples() == expected.length,
+					file + ": " + expected.length + " examples expected: " + data.getNumberOfExamples());
+			for (int i = 0; i < data.getNumberOfExamples(); i++) {
+				int row = (int) data.getClassValue(i) - 1;
+				Object value = data.getExplanatoryValue(i, 0);
+				check(expected[row].equals(value), file + ": expected [" + expected[row] + "], read [" + value + "]");
+			}
+		}
+		try {
+			new CsvSource(csv, '"');
+			check(false, "quote accepted as delimiter");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Verifica che le colonne restino leggibili finché una vista le utilizza e
+	 * siano liberate al rilascio dell'ultimo riferimento.
+	 */
+	private static void release() throws Exception {
+		Data data = load(new CsvSource(write(".csv", "x,y", "1,2", "3,4")));
+		Data view = data.view();
+		data.release();
+		check(view.getClassValue(0) + view.getClassValue(1) == 6, "columns freed while a view uses them");
+		view.release();
+		try {
+			data.view();
+			check(false, "view of a released training set");
+		} catch (IllegalStateException e) {
+		}
+		try {
+			view.release();
+			check(false, "training set released twice");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 * @throws Exception Se una verifica non può essere eseguita.
+	 */
+	public static void main(String[] args) throws Exception {
+		typeInference();
+		quoting();
+		release();
+		System.out.println("OK");
+	}
+
+}
@@ -0,0 +1,65 @@
+package database;
+
+/**
+ * Verifica della forma canonica delle selezioni, che identifica i training set
+ * condivisi e le loro copie locali: selezioni diverse devono avere forme
+ * diverse e la forma di un confronto deve poter essere riletta. Si esegue con
+ * il server nel classpath e termina con un AssertionError al primo controllo
+ * non superato.
+ */
+class SelectionTest {
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Restituisce la selezione della tabella t con i confronti in input.
+	 * 
+	 * @param conditions Confronti della selezione.
+	 * @return Selezione della tabella.
+	 */
+	private static Selection select(String... conditions) {
+		return new Selection("t", null, conditions);
+	}
+
+	/**
+	 * Verifica che un confronto non sia accettato.
+	 * 
+	 * @param condition Confronto da verificare.
+	 */
+	private static void rejected(String condition) {
+		try {
+			select(condition);
+			check(false, "condition accepted: " + condition);
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 */
+	public static void main(String[] args) {
+		String two = select("a = 'x'", "b = 'y'").toString();
+		rejected("a = 'x', b = 'y'");
+		String one = select("a = 'x'', b = ''y'").toString();
+		check(!one.equals(two), "one condition and two conditions share the form " + two);
+		check(one.equals(select(one.substring(2, one.length() - 1)).toString()), "form not read back: " + one);
+		check(select("a = 'it''s'").toString().equals("t[a = 'it''s']"), "quote not doubled");
+		check(!select("a = '1'").toString().equals(select("a = 1").toString()), "string and number share the form");
+		check(select("a != 1").toString().equals(select("a <> 1.0").toString()), "equivalent conditions differ");
+		rejected("a = 'x");
+		System.out.println("OK");
+	}
+
+}
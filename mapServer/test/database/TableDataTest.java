@@ -0,0 +1,278 @@
+package database;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Verifica delle statistiche di split calcolate dal database, confrontate con
+ * quelle calcolate in memoria sulle stesse tuple, e del rifiuto dei valori
+ * mancanti sia nelle statistiche sia nella lettura delle tuple. In assenza
+ * della proprietà di sistema mapdb.config la verifica usa un database H2 in
+ * memoria in modalità MySQL, il cui driver deve essere nel classpath insieme
+ * al server. Termina con un AssertionError al primo controllo non superato.
+ */
+class TableDataTest {
+
+	/**
+	 * Tabella creata per la verifica.
+	 */
+	private static final String TABLE = "split_statistics_check";
+
+	/**
+	 * Numero di tuple della tabella.
+	 */
+	private static final int ROWS = 2000;
+
+	/**
+	 * Valore sottratto all'attributo di classe prima delle somme.
+	 */
+	private static final double SHIFT = 3.5;
+
+	/**
+	 * Valori della colonna color.
+	 */
+	private static final String[] COLORS = { "red", "green", "blue" };
+
+	/**
+	 * Valori della colonna x.
+	 */
+	private static double[] x = new double[ROWS];
+
+	/**
+	 * Valori della colonna color.
+	 */
+	private static String[] color = new String[ROWS];
+
+	/**
+	 * Valori della colonna y, l'attributo di classe.
+	 */
+	private static double[] y = new double[ROWS];
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Indica il database H2 in memoria come database a cui accedere, se non è
+	 * stata indicata un'altra configurazione.
+	 * 
+	 * @throws Exception Se la configurazione non può essere scritta.
+	 */
+	private static void configure() throws Exception {
+		if (System.getProperty("mapdb.config") != null)
+			return;
+		Properties config = new Properties();
+		config.setProperty("driver", "org.h2.Driver");
+		config.setProperty("url", "jdbc:h2:mem:check;MODE=MySQL;DB_CLOSE_DELAY=-1");
+		config.setProperty("user", "sa");
+		config.setProperty("password", "");
+		File file = File.createTempFile("mapdb", ".properties");
+		file.deleteOnExit();
+		try (OutputStream out = new FileOutputStream(file)) {
+			config.store(out, null);
+		}
+		System.setProperty("mapdb.config", file.getPath());
+	}
+
+	/**
+	 * Crea la tabella della verifica e la riempie di tuple generate sempre allo
+	 * stesso modo.
+	 * 
+	 * @param db Accesso al database.
+	 * @throws Exception Se la tabella non può essere creata.
+	 */
+	private static void populate(DbAccess db) throws Exception {
+		try (Statement statement = db.getConnection().createStatement()) {
+			statement.executeUpdate("DROP TABLE IF EXISTS " + TABLE);
+			statement.executeUpdate("CREATE TABLE " + TABLE + " (x DOUBLE, color VARCHAR(10), y DOUBLE)");
+		}
+		Random random = new Random(42);
+		try (PreparedStatement statement = db.getConnection()
+				.prepareStatement("INSERT INTO " + TABLE + " VALUES (?, ?, ?)")) {
+			for (int i = 0; i < ROWS; i++) {
+				x[i] = random.nextInt(100);
+				color[i] = COLORS[random.nextInt(COLORS.length)];
+				y[i] = Math.round(random.nextGaussian() * 100) / 10.0 + (x[i] > 50 ? 5 : 1);
+				statement.setDouble(1, x[i]);
+				statement.setString(2, color[i]);
+				statement.setDouble(3, y[i]);
+				statement.addBatch();
+			}
+			statement.executeBatch();
+		}
+	}
+
+	/**
+	 * Calcola in memoria le statistiche di split con la semantica di
+	 * scanSplitStatistics(): i nodi sono le tuple con y &gt; 0 e x &lt;= 50, e
+	 * quelle con y &gt; 0, x &gt; 50 e color = 'red'.
+	 * 
+	 * @param numeric Indica se le tuple sono raggruppate per intervalli di x
+	 *                invece che per valore di color.
+	 * @param cuts    Soglie degli intervalli di x.
+	 * @return Statistiche di ciascun gruppo, indicizzate per nodo e gruppo.
+	 */
+	private static Map<String, double[]> expected(boolean numeric, double[] cuts) {
+		Map<String, double[]> groups = new HashMap<>();
+		for (int i = 0; i < ROWS; i++) {
+			if (!(y[i] > 0))
+				continue;
+			int node = x[i] <= 50 ? 0 : "red".equals(color[i]) ? 1 : -1;
+			if (node < 0)
+				continue;
+			Object group = color[i];
+			if (numeric) {
+				int interval = 0;
+				while (interval < cuts.length - 1 && x[i] > cuts[interval])
+					interval++;
+				group = interval;
+			}
+			double d = y[i] - SHIFT;
+			double[] statistics = groups.computeIfAbsent(node + ":" + group,
+					k -> new double[] { 0, 0, 0, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE,
+							-Double.MAX_VALUE });
+			statistics[0]++;
+			statistics[1] += d;
+			statistics[2] += d * d;
+			statistics[3] = Math.min(statistics[3], y[i]);
+			statistics[4] = Math.max(statistics[4], y[i]);
+			statistics[5] = Math.min(statistics[5], x[i]);
+			statistics[6] = Math.max(statistics[6], x[i]);
+		}
+		if (!numeric)
+			for (double[] statistics : groups.values())
+				statistics[5] = statistics[6] = Double.NaN;
+		return groups;
+	}
+
+	/**
+	 * Confronta le statistiche calcolate dal database con quelle calcolate in
+	 * memoria.
+	 * 
+	 * @param data   Accesso alla tabella.
+	 * @param column Colonna di cui raggruppare i valori.
+	 * @param cuts   Soglie degli intervalli se la colonna è numerica; null
+	 *               altrimenti.
+	 * @throws Exception Se l'interrogazione fallisce.
+	 */
+	private static void compare(TableData data, Column column, double[] cuts) throws Exception {
+		Selection selection = new Selection(TABLE, null, new String[] { "y > 0" });
+		List<Selection> nodes = Arrays.asList(selection.and("x", "<=", 50.0),
+				selection.and("x", ">", 50.0).and("color", "=", "red"));
+		Map<String, double[]> actual = new HashMap<>();
+		data.scanSplitStatistics(selection, nodes, column, cuts, "y", SHIFT,
+				(node, group, count, sum, squares, minClass, maxClass, minValue, maxValue) -> check(
+						actual.put(node + ":" + group, new double[] { count, sum, squares, minClass, maxClass,
+								minValue, maxValue }) == null,
+						"group " + node + ":" + group + " received twice"));
+		Map<String, double[]> expected = expected(cuts != null, cuts);
+		String label = column.getColumnName() + " " + Arrays.toString(cuts);
+		check(actual.keySet().equals(expected.keySet()),
+				label + ": groups " + actual.keySet() + " instead of " + expected.keySet());
+		for (Map.Entry<String, double[]> group : expected.entrySet()) {
+			double[] reference = group.getValue();
+			double[] statistics = actual.get(group.getKey());
+			for (int i = 0; i < reference.length; i++)
+				check(Double.isNaN(reference[i]) ? Double.isNaN(statistics[i])
+						: Math.abs(statistics[i] - reference[i]) <= 1e-9 * Math.max(1, Math.abs(reference[i])),
+						label + ": group " + group.getKey() + " statistic " + i + " is " + statistics[i]
+								+ " instead of " + reference[i]);
+		}
+	}
+
+	/**
+	 * Aggiunge alla tabella una tupla con un valore mancante e verifica che sia
+	 * rifiutata sia dalle statistiche calcolate dal database sia dalla lettura
+	 * delle tuple; infine rimuove la tupla.
+	 * 
+	 * @param db     Accesso al database.
+	 * @param data   Accesso alla tabella.
+	 * @param values Valori della tupla, nell'ordine x, color, y.
+	 * @param column Colonna di cui raggruppare i valori.
+	 * @param cuts   Soglie degli intervalli se la colonna è numerica; null
+	 *               altrimenti.
+	 * @throws Exception Se la tupla non può essere aggiunta o rimossa.
+	 */
+	private static void checkMissing(DbAccess db, TableData data, String values, Column column, double[] cuts)
+			throws Exception {
+		try (Statement statement = db.getConnection().createStatement()) {
+			statement.executeUpdate("INSERT INTO " + TABLE + " VALUES (" + values + ")");
+		}
+		Selection selection = new Selection(TABLE);
+		String label = "(" + values + ") grouped by " + column.getColumnName();
+		try {
+			data.scanSplitStatistics(selection, Arrays.asList(selection), column, cuts, "y", SHIFT,
+					(node, group, count, sum, squares, minClass, maxClass, minValue, maxValue) -> {
+					});
+			check(false, label + ": statistics computed");
+		} catch (SQLException e) {
+			check(e.getMessage().equals("Missing value"), label + ": " + e);
+		}
+		try {
+			data.scanTransazioni(TABLE, null, new ColumnSink() {
+				public void setNumber(int row, int column, double value) {
+				}
+
+				public void setString(int row, int column, String value) throws SQLException {
+					if (value == null)
+						throw new SQLException("Missing value");
+				}
+			});
+			check(false, label + ": tuples read");
+		} catch (SQLException e) {
+			check(e.getMessage().equals("Missing value"), label + ": " + e);
+		}
+		try (Statement statement = db.getConnection().createStatement()) {
+			statement.executeUpdate("DELETE FROM " + TABLE + " WHERE x IS NULL OR color IS NULL OR y IS NULL");
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 * @throws Exception Se una verifica non può essere eseguita.
+	 */
+	public static void main(String[] args) throws Exception {
+		configure();
+		DbAccess db = new DbAccess();
+		db.initConnection();
+		try {
+			populate(db);
+			TableData data = new TableData(db);
+			compare(data, new Column("color", "string"), null);
+			compare(data, new Column("x", "number"), new double[] { 20, 50, 80 });
+			compare(data, new Column("x", "number"), new double[] { 99 });
+			checkMissing(db, data, "NULL, 'red', 1", new Column("x", "number"), new double[] { 20, 50, 80 });
+			checkMissing(db, data, "NULL, 'red', 1", new Column("x", "number"), new double[] { 99 });
+			checkMissing(db, data, "10, NULL, 1", new Column("color", "string"), null);
+			checkMissing(db, data, "10, 'red', NULL", new Column("x", "number"), new double[] { 20, 50, 80 });
+			compare(data, new Column("x", "number"), new double[] { 20, 50, 80 });
+			try (Statement statement = db.getConnection().createStatement()) {
+				statement.executeUpdate("DROP TABLE " + TABLE);
+			}
+		} finally {
+			db.closeConnection();
+		}
+		System.out.println("OK");
+	}
+
+}
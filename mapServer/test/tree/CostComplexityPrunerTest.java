@@ -0,0 +1,82 @@
+package tree;
+
+import java.util.Arrays;
+import data.Data;
+
+/**
+ * Verifica della sequenza di potatura per costo-complessità sugli alberi
+ * appresi dal training set sintetico di RegressionTreeTest, con ciascuno dei
+ * suoi criteri di arresto. Si esegue con il server nel classpath e termina con
+ * un AssertionError al primo controllo non superato.
+ */
+class CostComplexityPrunerTest {
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Calcola la media dell'attributo di classe nel training set, pesata per il
+	 * numero di tuple rappresentate da ciascun esempio.
+	 * 
+	 * @param data Training set.
+	 * @return Media pesata dell'attributo di classe.
+	 */
+	private static double weightedMean(Data data) {
+		double sum = 0;
+		for (int i = 0; i < data.getNumberOfExamples(); i++)
+			sum += data.getWeight(i) * data.getClassValue(i);
+		return sum / data.getTotalWeight();
+	}
+
+	/**
+	 * Verifica la sequenza di potatura dell'albero appreso con ciascuno dei
+	 * criteri di arresto: i valori di alfa partono da zero e non decrescono, la
+	 * potatura con alfa nullo non modifica le predizioni e quella con l'ultimo
+	 * valore lascia una sola foglia che predice la media pesata dell'attributo di
+	 * classe.
+	 * 
+	 * @param data Training set.
+	 */
+	private static void sequence(Data data) {
+		Object[][] examples = RegressionTreeTest.examples(data);
+		double mean = weightedMean(data);
+		for (String setting : RegressionTreeTest.SETTINGS) {
+			String label = data.getNumberOfExamples() + " examples [" + setting + "]";
+			RegressionTree tree = new RegressionTree(data, new TrainingConfig(setting.split(";")));
+			CostComplexityPruner pruner = new CostComplexityPruner(tree, data);
+			double[] alphas = pruner.getAlphas();
+			check(alphas.length > 0 && alphas[0] == 0, label + ": sequence " + Arrays.toString(alphas));
+			for (int k = 1; k < alphas.length; k++)
+				check(alphas[k] >= alphas[k - 1], label + ": decreasing sequence " + Arrays.toString(alphas));
+			RegressionTreeTest.samePredictions(tree, pruner.prune(0), examples, "alpha 0 " + label);
+			RegressionTree root = pruner.prune(alphas[alphas.length - 1]);
+			check(root.getRoot() instanceof LeafNode,
+					label + ": largest alpha leaves " + root.getNumberOfNodes() + " nodes");
+			double value = ((LeafNode) root.getRoot()).getPredictedClassValue();
+			check(Math.abs(value - mean) <= 1e-9 * Math.max(1, Math.abs(mean)),
+					label + ": single leaf predicts " + value + " instead of " + mean);
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 * @throws Exception Se una verifica non può essere eseguita.
+	 */
+	public static void main(String[] args) throws Exception {
+		for (int examples : new int[] { 200, 5000 })
+			sequence(RegressionTreeTest.trainingSet(examples));
+		System.out.println("OK");
+	}
+
+}
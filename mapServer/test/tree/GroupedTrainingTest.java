@@ -0,0 +1,215 @@
+package tree;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import data.Data;
+import data.DataSource;
+import data.TrainingDataException;
+import database.Column;
+import database.ColumnSink;
+
+/**
+ * Verifica dell'apprendimento degli alberi di regressione da training set le
+ * cui tuple identiche sono raggruppate in esempi pesati: l'albero appreso dagli
+ * esempi pesati deve predire come quello appreso dalle tuple. Si esegue con il
+ * server nel classpath e termina con un AssertionError al primo controllo non
+ * superato.
+ */
+class GroupedTrainingTest {
+
+	/**
+	 * Sorgente in memoria che raggruppa le tuple identiche, nell'ordine della
+	 * loro prima occorrenza, come il DBMS per le tabelle del database.
+	 */
+	private static class GroupedSource implements DataSource {
+
+		/**
+		 * Colonne della sorgente; l'ultima è l'attributo di classe.
+		 */
+		private final List<Column> columns;
+
+		/**
+		 * Tuple della sorgente.
+		 */
+		private final List<Object[]> rows;
+
+		/**
+		 * Tuple distinte della sorgente, con il numero delle loro occorrenze.
+		 */
+		private final Map<List<Object>, Integer> groups = new LinkedHashMap<>();
+
+		/**
+		 * Costruttore di classe.
+		 * 
+		 * @param columns Colonne della sorgente.
+		 * @param rows    Tuple della sorgente.
+		 */
+		GroupedSource(List<Column> columns, List<Object[]> rows) {
+			this.columns = columns;
+			this.rows = rows;
+			for (Object[] row : rows)
+				groups.merge(Arrays.asList(row), 1, Integer::sum);
+		}
+
+		public String getName() {
+			return "grouped";
+		}
+
+		public List<Column> getColumns() {
+			return columns;
+		}
+
+		/**
+		 * La sorgente non ha impronta, così che il training set non sia
+		 * memorizzato in una copia locale.
+		 */
+		public String getFingerprint() {
+			return null;
+		}
+
+		public boolean supportsGrouping() {
+			return true;
+		}
+
+		public int[] getPartitionSizes(boolean grouped) {
+			return new int[] { grouped ? groups.size() : rows.size() };
+		}
+
+		public int scan(int partition, boolean grouped, ColumnSink sink) {
+			List<List<Object>> transactions = new ArrayList<>();
+			if (grouped)
+				transactions.addAll(groups.keySet());
+			else
+				for (Object[] row : rows)
+					transactions.add(Arrays.asList(row));
+			try {
+				for (int row = 0; row < transactions.size(); row++) {
+					List<Object> values = transactions.get(row);
+					for (int i = 0; i < values.size(); i++)
+						if (values.get(i) instanceof Number)
+							sink.setNumber(row, i, ((Number) values.get(i)).doubleValue());
+						else
+							sink.setString(row, i, (String) values.get(i));
+					if (grouped)
+						sink.setWeight(row, groups.get(values));
+				}
+			} catch (SQLException e) {
+				throw new IllegalStateException("value rejected by the training set", e);
+			}
+			return transactions.size();
+		}
+
+	}
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Carica il training set dalla sorgente in input, con le tuple identiche
+	 * raggruppate o meno.
+	 * 
+	 * @param source  Sorgente del training set.
+	 * @param grouped true per raggruppare le tuple identiche.
+	 * @return Training set.
+	 * @throws TrainingDataException Se la sorgente non può essere letta.
+	 */
+	private static Data load(DataSource source, boolean grouped) throws TrainingDataException {
+		Data.setGrouping(grouped);
+		try {
+			return new Data(source);
+		} finally {
+			Data.setGrouping(false);
+		}
+	}
+
+	/**
+	 * Verifica che uno split discreto mantenga l'ultimo valore dell'attributo
+	 * quando le sue tuple sono raggruppate in un unico esempio pesato: cinque
+	 * tuple con due valori dell'attributo producono uno split sia da sole sia
+	 * raggruppate in due esempi.
+	 * 
+	 * @throws TrainingDataException Se il training set non può essere caricato.
+	 */
+	private static void trailingDiscreteValue() throws TrainingDataException {
+		List<Column> columns = Arrays.asList(new Column("color", "string"), new Column("y", "number"));
+		List<Object[]> rows = new ArrayList<>();
+		for (int i = 0; i < 2; i++)
+			rows.add(new Object[] { "blue", 1 });
+		for (int i = 0; i < 3; i++)
+			rows.add(new Object[] { "red", 5 });
+		GroupedSource source = new GroupedSource(columns, rows);
+		Data grouped = load(source, true);
+		check(grouped.getNumberOfExamples() == 2, "rows not grouped: " + grouped.getNumberOfExamples());
+		RegressionTree plain = new RegressionTree(load(source, false));
+		RegressionTree weighted = new RegressionTree(grouped);
+		check(plain.getNumberOfNodes() == 3, "plain tree has no discrete split: " + plain);
+		check(weighted.getNumberOfNodes() == 3, "grouped tree has no discrete split: " + weighted);
+		Object[][] examples = { { "blue" }, { "red" }, { "green" } };
+		RegressionTreeTest.samePredictions(plain, weighted, examples, "trailing discrete value");
+	}
+
+	/**
+	 * Verifica che gli alberi appresi da un training set sintetico con molte tuple
+	 * ripetute predicano gli stessi valori con e senza raggruppamento, e che
+	 * dagli esempi pesati la crescita per livelli produca lo stesso albero della
+	 * crescita ricorsiva.
+	 * 
+	 * @throws TrainingDataException Se il training set non può essere caricato.
+	 */
+	private static void repeatedRows() throws TrainingDataException {
+		Random random = new Random(11);
+		String[] colors = { "red", "green", "blue" };
+		List<Column> columns = Arrays.asList(new Column("x", "number"), new Column("color", "string"),
+				new Column("y", "number"));
+		List<Object[]> rows = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			int x = random.nextInt(12);
+			int color = random.nextInt(colors.length);
+			int y = (x < 5 ? 10 : 30) + 4 * color + random.nextInt(2);
+			rows.add(new Object[] { x, colors[color], y });
+		}
+		GroupedSource source = new GroupedSource(columns, rows);
+		Data plainData = load(source, false);
+		Data groupedData = load(source, true);
+		check(groupedData.getNumberOfExamples() < plainData.getNumberOfExamples(), "rows not grouped");
+		check(groupedData.getTotalWeight() == plainData.getNumberOfExamples(), "weights do not sum to the rows");
+		Object[][] examples = RegressionTreeTest.examples(plainData);
+		for (String setting : new String[] { "", "leafPercentage=0", "maxDepth=2" }) {
+			TrainingConfig config = new TrainingConfig(setting.split(";"));
+			RegressionTree grouped = new RegressionTree(groupedData, config);
+			RegressionTreeTest.samePredictions(new RegressionTree(plainData, config), grouped, examples,
+					"grouped rows [" + setting + "]");
+			String levelWise = RegressionTreeTest.describe(
+					new RegressionTree(groupedData, new TrainingConfig((setting + ";growth=levelWise").split(";"))));
+			check(RegressionTreeTest.describe(grouped).equals(levelWise),
+					"level-wise tree differs on grouped rows [" + setting + "]");
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 * @throws Exception Se una verifica non può essere eseguita.
+	 */
+	public static void main(String[] args) throws Exception {
+		trailingDiscreteValue();
+		repeatedRows();
+		System.out.println("OK");
+	}
+
+}
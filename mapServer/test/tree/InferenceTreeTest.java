@@ -0,0 +1,121 @@
+package tree;
+
+import java.io.File;
+import java.util.Objects;
+import data.Data;
+import server.UnknownValueException;
+
+/**
+ * Verifica della forma compatta per l'inferenza degli alberi di regressione:
+ * predizioni, predizione interattiva e archiviazione devono essere quelle
+ * dell'albero da cui è ricavata. Si esegue con il server nel classpath e
+ * termina con un AssertionError al primo controllo non superato.
+ */
+class InferenceTreeTest {
+
+	/**
+	 * Criteri di arresto con cui sono appresi gli alberi verificati.
+	 */
+	private static final String[] SETTINGS = { "", "leafPercentage=0", "maxDepth=3", "maxLeaves=7" };
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Restituisce le opzioni di test della radice del sottoalbero in input, nel
+	 * formato atteso dalla predizione interattiva.
+	 * 
+	 * @param tree Sottoalbero di regressione.
+	 * @return Opzioni di test della radice, o null se è una foglia.
+	 */
+	private static String query(RegressionTree tree) {
+		if (!(tree.getRoot() instanceof SplitNode))
+			return null;
+		SplitNode split = (SplitNode) tree.getRoot();
+		StringBuilder text = new StringBuilder("\n");
+		for (int i = 0; i < split.getNumberOfChildren(); i++)
+			text.append(i).append(":\t").append(split.getAttribute()).append("\t")
+					.append(split.getSplitInfo(i).getComparator()).append("\t")
+					.append(split.getSplitInfo(i).getSplitValue()).append("\n");
+		return text.append("\nInsert value: ").toString();
+	}
+
+	/**
+	 * Percorre in parallelo i due alberi a partire dai nodi in input, come nella
+	 * predizione interattiva, verificando che ciascun nodo abbia le stesse
+	 * opzioni di test, gli stessi rami e lo stesso valore predetto.
+	 * 
+	 * @param tree          Sottoalbero di regressione.
+	 * @param inference     Forma compatta dell'albero.
+	 * @param inferenceNode Nodo della forma compatta corrispondente alla radice
+	 *                      del sottoalbero.
+	 * @return Numero di nodi visitati.
+	 * @throws UnknownValueException Se un nodo non appartiene alla forma compatta.
+	 */
+	private static int walk(RegressionTree tree, InferenceTree inference, int inferenceNode)
+			throws UnknownValueException {
+		String query = query(tree);
+		check(Objects.equals(query, inference.getQuery(inferenceNode)), "different query at node " + inferenceNode);
+		Double value = query == null ? ((LeafNode) tree.getRoot()).getPredictedClassValue() : null;
+		check(Objects.equals(value, inference.getPredictedClassValue(inferenceNode)),
+				"different prediction at node " + inferenceNode);
+		if (query == null)
+			return 1;
+		RegressionTree[] childTree = tree.getChildTree();
+		int visited = 1;
+		for (int choice = 0; choice < childTree.length; choice++)
+			visited += walk(childTree[choice], inference, inference.getChild(inferenceNode, choice));
+		try {
+			inference.getChild(inferenceNode, childTree.length);
+			check(false, "extra branch " + childTree.length + " at node " + inferenceNode);
+		} catch (UnknownValueException expected) {
+		}
+		return visited;
+	}
+
+	/**
+	 * Verifica la forma compatta degli alberi appresi con ciascuno dei criteri di
+	 * arresto, anche dopo averla archiviata e caricata da un file.
+	 * 
+	 * @param data Training set.
+	 * @throws Exception Se la forma compatta non può essere archiviata o caricata.
+	 */
+	private static void inference(Data data) throws Exception {
+		Object[][] examples = RegressionTreeTest.examples(data);
+		File file = File.createTempFile("inferencetree", ".dmp");
+		file.deleteOnExit();
+		for (String setting : SETTINGS) {
+			RegressionTree tree = new RegressionTree(data, new TrainingConfig(setting.split(";")));
+			InferenceTree inference = new InferenceTree(tree);
+			check(inference.getVersion() == tree.getVersion(), "different version [" + setting + "]");
+			RegressionTreeTest.samePredictions(tree, inference, examples, "inference [" + setting + "]");
+			walk(tree, inference, 0);
+			inference.salva(file.getPath());
+			InferenceTree loaded = InferenceTree.carica(file.getPath());
+			RegressionTreeTest.samePredictions(tree, loaded, examples, "loaded inference [" + setting + "]");
+			check(walk(tree, loaded, 0) == walk(tree, inference, 0), "loaded tree walked differently");
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 * @throws Exception Se una verifica non può essere eseguita.
+	 */
+	public static void main(String[] args) throws Exception {
+		for (int examples : new int[] { 200, 5000 })
+			inference(RegressionTreeTest.trainingSet(examples));
+		System.out.println("OK");
+	}
+
+}
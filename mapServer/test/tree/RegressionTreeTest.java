@@ -0,0 +1,214 @@
+package tree;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import data.ContinuousAttribute;
+import data.CsvSource;
+import data.Data;
+import data.DiscreteAttribute;
+
+/**
+ * Verifica dell'apprendimento degli alberi di regressione su un training set
+ * sintetico, con attributi continui e discreti e tuple ripetute. Si esegue
+ * con il server nel classpath e termina con un AssertionError al primo
+ * controllo non superato.
+ */
+class RegressionTreeTest {
+
+	/**
+	 * Criteri di arresto con cui sono appresi gli alberi verificati.
+	 */
+	static final String[] SETTINGS = { "", "leafPercentage=1", "leafPercentage=0", "maxDepth=3",
+			"minVarianceReduction=50", "maxLeaves=7" };
+
+	/**
+	 * Verifica una condizione.
+	 * 
+	 * @param condition Condizione da verificare.
+	 * @param message   Descrizione del controllo.
+	 * @throws AssertionError Se la condizione è falsa.
+	 */
+	private static void check(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Scrive nella cartella temporanea un training set sintetico, sempre lo
+	 * stesso, e lo carica.
+	 * 
+	 * @param examples Numero di transazioni.
+	 * @return Training set.
+	 * @throws Exception Se il training set non può essere scritto o letto.
+	 */
+	static Data trainingSet(int examples) throws Exception {
+		Random random = new Random(42);
+		String[] colors = { "red", "green", "blue", "black", "white" };
+		List<String> lines = new ArrayList<>();
+		lines.add("x,z,color,y");
+		for (int i = 0; i < examples; i++) {
+			int x = random.nextInt(100);
+			double z = Math.round(random.nextGaussian() * 1000) / 100.0;
+			int color = random.nextInt(colors.length);
+			int y = (x < 40 ? 10 : 30) + (color < 2 ? 5 : 0) + (z > 0 ? 1 : 0) + random.nextInt(2);
+			lines.add(x + "," + z + "," + colors[color] + "," + y);
+		}
+		Path file = Paths.get(System.getProperty("java.io.tmpdir"), "regressiontree-" + examples + ".csv");
+		Files.write(file, lines);
+		return new Data(new CsvSource(file));
+	}
+
+	/**
+	 * Restituisce la descrizione dell'albero senza la versione, che distingue
+	 * alberi altrimenti identici.
+	 * 
+	 * @param tree Albero di regressione.
+	 * @return Descrizione dell'albero.
+	 */
+	static String describe(RegressionTree tree) {
+		return tree.toString().replaceAll("version.*", "");
+	}
+
+	/**
+	 * Restituisce i valori degli attributi indipendenti degli esempi del training
+	 * set, seguiti da copie alterate in cui un valore è sconosciuto, mancante, di
+	 * tipo errato o l'esempio è troncato.
+	 * 
+	 * @param data Training set.
+	 * @return Esempi da predire.
+	 */
+	static Object[][] examples(Data data) {
+		int size = data.getNumberOfExamples();
+		Object[][] examples = new Object[2 * size][];
+		Random random = new Random(7);
+		for (int i = 0; i < size; i++) {
+			examples[i] = new Object[data.getNumberOfExplanatoryAttributes()];
+			for (int a = 0; a < examples[i].length; a++)
+				examples[i][a] = data.getExplanatoryValue(i, a);
+			Object[] altered = examples[i].clone();
+			int a = random.nextInt(altered.length);
+			switch (random.nextInt(5)) {
+			case 0:
+				altered[a] = "unknown";
+				break;
+			case 1:
+				altered[a] = null;
+				break;
+			case 2:
+				altered[a] = Double.NaN;
+				break;
+			case 3:
+				altered[a] = String.valueOf(altered[a]);
+				break;
+			default:
+				altered = Arrays.copyOf(altered, a);
+			}
+			examples[size + i] = altered;
+		}
+		return examples;
+	}
+
+	/**
+	 * Verifica che due modelli predicano gli stessi valori, o entrambi nessun
+	 * valore, per gli esempi in input.
+	 * 
+	 * @param expected Modello di riferimento.
+	 * @param actual   Modello da verificare.
+	 * @param examples Esempi da predire.
+	 * @param message  Descrizione del controllo.
+	 */
+	static void samePredictions(Model expected, Model actual, Object[][] examples, String message) {
+		Double[] reference = expected.predictClass(examples);
+		Double[] predicted = actual.predictClass(examples);
+		int unknown = 0;
+		for (int i = 0; i < examples.length; i++) {
+			check(Objects.equals(reference[i], predicted[i]),
+					message + ": example " + Arrays.toString(examples[i]) + " predicted " + predicted[i]
+							+ " instead of " + reference[i]);
+			if (reference[i] == null)
+				unknown++;
+		}
+		check(unknown > 0 && unknown < examples.length, message + ": no example exercises unknown values");
+	}
+
+	/**
+	 * Verifica che la compattazione non modifichi le predizioni dell'albero,
+	 * anche per gli esempi con valori sconosciuti, e non ne aumenti i nodi.
+	 * 
+	 * @param data Training set.
+	 */
+	private static void compaction(Data data) {
+		Object[][] examples = examples(data);
+		for (String setting : SETTINGS) {
+			RegressionTree tree = new RegressionTree(data, new TrainingConfig(setting.split(";")));
+			RegressionTree compact = tree.compact();
+			check(compact.getNumberOfNodes() <= tree.getNumberOfNodes(), "compaction added nodes [" + setting + "]");
+			samePredictions(tree, compact, examples, "compaction [" + setting + "]");
+		}
+	}
+
+	/**
+	 * Verifica la compattazione di un albero costruito a mano, con uno split
+	 * continuo ripetuto e uno split discreto i cui rami predicono lo stesso
+	 * valore: il primo è rimosso, mentre il secondo, che rifiuta i valori
+	 * sconosciuti dell'attributo, è mantenuto.
+	 * 
+	 * @param data Training set da cui sono presi gli attributi x e color.
+	 */
+	private static void uniformSplits(Data data) {
+		ContinuousAttribute x = (ContinuousAttribute) data.getExplanatoryAttribute(0);
+		DiscreteAttribute color = (DiscreteAttribute) data.getExplanatoryAttribute(2);
+		RegressionTree[] same = { new RegressionTree(new LeafNode(0, 24, 0, 5), null),
+				new RegressionTree(new LeafNode(25, 49, 0, 5), null) };
+		RegressionTree left = new RegressionTree(
+				new DiscreteNode(0, 49, 10, color, new Object[] { "green", "red" }, new int[] { 25, 25 }, 10), same);
+		RegressionTree[] repeated = { new RegressionTree(new LeafNode(50, 59, 0, 7), null),
+				new RegressionTree(new LeafNode(60, 99, 0, 7), null) };
+		RegressionTree right = new RegressionTree(new ContinuousNode(50, 99, 0, x, 70, 10, 0), repeated);
+		RegressionTree tree = new RegressionTree(new ContinuousNode(0, 99, 100, x, 50, 50, 10),
+				new RegressionTree[] { left, right });
+		RegressionTree compact = tree.compact();
+		check(compact.getNumberOfNodes() == 4, "uniform splits not compacted as expected: " + compact);
+		Object[][] examples = { { 10.0, 0.0, "red" }, { 10.0, 0.0, "blue" }, { 80.0, 0.0, "blue" },
+				{ 60.0, 1.0, "green" }, { Double.NaN, 0.0, "red" }, { "80", 0.0, "red" }, { 10.0, 0.0, null } };
+		samePredictions(tree, compact, examples, "hand-built tree");
+	}
+
+	/**
+	 * Verifica che la crescita per livelli produca lo stesso albero della
+	 * crescita ricorsiva, con ciascuno dei criteri di arresto.
+	 * 
+	 * @param data Training set.
+	 */
+	private static void levelWise(Data data) {
+		for (String setting : SETTINGS) {
+			String recursive = describe(new RegressionTree(data, new TrainingConfig(setting.split(";"))));
+			String levelWise = describe(
+					new RegressionTree(data, new TrainingConfig((setting + ";growth=levelWise").split(";"))));
+			check(recursive.equals(levelWise), "level-wise tree differs [" + setting + "]");
+		}
+	}
+
+	/**
+	 * Esegue le verifiche.
+	 * 
+	 * @param args Non utilizzati.
+	 * @throws Exception Se una verifica non può essere eseguita.
+	 */
+	public static void main(String[] args) throws Exception {
+		for (int examples : new int[] { 200, 5000 }) {
+			Data data = trainingSet(examples);
+			levelWise(data);
+			compaction(data);
+			uniformSplits(data);
+		}
+		System.out.println("OK");
+	}
+
+}